@@ -0,0 +1,154 @@
+
+package edu.ucla.library.libcal;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpResponse;
+
+/**
+ * Benchmarks {@link HttpResponseMapper}, which every buffered LibCal response passes through on its way across the
+ * event bus. The payloads are LibCal event listings of different lengths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpResponseMapperBenchmark {
+
+    /**
+     * The ID property of a LibCal event, and of the things it references.
+     */
+    private static final String ID = "id";
+
+    /**
+     * An event description, of the length that's typical of LibCal's events.
+     */
+    private static final String DESCRIPTION = ("<p>An introduction to finding, managing, and sharing research data, " +
+            "with hands-on exercises. Bring a laptop; no experience is needed.</p>").repeat(3);
+
+    /**
+     * The number of events in the response: a single event, a day's listing, and a long calendar listing.
+     */
+    @Param({ "1", "25", "500" })
+    private int myEventCount;
+
+    /**
+     * The response mapper.
+     */
+    private HttpResponseMapper myMapper;
+
+    /**
+     * A LibCal response.
+     */
+    private HttpResponse<String> myResponse;
+
+    /**
+     * The encoded LibCal response.
+     */
+    private JsonObject myEncodedResponse;
+
+    /**
+     * Sets up the benchmark's response.
+     */
+    @Setup
+    public void setUp() {
+        final MultiMap headers = MultiMap.caseInsensitiveMultiMap().add("Content-Type", "application/json")
+                .add("Cache-Control", "no-cache").add("Date", "Mon, 12 Feb 2024 18:00:00 GMT")
+                .add("X-RateLimit-Remaining", "99").add("Vary", "Accept-Encoding");
+        final JsonArray events = new JsonArray();
+
+        for (int index = 0; index < myEventCount; index++) {
+            events.add(getEvent(index));
+        }
+
+        myMapper = new HttpResponseMapper();
+        myResponse =
+                new HttpResponseImpl<>(HttpVersion.HTTP_1_1, 200, "OK", headers, MultiMap.caseInsensitiveMultiMap(),
+                        List.of(), new JsonObject().put("events", events).encode(), List.of());
+        myEncodedResponse = myMapper.encode(myResponse);
+    }
+
+    /**
+     * Benchmarks encoding a response for the event bus.
+     *
+     * @return The encoded response
+     */
+    @Benchmark
+    public JsonObject encode() {
+        return myMapper.encode(myResponse);
+    }
+
+    /**
+     * Benchmarks decoding a response from the event bus.
+     *
+     * @return The decoded response
+     */
+    @Benchmark
+    public HttpResponse<String> decode() {
+        return myMapper.decode(myEncodedResponse);
+    }
+
+    /**
+     * Benchmarks decoding a response from the event bus with a buffer body.
+     *
+     * @return The decoded response
+     */
+    @Benchmark
+    public HttpResponse<Buffer> decodeAsBuffer() {
+        return myMapper.decodeAsBuffer(myEncodedResponse);
+    }
+
+    /**
+     * Gets a LibCal event, shaped like those in the events API's responses.
+     *
+     * @param aIndex The event's index
+     * @return The event
+     */
+    private static JsonObject getEvent(final int aIndex) {
+        final String id = Integer.toString(5481 + aIndex);
+
+        return new JsonObject().put(ID, id).put("title", "Research Data Workshop " + aIndex).put("allday", false)
+                .put("start", "2024-02-12T10:00:00-08:00").put("end", "2024-02-12T11:30:00-08:00")
+                .put("description", DESCRIPTION)
+                .put("url",
+                        new JsonObject().put("public", "https://calendar.library.ucla.edu/event/" + id).put("admin",
+                                "https://calendar.library.ucla.edu/admin/events/event/" + id))
+                .put("location", getReference(1204, "Powell Library 186").put("type", 0))
+                .put("campus", getReference(1, "UCLA"))
+                .put("category", new JsonArray().add(getReference(36, "Workshops")))
+                .put("owner", getReference(212, "Library Data Services")).put("registration", true).put("seats", 30)
+                .put("seats_taken", aIndex % 30).put("wait_list", false).put("color", "#2774AE")
+                .put("featured_image", "");
+    }
+
+    /**
+     * Gets a reference to something with an ID and a name, like an event's location or category.
+     *
+     * @param aID The ID of the thing that's referenced
+     * @param aName The name of the thing that's referenced
+     * @return The reference
+     */
+    private static JsonObject getReference(final int aID, final String aName) {
+        return new JsonObject().put(ID, aID).put("name", aName);
+    }
+}
@@ -0,0 +1,58 @@
+
+package edu.ucla.library.libcal.access;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the {@link IpAllowlist} check that the proxy makes for every request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IpAllowlistBenchmark {
+
+    /**
+     * The client's address: one that's allowed, one that's denied, and an IPv6 one that's allowed.
+     */
+    @Param({ "164.67.48.21", "203.0.113.7", "2607:f010:3fe:101::25" })
+    private String myAddress;
+
+    /**
+     * The allowlist, with the kinds of networks a campus deployment allows.
+     */
+    private IpAllowlist myAllowlist;
+
+    /**
+     * Sets up the benchmark's allowlist.
+     */
+    @Setup
+    public void setUp() {
+        myAllowlist = new IpAllowlist("127.0.0.0/16,10.0.0.0/8,172.16.0.0/12,192.168.0.0/16,128.97.0.0/16," +
+                "131.179.0.0/16,149.142.0.0/16,164.67.0.0/16,169.232.0.0/16,2607:f010::/32,::1/128");
+    }
+
+    /**
+     * Benchmarks checking whether the client's address is allowed.
+     *
+     * @return True if the address is allowed; else, false
+     */
+    @Benchmark
+    public boolean isAllowed() {
+        return myAllowlist.isAllowed(myAddress);
+    }
+}
@@ -0,0 +1,74 @@
+
+package edu.ucla.library.libcal.handlers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ucla.library.libcal.access.RouteTable;
+
+/**
+ * Benchmarks the {@link ProxyHandler} check for the endpoints that are open to every client, a lookup in the default
+ * {@link RouteTable}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenEndpointBenchmark {
+
+    /**
+     * The request: an event registration, an event page, and an API call that isn't open.
+     */
+    @Param({ "POST /api/1.1/events/5481/register", "GET /event/5481", "GET /api/1.1/hours/2572,2573" })
+    private String myRequest;
+
+    /**
+     * The table of route policies.
+     */
+    private RouteTable myRoutes;
+
+    /**
+     * The request's HTTP method.
+     */
+    private String myMethod;
+
+    /**
+     * The request's path.
+     */
+    private String myPath;
+
+    /**
+     * Compiles the route table and splits the request into its method and path.
+     */
+    @Setup
+    public void setUp() {
+        final int space = myRequest.indexOf(' ');
+
+        myRoutes = new RouteTable(RouteTable.DEFAULT_ROUTES);
+        myMethod = myRequest.substring(0, space);
+        myPath = myRequest.substring(space + 1);
+    }
+
+    /**
+     * Benchmarks checking whether the request's endpoint is open.
+     *
+     * @return True if the endpoint is open; else, false
+     */
+    @Benchmark
+    public boolean isOpenEndpoint() {
+        return myRoutes.getPolicy(myMethod, myPath).isPublic();
+    }
+}
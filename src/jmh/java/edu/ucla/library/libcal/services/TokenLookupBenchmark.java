@@ -0,0 +1,129 @@
+
+package edu.ucla.library.libcal.services;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.serviceproxy.ServiceBinder;
+
+/**
+ * Benchmarks the two ways the proxy gets a LibCal access token: reading it from the {@link TokenHolder}, and asking the
+ * {@link OAuthTokenService} over the event bus. The token service is a stub, so no calls are made to LibCal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenLookupBenchmark {
+
+    /**
+     * The access token.
+     */
+    private static final String TOKEN = "0123456789abcdef0123456789abcdef01234567";
+
+    /**
+     * A Vert.x instance.
+     */
+    private Vertx myVertx;
+
+    /**
+     * The token holder.
+     */
+    private TokenHolder myTokenHolder;
+
+    /**
+     * A proxy to the token service.
+     */
+    private OAuthTokenService myTokenProxy;
+
+    /**
+     * The token service's event bus consumer.
+     */
+    private MessageConsumer<JsonObject> myConsumer;
+
+    /**
+     * Sets up the token holder and a stub token service.
+     */
+    @Setup
+    public void setUp() {
+        myVertx = Vertx.vertx();
+        myTokenHolder = TokenHolder.get(myVertx);
+        myTokenHolder.set(TOKEN);
+        myConsumer = new ServiceBinder(myVertx).setAddress(OAuthTokenService.ADDRESS).register(OAuthTokenService.class,
+                new StubTokenService());
+        myTokenProxy = OAuthTokenService.createProxy(myVertx);
+    }
+
+    /**
+     * Tears down the stub token service.
+     *
+     * @throws ExecutionException If Vert.x fails to close
+     * @throws InterruptedException If the benchmark is interrupted while Vert.x closes
+     */
+    @TearDown
+    public void tearDown() throws ExecutionException, InterruptedException {
+        myConsumer.unregister();
+        myVertx.close().toCompletionStage().toCompletableFuture().get();
+    }
+
+    /**
+     * Benchmarks reading the token from the token holder.
+     *
+     * @return The access token
+     */
+    @Benchmark
+    public String getFromHolder() {
+        return myTokenHolder.getToken();
+    }
+
+    /**
+     * Benchmarks a round trip to the token service over the event bus.
+     *
+     * @return The access token
+     * @throws ExecutionException If the token service fails
+     * @throws InterruptedException If the benchmark is interrupted while it waits for the token
+     */
+    @Benchmark
+    public String getFromService() throws ExecutionException, InterruptedException {
+        return myTokenProxy.getBearerToken().toCompletionStage().toCompletableFuture().get();
+    }
+
+    /**
+     * A token service that always returns the same token.
+     */
+    private static final class StubTokenService implements OAuthTokenService {
+
+        @Override
+        public Future<String> getBearerToken() {
+            return Future.succeededFuture(TOKEN);
+        }
+
+        @Override
+        public Future<String> refreshBearerToken(final String aRejectedToken) {
+            return Future.succeededFuture(TOKEN);
+        }
+
+        @Override
+        public Future<Void> close() {
+            return Future.succeededFuture();
+        }
+    }
+}
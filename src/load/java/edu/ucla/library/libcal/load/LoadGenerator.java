@@ -0,0 +1,221 @@
+
+package edu.ucla.library.libcal.load;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Sends requests to the proxy at a fixed rate and measures how long they take.
+ * <p>
+ * The load is open: requests are sent on schedule whether or not earlier ones have been answered, and each request's
+ * latency is measured from when it was scheduled to be sent. A slow proxy therefore can't hold back the load and hide
+ * its own slowness (i.e., there's no coordinated omission).
+ */
+final class LoadGenerator {
+
+    /**
+     * How long to wait for the last requests of a run to be answered, in nanoseconds.
+     */
+    private static final long DRAIN_TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * How often to check whether the last requests of a run have been answered, in nanoseconds.
+     */
+    private static final long DRAIN_INTERVAL = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * The placeholder for an ID in a path.
+     */
+    private static final String ID = "{id}";
+
+    /**
+     * The client that sends requests to the proxy.
+     */
+    private final HttpClient myClient;
+
+    /**
+     * The event loop contexts the requests are sent from, in turn. Requests aren't sent from the load generator's own
+     * thread, since a response could then arrive before its handlers are set.
+     */
+    private final Context[] myContexts;
+
+    /**
+     * The paths to request, in turn; an <code>{id}</code> in a path is replaced by one of {@link #myIdCount} IDs.
+     */
+    private final List<String> myPaths;
+
+    /**
+     * The number of distinct IDs to put in the paths.
+     */
+    private final int myIdCount;
+
+    /**
+     * Creates a new load generator.
+     *
+     * @param aVertx The Vert.x instance the client belongs to
+     * @param aClient The client that sends requests to the proxy
+     * @param aPaths The paths to request, in turn
+     * @param aIdCount The number of distinct IDs to put in the paths
+     */
+    LoadGenerator(final Vertx aVertx, final HttpClient aClient, final List<String> aPaths, final int aIdCount) {
+        myContexts = new Context[Runtime.getRuntime().availableProcessors()];
+
+        // Off a Vert.x thread, each call gets a new context, so the requests are spread across the event loops
+        for (int index = 0; index < myContexts.length; index++) {
+            myContexts[index] = aVertx.getOrCreateContext();
+        }
+
+        myClient = aClient;
+        myPaths = List.copyOf(aPaths);
+        myIdCount = Math.max(1, aIdCount);
+    }
+
+    /**
+     * Sends requests at a fixed rate, first for a warm-up period whose requests aren't measured, and then for a
+     * measured period.
+     *
+     * @param aRate The number of requests to send per second
+     * @param aWarmup The length of the warm-up period, in seconds
+     * @param aDuration The length of the measured period, in seconds
+     * @return The run's results
+     */
+    JsonObject run(final int aRate, final long aWarmup, final long aDuration) {
+        final Recorder recorder = new Recorder(3);
+        final Map<String, LongAdder> statuses = new ConcurrentHashMap<>();
+        final LongAdder errors = new LongAdder();
+        final LongAdder inFlight = new LongAdder();
+        final long interval = TimeUnit.SECONDS.toNanos(1) / aRate;
+        final long start = System.nanoTime();
+        final long measureStart = start + TimeUnit.SECONDS.toNanos(aWarmup);
+        final long end = measureStart + TimeUnit.SECONDS.toNanos(aDuration);
+        long sent = 0;
+
+        for (long index = 0;; index++) {
+            final long scheduled = start + index * interval;
+            final boolean isMeasured = scheduled >= measureStart;
+            final String path = getPath(index);
+            final long wait;
+
+            if (scheduled >= end) {
+                break;
+            }
+
+            wait = scheduled - System.nanoTime();
+
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            if (isMeasured) {
+                sent++;
+            }
+
+            inFlight.increment();
+            myContexts[(int) (index % myContexts.length)].runOnContext(unused -> send(path).onComplete(result -> {
+                if (isMeasured) {
+                    recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduled));
+
+                    if (result.succeeded()) {
+                        statuses.computeIfAbsent(result.result() / 100 + "xx", key -> new LongAdder()).increment();
+                    } else {
+                        errors.increment();
+                    }
+                }
+
+                inFlight.decrement();
+            }));
+        }
+
+        drain(inFlight);
+
+        return getResults(aRate, aDuration, sent, recorder.getIntervalHistogram(), statuses, errors.sum());
+    }
+
+    /**
+     * Sends a GET request to the proxy and reads its response.
+     *
+     * @param aPath The path to request
+     * @return The response's status code
+     */
+    private Future<Integer> send(final String aPath) {
+        return myClient.request(HttpMethod.GET, aPath).compose(HttpClientRequest::send)
+                .compose(response -> response.body().map(body -> response.statusCode()));
+    }
+
+    /**
+     * Gets the path of a request.
+     *
+     * @param aIndex The request's index
+     * @return The path of the request
+     */
+    private String getPath(final long aIndex) {
+        final String path = myPaths.get((int) (aIndex % myPaths.size()));
+        return path.contains(ID) ? path.replace(ID, Long.toString(aIndex % myIdCount + 1)) : path;
+    }
+
+    /**
+     * Waits for the requests that are in flight to be answered, or for the drain timeout.
+     *
+     * @param aInFlight The number of requests in flight
+     */
+    private static void drain(final LongAdder aInFlight) {
+        final long deadline = System.nanoTime() + DRAIN_TIMEOUT;
+
+        while (aInFlight.sum() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(DRAIN_INTERVAL);
+        }
+    }
+
+    /**
+     * Gets a run's results.
+     *
+     * @param aRate The number of requests that were scheduled per second
+     * @param aDuration The length of the measured period, in seconds
+     * @param aSent The number of measured requests that were sent
+     * @param aLatencies The measured requests' latencies, in microseconds
+     * @param aStatuses The number of responses in each status class
+     * @param aErrors The number of requests that failed without a response
+     * @return The run's results
+     */
+    private static JsonObject getResults(final int aRate, final long aDuration, final long aSent,
+            final Histogram aLatencies, final Map<String, LongAdder> aStatuses, final long aErrors) {
+        final JsonObject statuses = new JsonObject();
+
+        new TreeMap<>(aStatuses).forEach((statusClass, count) -> statuses.put(statusClass, count.sum()));
+
+        return new JsonObject().put(LoadTest.RATE, aRate).put(LoadTest.SENT, aSent)
+                .put(LoadTest.COMPLETED, aLatencies.getTotalCount())
+                .put(LoadTest.THROUGHPUT, (double) aLatencies.getTotalCount() / aDuration)
+                .put(LoadTest.P50, toMillis(aLatencies.getValueAtPercentile(50)))
+                .put(LoadTest.P99, toMillis(aLatencies.getValueAtPercentile(99)))
+                .put(LoadTest.P999, toMillis(aLatencies.getValueAtPercentile(99.9)))
+                .put(LoadTest.MAX, toMillis(aLatencies.getMaxValue())).put(LoadTest.STATUSES, statuses)
+                .put(LoadTest.ERRORS, aErrors);
+    }
+
+    /**
+     * Converts a latency in microseconds to milliseconds.
+     *
+     * @param aMicros A latency in microseconds
+     * @return The latency in milliseconds
+     */
+    private static double toMillis(final long aMicros) {
+        return aMicros / 1000d;
+    }
+}
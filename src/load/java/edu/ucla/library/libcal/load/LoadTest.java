@@ -0,0 +1,349 @@
+
+package edu.ucla.library.libcal.load;
+
+import static info.freelibrary.util.Constants.COMMA;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.StubLibCal;
+import edu.ucla.library.libcal.verticles.MainVerticle;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A load test of the proxy that runs entirely on this machine. It starts a {@link StubLibCal} (the tests' stand-in for
+ * LibCal, set to answer after a latency with a payload of a set size), starts the proxy (i.e., {@link MainVerticle})
+ * pointed at it, and then drives the proxy at each of a series of fixed request rates, reporting the latency
+ * percentiles, throughput, and errors of each.
+ * <p>
+ * Options are passed as <code>name=value</code> arguments. Lower-case names are the load test's own options (see the
+ * README); upper-case names are proxy configuration (e.g. <code>LIBCAL_CACHE_MAX_SIZE=33554432</code>) that's passed
+ * through to the proxy. The proxy's response cache is off unless it's configured, so that responses aren't served
+ * from it.
+ */
+public final class LoadTest {
+
+    /**
+     * The result property for the scheduled request rate.
+     */
+    static final String RATE = "rate";
+
+    /**
+     * The result property for the number of measured requests that were sent.
+     */
+    static final String SENT = "sent";
+
+    /**
+     * The result property for the number of measured requests that were answered or failed.
+     */
+    static final String COMPLETED = "completed";
+
+    /**
+     * The result property for the number of measured requests that were completed per second.
+     */
+    static final String THROUGHPUT = "throughput";
+
+    /**
+     * The result property for the median latency, in milliseconds.
+     */
+    static final String P50 = "p50";
+
+    /**
+     * The result property for the 99th percentile latency, in milliseconds.
+     */
+    static final String P99 = "p99";
+
+    /**
+     * The result property for the 99.9th percentile latency, in milliseconds.
+     */
+    static final String P999 = "p999";
+
+    /**
+     * The result property for the maximum latency, in milliseconds.
+     */
+    static final String MAX = "max";
+
+    /**
+     * The result property for the number of responses in each status class.
+     */
+    static final String STATUSES = "statuses";
+
+    /**
+     * The result property for the number of requests that failed without a response.
+     */
+    static final String ERRORS = "errors";
+
+    /**
+     * The result property for the number of stub LibCal requests per proxied request.
+     */
+    static final String UPSTREAM_RATIO = "upstreamRatio";
+
+    /**
+     * The option for the stub LibCal's latency, in milliseconds.
+     */
+    private static final String LATENCY = "latency";
+
+    /**
+     * The option for the random extra latency, up to which a stub LibCal response may be delayed, in milliseconds.
+     */
+    private static final String JITTER = "jitter";
+
+    /**
+     * The option for the size of a stub LibCal response's payload, in bytes.
+     */
+    private static final String PAYLOAD_SIZE = "payloadSize";
+
+    /**
+     * The option for the share of stub LibCal requests that fail with a 500, from 0 to 1.
+     */
+    private static final String ERROR_RATE = "errorRate";
+
+    /**
+     * The option for the share of stub LibCal requests that are turned away with a 429, from 0 to 1.
+     */
+    private static final String THROTTLE_RATE = "throttleRate";
+
+    /**
+     * The option for the comma-separated request rates to run at, in requests per second.
+     */
+    private static final String RATES = "rates";
+
+    /**
+     * The option for the length of each rate's measured period, in seconds.
+     */
+    private static final String DURATION = "duration";
+
+    /**
+     * The option for the length of each rate's warm-up period, in seconds.
+     */
+    private static final String WARMUP = "warmup";
+
+    /**
+     * The option for the number of connections to the proxy.
+     */
+    private static final String CONNECTIONS = "connections";
+
+    /**
+     * The option for the comma-separated paths to request.
+     */
+    private static final String PATHS = "paths";
+
+    /**
+     * The option for the number of distinct IDs to put in the paths.
+     */
+    private static final String IDS = "ids";
+
+    /**
+     * The option for the file the results are written to.
+     */
+    private static final String OUTPUT = "output";
+
+    /**
+     * The default options.
+     */
+    private static final JsonObject DEFAULTS = new JsonObject().put(RATES, "100,500,1000").put(DURATION, 30L)
+            .put(WARMUP, 5L).put(CONNECTIONS, 128).put(PATHS, "/api/1.1/events/{id}").put(IDS, 100)
+            .put(OUTPUT, "target/load-test-results.json").put(LATENCY, 20L).put(JITTER, 10L).put(PAYLOAD_SIZE, 4096)
+            .put(ERROR_RATE, 0d).put(THROTTLE_RATE, 0d);
+
+    /**
+     * The name of a proxy configuration option.
+     */
+    private static final Pattern PROXY_OPTION = Pattern.compile("[A-Z][A-Z0-9_]*");
+
+    /**
+     * The localhost address.
+     */
+    private static final String LOCALHOST = StubLibCal.HOST;
+
+    /**
+     * The secret of the stub LibCal's clients, which accepts any secret.
+     */
+    private static final String CLIENT_SECRET = "load-test";
+
+    /**
+     * The format of a row in the results table.
+     */
+    private static final String ROW = "%8s %10s %10s %10s %10s %10s %10s %8s %9s  %s%n";
+
+    /**
+     * Creates a new load test.
+     */
+    private LoadTest() {
+        // This is intentionally left empty
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @param aArgs The load test's <code>name=value</code> options
+     * @throws ExecutionException If the stub, the proxy, or the client fail to start or stop
+     * @throws InterruptedException If the load test is interrupted
+     * @throws IOException If a free port can't be found, or the results can't be written
+     */
+    @SuppressWarnings("checkstyle:UncommentedMain")
+    public static void main(final String[] aArgs) throws ExecutionException, InterruptedException, IOException {
+        final JsonObject options = DEFAULTS.copy();
+        final JsonObject proxyConfig = new JsonObject().put(Config.CACHE_MAX_SIZE, 0);
+        final JsonArray results = new JsonArray();
+        final int stubPort = getFreePort();
+        final int proxyPort = getFreePort();
+        final Vertx stubVertx = Vertx.vertx();
+        final Vertx proxyVertx = Vertx.vertx();
+        final Vertx clientVertx = Vertx.vertx();
+
+        for (final String arg : aArgs) {
+            final int equals = arg.indexOf('=');
+
+            if (equals > 0) {
+                final String name = arg.substring(0, equals);
+                final Object value = toValue(arg.substring(equals + 1));
+
+                (PROXY_OPTION.matcher(name).matches() ? proxyConfig : options).put(name, value);
+            }
+        }
+
+        try {
+            final StubLibCal stub =
+                    await(StubLibCal.start(stubVertx, stubPort, Runtime.getRuntime().availableProcessors()));
+            final HttpClient client;
+            final LoadGenerator generator;
+
+            stub.setRecordingCalls(false).setPayloadSize(options.getInteger(PAYLOAD_SIZE))
+                    .setLatency(options.getLong(LATENCY), options.getLong(JITTER))
+                    .setErrorRate(options.getDouble(ERROR_RATE)).setThrottleRate(options.getDouble(THROTTLE_RATE));
+            proxyConfig.mergeIn(stub.getConfig()).put(Config.HTTP_PORT, proxyPort).put(Config.OAUTH_CLIENT1_ID, "1")
+                    .put(Config.OAUTH_CLIENT1_SECRET, CLIENT_SECRET).put(Config.OAUTH_CLIENT2_ID, "2")
+                    .put(Config.OAUTH_CLIENT2_SECRET, CLIENT_SECRET).put(Config.ALLOWED_IPS, "127.0.0.0/8");
+
+            await(proxyVertx.deployVerticle(MainVerticle.class, new DeploymentOptions().setConfig(proxyConfig)));
+
+            client = clientVertx.createHttpClient(
+                    new HttpClientOptions().setDefaultHost(LOCALHOST).setDefaultPort(proxyPort).setKeepAlive(true)
+                            .setMaxPoolSize(options.getInteger(CONNECTIONS)).setMaxWaitQueueSize(-1));
+            generator = new LoadGenerator(clientVertx, client, Arrays.asList(options.getString(PATHS).split(COMMA)),
+                    options.getInteger(IDS));
+
+            System.out.printf(ROW, RATE, THROUGHPUT, SENT, COMPLETED, P50, P99, P999, ERRORS, UPSTREAM_RATIO, STATUSES);
+
+            for (final String rate : String.valueOf(options.getValue(RATES)).split(COMMA)) {
+                final long upstreamStart = stub.getCallCount();
+                final long warmup = options.getLong(WARMUP);
+                final JsonObject result =
+                        generator.run(Integer.parseInt(rate.trim()), warmup, options.getLong(DURATION));
+
+                // The stub also counts the warm-up's requests, so the ratio is relative to all that were scheduled
+                result.put(UPSTREAM_RATIO, (double) (stub.getCallCount() - upstreamStart) /
+                        (result.getLong(RATE) * (warmup + options.getLong(DURATION))));
+                results.add(result);
+
+                System.out.printf(ROW, result.getInteger(RATE), format(result.getDouble(THROUGHPUT)),
+                        result.getLong(SENT), result.getLong(COMPLETED), format(result.getDouble(P50)),
+                        format(result.getDouble(P99)), format(result.getDouble(P999)), result.getLong(ERRORS),
+                        format(result.getDouble(UPSTREAM_RATIO)), result.getJsonObject(STATUSES).encode());
+            }
+
+            writeResults(Path.of(options.getString(OUTPUT)), options, proxyConfig, results);
+        } finally {
+            await(clientVertx.close());
+            await(proxyVertx.close());
+            await(stubVertx.close());
+        }
+    }
+
+    /**
+     * Writes the load test's options and results to a JSON file.
+     *
+     * @param aPath The file the results are written to
+     * @param aOptions The load test's options
+     * @param aProxyConfig The proxy's configuration
+     * @param aResults The results of each rate's run
+     * @throws IOException If the results can't be written
+     */
+    private static void writeResults(final Path aPath, final JsonObject aOptions, final JsonObject aProxyConfig,
+            final JsonArray aResults) throws IOException {
+        final JsonObject proxyConfig = aProxyConfig.copy();
+
+        proxyConfig.fieldNames().removeIf(name -> name.endsWith("_SECRET"));
+
+        if (aPath.getParent() != null) {
+            Files.createDirectories(aPath.getParent());
+        }
+
+        Files.writeString(aPath, new JsonObject().put("options", aOptions).put("proxy", proxyConfig)
+                .put("results", aResults).encodePrettily(), StandardCharsets.UTF_8);
+        System.out.println("Results written to " + aPath.toAbsolutePath());
+    }
+
+    /**
+     * Waits for a Future to complete.
+     *
+     * @param <T> The type of the Future's result
+     * @param aFuture A Future
+     * @return The Future's result
+     * @throws ExecutionException If the Future fails
+     * @throws InterruptedException If the wait is interrupted
+     */
+    private static <T> T await(final Future<T> aFuture) throws ExecutionException, InterruptedException {
+        return aFuture.toCompletionStage().toCompletableFuture().get();
+    }
+
+    /**
+     * Gets a port that's free on this machine.
+     *
+     * @return A free port
+     * @throws IOException If a free port can't be found
+     */
+    private static int getFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Converts an option's value to a number or boolean, if it looks like one.
+     *
+     * @param aValue An option's value
+     * @return The option's converted value
+     */
+    private static Object toValue(final String aValue) {
+        if ("true".equalsIgnoreCase(aValue) || "false".equalsIgnoreCase(aValue)) {
+            return Boolean.valueOf(aValue);
+        }
+
+        try {
+            return Long.valueOf(aValue);
+        } catch (final NumberFormatException notLong) {
+            try {
+                return Double.valueOf(aValue);
+            } catch (final NumberFormatException notDouble) {
+                return aValue;
+            }
+        }
+    }
+
+    /**
+     * Formats a number for the results table.
+     *
+     * @param aNumber A number
+     * @return The formatted number
+     */
+    private static String format(final double aNumber) {
+        return String.format(Locale.ROOT, "%.2f", aNumber);
+    }
+}
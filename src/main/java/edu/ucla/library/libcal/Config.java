@@ -20,6 +20,27 @@ public final class Config {
      */
     public static final String HTTP_HOST = "HTTP_HOST";
 
+    /**
+     * The optional configuration property for the number of HTTP verticle instances, each of which serves requests on
+     * its own event loop; it defaults to the number of available processors.
+     */
+    public static final String HTTP_INSTANCES = "HTTP_INSTANCES";
+
+    /**
+     * The optional configuration property for whether responses are compressed for clients that accept it.
+     */
+    public static final String HTTP_COMPRESSION = "HTTP_COMPRESSION";
+
+    /**
+     * The optional configuration property for the gzip and deflate compression level, from one to nine.
+     */
+    public static final String HTTP_COMPRESSION_LEVEL = "HTTP_COMPRESSION_LEVEL";
+
+    /**
+     * The optional configuration property for the number of bytes a response body must have to be compressed.
+     */
+    public static final String HTTP_COMPRESSION_MIN_SIZE = "HTTP_COMPRESSION_MIN_SIZE";
+
     /**
      * The configuration property for the first LibCal client's ID credential.
      */
@@ -70,6 +91,264 @@ public final class Config {
      */
     public static final String ALLOWED_IPS = "LIBCAL_ALLOWED_IPS";
 
+    /**
+     * The optional configuration property for the route policy table, as a comma-separated list of
+     * <code>METHOD /path/{param}=flag:flag</code> routes; it replaces the default table of open event endpoints.
+     */
+    public static final String ROUTE_POLICIES = "LIBCAL_ROUTE_POLICIES";
+
+    /**
+     * The optional configuration property for whether LibCal responses are streamed to clients as they arrive, rather
+     * than buffered in full first.
+     */
+    public static final String STREAM_RESPONSES = "LIBCAL_STREAM_RESPONSES";
+
+    /**
+     * The optional configuration property for the maximum size, in bytes, of a request body that will be passed on to
+     * LibCal.
+     */
+    public static final String MAX_BODY_SIZE = "LIBCAL_MAX_BODY_SIZE";
+
+    /**
+     * The optional configuration property for whether LibCal is asked for compressed responses, which are passed
+     * through to the clients that accept them rather than decompressed and compressed again.
+     */
+    public static final String COMPRESSION_PASSTHROUGH = "LIBCAL_COMPRESSION_PASSTHROUGH";
+
+    /**
+     * The optional configuration property for the maximum size, in bytes, of the response cache; zero turns caching
+     * off.
+     */
+    public static final String CACHE_MAX_SIZE = "LIBCAL_CACHE_MAX_SIZE";
+
+    /**
+     * The optional configuration property for the default number of seconds that LibCal GET responses are cached.
+     */
+    public static final String CACHE_TTL = "LIBCAL_CACHE_TTL";
+
+    /**
+     * The optional configuration property for endpoint-specific cache TTLs, as a comma-separated list of
+     * <code>/path/prefix=seconds</code> pairs.
+     */
+    public static final String CACHE_ENDPOINT_TTLS = "LIBCAL_CACHE_ENDPOINT_TTLS";
+
+    /**
+     * The optional configuration property for the number of seconds past its TTL that a cached response is kept, to be
+     * served in place of a LibCal failure; zero means it's dropped at its TTL.
+     */
+    public static final String CACHE_STALE_IF_ERROR = "LIBCAL_CACHE_STALE_IF_ERROR";
+
+    /**
+     * The optional configuration property for the number of seconds past its TTL that a cached response is still served
+     * while it's refreshed in the background; zero means clients wait for LibCal once the TTL passes.
+     */
+    public static final String CACHE_STALE_WHILE_REVALIDATE = "LIBCAL_CACHE_STALE_WHILE_REVALIDATE";
+
+    /**
+     * The optional configuration property for the GET queries that are fetched into the response cache on startup and
+     * kept fresh, as a whitespace-separated list of <code>/path?query</code> strings.
+     */
+    public static final String WARMUP_QUERIES = "LIBCAL_WARMUP_QUERIES";
+
+    /**
+     * The optional configuration property for the number of the most requested GET queries that are kept fresh in the
+     * response cache, along with the configured ones; zero, the default, turns this off.
+     */
+    public static final String WARMUP_TOP_N = "LIBCAL_WARMUP_TOP_N";
+
+    /**
+     * The optional configuration property for the number of seconds between checks for warm-up queries that are about
+     * to expire from the response cache.
+     */
+    public static final String WARMUP_INTERVAL = "LIBCAL_WARMUP_INTERVAL";
+
+    /**
+     * The optional configuration property for the number of seconds the proxy waits for the startup warm-up before it
+     * reports itself ready anyway.
+     */
+    public static final String WARMUP_DEADLINE = "LIBCAL_WARMUP_DEADLINE";
+
+    /**
+     * The optional configuration property for whether every configured LibCal client holds its own live token, with
+     * requests spread across them, instead of the clients taking turns at holding a single token.
+     */
+    public static final String TOKEN_POOL = "LIBCAL_TOKEN_POOL";
+
+    /**
+     * The optional configuration property for how a pooled token is chosen for a request: "round-robin" or
+     * "least-loaded".
+     */
+    public static final String TOKEN_POOL_STRATEGY = "LIBCAL_TOKEN_POOL_STRATEGY";
+
+    /**
+     * The optional configuration property for the number of seconds a pooled client is passed over after LibCal rejects
+     * or rate-limits it.
+     */
+    public static final String TOKEN_POOL_COOLDOWN = "LIBCAL_TOKEN_POOL_COOLDOWN";
+
+    /**
+     * The optional configuration property for the number of requests per second each LibCal client may send; zero, the
+     * default, leaves the pace to LibCal's rate-limit headers alone.
+     */
+    public static final String RATE_LIMIT = "LIBCAL_RATE_LIMIT";
+
+    /**
+     * The optional configuration property for the number of requests a LibCal client may send at once.
+     */
+    public static final String RATE_LIMIT_BURST = "LIBCAL_RATE_LIMIT_BURST";
+
+    /**
+     * The optional configuration property for the maximum number of requests that may wait for a rate-limited LibCal
+     * client before more are turned away.
+     */
+    public static final String RATE_LIMIT_QUEUE = "LIBCAL_RATE_LIMIT_QUEUE";
+
+    /**
+     * The optional configuration property for the maximum number of milliseconds a request waits for a rate-limited
+     * LibCal client before it's turned away.
+     */
+    public static final String RATE_LIMIT_MAX_WAIT = "LIBCAL_RATE_LIMIT_MAX_WAIT";
+
+    /**
+     * The optional configuration property for the maximum number of HTTP/1.1 connections to LibCal.
+     */
+    public static final String HTTP_MAX_POOL_SIZE = "LIBCAL_HTTP_MAX_POOL_SIZE";
+
+    /**
+     * The optional configuration property for the maximum number of requests that may wait for a connection to LibCal
+     * before more are turned away; -1 means there's no limit.
+     */
+    public static final String HTTP_MAX_WAIT_QUEUE_SIZE = "LIBCAL_HTTP_MAX_WAIT_QUEUE_SIZE";
+
+    /**
+     * The optional configuration property for the number of seconds an unused connection to LibCal is kept alive.
+     */
+    public static final String HTTP_KEEP_ALIVE_TIMEOUT = "LIBCAL_HTTP_KEEP_ALIVE_TIMEOUT";
+
+    /**
+     * The optional configuration property for the number of seconds a connection to LibCal may go without any data
+     * before it's closed; zero means there's no limit.
+     */
+    public static final String HTTP_IDLE_TIMEOUT = "LIBCAL_HTTP_IDLE_TIMEOUT";
+
+    /**
+     * The optional configuration property for whether HTTP/2 is offered to LibCal (through ALPN, for HTTPS).
+     */
+    public static final String HTTP2 = "LIBCAL_HTTP2";
+
+    /**
+     * The optional configuration property for whether HTTP/1.1 requests to LibCal are pipelined.
+     */
+    public static final String HTTP_PIPELINING = "LIBCAL_HTTP_PIPELINING";
+
+    /**
+     * The optional configuration property for the number of milliseconds a connection to LibCal may take to open.
+     */
+    public static final String HTTP_CONNECT_TIMEOUT = "LIBCAL_HTTP_CONNECT_TIMEOUT";
+
+    /**
+     * The optional configuration property for the default number of milliseconds LibCal may go without sending anything
+     * in answer to a call; zero means there's no limit.
+     */
+    public static final String REQUEST_IDLE_TIMEOUT = "LIBCAL_REQUEST_IDLE_TIMEOUT";
+
+    /**
+     * The optional configuration property for the default number of milliseconds a call to LibCal may take; zero means
+     * there's no limit.
+     */
+    public static final String REQUEST_TIMEOUT = "LIBCAL_REQUEST_TIMEOUT";
+
+    /**
+     * The optional configuration property for route class timeouts, as a comma-separated list of
+     * <code>/path/prefix=idle:total</code> millisecond timeouts.
+     */
+    public static final String ROUTE_TIMEOUTS = "LIBCAL_ROUTE_TIMEOUTS";
+
+    /**
+     * The optional configuration property for whether slow GET calls to LibCal are hedged with a second call.
+     */
+    public static final String HEDGE_REQUESTS = "LIBCAL_HEDGE_REQUESTS";
+
+    /**
+     * The optional configuration property for the percentage of GET calls to LibCal that may be hedged.
+     */
+    public static final String HEDGE_BUDGET = "LIBCAL_HEDGE_BUDGET";
+
+    /**
+     * The optional configuration property for the minimum number of milliseconds to wait before hedging a GET call to
+     * LibCal.
+     */
+    public static final String HEDGE_MIN_DELAY = "LIBCAL_HEDGE_MIN_DELAY";
+
+    /**
+     * The optional configuration property for the number of milliseconds that single-ID GETs are held to be batched
+     * into one LibCal call; zero turns batching off.
+     */
+    public static final String BATCH_WINDOW = "LIBCAL_BATCH_WINDOW";
+
+    /**
+     * The optional configuration property for the most IDs in one batched LibCal call.
+     */
+    public static final String BATCH_MAX_IDS = "LIBCAL_BATCH_MAX_IDS";
+
+    /**
+     * The optional configuration property for the endpoints whose single-ID GETs are batched, as a comma-separated list
+     * of <code>/path/prefix=idField</code> pairs.
+     */
+    public static final String BATCH_ENDPOINTS = "LIBCAL_BATCH_ENDPOINTS";
+
+    /**
+     * The optional configuration property for the most requests in one call to the <code>/batch</code> operation.
+     */
+    public static final String BATCH_MAX_REQUESTS = "LIBCAL_BATCH_MAX_REQUESTS";
+
+    /**
+     * The optional configuration property for the most requests of one call to the <code>/batch</code> operation that
+     * are in flight at once.
+     */
+    public static final String BATCH_PARALLELISM = "LIBCAL_BATCH_PARALLELISM";
+
+    /**
+     * The optional configuration property for the name of the query parameter that projects a JSON response onto a
+     * client's chosen fields; it's left out of the query that's sent to LibCal.
+     */
+    public static final String FIELDS_PARAM = "LIBCAL_FIELDS_PARAM";
+
+    /**
+     * The optional configuration property for the percentage of recent LibCal calls that must fail for the circuit
+     * breaker to open; zero turns the circuit breaker off.
+     */
+    public static final String BREAKER_FAILURE_RATE = "LIBCAL_BREAKER_FAILURE_RATE";
+
+    /**
+     * The optional configuration property for the number of recent LibCal calls the circuit breaker's failure rate is
+     * taken over.
+     */
+    public static final String BREAKER_WINDOW = "LIBCAL_BREAKER_WINDOW";
+
+    /**
+     * The optional configuration property for the number of milliseconds after which a LibCal call counts as failed;
+     * zero means slow calls don't count.
+     */
+    public static final String BREAKER_SLOW_CALL = "LIBCAL_BREAKER_SLOW_CALL";
+
+    /**
+     * The optional configuration property for the number of seconds the circuit breaker stays open before it lets probe
+     * calls through.
+     */
+    public static final String BREAKER_OPEN_TIME = "LIBCAL_BREAKER_OPEN_TIME";
+
+    /**
+     * The optional configuration property for the number of probe calls that must succeed for the circuit breaker to
+     * close.
+     */
+    public static final String BREAKER_PROBES = "LIBCAL_BREAKER_PROBES";
+
+    /**
+     * The prefix of the numbered LibCal client configuration properties.
+     */
+    private static final String CLIENT_PREFIX = "LIBCAL_CLIENT";
+
     /**
      * Constant classes should have private constructors.
      */
@@ -77,6 +356,27 @@ public final class Config {
         // This is intentionally left empty
     }
 
+    /**
+     * Gets the configuration property for a LibCal client's ID. Clients are numbered from one, and any number of them
+     * can be configured; see {@link #OAUTH_CLIENT1_ID} and {@link #OAUTH_CLIENT2_ID}.
+     *
+     * @param aClientNumber A client's number
+     * @return The configuration property for the client's ID
+     */
+    public static String getClientIdKey(final int aClientNumber) {
+        return CLIENT_PREFIX + aClientNumber + "_ID";
+    }
+
+    /**
+     * Gets the configuration property for a LibCal client's secret.
+     *
+     * @param aClientNumber A client's number
+     * @return The configuration property for the client's secret
+     */
+    public static String getClientSecretKey(final int aClientNumber) {
+        return CLIENT_PREFIX + aClientNumber + "_SECRET";
+    }
+
     /**
      * A configuration processor that removes empty strings.
      *
@@ -27,6 +27,11 @@ public final class Constants {
      */
     public static final String OK = "OK";
 
+    /**
+     * The status of an application that's warming its response cache and isn't ready for traffic yet.
+     */
+    public static final String WARMING_UP = "Warming up";
+
     /**
      * A constant for the break tag.
      */
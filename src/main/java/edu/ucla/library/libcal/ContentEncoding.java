@@ -0,0 +1,148 @@
+
+package edu.ucla.library.libcal;
+
+import static info.freelibrary.util.Constants.COMMA;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+
+/**
+ * Utilities for the content codings of response bodies, so that a compressed LibCal body can be passed through to
+ * clients that accept it and decoded for those that don't.
+ */
+public final class ContentEncoding {
+
+    /**
+     * The gzip content coding.
+     */
+    public static final String GZIP = "gzip";
+
+    /**
+     * The deflate content coding.
+     */
+    public static final String DEFLATE = "deflate";
+
+    /**
+     * The wildcard that stands for any content coding in an Accept-Encoding header.
+     */
+    private static final String ANY = "*";
+
+    /**
+     * The separator between a content coding and its parameters in an Accept-Encoding header.
+     */
+    private static final char SEMICOLON = ';';
+
+    /**
+     * The quality parameter of a content coding in an Accept-Encoding header.
+     */
+    private static final String QUALITY = "q=";
+
+    /**
+     * Utility classes should have private constructors.
+     */
+    private ContentEncoding() {
+        // This is intentionally left empty
+    }
+
+    /**
+     * Checks whether an Accept-Encoding header accepts a content coding.
+     *
+     * @param aAcceptEncoding A (possibly null) Accept-Encoding header value
+     * @param aCoding A content coding
+     * @return True if the content coding is acceptable; else, false
+     */
+    public static boolean accepts(final String aAcceptEncoding, final String aCoding) {
+        boolean accepted = false;
+
+        if (aAcceptEncoding == null) {
+            return false;
+        }
+
+        for (final String value : aAcceptEncoding.split(COMMA)) {
+            final int index = value.indexOf(SEMICOLON);
+            final String coding = (index < 0 ? value : value.substring(0, index)).trim();
+
+            if (coding.equalsIgnoreCase(aCoding)) {
+                // An explicit entry for the coding overrides the wildcard
+                return index < 0 || !isZeroQuality(value.substring(index + 1));
+            }
+
+            if (ANY.equals(coding)) {
+                accepted = index < 0 || !isZeroQuality(value.substring(index + 1));
+            }
+        }
+
+        return accepted;
+    }
+
+    /**
+     * Gets the content coding of a response body.
+     *
+     * @param aHeaders A response's headers
+     * @return The body's content coding, in lower case, or null if it isn't encoded
+     */
+    public static String getCoding(final MultiMap aHeaders) {
+        final String coding = aHeaders.get(HttpHeaders.CONTENT_ENCODING);
+
+        if (coding == null || coding.isBlank() || HttpHeaders.IDENTITY.toString().equalsIgnoreCase(coding.trim())) {
+            return null;
+        }
+
+        return coding.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Checks whether a body in a content coding can be decoded.
+     *
+     * @param aCoding A content coding
+     * @return True if the content coding can be decoded; else, false
+     */
+    public static boolean canDecode(final String aCoding) {
+        return GZIP.equals(aCoding) || DEFLATE.equals(aCoding);
+    }
+
+    /**
+     * Decodes a gzip or deflate encoded body.
+     *
+     * @param aBody An encoded body
+     * @param aCoding The body's content coding
+     * @return The decoded body
+     * @throws IOException If the body can't be decoded
+     */
+    public static Buffer decode(final Buffer aBody, final String aCoding) throws IOException {
+        final InputStream bytes = new ByteArrayInputStream(aBody.getBytes());
+
+        try (InputStream decoder = GZIP.equals(aCoding) ? new GZIPInputStream(bytes) : new InflaterInputStream(bytes)) {
+            return Buffer.buffer(decoder.readAllBytes());
+        }
+    }
+
+    /**
+     * Checks whether the parameters of an Accept-Encoding entry give it a quality of zero, which means "not
+     * acceptable".
+     *
+     * @param aParameters The parameters of an Accept-Encoding entry
+     * @return True if the entry's quality is zero; else, false
+     */
+    private static boolean isZeroQuality(final String aParameters) {
+        final String parameters = aParameters.trim().toLowerCase(Locale.ROOT);
+
+        if (!parameters.startsWith(QUALITY)) {
+            return false;
+        }
+
+        try {
+            return Double.parseDouble(parameters.substring(QUALITY.length()).trim()) == 0;
+        } catch (final NumberFormatException details) {
+            return false;
+        }
+    }
+}
@@ -16,8 +16,10 @@ import java.util.List;
 
 /**
  * A class that implements the {@link HttpResponse} interface.
+ *
+ * @param <T> The type of the response body (either a {@link String} or a {@link Buffer})
  */
-public class HttpResponseImpl implements HttpResponse<String> {
+public class HttpResponseImpl<T> implements HttpResponse<T> {
 
     /**
      * The class's logger.
@@ -57,7 +59,7 @@ public class HttpResponseImpl implements HttpResponse<String> {
     /**
      * The body of an HTTP response.
      */
-    private final String myBody;
+    private final T myBody;
 
     /**
      * The followed redirects of an HTTP response.
@@ -77,7 +79,7 @@ public class HttpResponseImpl implements HttpResponse<String> {
      * @param aRedirects A set of followed redirects of an HTTP response
      */
     public HttpResponseImpl(final HttpVersion aVersion, final int aStatusCode, final String aStatusMessage,
-            final MultiMap aHeaders, final MultiMap aTrailers, final List<String> aCookies, final String aBody,
+            final MultiMap aHeaders, final MultiMap aTrailers, final List<String> aCookies, final T aBody,
             final List<String> aRedirects) {
         myVersion = aVersion;
         myStatusCode = aStatusCode;
@@ -130,13 +132,17 @@ public class HttpResponseImpl implements HttpResponse<String> {
     }
 
     @Override
-    public String body() {
+    public T body() {
         return myBody;
     }
 
     @Override
     public Buffer bodyAsBuffer() {
-        return Buffer.buffer(myBody);
+        if (myBody == null || myBody instanceof Buffer) {
+            return (Buffer) myBody;
+        }
+
+        return Buffer.buffer(myBody.toString());
     }
 
     @Override
@@ -146,7 +152,7 @@ public class HttpResponseImpl implements HttpResponse<String> {
 
     @Override
     public JsonArray bodyAsJsonArray() {
-        final Object value = Json.decodeValue(myBody);
+        final Object value = Json.decodeValue(bodyAsBuffer());
         if (value instanceof JsonArray) {
             return (JsonArray) value;
         } else {
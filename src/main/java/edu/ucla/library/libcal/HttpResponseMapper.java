@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.Map;
 
 import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpVersion;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
@@ -81,7 +82,7 @@ public class HttpResponseMapper {
      */
     @SuppressWarnings("unchecked")
     public HttpResponse<String> decode(final JsonObject aJsonObject) {
-        return new HttpResponseImpl( //
+        return new HttpResponseImpl<>( //
                 HttpVersion.valueOf(aJsonObject.getString(HTTP_VERSION)), //
                 aJsonObject.getInteger(STATUS_CODE).intValue(), //
                 aJsonObject.getString(STATUS_MESSAGE), //
@@ -92,6 +93,27 @@ public class HttpResponseMapper {
                 (List<String>) aJsonObject.getJsonArray(FOLLOWED_REDIRECTS).getList());
     }
 
+    /**
+     * Represents a {@link JsonObject} as an {@link HttpResponse} with a {@link Buffer} body.
+     *
+     * @param aJsonObject The JSON object
+     * @return The HttpResponse representation
+     */
+    @SuppressWarnings("unchecked")
+    public HttpResponse<Buffer> decodeAsBuffer(final JsonObject aJsonObject) {
+        final String body = aJsonObject.getString(BODY);
+
+        return new HttpResponseImpl<>( //
+                HttpVersion.valueOf(aJsonObject.getString(HTTP_VERSION)), //
+                aJsonObject.getInteger(STATUS_CODE).intValue(), //
+                aJsonObject.getString(STATUS_MESSAGE), //
+                multiMapfromJsonArray(aJsonObject.getJsonArray(HEADERS)), //
+                multiMapfromJsonArray(aJsonObject.getJsonArray(TRAILERS)), //
+                (List<String>) aJsonObject.getJsonArray(COOKIES).getList(), //
+                body != null ? Buffer.buffer(body) : null, //
+                (List<String>) aJsonObject.getJsonArray(FOLLOWED_REDIRECTS).getList());
+    }
+
     /**
      * Represents a {@link MultiMap} as a {@link JsonArray}.
      *
@@ -26,6 +26,76 @@ public final class JsonKeys {
      */
     public static final String EXPIRES_IN = "expires_in";
 
+    /**
+     * An upstream connection pool statistics key.
+     */
+    public static final String UPSTREAM = "upstream";
+
+    /**
+     * An HTTP protocol key.
+     */
+    public static final String PROTOCOL = "protocol";
+
+    /**
+     * A maximum connection pool size key.
+     */
+    public static final String MAX_POOL_SIZE = "maxPoolSize";
+
+    /**
+     * A maximum connection wait queue size key.
+     */
+    public static final String MAX_WAIT_QUEUE_SIZE = "maxWaitQueueSize";
+
+    /**
+     * An open connections key.
+     */
+    public static final String OPEN_CONNECTIONS = "openConnections";
+
+    /**
+     * An opened connections key.
+     */
+    public static final String CONNECTION_COUNT = "connectionCount";
+
+    /**
+     * A circuit breaker statistics key.
+     */
+    public static final String CIRCUIT = "circuit";
+
+    /**
+     * A circuit state key.
+     */
+    public static final String STATE = "state";
+
+    /**
+     * A windowed call count key.
+     */
+    public static final String CALL_COUNT = "callCount";
+
+    /**
+     * A windowed failure count key.
+     */
+    public static final String FAILURE_COUNT = "failureCount";
+
+    /**
+     * A batch request's HTTP method key.
+     */
+    public static final String METHOD = "method";
+
+    /**
+     * A batch request's path key.
+     */
+    public static final String PATH = "path";
+
+    /**
+     * A batch request's query string key.
+     */
+    public static final String QUERY = "query";
+
+    /**
+     * A batch response's body key.
+     */
+    public static final String BODY = "body";
+
     /**
      * Creates a new JSON keys constants class.
      */
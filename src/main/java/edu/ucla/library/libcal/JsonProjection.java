@@ -0,0 +1,176 @@
+
+package edu.ucla.library.libcal;
+
+import static info.freelibrary.util.Constants.COMMA;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * A projection of JSON response bodies onto a client's chosen fields, so that clients that only show a few fields of
+ * LibCal's large responses don't have to download and parse the rest.
+ * <p>
+ * The fields are a comma-separated list of dot-separated paths, like <code>events.id,events.title</code>; arrays are
+ * looked through, so a path applies to each element of an array it reaches. A selected field is kept whole, and the
+ * fields that aren't selected are left out. The projection is done with a streaming parser, which copies the selected
+ * fields' tokens to the output and skips the rest, so no object tree is built for the response body.
+ */
+public final class JsonProjection {
+
+    /**
+     * The default name of the query parameter that holds a client's chosen fields.
+     */
+    public static final String DEFAULT_PARAM = "fields";
+
+    /**
+     * The factory of the projection's streaming parsers and generators.
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * The separator between the names in a field's path.
+     */
+    private static final Pattern DOT = Pattern.compile("\\.");
+
+    /**
+     * The part of a media type that marks it as JSON.
+     */
+    private static final String JSON = "json";
+
+    /**
+     * The selected fields of the objects at this level of the projection, by name; a null projection keeps the whole
+     * field.
+     */
+    private final Map<String, JsonProjection> myFields = new HashMap<>();
+
+    /**
+     * Creates an empty projection, to which fields are added as the field list is parsed.
+     */
+    private JsonProjection() {
+        // This is intentionally left empty
+    }
+
+    /**
+     * Parses a client's list of fields into a projection.
+     *
+     * @param aFields A comma-separated list of dot-separated field paths
+     * @return The projection onto the fields
+     * @throws IllegalArgumentException If the list is empty or one of its paths has an empty name
+     */
+    public static JsonProjection parse(final String aFields) {
+        final JsonProjection projection = new JsonProjection();
+
+        if (aFields == null || aFields.isBlank()) {
+            throw new IllegalArgumentException(String.valueOf(aFields));
+        }
+
+        for (final String field : aFields.split(COMMA)) {
+            final String[] names = DOT.split(field.trim(), -1);
+            JsonProjection level = projection;
+
+            for (int index = 0; index < names.length; index++) {
+                if (names[index].isEmpty()) {
+                    throw new IllegalArgumentException(aFields);
+                }
+
+                if (index == names.length - 1) {
+                    // A field that's selected whole takes in any of its subfields that are selected too
+                    level.myFields.put(names[index], null);
+                } else if (level.myFields.containsKey(names[index]) && level.myFields.get(names[index]) == null) {
+                    break;
+                } else {
+                    level = level.myFields.computeIfAbsent(names[index], name -> new JsonProjection());
+                }
+            }
+        }
+
+        return projection;
+    }
+
+    /**
+     * Checks whether a response body is JSON, and so can be projected.
+     *
+     * @param aContentType A (possibly null) Content-Type header value
+     * @return True if the body is JSON; else, false
+     */
+    public static boolean isJson(final String aContentType) {
+        return aContentType != null && aContentType.toLowerCase(Locale.ROOT).contains(JSON);
+    }
+
+    /**
+     * Projects a JSON body onto the selected fields.
+     *
+     * @param aJson A JSON body
+     * @return The projected body
+     * @throws IOException If the body isn't valid JSON
+     */
+    public Buffer apply(final Buffer aJson) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(32, aJson.length() / 4));
+
+        try (JsonParser parser = JSON_FACTORY.createParser(aJson.getBytes());
+                JsonGenerator generator = JSON_FACTORY.createGenerator(output)) {
+            while (parser.nextToken() != null) {
+                copy(parser, generator, this);
+            }
+        }
+
+        return Buffer.buffer(output.toByteArray());
+    }
+
+    /**
+     * Copies the selected fields of the value at the parser's current token to the generator, and moves the parser to
+     * the value's last token.
+     *
+     * @param aParser A parser at the first token of a value
+     * @param aGenerator A generator of the projected body
+     * @param aProjection The projection onto the value's selected fields, or null if the whole value is selected
+     * @throws IOException If the body isn't valid JSON
+     */
+    private static void copy(final JsonParser aParser, final JsonGenerator aGenerator, final JsonProjection aProjection)
+            throws IOException {
+        final JsonToken token = aParser.currentToken();
+
+        if (aProjection == null) {
+            aGenerator.copyCurrentStructure(aParser);
+        } else if (token == JsonToken.START_OBJECT) {
+            aGenerator.writeStartObject();
+
+            while (aParser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = aParser.getCurrentName();
+
+                aParser.nextToken();
+
+                if (aProjection.myFields.containsKey(name)) {
+                    aGenerator.writeFieldName(name);
+                    copy(aParser, aGenerator, aProjection.myFields.get(name));
+                } else {
+                    aParser.skipChildren();
+                }
+            }
+
+            aGenerator.writeEndObject();
+        } else if (token == JsonToken.START_ARRAY) {
+            aGenerator.writeStartArray();
+
+            while (aParser.nextToken() != JsonToken.END_ARRAY) {
+                copy(aParser, aGenerator, aProjection);
+            }
+
+            aGenerator.writeEndArray();
+        } else {
+            // A scalar where the client expected an object has no fields to leave out
+            aGenerator.copyCurrentEvent(aParser);
+        }
+    }
+}
@@ -11,6 +11,21 @@ public final class Op {
      */
     public static final String GET_STATUS = "getStatus";
 
+    /**
+     * Defines a metrics operation.
+     */
+    public static final String GET_METRICS = "getMetrics";
+
+    /**
+     * Defines a readiness operation.
+     */
+    public static final String GET_READINESS = "getReadiness";
+
+    /**
+     * Defines a batch operation.
+     */
+    public static final String POST_BATCH = "postBatch";
+
     /**
      * Constant class constructors should be private.
      */
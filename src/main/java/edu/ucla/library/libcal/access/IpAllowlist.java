@@ -0,0 +1,543 @@
+
+package edu.ucla.library.libcal.access;
+
+import static info.freelibrary.util.Constants.COMMA;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.Constants;
+import edu.ucla.library.libcal.MessageCodes;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A precompiled list of the IPv4 and IPv6 networks that are allowed to call the proxy.
+ * <p>
+ * The configured CIDR blocks are compiled once into sorted, merged address ranges so that an IPv4 lookup is a binary
+ * search over primitive ints that doesn't allocate. A new list of networks can be swapped in at any time with
+ * {@link #update(String)}; lookups that are in flight keep using the snapshot they started with.
+ */
+public final class IpAllowlist {
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(IpAllowlist.class, MessageCodes.BUNDLE);
+
+    /**
+     * The separator between an address and its prefix length in CIDR notation.
+     */
+    private static final char SLASH = '/';
+
+    /**
+     * The number of bits in an IPv4 address.
+     */
+    private static final int IPV4_BITS = 32;
+
+    /**
+     * The number of bits in an IPv6 address.
+     */
+    private static final int IPV6_BITS = 128;
+
+    /**
+     * The number of bits in a long.
+     */
+    private static final int LONG_BITS = 64;
+
+    /**
+     * A mask for treating an int as an unsigned value.
+     */
+    private static final long UNSIGNED_INT = 0xFFFF_FFFFL;
+
+    /**
+     * The current compiled snapshot of the allowed networks.
+     */
+    private volatile Networks myNetworks;
+
+    /**
+     * The number of lookups that resulted in an allowed address.
+     */
+    private final LongAdder myAllowedCount = new LongAdder();
+
+    /**
+     * The number of lookups that resulted in a denied address.
+     */
+    private final LongAdder myDeniedCount = new LongAdder();
+
+    /**
+     * Creates an allowlist from a comma-separated list of CIDR blocks.
+     *
+     * @param aCidrList A comma-separated list of IPv4 and/or IPv6 CIDR blocks
+     * @throws IllegalArgumentException If the list contains an invalid CIDR block
+     */
+    public IpAllowlist(final String aCidrList) {
+        myNetworks = compile(aCidrList);
+    }
+
+    /**
+     * Creates an allowlist from the application's configuration.
+     *
+     * @param aConfig An application configuration
+     * @return An allowlist of the configured networks
+     * @throws IllegalArgumentException If the configuration contains an invalid CIDR block
+     */
+    public static IpAllowlist fromConfig(final JsonObject aConfig) {
+        return new IpAllowlist(aConfig.getString(Config.ALLOWED_IPS, Constants.LOCAL_HOST + "/32"));
+    }
+
+    /**
+     * Replaces the allowed networks with a new list. If the new list can't be parsed, the current networks are kept.
+     *
+     * @param aCidrList A comma-separated list of IPv4 and/or IPv6 CIDR blocks
+     * @return True if the allowed networks were replaced; else, false
+     */
+    public boolean update(final String aCidrList) {
+        try {
+            myNetworks = compile(aCidrList);
+            LOGGER.info(MessageCodes.LCP_009, aCidrList);
+            return true;
+        } catch (final IllegalArgumentException details) {
+            LOGGER.error(MessageCodes.LCP_010, details.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether an IP address is allowed, counting the result as an allow or deny hit.
+     *
+     * @param aIpAddress An IPv4 or IPv6 address
+     * @return True if the address is on one of the allowed networks; else, false
+     */
+    public boolean isAllowed(final String aIpAddress) {
+        final boolean allowed = contains(aIpAddress);
+
+        if (allowed) {
+            myAllowedCount.increment();
+        } else {
+            myDeniedCount.increment();
+        }
+
+        return allowed;
+    }
+
+    /**
+     * Checks whether an IP address is on one of the allowed networks without counting the lookup.
+     *
+     * @param aIpAddress An IPv4 or IPv6 address
+     * @return True if the address is on one of the allowed networks; else, false
+     */
+    public boolean contains(final String aIpAddress) {
+        final Networks networks = myNetworks;
+        final long ip4;
+
+        if (aIpAddress == null) {
+            return false;
+        }
+
+        ip4 = parseIp4(aIpAddress, 0, aIpAddress.length());
+
+        if (ip4 >= 0) {
+            return networks.containsIp4((int) ip4);
+        }
+
+        if (aIpAddress.indexOf(':') >= 0) {
+            final long[] ip6 = parseIp6(aIpAddress);
+
+            if (ip6 != null) {
+                // IPv4-mapped IPv6 addresses (::ffff:a.b.c.d) are checked against the IPv4 networks
+                if (ip6[0] == 0 && ip6[1] >>> IPV4_BITS == 0xFFFFL) {
+                    return networks.containsIp4((int) ip6[1]);
+                }
+
+                return networks.containsIp6(ip6[0], ip6[1]);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets the number of lookups that found an allowed address.
+     *
+     * @return The number of allowed hits
+     */
+    public long getAllowedCount() {
+        return myAllowedCount.sum();
+    }
+
+    /**
+     * Gets the number of lookups that found a denied address.
+     *
+     * @return The number of denied hits
+     */
+    public long getDeniedCount() {
+        return myDeniedCount.sum();
+    }
+
+    /**
+     * Compiles a comma-separated list of CIDR blocks into a lookup snapshot.
+     *
+     * @param aCidrList A comma-separated list of IPv4 and/or IPv6 CIDR blocks
+     * @return The compiled networks
+     * @throws IllegalArgumentException If the list contains an invalid CIDR block
+     */
+    private static Networks compile(final String aCidrList) {
+        final List<long[]> ip4Ranges = new ArrayList<>();
+        final List<long[]> ip6Networks = new ArrayList<>();
+
+        if (aCidrList == null) {
+            throw new IllegalArgumentException(LOGGER.getMessage(MessageCodes.LCP_011, aCidrList));
+        }
+
+        for (final String entry : aCidrList.split(COMMA)) {
+            final String cidr = entry.trim();
+
+            if (!cidr.isEmpty()) {
+                final int slash = cidr.indexOf(SLASH);
+                final String address = slash < 0 ? cidr : cidr.substring(0, slash);
+                final long ip4 = parseIp4(address, 0, address.length());
+
+                if (ip4 >= 0) {
+                    final int prefix = parsePrefix(cidr, slash, IPV4_BITS);
+                    final long mask = prefix == 0 ? 0 : UNSIGNED_INT << IPV4_BITS - prefix & UNSIGNED_INT;
+                    final long start = ip4 & mask;
+
+                    ip4Ranges.add(new long[] { start, start | ~mask & UNSIGNED_INT });
+                } else {
+                    final long[] ip6 = address.indexOf(':') >= 0 ? parseIp6(address) : null;
+
+                    if (ip6 == null) {
+                        throw new IllegalArgumentException(LOGGER.getMessage(MessageCodes.LCP_011, cidr));
+                    }
+
+                    final int prefix = parsePrefix(cidr, slash, IPV6_BITS);
+                    final long highMask = mask(prefix);
+                    final long lowMask = mask(prefix - LONG_BITS);
+
+                    ip6Networks.add(new long[] { ip6[0] & highMask, ip6[1] & lowMask, highMask, lowMask });
+                }
+            }
+        }
+
+        return new Networks(ip4Ranges, ip6Networks);
+    }
+
+    /**
+     * Parses the prefix length of a CIDR block, defaulting to a single host address if there isn't one.
+     *
+     * @param aCidr A CIDR block
+     * @param aSlashIndex The index of the slash in the CIDR block, or -1 if there isn't one
+     * @param aMaxBits The number of bits in an address of the block's type
+     * @return The prefix length
+     * @throws IllegalArgumentException If the prefix length isn't valid
+     */
+    private static int parsePrefix(final String aCidr, final int aSlashIndex, final int aMaxBits) {
+        final int prefix;
+
+        if (aSlashIndex < 0) {
+            return aMaxBits;
+        }
+
+        try {
+            prefix = Integer.parseInt(aCidr.substring(aSlashIndex + 1));
+        } catch (final NumberFormatException details) {
+            throw new IllegalArgumentException(LOGGER.getMessage(MessageCodes.LCP_011, aCidr), details);
+        }
+
+        if (prefix < 0 || prefix > aMaxBits) {
+            throw new IllegalArgumentException(LOGGER.getMessage(MessageCodes.LCP_011, aCidr));
+        }
+
+        return prefix;
+    }
+
+    /**
+     * Gets a mask of the supplied number of leading bits in a long.
+     *
+     * @param aBits The number of leading bits to set (values outside 0 to 64 are clamped)
+     * @return The mask
+     */
+    private static long mask(final int aBits) {
+        if (aBits <= 0) {
+            return 0L;
+        }
+
+        return aBits >= LONG_BITS ? -1L : -1L << LONG_BITS - aBits;
+    }
+
+    /**
+     * Parses a dotted-quad IPv4 address without allocating.
+     *
+     * @param aAddress A string containing the address
+     * @param aStart The index at which the address starts
+     * @param aEnd The index at which the address ends (exclusive)
+     * @return The unsigned address in the low 32 bits of a long, or -1 if the string isn't an IPv4 address
+     */
+    static long parseIp4(final String aAddress, final int aStart, final int aEnd) {
+        long address = 0;
+        int octet = -1;
+        int dots = 0;
+
+        for (int index = aStart; index < aEnd; index++) {
+            final char character = aAddress.charAt(index);
+
+            if (character >= '0' && character <= '9') {
+                octet = octet < 0 ? character - '0' : octet * 10 + character - '0';
+
+                if (octet > 255) {
+                    return -1;
+                }
+            } else if (character == '.' && octet >= 0 && dots < 3) {
+                address = address << 8 | octet;
+                octet = -1;
+                dots++;
+            } else {
+                return -1;
+            }
+        }
+
+        if (dots != 3 || octet < 0) {
+            return -1;
+        }
+
+        return address << 8 | octet;
+    }
+
+    /**
+     * Parses an IPv6 address (including the compressed and IPv4-suffixed forms).
+     *
+     * @param aAddress A string containing the address, optionally with a zone ID
+     * @return A two element array with the high and low 64 bits of the address, or null if it can't be parsed
+     */
+    static long[] parseIp6(final String aAddress) {
+        final int zone = aAddress.indexOf('%');
+        final int end = zone < 0 ? aAddress.length() : zone;
+        final int[] groups = new int[8];
+        int groupCount = 0;
+        int compressAt = -1;
+        int index = 0;
+
+        if (end >= 2 && aAddress.charAt(0) == ':' && aAddress.charAt(1) == ':') {
+            compressAt = 0;
+            index = 2;
+        } else if (end == 0 || aAddress.charAt(0) == ':') {
+            return null;
+        }
+
+        while (index < end) {
+            final int groupEnd = nextColon(aAddress, index, end);
+            final int dot = aAddress.indexOf('.', index);
+
+            if (groupEnd == index) {
+                // An empty group marks the "::" compression, which can only appear once
+                if (compressAt >= 0) {
+                    return null;
+                }
+
+                compressAt = groupCount;
+                index++;
+            } else if (groupEnd == end && dot >= 0 && dot < end) {
+                final long ip4 = parseIp4(aAddress, index, end);
+
+                if (ip4 < 0 || groupCount > 6) {
+                    return null;
+                }
+
+                groups[groupCount++] = (int) (ip4 >>> 16);
+                groups[groupCount++] = (int) (ip4 & 0xFFFF);
+                index = end;
+            } else {
+                final int group = parseHexGroup(aAddress, index, groupEnd);
+
+                if (group < 0 || groupCount == 8) {
+                    return null;
+                }
+
+                groups[groupCount++] = group;
+                index = groupEnd == end ? end : groupEnd + 1;
+
+                // A trailing single colon isn't valid
+                if (groupEnd < end && index == end) {
+                    return null;
+                }
+            }
+        }
+
+        return toLongs(groups, groupCount, compressAt);
+    }
+
+    /**
+     * Finds the index of the next colon in an address.
+     *
+     * @param aAddress An address
+     * @param aStart The index to start looking from
+     * @param aEnd The index at which the address ends (exclusive)
+     * @return The index of the next colon, or {@code aEnd} if there isn't one
+     */
+    private static int nextColon(final String aAddress, final int aStart, final int aEnd) {
+        for (int index = aStart; index < aEnd; index++) {
+            if (aAddress.charAt(index) == ':') {
+                return index;
+            }
+        }
+
+        return aEnd;
+    }
+
+    /**
+     * Parses a group of one to four hexadecimal digits.
+     *
+     * @param aAddress An address
+     * @param aStart The index at which the group starts
+     * @param aEnd The index at which the group ends (exclusive)
+     * @return The value of the group, or -1 if it isn't valid
+     */
+    private static int parseHexGroup(final String aAddress, final int aStart, final int aEnd) {
+        int value = 0;
+
+        if (aEnd - aStart > 4) {
+            return -1;
+        }
+
+        for (int index = aStart; index < aEnd; index++) {
+            final int digit = Character.digit(aAddress.charAt(index), 16);
+
+            if (digit < 0) {
+                return -1;
+            }
+
+            value = value << 4 | digit;
+        }
+
+        return value;
+    }
+
+    /**
+     * Expands parsed IPv6 groups into the high and low 64 bits of an address.
+     *
+     * @param aGroups The parsed 16-bit groups
+     * @param aGroupCount The number of groups that were parsed
+     * @param aCompressAt The group index at which "::" appeared, or -1 if it didn't
+     * @return A two element array with the high and low 64 bits of the address, or null if it isn't valid
+     */
+    private static long[] toLongs(final int[] aGroups, final int aGroupCount, final int aCompressAt) {
+        final long[] address = new long[2];
+        final int padding = 8 - aGroupCount;
+
+        if (aCompressAt < 0 && padding != 0 || aCompressAt >= 0 && padding == 0) {
+            return null;
+        }
+
+        for (int source = 0, target = 0; source < aGroupCount; source++, target++) {
+            if (source == aCompressAt) {
+                target += padding;
+            }
+
+            address[target / 4] |= (long) aGroups[source] << (3 - target % 4) * 16;
+        }
+
+        return address;
+    }
+
+    /**
+     * An immutable, compiled snapshot of the allowed networks.
+     */
+    private static final class Networks {
+
+        /**
+         * The sorted, non-overlapping starts of the allowed IPv4 ranges (sign-flipped for unsigned comparison).
+         */
+        private final int[] myIp4Starts;
+
+        /**
+         * The ends of the allowed IPv4 ranges (sign-flipped for unsigned comparison).
+         */
+        private final int[] myIp4Ends;
+
+        /**
+         * The allowed IPv6 networks, as [ high bits, low bits, high mask, low mask ].
+         */
+        private final long[][] myIp6Networks;
+
+        /**
+         * Creates a compiled snapshot of the allowed networks.
+         *
+         * @param aIp4Ranges The unsigned start and end of each allowed IPv4 range
+         * @param aIp6Networks The allowed IPv6 networks
+         */
+        Networks(final List<long[]> aIp4Ranges, final List<long[]> aIp6Networks) {
+            final long[][] ranges = aIp4Ranges.toArray(new long[0][]);
+            int count = 0;
+
+            Arrays.sort(ranges, (aFirst, aSecond) -> Long.compare(aFirst[0], aSecond[0]));
+
+            // Merge the overlapping and adjacent ranges so a single binary search answers each lookup
+            for (final long[] range : ranges) {
+                if (count > 0 && range[0] <= ranges[count - 1][1] + 1) {
+                    ranges[count - 1][1] = Math.max(ranges[count - 1][1], range[1]);
+                } else {
+                    ranges[count++] = range;
+                }
+            }
+
+            myIp4Starts = new int[count];
+            myIp4Ends = new int[count];
+
+            for (int index = 0; index < count; index++) {
+                myIp4Starts[index] = (int) ranges[index][0] ^ Integer.MIN_VALUE;
+                myIp4Ends[index] = (int) ranges[index][1] ^ Integer.MIN_VALUE;
+            }
+
+            myIp6Networks = aIp6Networks.toArray(new long[0][]);
+        }
+
+        /**
+         * Checks whether an IPv4 address falls within one of the allowed ranges.
+         *
+         * @param aIp4 An IPv4 address
+         * @return True if the address is allowed; else, false
+         */
+        boolean containsIp4(final int aIp4) {
+            final int address = aIp4 ^ Integer.MIN_VALUE;
+            int low = 0;
+            int high = myIp4Starts.length - 1;
+
+            // Find the last range that starts at or before the address
+            while (low <= high) {
+                final int middle = low + high >>> 1;
+
+                if (myIp4Starts[middle] <= address) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+
+            return high >= 0 && address <= myIp4Ends[high];
+        }
+
+        /**
+         * Checks whether an IPv6 address falls within one of the allowed networks.
+         *
+         * @param aHigh The high 64 bits of the address
+         * @param aLow The low 64 bits of the address
+         * @return True if the address is allowed; else, false
+         */
+        boolean containsIp6(final long aHigh, final long aLow) {
+            for (final long[] network : myIp6Networks) {
+                if ((aHigh & network[2]) == network[0] && (aLow & network[3]) == network[1]) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+
+package edu.ucla.library.libcal.access;
+
+/**
+ * The policy flags of a route: whether it's open to clients outside the allowlist, and whether its GET responses may be
+ * cached and shared between clients. A policy also keeps the path template of its route, which labels its metrics.
+ */
+public final class RoutePolicy {
+
+    /**
+     * The policy of a route that isn't in the route table: private and cacheable.
+     */
+    public static final RoutePolicy DEFAULT = new RoutePolicy(null, false, true);
+
+    /**
+     * The policy flag for a route that's open to every client.
+     */
+    static final String PUBLIC = "public";
+
+    /**
+     * The policy flag for a route that's only open to the allowlist.
+     */
+    static final String PRIVATE = "private";
+
+    /**
+     * The policy flag for a route whose GET responses may be cached and shared.
+     */
+    static final String CACHEABLE = "cacheable";
+
+    /**
+     * The policy flag for a route whose GET responses are never cached or shared.
+     */
+    static final String NO_CACHE = "no-cache";
+
+    /**
+     * The route's path template, or null if the policy isn't for a route in the route table.
+     */
+    private final String myTemplate;
+
+    /**
+     * Whether the route is open to every client.
+     */
+    private final boolean isPublic;
+
+    /**
+     * Whether the route's GET responses may be cached and shared.
+     */
+    private final boolean isCacheable;
+
+    /**
+     * Creates a route policy.
+     *
+     * @param aTemplate The route's path template, or null if the policy isn't for a route in the route table
+     * @param aPublic Whether the route is open to every client
+     * @param aCacheable Whether the route's GET responses may be cached and shared
+     */
+    public RoutePolicy(final String aTemplate, final boolean aPublic, final boolean aCacheable) {
+        myTemplate = aTemplate;
+        isPublic = aPublic;
+        isCacheable = aCacheable;
+    }
+
+    /**
+     * Gets the route's path template, like <code>/api/1.1/events/{id}/register</code>.
+     *
+     * @return The route's path template, or null if the policy isn't for a route in the route table
+     */
+    public String getTemplate() {
+        return myTemplate;
+    }
+
+    /**
+     * Checks whether the route is open to every client, not just the allowlist.
+     *
+     * @return True if the route is public; else, false
+     */
+    public boolean isPublic() {
+        return isPublic;
+    }
+
+    /**
+     * Checks whether the route's GET responses may be cached and shared between clients.
+     *
+     * @return True if the route is cacheable; else, false
+     */
+    public boolean isCacheable() {
+        return isCacheable;
+    }
+
+    @Override
+    public String toString() {
+        return (isPublic ? PUBLIC : PRIVATE) + ':' + (isCacheable ? CACHEABLE : NO_CACHE);
+    }
+}
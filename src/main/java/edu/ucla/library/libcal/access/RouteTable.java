@@ -0,0 +1,339 @@
+
+package edu.ucla.library.libcal.access;
+
+import static info.freelibrary.util.Constants.COMMA;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.MessageCodes;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * A table of route policies, each for a method and a path template like <code>/api/1.1/events/{id}/register</code>.
+ * <p>
+ * The templates are compiled once into a trie of path segments per method, so a lookup walks the request path a segment
+ * at a time, without regular expressions or allocation. A literal segment is preferred to a parameter, which matches
+ * any one non-empty segment of letters and digits. A request that doesn't match any route gets
+ * {@link RoutePolicy#DEFAULT}.
+ */
+public final class RouteTable {
+
+    /**
+     * The routes that are used when none are configured: event registration, the event form, and the event page, which
+     * are open to every client.
+     */
+    public static final String DEFAULT_ROUTES = "POST /api/1.1/events/{id}/register=public, " +
+            "GET /api/1.1/events/form/{id}=public, GET /event/{id}=public";
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RouteTable.class, MessageCodes.BUNDLE);
+
+    /**
+     * The separator between path segments.
+     */
+    private static final char SLASH = '/';
+
+    /**
+     * The separator between a route and its policy flags.
+     */
+    private static final char EQUALS = '=';
+
+    /**
+     * The separator between a route's policy flags.
+     */
+    private static final String COLON = ":";
+
+    /**
+     * The separator between a route's method and its path template.
+     */
+    private static final char SPACE = ' ';
+
+    /**
+     * The start of a parameter segment in a path template.
+     */
+    private static final char PARAM_START = '{';
+
+    /**
+     * The end of a parameter segment in a path template.
+     */
+    private static final char PARAM_END = '}';
+
+    /**
+     * The bit that's set in a lower-case ASCII letter and clear in its upper-case form.
+     */
+    private static final int CASE_BIT = 0x20;
+
+    /**
+     * The roots of the route tries, by HTTP method.
+     */
+    private final Map<String, Node> myRoots = new HashMap<>();
+
+    /**
+     * Creates a route table from a list of routes.
+     *
+     * @param aRoutes A comma-separated list of <code>METHOD /path/{param}=flag:flag</code> routes, whose flags are
+     *        <code>public</code> or <code>private</code>, and <code>cacheable</code> or <code>no-cache</code>
+     * @throws IllegalArgumentException If a route is invalid
+     */
+    public RouteTable(final String aRoutes) {
+        for (final String route : aRoutes.split(COMMA)) {
+            final String trimmed = route.trim();
+
+            if (!trimmed.isEmpty()) {
+                add(trimmed);
+            }
+        }
+    }
+
+    /**
+     * Creates a route table from the application's configuration.
+     *
+     * @param aConfig An application configuration
+     * @return The route table
+     * @throws IllegalArgumentException If the configuration contains an invalid route
+     */
+    public static RouteTable fromConfig(final JsonObject aConfig) {
+        return new RouteTable(aConfig.getString(Config.ROUTE_POLICIES, DEFAULT_ROUTES));
+    }
+
+    /**
+     * Gets the policy of a request's route.
+     *
+     * @param aMethod The request's HTTP method
+     * @param aPath The request's path
+     * @return The policy of the route the request matches, or {@link RoutePolicy#DEFAULT} if it matches none
+     */
+    public RoutePolicy getPolicy(final String aMethod, final String aPath) {
+        final Node root = myRoots.get(aMethod);
+
+        if (root == null || aPath.isEmpty() || aPath.charAt(0) != SLASH) {
+            return RoutePolicy.DEFAULT;
+        }
+
+        final RoutePolicy policy = match(root, aPath, 0);
+
+        return policy != null ? policy : RoutePolicy.DEFAULT;
+    }
+
+    /**
+     * Matches the rest of a path against a node's subtrie.
+     *
+     * @param aNode A node in a route trie
+     * @param aPath A request path
+     * @param aIndex The index of the slash that starts the rest of the path, or the path's length if nothing is left
+     * @return The policy of the matching route, or null if there isn't one
+     */
+    private static RoutePolicy match(final Node aNode, final String aPath, final int aIndex) {
+        final int start = aIndex + 1;
+        final int slash;
+        final int end;
+
+        if (aIndex == aPath.length()) {
+            return aNode.myPolicy;
+        }
+
+        slash = aPath.indexOf(SLASH, start);
+        end = slash < 0 ? aPath.length() : slash;
+
+        for (int index = 0; index < aNode.myLiterals.size(); index++) {
+            final Node child = aNode.myLiterals.get(index);
+            final String segment = child.mySegment;
+
+            if (segment.length() == end - start && aPath.regionMatches(start, segment, 0, segment.length())) {
+                final RoutePolicy policy = match(child, aPath, end);
+
+                // A literal that leads nowhere gives way to a parameter
+                if (policy != null) {
+                    return policy;
+                }
+            }
+        }
+
+        if (aNode.myParameter != null && isParameterValue(aPath, start, end)) {
+            return match(aNode.myParameter, aPath, end);
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks whether a path segment can be a parameter's value: a non-empty run of letters and digits.
+     *
+     * @param aPath A request path
+     * @param aStart The index of the segment's first character
+     * @param aEnd The index after the segment's last character
+     * @return True if the segment can be a parameter's value; else, false
+     */
+    private static boolean isParameterValue(final String aPath, final int aStart, final int aEnd) {
+        if (aStart >= aEnd) {
+            return false;
+        }
+
+        for (int index = aStart; index < aEnd; index++) {
+            if (!isLetterOrDigit(aPath.charAt(index))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks whether a character is an ASCII letter or digit.
+     *
+     * @param aCharacter A character
+     * @return True if the character is an ASCII letter or digit; else, false
+     */
+    private static boolean isLetterOrDigit(final char aCharacter) {
+        // Setting the case bit turns an upper-case ASCII letter into its lower-case form
+        final char lowerCase = (char) (aCharacter | CASE_BIT);
+
+        return aCharacter >= '0' && aCharacter <= '9' || lowerCase >= 'a' && lowerCase <= 'z';
+    }
+
+    /**
+     * Adds a route to the table.
+     *
+     * @param aRoute A <code>METHOD /path/{param}=flag:flag</code> route
+     * @throws IllegalArgumentException If the route is invalid
+     */
+    private void add(final String aRoute) {
+        final int equals = aRoute.indexOf(EQUALS);
+        final String route = equals < 0 ? aRoute : aRoute.substring(0, equals).trim();
+        final int space = route.indexOf(SPACE);
+        final String path;
+        Node node;
+
+        if (space < 1) {
+            throw new IllegalArgumentException(LOGGER.getMessage(MessageCodes.LCP_029, aRoute));
+        }
+
+        path = route.substring(space + 1).trim();
+
+        if (path.isEmpty() || path.charAt(0) != SLASH) {
+            throw new IllegalArgumentException(LOGGER.getMessage(MessageCodes.LCP_029, aRoute));
+        }
+
+        node = myRoots.computeIfAbsent(route.substring(0, space).toUpperCase(Locale.ROOT), method -> new Node(null));
+
+        for (final String segment : path.substring(1).split(String.valueOf(SLASH), -1)) {
+            if (segment.isEmpty()) {
+                throw new IllegalArgumentException(LOGGER.getMessage(MessageCodes.LCP_029, aRoute));
+            }
+
+            node = node.getChild(segment);
+        }
+
+        node.myPolicy = parsePolicy(aRoute, path, equals < 0 ? null : aRoute.substring(equals + 1));
+    }
+
+    /**
+     * Parses a route's policy flags.
+     *
+     * @param aRoute The route, for error messages
+     * @param aTemplate The route's path template
+     * @param aFlags The (possibly null) colon-separated policy flags
+     * @return The route's policy
+     * @throws IllegalArgumentException If a flag is unknown
+     */
+    private static RoutePolicy parsePolicy(final String aRoute, final String aTemplate, final String aFlags) {
+        boolean isPublic = RoutePolicy.DEFAULT.isPublic();
+        boolean isCacheable = RoutePolicy.DEFAULT.isCacheable();
+
+        if (aFlags != null) {
+            for (final String flag : aFlags.split(COLON)) {
+                switch (flag.trim().toLowerCase(Locale.ROOT)) {
+                    case RoutePolicy.PUBLIC:
+                        isPublic = true;
+                        break;
+                    case RoutePolicy.PRIVATE:
+                        isPublic = false;
+                        break;
+                    case RoutePolicy.CACHEABLE:
+                        isCacheable = true;
+                        break;
+                    case RoutePolicy.NO_CACHE:
+                        isCacheable = false;
+                        break;
+                    default:
+                        throw new IllegalArgumentException(LOGGER.getMessage(MessageCodes.LCP_029, aRoute));
+                }
+            }
+        }
+
+        return new RoutePolicy(aTemplate, isPublic, isCacheable);
+    }
+
+    /**
+     * A node in a route trie: one segment of a path template.
+     */
+    private static final class Node {
+
+        /**
+         * The node's literal path segment, or null if it's a parameter (or the root).
+         */
+        private final String mySegment;
+
+        /**
+         * The children with literal segments.
+         */
+        private final List<Node> myLiterals = new ArrayList<>();
+
+        /**
+         * The child that's a parameter, if there is one.
+         */
+        private Node myParameter;
+
+        /**
+         * The policy of the route that ends at this node, if one does.
+         */
+        private RoutePolicy myPolicy;
+
+        /**
+         * Creates a node.
+         *
+         * @param aSegment The node's literal path segment, or null if it's a parameter
+         */
+        private Node(final String aSegment) {
+            mySegment = aSegment;
+        }
+
+        /**
+         * Gets the child for a path template segment, adding it if it's not there yet.
+         *
+         * @param aSegment A path template segment
+         * @return The child node
+         */
+        private Node getChild(final String aSegment) {
+            if (aSegment.charAt(0) == PARAM_START && aSegment.charAt(aSegment.length() - 1) == PARAM_END) {
+                if (myParameter == null) {
+                    myParameter = new Node(null);
+                }
+
+                return myParameter;
+            }
+
+            for (final Node child : myLiterals) {
+                if (child.mySegment.equals(aSegment)) {
+                    return child;
+                }
+            }
+
+            final Node child = new Node(aSegment);
+
+            myLiterals.add(child);
+            return child;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+
+package edu.ucla.library.libcal.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.MessageCodes;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * Keeps the hottest GET queries in the {@link ResponseCache}, shared by everything in a Vert.x instance.
+ * <p>
+ * The configured warm-up queries are fetched when the proxy starts, and the proxy doesn't report itself ready until
+ * they've all been fetched or the deadline has passed. After that, the configured queries, along with the most
+ * requested ones if the proxy is set to learn them, are checked on a schedule, and any that would expire before the
+ * next check is fetched again, so they're always answered from the cache. Queries are fetched one at a time, so warming
+ * the cache never crowds out client requests.
+ */
+public final class CacheWarmer implements Shareable {
+
+    /**
+     * The default number of seconds between checks for warm-up queries that are about to expire.
+     */
+    public static final long DEFAULT_INTERVAL = 10;
+
+    /**
+     * The default number of seconds the proxy waits for the startup warm-up before it reports itself ready.
+     */
+    public static final long DEFAULT_DEADLINE = 30;
+
+    /**
+     * The most distinct queries whose requests are counted at once, so that a scan of many queries can't use up memory.
+     */
+    static final int MAX_TRACKED = 1024;
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheWarmer.class, MessageCodes.BUNDLE);
+
+    /**
+     * The name of the local shared data map that holds the cache warmer.
+     */
+    private static final String CACHE_WARMER_MAP = CacheWarmer.class.getName();
+
+    /**
+     * The key of the cache warmer in its local shared data map.
+     */
+    private static final String CACHE_WARMER = "cacheWarmer";
+
+    /**
+     * The separator between a query's path and its query string.
+     */
+    private static final char QUESTION_MARK = '?';
+
+    /**
+     * The separator between the configured warm-up queries.
+     */
+    private static final String WHITESPACE = "\\s+";
+
+    /**
+     * The configured warm-up queries.
+     */
+    private final List<String> myQueries;
+
+    /**
+     * The number of the most requested queries that are kept fresh, or zero if requests aren't counted.
+     */
+    private final int myTopN;
+
+    /**
+     * The number of seconds between checks for warm-up queries that are about to expire.
+     */
+    private final long myInterval;
+
+    /**
+     * The number of seconds the proxy waits for the startup warm-up before it reports itself ready.
+     */
+    private final long myDeadline;
+
+    /**
+     * The recent request counts of the queries, which are halved at each check so that old traffic fades.
+     */
+    private final Map<String, AtomicLong> myCounts = new ConcurrentHashMap<>();
+
+    /**
+     * Whether the startup warm-up has finished or its deadline has passed.
+     */
+    private volatile boolean isReady;
+
+    /**
+     * Whether warm-up queries are being fetched.
+     */
+    private volatile boolean isRefreshing;
+
+    /**
+     * Creates a new cache warmer.
+     *
+     * @param aQueries A (possibly null) whitespace-separated list of <code>/path?query</code> warm-up queries
+     * @param aTopN The number of the most requested queries to keep fresh, or zero if requests shouldn't be counted
+     * @param aInterval The number of seconds between checks for warm-up queries that are about to expire
+     * @param aDeadline The number of seconds to wait for the startup warm-up before reporting ready
+     */
+    public CacheWarmer(final String aQueries, final int aTopN, final long aInterval, final long aDeadline) {
+        myQueries = new ArrayList<>();
+
+        if (aQueries != null) {
+            for (final String query : aQueries.trim().split(WHITESPACE)) {
+                if (!query.isEmpty()) {
+                    myQueries.add(query);
+                }
+            }
+        }
+
+        myTopN = Math.max(0, aTopN);
+        myInterval = Math.max(1, aInterval);
+        myDeadline = Math.max(0, aDeadline);
+        isReady = myQueries.isEmpty();
+    }
+
+    /**
+     * Gets the cache warmer that's shared by everything in a Vert.x instance, creating it from the supplied
+     * configuration if it doesn't exist yet.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aConfig An application configuration
+     * @return The shared cache warmer
+     */
+    public static CacheWarmer get(final Vertx aVertx, final JsonObject aConfig) {
+        return getMap(aVertx).computeIfAbsent(CACHE_WARMER, key -> fromConfig(aConfig));
+    }
+
+    /**
+     * Looks up the cache warmer that's shared by everything in a Vert.x instance.
+     *
+     * @param aVertx A Vert.x instance
+     * @return The shared cache warmer, or an empty Optional if it hasn't been created
+     */
+    public static Optional<CacheWarmer> lookup(final Vertx aVertx) {
+        return Optional.ofNullable(getMap(aVertx).get(CACHE_WARMER));
+    }
+
+    /**
+     * Creates a cache warmer from the application's configuration.
+     *
+     * @param aConfig An application configuration
+     * @return A new cache warmer
+     */
+    static CacheWarmer fromConfig(final JsonObject aConfig) {
+        return new CacheWarmer(aConfig.getString(Config.WARMUP_QUERIES), aConfig.getInteger(Config.WARMUP_TOP_N, 0),
+                aConfig.getLong(Config.WARMUP_INTERVAL, DEFAULT_INTERVAL),
+                aConfig.getLong(Config.WARMUP_DEADLINE, DEFAULT_DEADLINE));
+    }
+
+    /**
+     * Checks whether there's anything for the cache warmer to do: warm-up queries to fetch or requests to count.
+     *
+     * @return True if the cache warmer has work to do; else, false
+     */
+    public boolean isEnabled() {
+        return !myQueries.isEmpty() || myTopN > 0;
+    }
+
+    /**
+     * Checks whether the startup warm-up has finished or its deadline has passed, so the proxy can take traffic.
+     *
+     * @return True if the proxy is ready; else, false
+     */
+    public boolean isReady() {
+        return isReady;
+    }
+
+    /**
+     * Counts a client's GET query toward the most requested queries.
+     *
+     * @param aQuery A <code>/path?query</code> string
+     */
+    public void record(final String aQuery) {
+        if (myTopN > 0) {
+            final AtomicLong count = myCounts.get(aQuery);
+
+            if (count != null) {
+                count.incrementAndGet();
+            } else if (myCounts.size() < MAX_TRACKED) {
+                myCounts.computeIfAbsent(aQuery, key -> new AtomicLong()).incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Starts warming the response cache: fetches the warm-up queries and then checks them on a schedule. This must be
+     * called in a Vert.x context, whose undeployment stops the checks.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aCache The response cache to warm
+     * @param aPrefetcher A function that fetches a <code>/path?query</code> into the cache
+     * @return A Future that completes when the proxy is ready: once the startup warm-up is done or its deadline passes
+     */
+    public Future<Void> start(final Vertx aVertx, final ResponseCache aCache,
+            final Function<String, Future<Boolean>> aPrefetcher) {
+        final Promise<Void> promise = Promise.promise();
+        final long start = System.nanoTime();
+        final long timerId;
+
+        if (!aCache.isEnabled() || isReady) {
+            isReady = true;
+            promise.complete();
+        } else {
+            LOGGER.info(MessageCodes.LCP_030, myQueries.size());
+
+            timerId = aVertx.setTimer(Math.max(1, TimeUnit.SECONDS.toMillis(myDeadline)), id -> {
+                LOGGER.warn(MessageCodes.LCP_031, myDeadline);
+                isReady = true;
+                promise.tryComplete();
+            });
+
+            isRefreshing = true;
+            refresh(aCache, aPrefetcher, myQueries).onComplete(result -> {
+                isRefreshing = false;
+
+                if (aVertx.cancelTimer(timerId)) {
+                    LOGGER.info(MessageCodes.LCP_032, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    isReady = true;
+                    promise.tryComplete();
+                }
+            });
+        }
+
+        if (aCache.isEnabled()) {
+            aVertx.setPeriodic(TimeUnit.SECONDS.toMillis(myInterval), id -> {
+                final List<String> queries = getWarmQueries();
+
+                if (!isRefreshing) {
+                    isRefreshing = true;
+                    refresh(aCache, aPrefetcher, queries).onComplete(result -> isRefreshing = false);
+                }
+            });
+        }
+
+        return promise.future();
+    }
+
+    /**
+     * Gets the queries to keep fresh: the configured ones and the most requested ones. The request counts are halved
+     * afterward, so the most requested queries are those of recent traffic.
+     *
+     * @return The queries to keep fresh
+     */
+    List<String> getWarmQueries() {
+        final Set<String> queries = new LinkedHashSet<>(myQueries);
+
+        if (myTopN > 0) {
+            // A query that's only been requested once isn't hot, and its count is about to fade to nothing
+            queries.addAll(myCounts.entrySet().stream().filter(entry -> entry.getValue().get() > 1)
+                    .sorted(Comparator.comparingLong(entry -> -entry.getValue().get())).limit(myTopN)
+                    .map(Map.Entry::getKey).collect(Collectors.toList()));
+            myCounts.values().removeIf(count -> count.updateAndGet(value -> value / 2) == 0);
+        }
+
+        return new ArrayList<>(queries);
+    }
+
+    /**
+     * Fetches, one at a time, the queries that aren't cached or would expire before the check after next.
+     *
+     * @param aCache The response cache
+     * @param aPrefetcher A function that fetches a <code>/path?query</code> into the cache
+     * @param aQueries The queries to keep fresh
+     * @return A Future that completes when the queries have been fetched, whether or not they could be
+     */
+    private Future<Void> refresh(final ResponseCache aCache, final Function<String, Future<Boolean>> aPrefetcher,
+            final List<String> aQueries) {
+        Future<Void> refresh = Future.succeededFuture();
+
+        for (final String query : aQueries) {
+            refresh = refresh.compose(unused -> {
+                if (aCache.isFreshFor(getKey(query), myInterval * 2)) {
+                    return Future.succeededFuture();
+                }
+
+                return aPrefetcher.apply(query).otherwise(failure -> {
+                    LOGGER.warn(MessageCodes.LCP_033, query, failure.getMessage());
+                    return false;
+                }).mapEmpty();
+            });
+        }
+
+        return refresh;
+    }
+
+    /**
+     * Gets the cache key of a GET query.
+     *
+     * @param aQuery A <code>/path?query</code> string
+     * @return The query's cache key
+     */
+    private static String getKey(final String aQuery) {
+        final int index = aQuery.indexOf(QUESTION_MARK);
+
+        if (index < 0) {
+            return ResponseCache.getKey(HttpMethod.GET.name(), aQuery, null);
+        }
+
+        return ResponseCache.getKey(HttpMethod.GET.name(), aQuery.substring(0, index), aQuery.substring(index + 1));
+    }
+
+    /**
+     * Gets the local shared data map that holds the cache warmer.
+     *
+     * @param aVertx A Vert.x instance
+     * @return The local shared data map
+     */
+    private static LocalMap<String, CacheWarmer> getMap(final Vertx aVertx) {
+        return aVertx.sharedData().getLocalMap(CACHE_WARMER_MAP);
+    }
+}
@@ -0,0 +1,162 @@
+
+package edu.ucla.library.libcal.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+
+/**
+ * A LibCal response that's held in the {@link ResponseCache}. Its parts are never changed once it's been cached, so it
+ * can be sent to clients from any thread.
+ */
+public final class CachedResponse {
+
+    /**
+     * The response's HTTP status code.
+     */
+    private final int myStatusCode;
+
+    /**
+     * The response's HTTP status message.
+     */
+    private final String myStatusMessage;
+
+    /**
+     * The response's headers.
+     */
+    private final MultiMap myHeaders;
+
+    /**
+     * The response's body.
+     */
+    private final Buffer myBody;
+
+    /**
+     * The response's entity tag: LibCal's, if it sent one, or else one computed from the body.
+     */
+    private final String myETag;
+
+    /**
+     * When the response was cached, in cache ticker nanoseconds.
+     */
+    private final long myStoredAt;
+
+    /**
+     * How long the response may be served from the cache, in nanoseconds.
+     */
+    private final long myTtl;
+
+    /**
+     * Creates a new cached response.
+     *
+     * @param aStatusCode The response's HTTP status code
+     * @param aStatusMessage The response's HTTP status message
+     * @param aHeaders The response's headers
+     * @param aBody The response's body
+     * @param aStoredAt When the response was cached, in cache ticker nanoseconds
+     * @param aTtl How long the response may be served from the cache, in nanoseconds
+     */
+    CachedResponse(final int aStatusCode, final String aStatusMessage, final MultiMap aHeaders, final Buffer aBody,
+            final long aStoredAt, final long aTtl) {
+        myStatusCode = aStatusCode;
+        myStatusMessage = aStatusMessage;
+        myHeaders = aHeaders;
+        myBody = aBody;
+        myETag = aHeaders.contains(HttpHeaders.ETAG) ? aHeaders.get(HttpHeaders.ETAG)
+                : ConditionalRequests.getETag(aBody);
+        myStoredAt = aStoredAt;
+        myTtl = aTtl;
+    }
+
+    /**
+     * Gets the response's HTTP status code.
+     *
+     * @return The response's HTTP status code
+     */
+    public int getStatusCode() {
+        return myStatusCode;
+    }
+
+    /**
+     * Gets the response's HTTP status message.
+     *
+     * @return The response's HTTP status message
+     */
+    public String getStatusMessage() {
+        return myStatusMessage;
+    }
+
+    /**
+     * Gets the response's headers. These mustn't be changed.
+     *
+     * @return The response's headers
+     */
+    public MultiMap getHeaders() {
+        return myHeaders;
+    }
+
+    /**
+     * Gets the response's body.
+     *
+     * @return The response's body
+     */
+    public Buffer getBody() {
+        return myBody;
+    }
+
+    /**
+     * Gets the response's entity tag. It's computed once, when the response is cached, so revalidating clients don't
+     * cost a pass over the body.
+     *
+     * @return The response's entity tag, in quotes
+     */
+    public String getETag() {
+        return myETag;
+    }
+
+    /**
+     * Gets how long the response may be served from the cache.
+     *
+     * @return How long the response may be served from the cache, in nanoseconds
+     */
+    long getTtl() {
+        return myTtl;
+    }
+
+    /**
+     * Checks whether the response is still within its TTL.
+     *
+     * @param aNow The current time, in cache ticker nanoseconds
+     * @return True if the response is fresh; else, false
+     */
+    boolean isFresh(final long aNow) {
+        return aNow - myStoredAt < myTtl;
+    }
+
+    /**
+     * Gets the number of bytes the response takes up in the cache, roughly.
+     *
+     * @return The approximate size of the response
+     */
+    int getSize() {
+        long size = myBody.length();
+
+        for (final var header : myHeaders) {
+            size += header.getKey().length() + header.getValue().length();
+        }
+
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets how long the response has been in the cache.
+     *
+     * @param aNow The current time, in cache ticker nanoseconds
+     * @return The number of whole seconds the response has been in the cache
+     */
+    long getAge(final long aNow) {
+        return TimeUnit.NANOSECONDS.toSeconds(Math.max(0, aNow - myStoredAt));
+    }
+}
@@ -0,0 +1,154 @@
+
+package edu.ucla.library.libcal.cache;
+
+import static info.freelibrary.util.Constants.COMMA;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.zip.CRC32C;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Utilities for answering conditional GETs: the entity tags that identify a response body, and the checks of a client's
+ * <code>If-None-Match</code> and <code>If-Modified-Since</code> headers against them.
+ */
+public final class ConditionalRequests {
+
+    /**
+     * The wildcard that matches any entity tag in an <code>If-None-Match</code> header.
+     */
+    private static final String ANY = "*";
+
+    /**
+     * The prefix of a weak entity tag.
+     */
+    private static final String WEAK_PREFIX = "W/";
+
+    /**
+     * The quote that surrounds an entity tag.
+     */
+    private static final char QUOTE = '"';
+
+    /**
+     * The separator between an entity tag's hash and the length of the body it identifies.
+     */
+    private static final char DASH = '-';
+
+    /**
+     * The suffix that distinguishes the entity tag of a decoded body from that of its encoded original.
+     */
+    private static final String DECODED_SUFFIX = "-identity";
+
+    /**
+     * Utility classes should have private constructors.
+     */
+    private ConditionalRequests() {
+        // This is intentionally left empty
+    }
+
+    /**
+     * Gets a strong entity tag for a response body: a CRC-32C checksum of its bytes, along with its length. The
+     * checksum is hardware accelerated on most platforms, so the tag costs little to compute.
+     *
+     * @param aBody A response body
+     * @return The body's entity tag, in quotes
+     */
+    public static String getETag(final Buffer aBody) {
+        final CRC32C checksum = new CRC32C();
+
+        checksum.update(aBody.getByteBuf().nioBuffer());
+
+        return new StringBuilder().append(QUOTE).append(Long.toHexString(checksum.getValue())).append(DASH)
+                .append(Integer.toHexString(aBody.length())).append(QUOTE).toString();
+    }
+
+    /**
+     * Gets the entity tag of the decoded form of an encoded response body. A strong entity tag identifies the exact
+     * bytes sent, so the decoded body needs a tag of its own.
+     *
+     * @param aETag The entity tag of an encoded response body
+     * @return The entity tag of the decoded body
+     */
+    public static String getDecodedETag(final String aETag) {
+        final int end = aETag.lastIndexOf(QUOTE);
+
+        if (end < 1) {
+            return aETag + DECODED_SUFFIX;
+        }
+
+        return aETag.substring(0, end) + DECODED_SUFFIX + aETag.substring(end);
+    }
+
+    /**
+     * Checks whether a client's copy of a response is still current, so it can be answered with a 304 (Not Modified).
+     * As HTTP requires, <code>If-Modified-Since</code> is only considered when there is no <code>If-None-Match</code>.
+     *
+     * @param aIfNoneMatch A (possibly null) <code>If-None-Match</code> header value
+     * @param aIfModifiedSince A (possibly null) <code>If-Modified-Since</code> header value
+     * @param aETag The (possibly null) entity tag of the current response
+     * @param aLastModified The (possibly null) <code>Last-Modified</code> header value of the current response
+     * @return True if the client's copy is current; else, false
+     */
+    public static boolean isNotModified(final String aIfNoneMatch, final String aIfModifiedSince, final String aETag,
+            final String aLastModified) {
+        if (aIfNoneMatch != null) {
+            return matches(aIfNoneMatch, aETag);
+        }
+
+        if (aIfModifiedSince == null || aLastModified == null) {
+            return false;
+        }
+
+        try {
+            final ZonedDateTime ifModifiedSince =
+                    ZonedDateTime.parse(aIfModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            final ZonedDateTime lastModified =
+                    ZonedDateTime.parse(aLastModified.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+
+            return !lastModified.isAfter(ifModifiedSince);
+        } catch (final DateTimeParseException details) {
+            // An invalid date is ignored, as HTTP requires
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether an <code>If-None-Match</code> header matches an entity tag. Tags are compared weakly, as HTTP
+     * requires for this header, so a weak and a strong tag with the same value match.
+     *
+     * @param aIfNoneMatch An <code>If-None-Match</code> header value
+     * @param aETag The (possibly null) entity tag of the current response
+     * @return True if the header matches the tag; else, false
+     */
+    private static boolean matches(final String aIfNoneMatch, final String aETag) {
+        if (aETag == null) {
+            return false;
+        }
+
+        final String etag = getOpaqueTag(aETag);
+
+        for (final String value : aIfNoneMatch.split(COMMA)) {
+            final String tag = value.trim();
+
+            if (ANY.equals(tag) || getOpaqueTag(tag).equals(etag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets an entity tag without its weak prefix, if it has one.
+     *
+     * @param aETag An entity tag
+     * @return The entity tag's opaque part, in quotes
+     */
+    private static String getOpaqueTag(final String aETag) {
+        final String etag = aETag.trim();
+
+        return etag.startsWith(WEAK_PREFIX) ? etag.substring(WEAK_PREFIX.length()) : etag;
+    }
+}
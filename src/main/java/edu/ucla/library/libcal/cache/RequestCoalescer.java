@@ -0,0 +1,107 @@
+
+package edu.ucla.library.libcal.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+
+/**
+ * Collapses concurrent identical requests into one: while a request for a key is in flight, anyone else asking for the
+ * same key waits for its result instead of starting a request of their own.
+ * <p>
+ * Callers may be on different event loops, so each waiting caller is handed the result on its own context.
+ *
+ * @param <K> The type of key that identifies identical requests
+ * @param <V> The type of a request's result
+ */
+public final class RequestCoalescer<K, V> {
+
+    /**
+     * The requests that are in flight, by key.
+     */
+    private final Map<K, Future<V>> myInFlight = new ConcurrentHashMap<>();
+
+    /**
+     * The number of requests that were collapsed into one that was already in flight.
+     */
+    private final LongAdder myCollapsedCount = new LongAdder();
+
+    /**
+     * Gets the result of a request, starting the request only if an identical one isn't already in flight.
+     *
+     * @param aKey The key that identifies identical requests
+     * @param aRequest A supplier that starts the request
+     * @return A Future that resolves to the request's result
+     */
+    public Future<V> execute(final K aKey, final Supplier<Future<V>> aRequest) {
+        final Promise<V> promise = Promise.promise();
+        final Future<V> inFlight = myInFlight.putIfAbsent(aKey, promise.future());
+
+        if (inFlight != null) {
+            myCollapsedCount.increment();
+            return onCurrentContext(inFlight);
+        }
+
+        try {
+            aRequest.get().onComplete(result -> {
+                myInFlight.remove(aKey, promise.future());
+                promise.handle(result);
+            });
+        } catch (final RuntimeException details) {
+            myInFlight.remove(aKey, promise.future());
+            promise.fail(details);
+        }
+
+        return promise.future();
+    }
+
+    /**
+     * Gets the number of requests that were collapsed into one that was already in flight.
+     *
+     * @return The number of collapsed requests
+     */
+    public long getCollapsedCount() {
+        return myCollapsedCount.sum();
+    }
+
+    /**
+     * Gets the number of distinct requests that are in flight.
+     *
+     * @return The number of requests in flight
+     */
+    public int getInFlightCount() {
+        return myInFlight.size();
+    }
+
+    /**
+     * Wraps a shared Future so that its result is delivered on the caller's context.
+     *
+     * @param aFuture A Future that may be completed on another context
+     * @return A Future that's completed on the caller's context
+     */
+    private Future<V> onCurrentContext(final Future<V> aFuture) {
+        final Context context = Vertx.currentContext();
+        final Promise<V> promise;
+
+        if (context == null) {
+            return aFuture;
+        }
+
+        promise = Promise.promise();
+        aFuture.onComplete(result -> {
+            if (Vertx.currentContext() == context) {
+                promise.handle(result);
+            } else {
+                context.runOnContext(unused -> promise.handle(result));
+            }
+        });
+
+        return promise.future();
+    }
+}
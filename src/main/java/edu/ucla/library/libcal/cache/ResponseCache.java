@@ -0,0 +1,570 @@
+
+package edu.ucla.library.libcal.cache;
+
+import static info.freelibrary.util.Constants.COMMA;
+import static info.freelibrary.util.Constants.EMPTY;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import info.freelibrary.util.HTTP;
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.MessageCodes;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpResponse;
+
+/**
+ * A size-bounded, in-memory cache of LibCal responses to idempotent requests.
+ * <p>
+ * Entries are evicted by Caffeine's W-TinyLFU policy once the cache holds more than its maximum number of bytes, so the
+ * popular queries that most browsers repeat stay cached while one-off queries don't push them out. Each entry lives for
+ * its endpoint's TTL, cut short by any freshness limit LibCal gives in its <code>Cache-Control</code> or
+ * <code>Expires</code> headers; responses that LibCal marks as uncacheable aren't stored at all. An entry is kept for a
+ * while past its TTL, though it's no longer served as a cache hit, so that it can stand in for LibCal when LibCal
+ * fails.
+ * <p>
+ * Cache misses for the same key that arrive while LibCal is still answering the first one wait for that answer rather
+ * than each calling LibCal, which also holds when caching itself is turned off.
+ */
+public final class ResponseCache implements MeterBinder {
+
+    /**
+     * The default maximum size of the cache, in bytes.
+     */
+    public static final long DEFAULT_MAX_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * The default number of seconds that a response is cached.
+     */
+    public static final long DEFAULT_TTL = 60;
+
+    /**
+     * The default number of seconds a response is kept past its TTL, to stand in for a LibCal failure.
+     */
+    public static final long DEFAULT_STALE_IF_ERROR = 300;
+
+    /**
+     * The default number of seconds past its TTL that a response is still served while it's refreshed.
+     */
+    public static final long DEFAULT_STALE_WHILE_REVALIDATE = 30;
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseCache.class, MessageCodes.BUNDLE);
+
+    /**
+     * The separator between an endpoint and its TTL in the endpoint TTL configuration.
+     */
+    private static final char EQUALS = '=';
+
+    /**
+     * The separator between the parameters of a query string.
+     */
+    private static final char AMPERSAND = '&';
+
+    /**
+     * The separator between a path and its query string.
+     */
+    private static final char QUESTION_MARK = '?';
+
+    /**
+     * The separator between the method and the path of a cache key.
+     */
+    private static final char SPACE = ' ';
+
+    /**
+     * The Cache-Control directive that forbids storing a response.
+     */
+    private static final String NO_STORE = "no-store";
+
+    /**
+     * The Cache-Control directive that forbids serving a response without revalidating it.
+     */
+    private static final String NO_CACHE = "no-cache";
+
+    /**
+     * The Cache-Control directive that forbids storing a response in a shared cache.
+     */
+    private static final String PRIVATE = "private";
+
+    /**
+     * The Cache-Control directive that limits a response's freshness in any cache.
+     */
+    private static final String MAX_AGE = "max-age=";
+
+    /**
+     * The Cache-Control directive that limits a response's freshness in a shared cache.
+     */
+    private static final String S_MAXAGE = "s-maxage=";
+
+    /**
+     * The Vary header value that says a response can't be reused for any other request.
+     */
+    private static final String VARY_ALL = "*";
+
+    /**
+     * The cached responses, or null if caching is turned off.
+     */
+    private final Cache<String, CachedResponse> myCache;
+
+    /**
+     * The source of the cache's notion of time.
+     */
+    private final Ticker myTicker;
+
+    /**
+     * The number of seconds a response is cached when its endpoint doesn't have its own TTL.
+     */
+    private final long myDefaultTtl;
+
+    /**
+     * The number of nanoseconds a response is kept past its TTL, to stand in for a LibCal failure.
+     */
+    private final long myStaleIfError;
+
+    /**
+     * The number of nanoseconds past its TTL that a response is still served while it's refreshed in the background.
+     */
+    private final long myStaleWhileRevalidate;
+
+    /**
+     * The endpoint path prefixes that have their own TTLs, longest prefix first.
+     */
+    private final List<Map.Entry<String, Long>> myEndpointTtls;
+
+    /**
+     * The LibCal requests that are in flight, so identical concurrent requests can share them.
+     */
+    private final RequestCoalescer<String, CachedResponse> myCoalescer = new RequestCoalescer<>();
+
+    /**
+     * Creates a new response cache that keeps responses past their TTLs, serves them while they're refreshed in the
+     * background, and uses the supplied ticker to tell the time. Use {@link #fromConfig(JsonObject)} outside of tests.
+     *
+     * @param aMaxSize The maximum size of the cache, in bytes; zero turns caching off
+     * @param aDefaultTtl The number of seconds a response is cached when its endpoint doesn't have its own TTL
+     * @param aEndpointTtls A comma-separated list of <code>/path/prefix=seconds</code> endpoint TTLs
+     * @param aStaleIfError The number of seconds a response is kept past its TTL
+     * @param aStaleWhileRevalidate The number of seconds past its TTL that a response is served while it's refreshed
+     * @param aTicker The source of the cache's notion of time
+     * @throws IllegalArgumentException If an endpoint TTL is invalid
+     */
+    ResponseCache(final long aMaxSize, final long aDefaultTtl, final String aEndpointTtls, final long aStaleIfError,
+            final long aStaleWhileRevalidate, final Ticker aTicker) {
+        myTicker = aTicker;
+        myDefaultTtl = aDefaultTtl;
+        myStaleIfError = TimeUnit.SECONDS.toNanos(Math.max(0, aStaleIfError));
+        myStaleWhileRevalidate = TimeUnit.SECONDS.toNanos(Math.max(0, aStaleWhileRevalidate));
+        myEndpointTtls = parseEndpointTtls(aEndpointTtls);
+
+        if (aMaxSize > 0) {
+            // A response is kept for as long as it can stand in for either a failure or a refresh
+            myCache = Caffeine.newBuilder().maximumWeight(aMaxSize).weigher(ResponseCache::weigh)
+                    .expireAfter(new TtlExpiry(Math.max(myStaleIfError, myStaleWhileRevalidate))).ticker(aTicker)
+                    .executor(Runnable::run).build();
+        } else {
+            myCache = null;
+        }
+    }
+
+    /**
+     * Creates a response cache from the application's configuration.
+     *
+     * @param aConfig An application configuration
+     * @return A response cache
+     * @throws IllegalArgumentException If the configuration contains an invalid endpoint TTL
+     */
+    public static ResponseCache fromConfig(final JsonObject aConfig) {
+        return new ResponseCache(aConfig.getLong(Config.CACHE_MAX_SIZE, DEFAULT_MAX_SIZE),
+                aConfig.getLong(Config.CACHE_TTL, DEFAULT_TTL), aConfig.getString(Config.CACHE_ENDPOINT_TTLS),
+                aConfig.getLong(Config.CACHE_STALE_IF_ERROR, DEFAULT_STALE_IF_ERROR),
+                aConfig.getLong(Config.CACHE_STALE_WHILE_REVALIDATE, DEFAULT_STALE_WHILE_REVALIDATE),
+                Ticker.systemTicker());
+    }
+
+    /**
+     * Gets the cache key for a request. The query's parameters are sorted, so the same query with its parameters in a
+     * different order will share a cache entry.
+     *
+     * @param aMethod A request's HTTP method
+     * @param aPath A request's path
+     * @param aQuery A request's (possibly null) query string
+     * @return The request's cache key
+     */
+    public static String getKey(final String aMethod, final String aPath, final String aQuery) {
+        final StringBuilder key = new StringBuilder(aMethod).append(SPACE).append(aPath);
+
+        if (aQuery != null && !aQuery.isEmpty()) {
+            final String[] params = aQuery.split(String.valueOf(AMPERSAND));
+            char separator = QUESTION_MARK;
+
+            Arrays.sort(params);
+
+            for (final String param : params) {
+                if (!param.isEmpty()) {
+                    key.append(separator).append(param);
+                    separator = AMPERSAND;
+                }
+            }
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Checks whether responses are being cached.
+     *
+     * @return True if responses are being cached; else, false
+     */
+    public boolean isEnabled() {
+        return myCache != null;
+    }
+
+    /**
+     * Gets a cached response.
+     *
+     * @param aKey A cache key from {@link #getKey(String, String, String)}
+     * @return The cached response, or an empty Optional if there isn't a fresh one
+     */
+    public Optional<CachedResponse> get(final String aKey) {
+        return getStale(aKey).filter(response -> response.isFresh(myTicker.read()));
+    }
+
+    /**
+     * Gets a cached response even if it's past its TTL, to stand in for a LibCal failure.
+     *
+     * @param aKey A cache key from {@link #getKey(String, String, String)}
+     * @return The cached response, or an empty Optional if there isn't one
+     */
+    public Optional<CachedResponse> getStale(final String aKey) {
+        return myCache == null ? Optional.empty() : Optional.ofNullable(myCache.getIfPresent(aKey));
+    }
+
+    /**
+     * Gets a response from the cache or, if there isn't a fresh one, from LibCal. Concurrent identical fetches are
+     * collapsed into a single LibCal request whose response is shared by every caller.
+     * <p>
+     * A response that's past its TTL, but not yet past the stale-while-revalidate window that follows it, is returned
+     * at once while a single background fetch refreshes it; only past that window do callers wait on LibCal. A refresh
+     * that fails, or gets a 5xx, leaves the cached response in place.
+     *
+     * @param aKey A cache key from {@link #getKey(String, String, String)}
+     * @param aPath The path of the request
+     * @param aFetcher A supplier that requests the response from LibCal
+     * @return A Future that resolves to the cached or fetched response
+     */
+    public Future<CachedResponse> fetch(final String aKey, final String aPath,
+            final Supplier<Future<HttpResponse<Buffer>>> aFetcher) {
+        final Optional<CachedResponse> cachedResponse = getStale(aKey);
+        final Supplier<Future<CachedResponse>> fetcher =
+                () -> aFetcher.get().map(response -> store(aKey, aPath, response));
+
+        if (cachedResponse.isPresent()) {
+            final CachedResponse response = cachedResponse.get();
+            final long now = myTicker.read();
+
+            if (response.isFresh(now)) {
+                return Future.succeededFuture(response);
+            }
+
+            if (response.isFresh(now - myStaleWhileRevalidate)) {
+                LOGGER.debug(MessageCodes.LCP_034, aKey);
+
+                // The coalescer keeps this to one refresh at a time, however many callers get the stale response
+                myCoalescer.execute(aKey, fetcher);
+                return Future.succeededFuture(response);
+            }
+        }
+
+        return myCoalescer.execute(aKey, fetcher);
+    }
+
+    /**
+     * Caches a LibCal response, if it's cacheable.
+     *
+     * @param aKey A cache key from {@link #getKey(String, String, String)}
+     * @param aPath The path of the request the response answers
+     * @param aResponse A LibCal response
+     * @return True if the response was cached; else, false
+     */
+    public boolean put(final String aKey, final String aPath, final HttpResponse<Buffer> aResponse) {
+        return isEnabled() && store(aKey, aPath, aResponse).getTtl() > 0;
+    }
+
+    /**
+     * Gets the number of requests that were collapsed into a LibCal request that was already in flight.
+     *
+     * @return The number of collapsed requests
+     */
+    public long getCollapsedCount() {
+        return myCoalescer.getCollapsedCount();
+    }
+
+    /**
+     * Registers the cache's metrics: the number of requests that were collapsed into a LibCal request already in
+     * flight.
+     *
+     * @param aRegistry A metrics registry
+     */
+    @Override
+    public void bindTo(final MeterRegistry aRegistry) {
+        FunctionCounter.builder("libcal.proxy.requests.collapsed", myCoalescer, RequestCoalescer::getCollapsedCount)
+                .description("Requests that shared a LibCal request already in flight").register(aRegistry);
+    }
+
+    /**
+     * Checks whether a response is cached and will still be fresh after the supplied number of seconds, so a refresh
+     * can be made before it expires.
+     *
+     * @param aKey A cache key from {@link #getKey(String, String, String)}
+     * @param aSeconds The number of seconds the response must stay fresh
+     * @return True if the response is cached and stays fresh that long; else, false
+     */
+    public boolean isFreshFor(final String aKey, final long aSeconds) {
+        final long later = myTicker.read() + TimeUnit.SECONDS.toNanos(aSeconds);
+
+        return getStale(aKey).filter(response -> response.isFresh(later)).isPresent();
+    }
+
+    /**
+     * Gets how long a cached response has been in the cache.
+     *
+     * @param aResponse A cached response
+     * @return The number of whole seconds the response has been in the cache
+     */
+    public long getAge(final CachedResponse aResponse) {
+        return aResponse.getAge(myTicker.read());
+    }
+
+    /**
+     * Wraps a LibCal response so that it can be shared, and caches it if it's cacheable.
+     *
+     * @param aKey A cache key from {@link #getKey(String, String, String)}
+     * @param aPath The path of the request the response answers
+     * @param aResponse A LibCal response
+     * @return The wrapped response, whose TTL is zero if it wasn't cached
+     */
+    private CachedResponse store(final String aKey, final String aPath, final HttpResponse<Buffer> aResponse) {
+        final long ttl = isEnabled() && aResponse.statusCode() == HTTP.OK ? getTtl(aPath, aResponse.headers()) : 0;
+        final CachedResponse response = new CachedResponse(aResponse.statusCode(), aResponse.statusMessage(),
+                MultiMap.caseInsensitiveMultiMap().addAll(aResponse.headers()),
+                aResponse.body() != null ? aResponse.body() : Buffer.buffer(), myTicker.read(),
+                TimeUnit.SECONDS.toNanos(ttl));
+
+        if (ttl > 0) {
+            myCache.put(aKey, response);
+        }
+
+        return response;
+    }
+
+    /**
+     * Gets the number of seconds that a response should be cached: its endpoint's TTL, limited by any freshness
+     * information that LibCal sent with the response.
+     *
+     * @param aPath The path of the request the response answers
+     * @param aHeaders The response's headers
+     * @return The number of seconds the response should be cached; zero if it shouldn't be cached
+     */
+    long getTtl(final String aPath, final MultiMap aHeaders) {
+        final String cacheControl = aHeaders.get(HttpHeaders.CACHE_CONTROL);
+        final String expires = aHeaders.get(HttpHeaders.EXPIRES);
+        long ttl = getEndpointTtl(aPath);
+        long maxAge = -1;
+        long sharedMaxAge = -1;
+
+        if (ttl <= 0 || aHeaders.contains(HttpHeaders.SET_COOKIE) || VARY_ALL.equals(aHeaders.get(HttpHeaders.VARY))) {
+            return 0;
+        }
+
+        if (cacheControl != null) {
+            for (final String directive : cacheControl.toLowerCase(Locale.ROOT).split(COMMA)) {
+                final String trimmed = directive.trim();
+
+                if (NO_STORE.equals(trimmed) || NO_CACHE.equals(trimmed) || PRIVATE.equals(trimmed)) {
+                    return 0;
+                } else if (trimmed.startsWith(S_MAXAGE)) {
+                    sharedMaxAge = parseSeconds(trimmed.substring(S_MAXAGE.length()));
+                } else if (trimmed.startsWith(MAX_AGE)) {
+                    maxAge = parseSeconds(trimmed.substring(MAX_AGE.length()));
+                }
+            }
+        }
+
+        // A shared cache uses s-maxage over max-age, and either over Expires
+        if (sharedMaxAge >= 0) {
+            ttl = Math.min(ttl, sharedMaxAge);
+        } else if (maxAge >= 0) {
+            ttl = Math.min(ttl, maxAge);
+        } else if (expires != null) {
+            ttl = Math.min(ttl, getSecondsUntil(expires, aHeaders.get(HttpHeaders.DATE)));
+        }
+
+        return ttl;
+    }
+
+    /**
+     * Gets the TTL of the endpoint that a path belongs to.
+     *
+     * @param aPath A request path
+     * @return The number of seconds that responses from the endpoint are cached
+     */
+    long getEndpointTtl(final String aPath) {
+        for (final Map.Entry<String, Long> endpoint : myEndpointTtls) {
+            if (aPath.startsWith(endpoint.getKey())) {
+                return endpoint.getValue();
+            }
+        }
+
+        return myDefaultTtl;
+    }
+
+    /**
+     * Parses a list of endpoint TTLs.
+     *
+     * @param aEndpointTtls A (possibly null) comma-separated list of <code>/path/prefix=seconds</code> endpoint TTLs
+     * @return The endpoint TTLs, longest path prefix first
+     * @throws IllegalArgumentException If an endpoint TTL is invalid
+     */
+    private static List<Map.Entry<String, Long>> parseEndpointTtls(final String aEndpointTtls) {
+        final List<Map.Entry<String, Long>> endpointTtls = new ArrayList<>();
+
+        if (aEndpointTtls != null) {
+            for (final String endpointTtl : aEndpointTtls.split(COMMA)) {
+                final String trimmed = endpointTtl.trim();
+                final int index = trimmed.lastIndexOf(EQUALS);
+
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+
+                try {
+                    if (index < 1) {
+                        throw new NumberFormatException(trimmed);
+                    }
+
+                    endpointTtls.add(Map.entry(trimmed.substring(0, index).trim(),
+                            Long.parseLong(trimmed.substring(index + 1).trim())));
+                } catch (final NumberFormatException details) {
+                    throw new IllegalArgumentException(LOGGER.getMessage(MessageCodes.LCP_015, trimmed), details);
+                }
+            }
+        }
+
+        endpointTtls
+                .sort(Comparator.comparingInt((Map.Entry<String, Long> entry) -> entry.getKey().length()).reversed());
+
+        return endpointTtls;
+    }
+
+    /**
+     * Parses the number of seconds in a Cache-Control directive.
+     *
+     * @param aValue A directive's value
+     * @return The number of seconds, or zero if the value isn't a valid number of seconds
+     */
+    private static long parseSeconds(final String aValue) {
+        try {
+            return Math.max(0, Long.parseLong(aValue.replace("\"", EMPTY).trim()));
+        } catch (final NumberFormatException details) {
+            return 0;
+        }
+    }
+
+    /**
+     * Gets the number of seconds until an Expires date, as measured from LibCal's Date header when there is one.
+     *
+     * @param aExpires An Expires header value
+     * @param aDate A (possibly null) Date header value
+     * @return The number of seconds until the Expires date, or zero if it's passed or invalid
+     */
+    private static long getSecondsUntil(final String aExpires, final String aDate) {
+        try {
+            final Instant expires = ZonedDateTime.parse(aExpires, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            final Instant now = aDate != null
+                    ? ZonedDateTime.parse(aDate, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant() : Instant.now();
+
+            return Math.max(0, expires.getEpochSecond() - now.getEpochSecond());
+        } catch (final DateTimeParseException details) {
+            // An invalid Expires date means the response has already expired
+            return 0;
+        }
+    }
+
+    /**
+     * Weighs a cache entry by its approximate size in bytes.
+     *
+     * @param aKey A cache key
+     * @param aResponse A cached response
+     * @return The approximate size of the entry
+     */
+    private static int weigh(final String aKey, final CachedResponse aResponse) {
+        return aKey.length() + aResponse.getSize();
+    }
+
+    /**
+     * An expiration policy that lets each cached response live for its own TTL, plus the time it's kept to stand in for
+     * a LibCal failure.
+     */
+    private static final class TtlExpiry implements Expiry<String, CachedResponse> {
+
+        /**
+         * The number of nanoseconds a response is kept past its TTL.
+         */
+        private final long myStaleIfError;
+
+        /**
+         * Creates a new expiration policy.
+         *
+         * @param aStaleIfError The number of nanoseconds a response is kept past its TTL
+         */
+        private TtlExpiry(final long aStaleIfError) {
+            myStaleIfError = aStaleIfError;
+        }
+
+        @Override
+        public long expireAfterCreate(final String aKey, final CachedResponse aResponse, final long aCurrentTime) {
+            return aResponse.getTtl() + myStaleIfError;
+        }
+
+        @Override
+        public long expireAfterUpdate(final String aKey, final CachedResponse aResponse, final long aCurrentTime,
+                final long aCurrentDuration) {
+            return aResponse.getTtl() + myStaleIfError;
+        }
+
+        @Override
+        public long expireAfterRead(final String aKey, final CachedResponse aResponse, final long aCurrentTime,
+                final long aCurrentDuration) {
+            return aCurrentDuration;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+
+package edu.ucla.library.libcal.handlers;
+
+import static edu.ucla.library.libcal.MediaType.APPLICATION_JSON;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import info.freelibrary.util.HTTP;
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.ContentEncoding;
+import edu.ucla.library.libcal.JsonKeys;
+import edu.ucla.library.libcal.JsonProjection;
+import edu.ucla.library.libcal.MessageCodes;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.client.HttpResponse;
+
+/**
+ * A handler that makes a batch of LibCal requests for one client request and answers with all their responses.
+ * <p>
+ * Each request in the batch goes through the proxy handler's access checks, response cache, and LibCal calls, just as
+ * it would on its own, but no more than a set number of them are in flight at once. The responses are returned in the
+ * order of the requests, each with its status code and its body (parsed, if it's JSON) or error.
+ */
+public class BatchHandler implements Handler<RoutingContext> {
+
+    /**
+     * The path of the batch operation, whose JSON body is read up front rather than streamed to LibCal.
+     */
+    public static final String PATH = "/batch";
+
+    /**
+     * The default most requests in one batch.
+     */
+    public static final int DEFAULT_MAX_REQUESTS = 20;
+
+    /**
+     * The default most requests of a batch that are in flight at once.
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * The handler's logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchHandler.class, MessageCodes.BUNDLE);
+
+    /**
+     * The handler's copy of the Vert.x instance.
+     */
+    private final Vertx myVertx;
+
+    /**
+     * The proxy handler that answers the batch's requests.
+     */
+    private final ProxyHandler myProxyHandler;
+
+    /**
+     * The most requests in one batch.
+     */
+    private final int myMaxRequests;
+
+    /**
+     * The most requests of a batch that are in flight at once.
+     */
+    private final int myParallelism;
+
+    /**
+     * Creates a handler that answers batches of LibCal requests.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aConfig Application config stored in JSON
+     * @param aProxyHandler The proxy handler that answers the batch's requests
+     */
+    public BatchHandler(final Vertx aVertx, final JsonObject aConfig, final ProxyHandler aProxyHandler) {
+        myVertx = aVertx;
+        myProxyHandler = aProxyHandler;
+        myMaxRequests = Math.max(1, aConfig.getInteger(Config.BATCH_MAX_REQUESTS, DEFAULT_MAX_REQUESTS));
+        myParallelism = Math.max(1, aConfig.getInteger(Config.BATCH_PARALLELISM, DEFAULT_PARALLELISM));
+    }
+
+    @Override
+    public void handle(final RoutingContext aContext) {
+        final String clientIP = aContext.request().remoteAddress().hostAddress();
+        final JsonArray requests;
+        final JsonObject[] results;
+        final AtomicInteger next = new AtomicInteger();
+        final List<Future<Void>> workers = new ArrayList<>();
+
+        try {
+            requests = aContext.body().asJsonArray();
+        } catch (final DecodeException | ClassCastException details) {
+            sendError(aContext, HTTP.BAD_REQUEST, LOGGER.getMessage(MessageCodes.LCP_039, details.getMessage()));
+            return;
+        }
+
+        if (requests == null) {
+            sendError(aContext, HTTP.BAD_REQUEST, LOGGER.getMessage(MessageCodes.LCP_039, aContext.body().asString()));
+            return;
+        }
+
+        if (requests.size() > myMaxRequests) {
+            sendError(aContext, HTTP.PAYLOAD_TOO_LARGE, LOGGER.getMessage(MessageCodes.LCP_038, myMaxRequests));
+            return;
+        }
+
+        results = new JsonObject[requests.size()];
+
+        for (int index = 0; index < Math.min(myParallelism, requests.size()); index++) {
+            workers.add(work(clientIP, requests, results, next));
+        }
+
+        CompositeFuture.all(new ArrayList<>(workers)).onComplete(result -> {
+            aContext.response().setStatusCode(HTTP.OK).putHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON.toString())
+                    .end(new JsonArray(List.of(results)).encode());
+        });
+    }
+
+    /**
+     * Gets the Vert.x instance associated with this handler.
+     *
+     * @return The Vert.x instance associated with this handler
+     */
+    public Vertx getVertx() {
+        return myVertx;
+    }
+
+    /**
+     * Makes the batch's requests, one after another, until none are left; several of these run at once.
+     *
+     * @param aClientIP The IP address of the client that sent the batch
+     * @param aRequests The batch's requests
+     * @param aResults The results of the batch's requests, by index
+     * @param aNext The index of the next request to make
+     * @return A Future that completes when there are no requests left to make
+     */
+    private Future<Void> work(final String aClientIP, final JsonArray aRequests, final JsonObject[] aResults,
+            final AtomicInteger aNext) {
+        final int index = aNext.getAndIncrement();
+
+        if (index >= aRequests.size()) {
+            return Future.succeededFuture();
+        }
+
+        return getResult(aClientIP, aRequests.getValue(index)).compose(result -> {
+            aResults[index] = result;
+            return work(aClientIP, aRequests, aResults, aNext);
+        });
+    }
+
+    /**
+     * Makes one of the batch's requests.
+     *
+     * @param aClientIP The IP address of the client that sent the batch
+     * @param aRequest A <code>{"method": "GET", "path": "/api/1.1/...", "query": "..."}</code> request
+     * @return A Future that resolves to the request's result; it doesn't fail
+     */
+    private Future<JsonObject> getResult(final String aClientIP, final Object aRequest) {
+        final JsonObject invalid =
+                getError(HTTP.BAD_REQUEST, LOGGER.getMessage(MessageCodes.LCP_039, String.valueOf(aRequest)));
+        final String method;
+        final String path;
+        final String query;
+
+        if (!(aRequest instanceof JsonObject)) {
+            return Future.succeededFuture(invalid);
+        }
+
+        try {
+            method = ((JsonObject) aRequest).getString(JsonKeys.METHOD, HttpMethod.GET.name()).toUpperCase(Locale.ROOT);
+            path = ((JsonObject) aRequest).getString(JsonKeys.PATH);
+            query = ((JsonObject) aRequest).getString(JsonKeys.QUERY);
+        } catch (final ClassCastException details) {
+            return Future.succeededFuture(invalid);
+        }
+
+        if (!isValidPath(path) || !isValidQuery(query)) {
+            return Future.succeededFuture(invalid);
+        }
+
+        return myProxyHandler.getResponse(aClientIP, method, path, query).map(BatchHandler::getResult)
+                .otherwise(failure -> getError(ProxyHandler.getStatusCode(failure),
+                        LOGGER.getMessage(MessageCodes.LCP_006, ProxyHandler.getErrorMessage(failure))));
+    }
+
+    /**
+     * Gets the result of one of the batch's requests from LibCal's response: its status code and its body, which is
+     * parsed if it's JSON and decoded if it's compressed.
+     *
+     * @param aResponse LibCal's response
+     * @return The request's result
+     */
+    private static JsonObject getResult(final HttpResponse<Buffer> aResponse) {
+        final JsonObject result = new JsonObject().put(JsonKeys.STATUS, aResponse.statusCode());
+        final String coding = ContentEncoding.getCoding(aResponse.headers());
+        final String contentType = aResponse.getHeader(HttpHeaders.CONTENT_TYPE.toString());
+        Buffer body = aResponse.body();
+
+        if (body == null || body.length() == 0) {
+            return result;
+        }
+
+        if (coding != null) {
+            try {
+                body = ContentEncoding.decode(body, coding);
+            } catch (final IOException details) {
+                return getError(HTTP.BAD_GATEWAY, LOGGER.getMessage(MessageCodes.LCP_006, details.getMessage()));
+            }
+        }
+
+        if (JsonProjection.isJson(contentType)) {
+            try {
+                return result.put(JsonKeys.BODY, Json.decodeValue(body));
+            } catch (final DecodeException details) {
+                // LibCal's body isn't the JSON it says it is, so it's passed on as it is
+            }
+        }
+
+        return result.put(JsonKeys.BODY, body.toString());
+    }
+
+    /**
+     * Gets the result of one of the batch's requests that failed.
+     *
+     * @param aStatusCode The status code of the failure
+     * @param aError The reason for the failure
+     * @return The request's result
+     */
+    private static JsonObject getError(final int aStatusCode, final String aError) {
+        return new JsonObject().put(JsonKeys.STATUS, aStatusCode).put(JsonKeys.ERROR, aError);
+    }
+
+    /**
+     * Checks whether a batch request's path can be sent to LibCal: it's absolute and has no query string, fragment,
+     * whitespace, or control characters.
+     *
+     * @param aPath A (possibly null) request path
+     * @return True if the path is valid; else, false
+     */
+    private static boolean isValidPath(final String aPath) {
+        return aPath != null && !aPath.isEmpty() && aPath.charAt(0) == '/' && aPath.indexOf('?') == -1 &&
+                isRequestLineSafe(aPath);
+    }
+
+    /**
+     * Checks whether a batch request's query string can be sent to LibCal: it has no fragment, whitespace, or control
+     * characters, any of which would let it end the request line and add headers or requests of its own.
+     *
+     * @param aQuery A (possibly null) query string
+     * @return True if the query string is absent or valid; else, false
+     */
+    private static boolean isValidQuery(final String aQuery) {
+        return aQuery == null || isRequestLineSafe(aQuery);
+    }
+
+    /**
+     * Checks whether a part of a request line has no fragment, whitespace, or control characters.
+     *
+     * @param aPart A part of a request line
+     * @return True if the part can go in a request line as it is; else, false
+     */
+    private static boolean isRequestLineSafe(final String aPart) {
+        for (int index = 0; index < aPart.length(); index++) {
+            final char character = aPart.charAt(index);
+
+            if (Character.isWhitespace(character) || Character.isISOControl(character) || character == '#') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Answers the whole batch with an error.
+     *
+     * @param aContext The batch's routing context
+     * @param aStatusCode The error's status code
+     * @param aError The error's message
+     */
+    private static void sendError(final RoutingContext aContext, final int aStatusCode, final String aError) {
+        aContext.response().setStatusCode(aStatusCode).putHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON.toString())
+                .end(new JsonObject().put(JsonKeys.ERROR, aError).encodePrettily());
+    }
+}
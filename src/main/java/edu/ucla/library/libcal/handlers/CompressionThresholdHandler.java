@@ -0,0 +1,63 @@
+
+package edu.ucla.library.libcal.handlers;
+
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * A handler that keeps small response bodies from being compressed, since compressing them saves too few bytes to be
+ * worth the time (and can even make them bigger). A response whose length is known and below the threshold is marked
+ * with the identity content coding, which the server's compressor leaves alone and takes off before it's sent.
+ */
+public class CompressionThresholdHandler implements Handler<RoutingContext> {
+
+    /**
+     * The default number of bytes a response body must have to be compressed.
+     */
+    public static final long DEFAULT_MIN_SIZE = 1024;
+
+    /**
+     * The number of bytes a response body must have to be compressed.
+     */
+    private final long myMinSize;
+
+    /**
+     * Creates a handler that keeps small response bodies from being compressed.
+     *
+     * @param aMinSize The number of bytes a response body must have to be compressed
+     */
+    public CompressionThresholdHandler(final long aMinSize) {
+        myMinSize = aMinSize;
+    }
+
+    @Override
+    public void handle(final RoutingContext aContext) {
+        aContext.addHeadersEndHandler(end -> {
+            final MultiMap headers = aContext.response().headers();
+            final String contentLength = headers.get(HttpHeaders.CONTENT_LENGTH);
+
+            if (contentLength != null && !headers.contains(HttpHeaders.CONTENT_ENCODING) &&
+                    isBelowThreshold(contentLength)) {
+                headers.set(HttpHeaders.CONTENT_ENCODING, HttpHeaders.IDENTITY);
+            }
+        });
+
+        aContext.next();
+    }
+
+    /**
+     * Checks whether a response body's length is below the compression threshold.
+     *
+     * @param aContentLength A Content-Length header value
+     * @return True if the body is too small to compress; else, false
+     */
+    private boolean isBelowThreshold(final String aContentLength) {
+        try {
+            return Long.parseLong(aContentLength.trim()) < myMinSize;
+        } catch (final NumberFormatException details) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+
+package edu.ucla.library.libcal.handlers;
+
+import info.freelibrary.util.HTTP;
+
+import edu.ucla.library.libcal.metrics.ProxyMetrics;
+
+import io.prometheus.client.exporter.common.TextFormat;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * A handler that returns the application's metrics in the Prometheus text format.
+ */
+public class MetricsHandler implements Handler<RoutingContext> {
+
+    /**
+     * The handler's copy of the Vert.x instance.
+     */
+    private final Vertx myVertx;
+
+    /**
+     * The application's metrics.
+     */
+    private final ProxyMetrics myMetrics;
+
+    /**
+     * Creates a handler that returns the application's metrics.
+     *
+     * @param aVertx A Vert.x instance
+     */
+    public MetricsHandler(final Vertx aVertx) {
+        myVertx = aVertx;
+        myMetrics = ProxyMetrics.get(aVertx);
+    }
+
+    @Override
+    public void handle(final RoutingContext aContext) {
+        aContext.response().setStatusCode(HTTP.OK).putHeader(HttpHeaders.CONTENT_TYPE, TextFormat.CONTENT_TYPE_004)
+                .end(myMetrics.scrape());
+    }
+
+    /**
+     * Gets the Vert.x instance associated with this handler.
+     *
+     * @return The Vert.x instance associated with this handler
+     */
+    public Vertx getVertx() {
+        return myVertx;
+    }
+}
@@ -1,16 +1,23 @@
 
 package edu.ucla.library.libcal.handlers;
 
-import static edu.ucla.library.libcal.Constants.LOCAL_HOST;
 import static edu.ucla.library.libcal.MediaType.APPLICATION_JSON;
 import static info.freelibrary.util.Constants.COMMA;
 import static info.freelibrary.util.Constants.EMPTY;
+import static info.freelibrary.util.Constants.EQUALS;
 
-import java.util.regex.Pattern;
-
-import com.github.veqryn.collect.Cidr4Trie;
-import com.github.veqryn.net.Cidr4;
-import com.github.veqryn.net.Ip4;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeSet;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 import info.freelibrary.util.HTTP;
 import info.freelibrary.util.Logger;
@@ -18,26 +25,60 @@ import info.freelibrary.util.LoggerFactory;
 
 import edu.ucla.library.libcal.Config;
 import edu.ucla.library.libcal.Constants;
-import edu.ucla.library.libcal.HttpResponseMapper;
+import edu.ucla.library.libcal.ContentEncoding;
+import edu.ucla.library.libcal.HttpResponseImpl;
 import edu.ucla.library.libcal.JsonKeys;
+import edu.ucla.library.libcal.JsonProjection;
 import edu.ucla.library.libcal.MessageCodes;
+import edu.ucla.library.libcal.access.IpAllowlist;
+import edu.ucla.library.libcal.access.RoutePolicy;
+import edu.ucla.library.libcal.access.RouteTable;
+import edu.ucla.library.libcal.cache.CacheWarmer;
+import edu.ucla.library.libcal.cache.CachedResponse;
+import edu.ucla.library.libcal.cache.ConditionalRequests;
+import edu.ucla.library.libcal.cache.ResponseCache;
+import edu.ucla.library.libcal.metrics.ProxyMetrics;
+import edu.ucla.library.libcal.services.CircuitBreaker;
+import edu.ucla.library.libcal.services.CircuitOpenException;
 import edu.ucla.library.libcal.services.LibCalProxyService;
+import edu.ucla.library.libcal.services.LocalServices;
 import edu.ucla.library.libcal.services.OAuthTokenService;
+import edu.ucla.library.libcal.services.RequestBatcher;
+import edu.ucla.library.libcal.services.RequestScheduler;
+import edu.ucla.library.libcal.services.RequestShedException;
+import edu.ucla.library.libcal.services.TokenHolder;
 
+import io.netty.channel.ConnectTimeoutException;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.ConnectionPoolTooBusyException;
+import io.vertx.core.http.HttpClientResponse;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.http.StreamResetException;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.web.RequestBody;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.handler.HttpException;
 
 /**
  * A handler that processes status information requests.
  */
 public class ProxyHandler implements Handler<RoutingContext> {
 
+    /**
+     * The default maximum size, in bytes, of a request body that will be passed on to LibCal.
+     */
+    public static final long DEFAULT_MAX_BODY_SIZE = 1024 * 1024;
+
     /**
      * The handler's logger.
      */
@@ -48,93 +89,323 @@ public class ProxyHandler implements Handler<RoutingContext> {
      */
     private static final String QUESTION_MARK = "?";
 
-    /** The LibCal event registration endpoint. */
-    private static final Pattern REGISTRATION = Pattern.compile("/api/1.1/events/[a-zA-Z0-9]+/register");
+    /**
+     * The separator between the parameters of an HTTP query string.
+     */
+    private static final String AMPERSAND = "&";
 
-    /** The LibCal event form endpoint. */
-    private static final Pattern EVENT_FORM = Pattern.compile("/api/1.1/events/form/[a-zA-Z0-9]+");
+    /**
+     * The header that marks a cached response that's served past its TTL.
+     */
+    private static final String WARNING = "Warning";
 
-    /** The LibCal event's HTML page. */
-    private static final Pattern EVENT_PAGE = Pattern.compile("/event/[a-zA-Z0-9]+");
+    /**
+     * The Warning header value that marks a cached response that's served past its TTL.
+     */
+    private static final String STALE_WARNING = "110 - \"Response is Stale\"";
 
     /**
-     * The handler's copy of the Vert.x instance.
+     * The headers that describe a single connection and so mustn't be forwarded by a proxy.
      */
-    private final Vertx myVertx;
+    private static final Set<String> HOP_BY_HOP_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    /**
+     * The LibCal response headers that are sent with a 304 (Not Modified), since they'd update the client's copy.
+     */
+    private static final List<CharSequence> NOT_MODIFIED_HEADERS = List.of(HttpHeaders.CACHE_CONTROL,
+            HttpHeaders.EXPIRES, HttpHeaders.LAST_MODIFIED, HttpHeaders.CONTENT_LOCATION, HttpHeaders.VARY);
+
+    static {
+        HOP_BY_HOP_HEADERS.addAll(List.of("Connection", "Keep-Alive", "Proxy-Authenticate", "Proxy-Authorization", "TE",
+                "Trailer", "Transfer-Encoding", "Upgrade"));
+    }
 
     /**
      * The handler's copy of the Vert.x instance.
      */
-    private final JsonObject myConfig;
+    private final Vertx myVertx;
 
     /**
-     * A service for LibCal API calls.
+     * A service for LibCal API calls; the in-JVM instance when there is one, otherwise an event bus proxy.
      */
     private final LibCalProxyService myApiProxy;
 
     /**
-     * A service for LibCal OAuth calls.
+     * A service for LibCal OAuth calls, for when the token service doesn't share this JVM's token holder.
      */
     private final OAuthTokenService myTokenProxy;
 
     /**
-     * The HTTP response deserializer.
+     * The current LibCal access token, when the token service lives in this JVM.
+     */
+    private final TokenHolder myTokenHolder;
+
+    /**
+     * The networks that are allowed to call the proxy.
+     */
+    private final IpAllowlist myAllowlist;
+
+    /**
+     * Whether LibCal responses are piped to clients as they arrive, rather than buffered first.
+     */
+    private final boolean myStreamResponses;
+
+    /**
+     * Whether LibCal is asked for compressed responses, which are passed through to the clients that accept them.
+     */
+    private final boolean myPassthrough;
+
+    /**
+     * Whether the LibCal proxy service lives in this JVM, which lets request bodies be streamed to it.
+     */
+    private final boolean isServiceLocal;
+
+    /**
+     * The maximum size, in bytes, of a request body that will be passed on to LibCal.
+     */
+    private final long myMaxBodySize;
+
+    /**
+     * The cache of LibCal responses to GET requests.
+     */
+    private final ResponseCache myCache;
+
+    /**
+     * The scheduler that keeps each LibCal client within its rate limit.
+     */
+    private final RequestScheduler myScheduler;
+
+    /**
+     * The application's metrics.
+     */
+    private final ProxyMetrics myMetrics;
+
+    /**
+     * The circuit breaker that fails LibCal requests fast while LibCal is failing.
+     */
+    private final CircuitBreaker myBreaker;
+
+    /**
+     * The policies of the routes, which say which are open to every client and which can be cached.
+     */
+    private final RouteTable myRoutes;
+
+    /**
+     * The cache warmer, which counts GET queries to learn the most requested ones.
+     */
+    private final CacheWarmer myWarmer;
+
+    /**
+     * The request batcher, which sends concurrent single-ID GETs of an endpoint to LibCal as one call.
+     */
+    private final RequestBatcher myBatcher;
+
+    /**
+     * The name of the query parameter that projects a JSON response onto a client's chosen fields, or null if responses
+     * aren't projected.
      */
-    private final HttpResponseMapper myMapper = new HttpResponseMapper();
+    private final String myFieldsParam;
 
     /**
-     * Creates a handler that returns a status response.
+     * Creates a handler that proxies requests to LibCal, using a shared IP allowlist, response cache, and request
+     * scheduler.
      *
      * @param aVertx A Vert.x instance
      * @param aConfig Application config stored in JSON
+     * @param aAllowlist The networks that are allowed to call the proxy
+     * @param aCache The cache of LibCal responses to GET requests
+     * @param aScheduler The scheduler that keeps each LibCal client within its rate limit
      */
-    public ProxyHandler(final Vertx aVertx, final JsonObject aConfig) {
+    public ProxyHandler(final Vertx aVertx, final JsonObject aConfig, final IpAllowlist aAllowlist,
+            final ResponseCache aCache, final RequestScheduler aScheduler) {
+        final String fieldsParam = aConfig.getString(Config.FIELDS_PARAM, JsonProjection.DEFAULT_PARAM);
+
         myVertx = aVertx;
-        myConfig = aConfig;
-        myApiProxy = LibCalProxyService.createProxy(myVertx);
+        myAllowlist = aAllowlist;
+        myCache = aCache;
+        myScheduler = aScheduler;
+        myApiProxy = LibCalProxyService.createLocalOrProxy(myVertx);
+        isServiceLocal =
+                LocalServices.lookup(myVertx, LibCalProxyService.ADDRESS, LibCalProxyService.class).isPresent();
+        // Streaming needs the service's HTTP client, so it's only possible when the service is in this JVM
+        myStreamResponses = aConfig.getBoolean(Config.STREAM_RESPONSES, false) && isServiceLocal;
+        myMaxBodySize = aConfig.getLong(Config.MAX_BODY_SIZE, DEFAULT_MAX_BODY_SIZE);
+        // Like streaming, passthrough needs to send headers, so it's only possible when the service is in this JVM
+        myPassthrough = aConfig.getBoolean(Config.COMPRESSION_PASSTHROUGH, true) && isServiceLocal;
         myTokenProxy = OAuthTokenService.createProxy(myVertx);
+        myTokenHolder = TokenHolder.get(myVertx);
+        myMetrics = ProxyMetrics.get(myVertx);
+        myBreaker = CircuitBreaker.get(myVertx, aConfig);
+        myRoutes = RouteTable.fromConfig(aConfig);
+        myWarmer = CacheWarmer.get(myVertx, aConfig);
+        myBatcher = RequestBatcher.get(myVertx, aConfig);
+        myFieldsParam = fieldsParam.isBlank() ? null : fieldsParam.trim();
+    }
+
+    /**
+     * Creates a handler that proxies requests to LibCal, with its own IP allowlist, response cache, and request
+     * scheduler built from the supplied configuration.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aConfig Application config stored in JSON
+     * @return A handler that proxies requests to LibCal
+     */
+    public static ProxyHandler fromConfig(final Vertx aVertx, final JsonObject aConfig) {
+        return new ProxyHandler(aVertx, aConfig, IpAllowlist.fromConfig(aConfig), ResponseCache.fromConfig(aConfig),
+                RequestScheduler.fromConfig(aVertx, aConfig));
     }
 
     @Override
     public void handle(final RoutingContext aContext) {
+        final HttpServerRequest request = aContext.request();
         final HttpServerResponse response = aContext.response();
-        final String path = aContext.request().path();
-        final String method = aContext.request().method().name();
-        final RequestBody payload = aContext.body();
-        final String originalClientIP = aContext.request().remoteAddress().hostAddress();
-        final String[] allowedIPsArray = myConfig.getString(Config.ALLOWED_IPS, LOCAL_HOST + "/32").split(COMMA);
-        final Cidr4Trie<String> allowedIPs = buildAllowedNetwork(allowedIPsArray);
-
-        if (isOnNetwork(new Ip4(originalClientIP), allowedIPs) || isOpenEndpoint(path, method)) {
-            final String receivedQuery = path.concat(
-                    aContext.request().query() != null ? QUESTION_MARK.concat(aContext.request().query()) : EMPTY);
-
-            myTokenProxy.getBearerToken().compose(token -> {
-                return myApiProxy
-                        .getLibCalOutput(token, receivedQuery, method, payload != null ? payload.asString() : null)
-                        .map(myMapper::decode);
-            }).onSuccess(libcalResponse -> {
-                final String body = libcalResponse.body();
-
-                response.setStatusCode(libcalResponse.statusCode());
-                response.setStatusMessage(libcalResponse.statusMessage());
-
-                libcalResponse.headers().forEach(response::putHeader);
-                libcalResponse.trailers().forEach(response::putTrailer);
-
-                if (body != null) {
-                    response.end(body);
+        final String path = request.path();
+        final String method = request.method().name();
+        final String originalClientIP = request.remoteAddress().hostAddress();
+        final long start = System.nanoTime();
+        final RoutePolicy policy = myRoutes.getPolicy(method, path);
+        final String access = getAccess(originalClientIP, policy);
+        final String fields = getFields(method, request.query());
+        final String query = fields != null ? removeFields(request.query()) : request.query();
+        final boolean hasBody = hasBody(request);
+
+        aContext.addEndHandler(result -> myMetrics.recordRequest(policy.getTemplate(), method,
+                result.succeeded() ? response.getStatusCode() : 0, access, System.nanoTime() - start));
+
+        if (hasBody) {
+            // Hold the request body until it's piped to LibCal; it's streamed there rather than buffered here
+            holdBody(aContext);
+        } else {
+            // The router pauses every request so that no body is lost on the way here, but this one has none to lose
+            request.resume();
+        }
+
+        if (!ProxyMetrics.DENIED.equals(access)) {
+            final String receivedQuery = path.concat(query != null ? QUESTION_MARK.concat(query) : EMPTY);
+            final Future<JsonProjection> projection = getProjection(fields);
+            // A projected response has to be read whole before it's sent
+            final boolean isStreamed = myStreamResponses && fields == null;
+
+            if (getContentLength(request) > myMaxBodySize) {
+                // Don't read an oversized body just to throw it away
+                if (request.version() != HttpVersion.HTTP_2) {
+                    response.putHeader(HttpHeaders.CONNECTION, HttpHeaders.CLOSE);
+                }
+
+                returnError(response, HTTP.PAYLOAD_TOO_LARGE, LOGGER.getMessage(MessageCodes.LCP_014, myMaxBodySize));
+            } else if (projection.failed()) {
+                handleFailure(response, projection.cause());
+            } else if (HttpMethod.GET.name().equals(method) && !hasBody && policy.isCacheable() &&
+                    (myCache.isEnabled() || !isStreamed)) {
+                // Buffered GETs of cacheable routes can be cached and shared; a streamed one is only used when caching
+                // is off
+                myWarmer.record(receivedQuery);
+                getSharedResponse(ResponseCache.getKey(method, path, query), path, receivedQuery, request, response,
+                        projection.result());
+            } else {
+                final ReadStream<Buffer> body = hasBody ? new SizeLimitedReadStream(request, myMaxBodySize) : null;
+                final MultiMap headers = getUpstreamHeaders(request, hasBody);
+
+                if (isStreamed) {
+                    openLibCalStream(token -> {
+                        return myApiProxy.openLibCalStream(token, receivedQuery, method, headers, body);
+                    }, body == null).compose(libcalResponse -> pipeResponse(libcalResponse, response))
+                            .onFailure(failure -> handleFailure(response, failure));
+                } else if (isServiceLocal) {
+                    callLibCal(token -> {
+                        return myApiProxy.getLibCalResponse(token, receivedQuery, method, headers, body);
+                    }, body == null).onSuccess(libcalResponse -> {
+                        sendResponse(libcalResponse, response, projection.result());
+                    }).onFailure(failure -> handleFailure(response, failure));
                 } else {
-                    response.end();
+                    // An event bus proxy needs the whole body up front
+                    readBody(body).compose(buffer -> callLibCal(token -> {
+                        return myApiProxy.getLibCalResponse(token, receivedQuery, method, buffer);
+                    }, true)).onSuccess(libcalResponse -> sendResponse(libcalResponse, response, projection.result()))
+                            .onFailure(failure -> handleFailure(response, failure));
                 }
-            }).onFailure(failure -> {
-                returnError(response, HTTP.INTERNAL_SERVER_ERROR, failure.getMessage());
-            });
+            }
         } else {
             returnError(response, HTTP.FORBIDDEN, LOGGER.getMessage(MessageCodes.LCP_007, originalClientIP));
         }
     }
 
+    /**
+     * Gets a buffered response to one request of a batch, which goes through the same access checks, response cache,
+     * LibCal calls, and projection onto the client's chosen fields as a request of its own, but doesn't have a body.
+     *
+     * @param aClientIP The IP address of the client that sent the batch
+     * @param aMethod The request's HTTP method
+     * @param aPath The request's path
+     * @param aQuery The request's (possibly null) query string
+     * @return A Future that resolves to the response, or fails with the reason there isn't one
+     */
+    Future<HttpResponse<Buffer>> getResponse(final String aClientIP, final String aMethod, final String aPath,
+            final String aQuery) {
+        final RoutePolicy policy = myRoutes.getPolicy(aMethod, aPath);
+        final String access = getAccess(aClientIP, policy);
+        final String fields = getFields(aMethod, aQuery);
+        final String query = fields != null ? removeFields(aQuery) : aQuery;
+        final Future<JsonProjection> projection = getProjection(fields);
+        final long start = System.nanoTime();
+        final Future<HttpResponse<Buffer>> response;
+
+        if (ProxyMetrics.DENIED.equals(access)) {
+            response = Future.failedFuture(
+                    new HttpException(HTTP.FORBIDDEN, LOGGER.getMessage(MessageCodes.LCP_007, aClientIP)));
+        } else {
+            response = projection.compose(unused -> getBufferedResponse(aMethod, aPath, query, policy))
+                    .compose(result -> project(result, projection.result()));
+        }
+
+        return response.onComplete(result -> myMetrics.recordRequest(policy.getTemplate(), aMethod,
+                result.succeeded() ? result.result().statusCode() : getStatusCode(result.cause()), access,
+                System.nanoTime() - start));
+    }
+
+    /**
+     * Gets a buffered response to a request without a body, from the response cache if the request is a GET of a
+     * cacheable route.
+     *
+     * @param aMethod The request's HTTP method
+     * @param aPath The request's path
+     * @param aQuery The request's (possibly null) query string, without the client's chosen fields
+     * @param aPolicy The route's policy
+     * @return A Future that resolves to the response, or fails with the reason there isn't one
+     */
+    private Future<HttpResponse<Buffer>> getBufferedResponse(final String aMethod, final String aPath,
+            final String aQuery, final RoutePolicy aPolicy) {
+        final String receivedQuery = aPath.concat(aQuery != null ? QUESTION_MARK.concat(aQuery) : EMPTY);
+
+        if (HttpMethod.GET.name().equals(aMethod) && aPolicy.isCacheable()) {
+            final String cacheKey = ResponseCache.getKey(aMethod, aPath, aQuery);
+
+            myWarmer.record(receivedQuery);
+            return myCache.fetch(cacheKey, aPath, () -> {
+                return myBatcher.execute(receivedQuery, this::getSharedLibCalResponse);
+            }).transform(result -> {
+                final boolean isFailed =
+                        result.failed() || result.result().getStatusCode() >= HTTP.INTERNAL_SERVER_ERROR;
+                final Optional<CachedResponse> staleResponse = isFailed ? myCache.getStale(cacheKey) : Optional.empty();
+
+                if (staleResponse.isPresent()) {
+                    LOGGER.debug(MessageCodes.LCP_026, cacheKey);
+                    return Future.succeededFuture(toHttpResponse(staleResponse.get(), true));
+                }
+
+                if (result.failed()) {
+                    return Future.failedFuture(result.cause());
+                }
+
+                return Future.succeededFuture(toHttpResponse(result.result(), false));
+            });
+        }
+
+        return callLibCal(token -> {
+            return myApiProxy.getLibCalResponse(token, receivedQuery, aMethod, (Buffer) null);
+        }, true);
+    }
+
     /**
      * Gets the Vert.x instance associated with this handler.
      *
@@ -145,65 +416,802 @@ public class ProxyHandler implements Handler<RoutingContext> {
     }
 
     /**
-     * Return an error message/response code to the requester.
+     * Fetches a GET query from LibCal into the response cache, as the cache warmer asks, whether or not it's cached
+     * already. A query whose route isn't cacheable isn't fetched.
      *
-     * @param aResponse A HTTP response
-     * @param aStatusCode A HTTP response code
-     * @param aError An exception message
+     * @param aQuery A <code>/path?query</code> string
+     * @return A Future that resolves to whether LibCal's response was cached
      */
-    private void returnError(final HttpServerResponse aResponse, final int aStatusCode, final String aError) {
-        final JsonObject errorBody = new JsonObject().put(JsonKeys.ERROR,
-                LOGGER.getMessage(MessageCodes.LCP_006, aError.replaceAll(Constants.EOL_REGEX, Constants.BR_TAG)));
+    public Future<Boolean> prefetch(final String aQuery) {
+        final int index = aQuery.indexOf(QUESTION_MARK);
+        final String path = index < 0 ? aQuery : aQuery.substring(0, index);
+        final String query = index < 0 ? null : aQuery.substring(index + 1);
 
-        aResponse.setStatusCode(aStatusCode);
-        aResponse.setStatusMessage(aError.replaceAll(Constants.EOL_REGEX, EMPTY));
-        aResponse.putHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON.toString());
-        aResponse.end(errorBody.encodePrettily());
+        if (!myRoutes.getPolicy(HttpMethod.GET.name(), path).isCacheable()) {
+            return Future.succeededFuture(false);
+        }
+
+        return getSharedLibCalResponse(aQuery).map(response -> {
+            return myCache.put(ResponseCache.getKey(HttpMethod.GET.name(), path, query), path, response);
+        });
+    }
+
+    /**
+     * Gets how a client may reach a route: because it's on the allowlist, because the route is open to everyone, or not
+     * at all.
+     *
+     * @param aClientIP The client's IP address
+     * @param aPolicy The route's policy
+     * @return {@link ProxyMetrics#ALLOWED}, {@link ProxyMetrics#OPEN}, or {@link ProxyMetrics#DENIED}
+     */
+    private String getAccess(final String aClientIP, final RoutePolicy aPolicy) {
+        if (myAllowlist.isAllowed(aClientIP)) {
+            return ProxyMetrics.ALLOWED;
+        }
+
+        return aPolicy.isPublic() ? ProxyMetrics.OPEN : ProxyMetrics.DENIED;
+    }
+
+    /**
+     * Gets the LibCal access token. It's read straight from the token holder when the token service has put one there,
+     * so most requests don't need a round trip to the token service.
+     *
+     * @return A Future that resolves to the current access token
+     */
+    private Future<String> getBearerToken() {
+        final long start = System.nanoTime();
+        final String token = myTokenHolder.getToken();
+
+        if (token != null) {
+            myMetrics.recordTokenLookup(ProxyMetrics.HOLDER, System.nanoTime() - start);
+            return Future.succeededFuture(token);
+        }
+
+        return myTokenProxy.getBearerToken()
+                .onSuccess(result -> myMetrics.recordTokenLookup(ProxyMetrics.SERVICE, System.nanoTime() - start));
+    }
+
+    /**
+     * Makes a buffered LibCal request, replaying it once if LibCal rejects the access token or rate-limits its client.
+     *
+     * @param aRequest A function that makes the request with an access token
+     * @param aReplayable Whether the request can be made a second time (i.e., it doesn't have a streamed body)
+     * @return A Future that resolves to LibCal's response
+     */
+    private Future<HttpResponse<Buffer>> callLibCal(final Function<String, Future<HttpResponse<Buffer>>> aRequest,
+            final boolean aReplayable) {
+        return retryRejected(aRequest, HttpResponse::statusCode, HttpResponse::headers, response -> {
+            // A buffered response has nothing left to read
+        }, aReplayable);
+    }
+
+    /**
+     * Opens a streamed LibCal response, replaying the request once if LibCal rejects the access token or rate-limits
+     * its client.
+     *
+     * @param aRequest A function that makes the request with an access token
+     * @param aReplayable Whether the request can be made a second time (i.e., it doesn't have a streamed body)
+     * @return A Future that resolves to LibCal's paused response
+     */
+    private Future<HttpClientResponse> openLibCalStream(final Function<String, Future<HttpClientResponse>> aRequest,
+            final boolean aReplayable) {
+        return retryRejected(aRequest, HttpClientResponse::statusCode, HttpClientResponse::headers,
+                HttpClientResponse::resume, aReplayable);
+    }
+
+    /**
+     * Makes a LibCal request with the current access token. If LibCal answers with a 401, the token service is told (so
+     * it can re-authenticate once for all the requests that saw the same token rejected) and a replayable request is
+     * made again with the new token. A request whose body has already been streamed gets LibCal's 401 instead, but
+     * still triggers the re-authentication so that the requests after it succeed.
+     * <p>
+     * A replayable request that LibCal answers with a 429 is made again too, once the scheduler has held back the
+     * client for as long as LibCal asked (or turned the request away, if that's too long).
+     *
+     * @param <T> The type of LibCal response
+     * @param aRequest A function that makes the request with an access token
+     * @param aStatusCode A function that gets a response's status code
+     * @param aHeaders A function that gets a response's headers
+     * @param aDiscard A function that throws away a rejected response that won't be sent to the client
+     * @param aReplayable Whether the request can be made a second time
+     * @return A Future that resolves to LibCal's response
+     */
+    private <T> Future<T> retryRejected(final Function<String, Future<T>> aRequest, final ToIntFunction<T> aStatusCode,
+            final Function<T, MultiMap> aHeaders, final Consumer<T> aDiscard, final boolean aReplayable) {
+        return getBearerToken()
+                .compose(token -> send(aRequest, aStatusCode, aHeaders, token, aReplayable).compose(response -> {
+                    final int statusCode = aStatusCode.applyAsInt(response);
+                    final Future<String> retryToken;
+
+                    if (statusCode == HTTP.UNAUTHORIZED) {
+                        retryToken = myTokenProxy.refreshBearerToken(token);
+                    } else if (statusCode == HTTP.TOO_MANY_REQUESTS && aReplayable) {
+                        // The token holder now prefers another client, if there's a healthy one
+                        retryToken = getBearerToken();
+                    } else {
+                        return Future.succeededFuture(response);
+                    }
+
+                    if (!aReplayable) {
+                        return Future.succeededFuture(response);
+                    }
+
+                    aDiscard.accept(response);
+                    return retryToken.compose(newToken -> send(aRequest, aStatusCode, aHeaders, newToken, aReplayable));
+                }));
+    }
+
+    /**
+     * Makes a LibCal request with an access token once the token's client has room for it under its rate limit, keeping
+     * track of the load on, and health of, the client. The request is turned away at once if the circuit breaker is
+     * open, and its outcome is recorded by the circuit breaker otherwise.
+     * <p>
+     * Only LibCal's failures count against it: a request that fails because of the client's body (e.g., one that's too
+     * large or cut off) is given back to the circuit breaker instead. A request whose body is streamed takes as long as
+     * the client takes to send it, so only its outcome, and not its duration, is recorded.
+     *
+     * @param <T> The type of LibCal response
+     * @param aRequest A function that makes the request with an access token
+     * @param aStatusCode A function that gets a response's status code
+     * @param aHeaders A function that gets a response's headers
+     * @param aToken An access token
+     * @param aReplayable Whether the request has no streamed body
+     * @return A Future that resolves to LibCal's response
+     */
+    private <T> Future<T> send(final Function<String, Future<T>> aRequest, final ToIntFunction<T> aStatusCode,
+            final Function<T, MultiMap> aHeaders, final String aToken, final boolean aReplayable) {
+        if (!myBreaker.tryAcquire()) {
+            return Future.failedFuture(new CircuitOpenException(Math.max(1, myBreaker.getRetryAfter())));
+        }
+
+        return myScheduler.schedule(aToken).onFailure(failure -> myBreaker.release()).compose(unused -> {
+            final long start = System.nanoTime();
+
+            myTokenHolder.startRequest(aToken);
+
+            return aRequest.apply(aToken).onComplete(result -> {
+                final int statusCode = result.succeeded() ? aStatusCode.applyAsInt(result.result()) : 0;
+
+                if (result.succeeded()) {
+                    myScheduler.update(aToken, statusCode, aHeaders.apply(result.result()));
+                }
+
+                myTokenHolder.endRequest(aToken, statusCode);
+
+                if (result.failed() && isClientFailure(result.cause())) {
+                    myBreaker.release();
+                } else {
+                    myBreaker.record(statusCode > 0 && statusCode < HTTP.INTERNAL_SERVER_ERROR,
+                            aReplayable ? System.nanoTime() - start : 0);
+                }
+            });
+        });
+    }
+
+    /**
+     * Answers a GET request from the response cache, or from LibCal (caching its response) if there's no fresh cached
+     * response. Identical GETs that arrive while LibCal is answering are given the same response. If LibCal fails, or
+     * the circuit breaker turns the request away, a cached response that's past its TTL is served in its place.
+     * <p>
+     * With passthrough on, LibCal is asked for a gzipped response, which is cached as is and decoded only for the
+     * clients that don't accept gzip. With batching on, concurrent single-ID GETs of a batched endpoint are sent to
+     * LibCal as one call. The whole response is cached, and projected onto the client's chosen fields when it's sent,
+     * so clients that choose different fields share it.
+     *
+     * @param aCacheKey The request's cache key
+     * @param aPath The request's path
+     * @param aQuery The request's path and query string
+     * @param aRequest The client request
+     * @param aResponse The response to the client
+     * @param aProjection The (possibly null) projection onto the client's chosen fields
+     */
+    private void getSharedResponse(final String aCacheKey, final String aPath, final String aQuery,
+            final HttpServerRequest aRequest, final HttpServerResponse aResponse, final JsonProjection aProjection) {
+        myCache.fetch(aCacheKey, aPath, () -> myBatcher.execute(aQuery, this::getSharedLibCalResponse))
+                .onSuccess(response -> {
+                    if (response.getStatusCode() < HTTP.INTERNAL_SERVER_ERROR ||
+                            !sendStaleResponse(aCacheKey, aRequest, aResponse, aProjection)) {
+                        sendCachedResponse(response, aRequest, aResponse, aProjection);
+                    }
+                }).onFailure(failure -> {
+                    if (!sendStaleResponse(aCacheKey, aRequest, aResponse, aProjection)) {
+                        handleFailure(aResponse, failure);
+                    }
+                });
+    }
+
+    /**
+     * Gets a LibCal response to a GET that may be cached and shared between clients. With passthrough on, LibCal is
+     * asked for a gzipped response.
+     *
+     * @param aQuery The request's path and query string
+     * @return A Future that resolves to LibCal's response
+     */
+    private Future<HttpResponse<Buffer>> getSharedLibCalResponse(final String aQuery) {
+        return callLibCal(token -> {
+            if (myPassthrough) {
+                return myApiProxy.getLibCalResponse(token, aQuery, HttpMethod.GET.name(),
+                        MultiMap.caseInsensitiveMultiMap().add(HttpHeaders.ACCEPT_ENCODING, ContentEncoding.GZIP),
+                        null);
+            }
+
+            return myApiProxy.getLibCalResponse(token, aQuery, HttpMethod.GET.name(), (Buffer) null);
+        }, true);
+    }
+
+    /**
+     * Turns a cached LibCal response into a buffered one, with an Age header that says how long it's been cached.
+     *
+     * @param aCachedResponse A cached LibCal response
+     * @param aStale Whether the response is served past its TTL, in place of a LibCal failure
+     * @return The buffered response
+     */
+    private HttpResponse<Buffer> toHttpResponse(final CachedResponse aCachedResponse, final boolean aStale) {
+        final MultiMap headers = MultiMap.caseInsensitiveMultiMap().addAll(aCachedResponse.getHeaders());
+
+        headers.set(HttpHeaders.AGE, Long.toString(myCache.getAge(aCachedResponse)));
+
+        if (aStale) {
+            headers.add(WARNING, STALE_WARNING);
+        }
+
+        return new HttpResponseImpl<>(HttpVersion.HTTP_1_1, aCachedResponse.getStatusCode(),
+                aCachedResponse.getStatusMessage(), headers, MultiMap.caseInsensitiveMultiMap(), List.of(),
+                aCachedResponse.getBody(), List.of());
+    }
+
+    /**
+     * Projects a buffered LibCal response onto the client's chosen fields, if it's JSON and the client chose any.
+     *
+     * @param aResponse A buffered LibCal response
+     * @param aProjection The (possibly null) projection onto the client's chosen fields
+     * @return A Future that resolves to the projected response, or fails if LibCal's JSON can't be read
+     */
+    private Future<HttpResponse<Buffer>> project(final HttpResponse<Buffer> aResponse,
+            final JsonProjection aProjection) {
+        final MultiMap headers;
+        final Buffer body;
+
+        if (!isProjectable(aProjection, aResponse.statusCode(), aResponse.headers()) || aResponse.body() == null) {
+            return Future.succeededFuture(aResponse);
+        }
+
+        try {
+            body = project(aProjection, aResponse.headers(), aResponse.body());
+        } catch (final IOException details) {
+            return Future.failedFuture(new HttpException(HTTP.BAD_GATEWAY, details.getMessage()));
+        }
+
+        headers = MultiMap.caseInsensitiveMultiMap().addAll(aResponse.headers());
+        headers.remove(HttpHeaders.CONTENT_ENCODING).remove(HttpHeaders.CONTENT_LENGTH).remove(HttpHeaders.ETAG);
+
+        return Future.succeededFuture(new HttpResponseImpl<>(aResponse.version(), aResponse.statusCode(),
+                aResponse.statusMessage(), headers, aResponse.trailers(), aResponse.cookies(), body, List.of()));
+    }
+
+    /**
+     * Sends a cached response that's past its TTL, marked with a Warning header, in place of a LibCal failure.
+     *
+     * @param aCacheKey The request's cache key
+     * @param aRequest The client request
+     * @param aResponse The response to the client
+     * @param aProjection The (possibly null) projection onto the client's chosen fields
+     * @return True if a stale response was sent; else, false
+     */
+    private boolean sendStaleResponse(final String aCacheKey, final HttpServerRequest aRequest,
+            final HttpServerResponse aResponse, final JsonProjection aProjection) {
+        final Optional<CachedResponse> staleResponse = myCache.getStale(aCacheKey);
+
+        if (staleResponse.isEmpty()) {
+            return false;
+        }
+
+        LOGGER.debug(MessageCodes.LCP_026, aCacheKey);
+
+        aResponse.headers().add(WARNING, STALE_WARNING);
+        sendCachedResponse(staleResponse.get(), aRequest, aResponse, aProjection);
+
+        return true;
+    }
+
+    /**
+     * Sends a cached or shared LibCal response to the client, with an Age header that says how long it's been cached
+     * and an ETag that identifies its body. A client whose copy of the response is still current gets a 304 (Not
+     * Modified) instead. A compressed response is decoded if the client doesn't accept its content coding. A JSON
+     * response is projected onto the client's chosen fields, if it chose any, and is then sent uncompressed.
+     *
+     * @param aCachedResponse A cached LibCal response
+     * @param aRequest The client request
+     * @param aResponse The response to the client
+     * @param aProjection The (possibly null) projection onto the client's chosen fields
+     */
+    private void sendCachedResponse(final CachedResponse aCachedResponse, final HttpServerRequest aRequest,
+            final HttpServerResponse aResponse, final JsonProjection aProjection) {
+        final MultiMap headers = aCachedResponse.getHeaders();
+        final String coding = ContentEncoding.getCoding(headers);
+        final boolean isProjected = isProjectable(aProjection, aCachedResponse.getStatusCode(), headers);
+        final boolean isDecoded = coding != null && ContentEncoding.canDecode(coding) && !isProjected &&
+                !ContentEncoding.accepts(aRequest.getHeader(HttpHeaders.ACCEPT_ENCODING), coding);
+        final boolean isOK = aCachedResponse.getStatusCode() == HTTP.OK;
+        final String etag;
+        Buffer body = aCachedResponse.getBody();
+
+        if (isProjected) {
+            try {
+                body = project(aProjection, headers, body);
+            } catch (final IOException details) {
+                returnError(aResponse, HTTP.BAD_GATEWAY, details.getMessage());
+                return;
+            }
+
+            // The projection is a representation of its own, whose tag is cheap to compute from its bytes
+            etag = ConditionalRequests.getETag(body);
+        } else {
+            etag = isDecoded ? ConditionalRequests.getDecodedETag(aCachedResponse.getETag())
+                    : aCachedResponse.getETag();
+        }
+
+        if (isOK && ConditionalRequests.isNotModified(aRequest.getHeader(HttpHeaders.IF_NONE_MATCH),
+                aRequest.getHeader(HttpHeaders.IF_MODIFIED_SINCE), etag, headers.get(HttpHeaders.LAST_MODIFIED))) {
+            sendNotModified(aCachedResponse, etag, coding != null && !isProjected, aResponse);
+            return;
+        }
+
+        if (isDecoded) {
+            try {
+                body = ContentEncoding.decode(body, coding);
+            } catch (final IOException details) {
+                returnError(aResponse, HTTP.BAD_GATEWAY, details.getMessage());
+                return;
+            }
+        }
+
+        aResponse.setStatusCode(aCachedResponse.getStatusCode());
+        aResponse.setStatusMessage(aCachedResponse.getStatusMessage());
+
+        copyHeaders(headers, aResponse);
+
+        if (isProjected) {
+            aResponse.headers().remove(HttpHeaders.CONTENT_ENCODING).remove(HttpHeaders.CONTENT_LENGTH);
+        } else if (coding != null) {
+            // The same cached response is sent compressed or not, depending on the client
+            aResponse.headers().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+            if (isDecoded) {
+                aResponse.headers().remove(HttpHeaders.CONTENT_ENCODING).remove(HttpHeaders.CONTENT_LENGTH);
+            }
+        }
+
+        if (isOK) {
+            aResponse.headers().set(HttpHeaders.ETAG, etag);
+        }
+
+        aResponse.headers().set(HttpHeaders.AGE, Long.toString(myCache.getAge(aCachedResponse)));
+        aResponse.end(body);
+    }
+
+    /**
+     * Tells the client that its copy of a cached or shared LibCal response is still current. A 304 has no body, so it
+     * only carries the headers that would update the client's copy.
+     *
+     * @param aCachedResponse A cached LibCal response
+     * @param aETag The entity tag of the representation the client has
+     * @param aIsVaried Whether the response varies by the content codings the client accepts
+     * @param aResponse The response to the client
+     */
+    private void sendNotModified(final CachedResponse aCachedResponse, final String aETag, final boolean aIsVaried,
+            final HttpServerResponse aResponse) {
+        final MultiMap headers = aCachedResponse.getHeaders();
+
+        for (final CharSequence name : NOT_MODIFIED_HEADERS) {
+            final List<String> values = headers.getAll(name);
+
+            if (!values.isEmpty()) {
+                aResponse.headers().add(name.toString(), values);
+            }
+        }
+
+        if (aIsVaried) {
+            aResponse.headers().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        aResponse.headers().set(HttpHeaders.ETAG, aETag);
+        aResponse.headers().set(HttpHeaders.AGE, Long.toString(myCache.getAge(aCachedResponse)));
+        aResponse.setStatusCode(HTTP.NOT_MODIFIED).end();
+    }
+
+    /**
+     * Sends a fully buffered LibCal response to the client, projected onto the client's chosen fields if it's JSON and
+     * the client chose any.
+     *
+     * @param aLibCalResponse A response from LibCal
+     * @param aResponse The response to the client
+     * @param aProjection The (possibly null) projection onto the client's chosen fields
+     */
+    private void sendResponse(final HttpResponse<Buffer> aLibCalResponse, final HttpServerResponse aResponse,
+            final JsonProjection aProjection) {
+        final boolean isProjected = isProjectable(aProjection, aLibCalResponse.statusCode(), aLibCalResponse.headers());
+        Buffer body = aLibCalResponse.body();
+
+        if (isProjected && body != null) {
+            try {
+                body = project(aProjection, aLibCalResponse.headers(), body);
+            } catch (final IOException details) {
+                returnError(aResponse, HTTP.BAD_GATEWAY, details.getMessage());
+                return;
+            }
+        }
+
+        aResponse.setStatusCode(aLibCalResponse.statusCode());
+        aResponse.setStatusMessage(aLibCalResponse.statusMessage());
+
+        copyHeaders(aLibCalResponse.headers(), aResponse);
+        aLibCalResponse.trailers().forEach(aResponse::putTrailer);
+
+        if (isProjected) {
+            aResponse.headers().remove(HttpHeaders.CONTENT_ENCODING).remove(HttpHeaders.CONTENT_LENGTH)
+                    .remove(HttpHeaders.ETAG);
+        }
+
+        if (body != null) {
+            aResponse.end(body);
+        } else {
+            aResponse.end();
+        }
+    }
+
+    /**
+     * Pipes a LibCal response to the client as its body arrives. The status and headers are sent right away, and the
+     * pipe pauses reading from LibCal whenever the client's write queue is full. If the pipe fails (e.g., because the
+     * client went away), LibCal's response is cut off rather than read to its end, and the client response is left to
+     * {@link #handleFailure(HttpServerResponse, Throwable)}.
+     *
+     * @param aLibCalResponse A paused response from LibCal
+     * @param aResponse The response to the client
+     * @return A Future that succeeds once the whole body has been written to the client
+     */
+    private Future<Void> pipeResponse(final HttpClientResponse aLibCalResponse, final HttpServerResponse aResponse) {
+        aResponse.setStatusCode(aLibCalResponse.statusCode());
+        aResponse.setStatusMessage(aLibCalResponse.statusMessage());
+
+        copyHeaders(aLibCalResponse.headers(), aResponse);
+
+        if (!aResponse.headers().contains(HttpHeaders.CONTENT_LENGTH)) {
+            aResponse.setChunked(true);
+        }
+
+        // The client response isn't ended on failure: one that's closed can't be, and a part of LibCal's body mustn't
+        // look like the whole of it, so a failure is left to handleFailure()
+        return aLibCalResponse.pipe().endOnFailure(false).to(aResponse).onFailure(failure -> {
+            // Stop reading LibCal's response, which the pipe would otherwise drain, before cutting it off
+            aLibCalResponse.handler(null).pause();
+            aLibCalResponse.request().reset(0, failure);
+        });
+    }
+
+    /**
+     * Copies LibCal's response headers to the client response, leaving out the hop-by-hop headers that only apply to
+     * the connection between the proxy and LibCal.
+     *
+     * @param aHeaders The headers of a response from LibCal
+     * @param aResponse The response to the client
+     */
+    private void copyHeaders(final MultiMap aHeaders, final HttpServerResponse aResponse) {
+        aHeaders.forEach((name, value) -> {
+            if (!HOP_BY_HOP_HEADERS.contains(name)) {
+                aResponse.headers().add(name, value);
+            }
+        });
+    }
+
+    /**
+     * Responds to a failed LibCal request with an error, or cuts off the response if part of it was already sent.
+     *
+     * @param aResponse The response to the client
+     * @param aFailure The cause of the failure
+     */
+    private void handleFailure(final HttpServerResponse aResponse, final Throwable aFailure) {
+        if (aResponse.closed()) {
+            // The client went away, so there's no one left to answer
+            return;
+        }
+
+        if (aFailure instanceof StreamResetException && isClientFailure(aFailure)) {
+            // A client body that failed (e.g., by being too large) resets the LibCal request; answer with its failure
+            handleFailure(aResponse, aFailure.getCause());
+        } else if (aResponse.headWritten()) {
+            // The client already has part of the response, so all we can do is cut it off
+            LOGGER.error(MessageCodes.LCP_013, aFailure.getMessage());
+            aResponse.reset();
+        } else {
+            if (aFailure instanceof RequestShedException) {
+                // Tell the client when to come back
+                aResponse.putHeader(HttpHeaders.RETRY_AFTER,
+                        Long.toString(((RequestShedException) aFailure).getRetryAfter()));
+            }
+
+            returnError(aResponse, getStatusCode(aFailure), getErrorMessage(aFailure));
+        }
+    }
+
+    /**
+     * Gets the status code of the error that a failed LibCal request is answered with.
+     *
+     * @param aFailure The cause of the failure
+     * @return The status code of the error
+     */
+    static int getStatusCode(final Throwable aFailure) {
+        if (aFailure instanceof RequestShedException) {
+            // LibCal can't take the request soon enough, or is failing, so the client should come back later
+            return HTTP.SERVICE_UNAVAILABLE;
+        }
+
+        if (aFailure instanceof ConnectionPoolTooBusyException) {
+            // Every connection to LibCal is busy and too many requests are already waiting for one
+            return HTTP.SERVICE_UNAVAILABLE;
+        }
+
+        if (aFailure instanceof TimeoutException || aFailure instanceof ConnectTimeoutException) {
+            // LibCal didn't answer (or let us connect) within the call's timeouts
+            return HTTP.GATEWAY_TIMEOUT;
+        }
+
+        if (aFailure instanceof HttpException) {
+            return ((HttpException) aFailure).getStatusCode();
+        }
+
+        return HTTP.INTERNAL_SERVER_ERROR;
+    }
+
+    /**
+     * Gets the message of the error that a failed LibCal request is answered with.
+     *
+     * @param aFailure The cause of the failure
+     * @return The message of the error
+     */
+    static String getErrorMessage(final Throwable aFailure) {
+        if (aFailure instanceof HttpException && ((HttpException) aFailure).getPayload() != null) {
+            return ((HttpException) aFailure).getPayload();
+        }
+
+        return String.valueOf(aFailure.getMessage());
+    }
+
+    /**
+     * Checks whether a LibCal request failed because of the client rather than LibCal: the client's body was too large
+     * or was cut off, which fails the request, or resets it if it was being streamed.
+     *
+     * @param aFailure The cause of the failure
+     * @return True if the client caused the failure; else, false
+     */
+    private static boolean isClientFailure(final Throwable aFailure) {
+        final Throwable failure = aFailure instanceof StreamResetException ? aFailure.getCause() : aFailure;
+
+        return failure instanceof HttpException &&
+                ((HttpException) failure).getStatusCode() < HTTP.INTERNAL_SERVER_ERROR;
+    }
+
+    /**
+     * Checks whether a LibCal response can be projected onto the client's chosen fields: the client chose some, and
+     * it's a successful JSON response whose body, if it's compressed, can be decoded.
+     *
+     * @param aProjection The (possibly null) projection onto the client's chosen fields
+     * @param aStatusCode The response's status code
+     * @param aHeaders The response's headers
+     * @return True if the response can be projected; else, false
+     */
+    private static boolean isProjectable(final JsonProjection aProjection, final int aStatusCode,
+            final MultiMap aHeaders) {
+        final String coding = ContentEncoding.getCoding(aHeaders);
+
+        if (aProjection == null || aStatusCode != HTTP.OK) {
+            return false;
+        }
+
+        return JsonProjection.isJson(aHeaders.get(HttpHeaders.CONTENT_TYPE)) &&
+                (coding == null || ContentEncoding.canDecode(coding));
+    }
+
+    /**
+     * Projects a JSON body onto the client's chosen fields, decoding it first if it's compressed.
+     *
+     * @param aProjection The projection onto the client's chosen fields
+     * @param aHeaders The headers of the response whose body is projected
+     * @param aBody A JSON body
+     * @return The projected body, uncompressed
+     * @throws IOException If the body can't be decoded or isn't valid JSON
+     */
+    private static Buffer project(final JsonProjection aProjection, final MultiMap aHeaders, final Buffer aBody)
+            throws IOException {
+        final String coding = ContentEncoding.getCoding(aHeaders);
+
+        return aProjection.apply(coding == null ? aBody : ContentEncoding.decode(aBody, coding));
+    }
+
+    /**
+     * Gets the fields a client chose for a GET's JSON response to be projected onto.
+     *
+     * @param aMethod The request's HTTP method
+     * @param aQuery The request's (possibly null) query string
+     * @return The comma-separated fields, or null if the client didn't choose any or the request isn't a GET
+     */
+    private String getFields(final String aMethod, final String aQuery) {
+        final StringJoiner fields = new StringJoiner(COMMA);
+        boolean hasFields = false;
+
+        if (myFieldsParam == null || aQuery == null || !HttpMethod.GET.name().equals(aMethod)) {
+            return null;
+        }
+
+        for (final String param : aQuery.split(AMPERSAND)) {
+            if (param.equals(myFieldsParam)) {
+                hasFields = true;
+            } else if (param.startsWith(myFieldsParam + EQUALS)) {
+                fields.add(param.substring(myFieldsParam.length() + 1));
+                hasFields = true;
+            }
+        }
+
+        return hasFields ? fields.toString() : null;
+    }
+
+    /**
+     * Removes the client's chosen fields from a query string, since they're for the proxy rather than LibCal.
+     *
+     * @param aQuery A query string
+     * @return The query string without the fields, or null if nothing's left of it
+     */
+    private String removeFields(final String aQuery) {
+        final StringJoiner query = new StringJoiner(AMPERSAND);
+
+        for (final String param : aQuery.split(AMPERSAND)) {
+            if (!param.equals(myFieldsParam) && !param.startsWith(myFieldsParam + EQUALS)) {
+                query.add(param);
+            }
+        }
+
+        return query.length() == 0 ? null : query.toString();
     }
 
     /**
-     * Builds a collection of authorized subnets in a network.
+     * Gets the projection onto a client's chosen fields.
      *
-     * @param anIpArray An array of IP addresses/ranges
-     * @return The converted collection of allowed subnets in network
+     * @param aFields The (possibly null) comma-separated fields, which may be URL-encoded
+     * @return A Future that resolves to the projection, or to null if the client didn't choose any fields, or that
+     *         fails with a 400 if the fields are invalid
      */
-    private Cidr4Trie<String> buildAllowedNetwork(final String... anIpArray) {
-        final Cidr4Trie<String> allowedNetwork = new Cidr4Trie<>();
+    private static Future<JsonProjection> getProjection(final String aFields) {
+        if (aFields == null) {
+            return Future.succeededFuture();
+        }
 
-        for (final String address : anIpArray) {
-            allowedNetwork.put(new Cidr4(address), address);
+        try {
+            return Future.succeededFuture(JsonProjection.parse(URLDecoder.decode(aFields, StandardCharsets.UTF_8)));
+        } catch (final IllegalArgumentException details) {
+            return Future.failedFuture(
+                    new HttpException(HTTP.BAD_REQUEST, LOGGER.getMessage(MessageCodes.LCP_040, aFields)));
         }
+    }
+
+    /**
+     * Pauses a client request's body, and makes sure that a body that's still unread when the response has been sent
+     * (e.g., because the request was turned away, or LibCal answered before reading it all) doesn't hold the request's
+     * connection: an HTTP/1.x connection is closed, and the rest of an HTTP/2 stream's body is discarded. Left paused,
+     * an unread body would fill the connection's buffer and stop it from reading the client's next request.
+     *
+     * @param aContext A routing context
+     */
+    private static void holdBody(final RoutingContext aContext) {
+        final HttpServerRequest request = aContext.request();
+
+        request.pause();
+        aContext.addEndHandler(result -> {
+            if (!request.isEnded()) {
+                if (request.version() == HttpVersion.HTTP_2) {
+                    request.handler(null).resume();
+                } else {
+                    request.connection().close();
+                }
+            }
+        });
+    }
 
-        return allowedNetwork;
+    /**
+     * Checks whether a client request has a body to pass on to LibCal.
+     *
+     * @param aRequest A client request
+     * @return True if the request has a body; else, false
+     */
+    private static boolean hasBody(final HttpServerRequest aRequest) {
+        return getContentLength(aRequest) > 0 || aRequest.headers().contains(HttpHeaders.TRANSFER_ENCODING);
     }
 
     /**
-     * Checks if an IP address belongs to a network.
+     * Gets the declared length of a client request's body.
      *
-     * @param aIpAddress The IP address
-     * @param aNetworkSubnets The collection of subnets that defines a network
-     * @return Whether the IP address belongs to any subnet in the collection
+     * @param aRequest A client request
+     * @return The value of the Content-Length header, or -1 if there isn't a valid one
      */
-    private boolean isOnNetwork(final Ip4 aIpAddress, final Cidr4Trie<String> aNetworkSubnets) {
-        return aNetworkSubnets.shortestPrefixOfValue(new Cidr4(aIpAddress), true) != null;
+    private static long getContentLength(final HttpServerRequest aRequest) {
+        final String contentLength = aRequest.getHeader(HttpHeaders.CONTENT_LENGTH);
+
+        if (contentLength != null) {
+            try {
+                return Long.parseLong(contentLength.trim());
+            } catch (final NumberFormatException details) {
+                return -1;
+            }
+        }
+
+        return -1;
     }
 
     /**
-     * Checks if a path and method combination are allowed to skip the IP access check.
+     * Gets the client request headers to pass on to LibCal: those that describe its body, so LibCal can interpret the
+     * streamed body, and, with passthrough on, the content codings it accepts, so LibCal can compress its response.
      *
-     * @param aPath A requested path
-     * @param aMethod A type of request
-     * @return True if the path and method combination are allowed; else, false
+     * @param aRequest A client request
+     * @param aHasBody Whether the request has a body
+     * @return The headers to send to LibCal, or null if there aren't any
      */
-    private boolean isOpenEndpoint(final String aPath, final String aMethod) {
-        boolean isAllowed = false;
+    private MultiMap getUpstreamHeaders(final HttpServerRequest aRequest, final boolean aHasBody) {
+        final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+        final String acceptEncoding = aRequest.getHeader(HttpHeaders.ACCEPT_ENCODING);
+
+        if (aHasBody) {
+            final String contentType = aRequest.getHeader(HttpHeaders.CONTENT_TYPE);
+            final String contentLength = aRequest.getHeader(HttpHeaders.CONTENT_LENGTH);
 
-        if (HttpMethod.POST.name().equals(aMethod)) {
-            isAllowed = REGISTRATION.matcher(aPath).matches();
-        } else if (HttpMethod.GET.name().equals(aMethod)) {
-            isAllowed = EVENT_FORM.matcher(aPath).matches() || EVENT_PAGE.matcher(aPath).matches();
+            if (contentType != null) {
+                headers.add(HttpHeaders.CONTENT_TYPE, contentType);
+            }
+
+            if (contentLength != null) {
+                headers.add(HttpHeaders.CONTENT_LENGTH, contentLength);
+            }
+        }
+
+        if (myPassthrough && acceptEncoding != null) {
+            headers.add(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
         }
 
-        return isAllowed;
+        return headers.isEmpty() ? null : headers;
+    }
+
+    /**
+     * Reads a whole request body into memory, for when it can't be streamed.
+     *
+     * @param aBody A (possibly null) paused request body stream
+     * @return A Future that resolves to the body, or null if there isn't one
+     */
+    private static Future<Buffer> readBody(final ReadStream<Buffer> aBody) {
+        final Promise<Buffer> promise = Promise.promise();
+        final Buffer buffer = Buffer.buffer();
+
+        if (aBody == null) {
+            return Future.succeededFuture();
+        }
+
+        aBody.exceptionHandler(promise::tryFail).handler(buffer::appendBuffer)
+                .endHandler(end -> promise.tryComplete(buffer)).resume();
+
+        return promise.future();
+    }
+
+    /**
+     * Return an error message/response code to the requester.
+     *
+     * @param aResponse A HTTP response
+     * @param aStatusCode A HTTP response code
+     * @param aError An exception message
+     */
+    private void returnError(final HttpServerResponse aResponse, final int aStatusCode, final String aError) {
+        final JsonObject errorBody = new JsonObject().put(JsonKeys.ERROR,
+                LOGGER.getMessage(MessageCodes.LCP_006, aError.replaceAll(Constants.EOL_REGEX, Constants.BR_TAG)));
+
+        aResponse.setStatusCode(aStatusCode);
+        aResponse.setStatusMessage(aError.replaceAll(Constants.EOL_REGEX, EMPTY));
+        aResponse.putHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON.toString());
+        aResponse.end(errorBody.encodePrettily());
     }
 }
@@ -0,0 +1,55 @@
+
+package edu.ucla.library.libcal.handlers;
+
+import static edu.ucla.library.libcal.MediaType.APPLICATION_JSON;
+
+import info.freelibrary.util.HTTP;
+
+import edu.ucla.library.libcal.Constants;
+import edu.ucla.library.libcal.JsonKeys;
+import edu.ucla.library.libcal.cache.CacheWarmer;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * A handler that says whether the application is ready to take traffic: it isn't until the response cache has been
+ * warmed, or the warm-up's deadline has passed.
+ */
+public class ReadinessHandler implements Handler<RoutingContext> {
+
+    /**
+     * The handler's copy of the Vert.x instance.
+     */
+    private final Vertx myVertx;
+
+    /**
+     * Creates a handler that returns a readiness response.
+     *
+     * @param aVertx A Vert.x instance
+     */
+    public ReadinessHandler(final Vertx aVertx) {
+        myVertx = aVertx;
+    }
+
+    @Override
+    public void handle(final RoutingContext aContext) {
+        final boolean isReady = CacheWarmer.lookup(myVertx).map(CacheWarmer::isReady).orElse(true);
+        final JsonObject status = new JsonObject().put(JsonKeys.STATUS, isReady ? Constants.OK : Constants.WARMING_UP);
+
+        aContext.response().setStatusCode(isReady ? HTTP.OK : HTTP.SERVICE_UNAVAILABLE)
+                .putHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON.toString()).end(status.encodePrettily());
+    }
+
+    /**
+     * Gets the Vert.x instance associated with this handler.
+     *
+     * @return The Vert.x instance associated with this handler
+     */
+    public Vertx getVertx() {
+        return myVertx;
+    }
+}
@@ -0,0 +1,133 @@
+
+package edu.ucla.library.libcal.handlers;
+
+import info.freelibrary.util.HTTP;
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import edu.ucla.library.libcal.MessageCodes;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.web.handler.HttpException;
+
+/**
+ * A request body stream that fails, instead of passing on more data, once it has read more than a maximum number of
+ * bytes. It's used to stream client request bodies to LibCal without buffering them, while still bounding their size. A
+ * body that can't be read to the end (e.g., because the client went away) fails with a 400, so that, like a body that's
+ * too large, it's told apart from LibCal's failures.
+ */
+final class SizeLimitedReadStream implements ReadStream<Buffer> {
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SizeLimitedReadStream.class, MessageCodes.BUNDLE);
+
+    /**
+     * The stream being read.
+     */
+    private final ReadStream<Buffer> mySource;
+
+    /**
+     * The maximum number of bytes that may be read.
+     */
+    private final long myMaxSize;
+
+    /**
+     * The number of bytes read so far.
+     */
+    private long myBytesRead;
+
+    /**
+     * Whether the maximum size has been exceeded.
+     */
+    private boolean hasExceededLimit;
+
+    /**
+     * The handler that's told about failures.
+     */
+    private Handler<Throwable> myExceptionHandler;
+
+    /**
+     * Creates a new size-limited stream.
+     *
+     * @param aSource The stream to read
+     * @param aMaxSize The maximum number of bytes that may be read
+     */
+    SizeLimitedReadStream(final ReadStream<Buffer> aSource, final long aMaxSize) {
+        mySource = aSource;
+        myMaxSize = aMaxSize;
+    }
+
+    @Override
+    public ReadStream<Buffer> exceptionHandler(final Handler<Throwable> aHandler) {
+        myExceptionHandler = aHandler;
+
+        if (aHandler == null) {
+            mySource.exceptionHandler(null);
+        } else {
+            // A body the client cut off is the client's failure, like one that's too large, not LibCal's
+            mySource.exceptionHandler(failure -> aHandler.handle(failure instanceof HttpException ? failure
+                    : new HttpException(HTTP.BAD_REQUEST, LOGGER.getMessage(MessageCodes.LCP_041, failure), failure)));
+        }
+
+        return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> handler(final Handler<Buffer> aHandler) {
+        if (aHandler == null) {
+            mySource.handler(null);
+        } else {
+            mySource.handler(buffer -> {
+                myBytesRead += buffer.length();
+
+                if (myBytesRead <= myMaxSize) {
+                    aHandler.handle(buffer);
+                } else if (!hasExceededLimit) {
+                    hasExceededLimit = true;
+                    mySource.pause();
+
+                    if (myExceptionHandler != null) {
+                        myExceptionHandler.handle(new HttpException(HTTP.PAYLOAD_TOO_LARGE,
+                                LOGGER.getMessage(MessageCodes.LCP_014, myMaxSize)));
+                    }
+                }
+            });
+        }
+
+        return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> pause() {
+        mySource.pause();
+        return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> resume() {
+        if (!hasExceededLimit) {
+            mySource.resume();
+        }
+
+        return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> fetch(final long anAmount) {
+        if (!hasExceededLimit) {
+            mySource.fetch(anAmount);
+        }
+
+        return this;
+    }
+
+    @Override
+    public ReadStream<Buffer> endHandler(final Handler<Void> aEndHandler) {
+        mySource.endHandler(aEndHandler);
+        return this;
+    }
+}
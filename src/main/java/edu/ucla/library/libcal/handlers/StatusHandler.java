@@ -7,6 +7,8 @@ import info.freelibrary.util.HTTP;
 
 import edu.ucla.library.libcal.Constants;
 import edu.ucla.library.libcal.JsonKeys;
+import edu.ucla.library.libcal.services.CircuitBreaker;
+import edu.ucla.library.libcal.services.UpstreamClient;
 
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
@@ -35,8 +37,14 @@ public class StatusHandler implements Handler<RoutingContext> {
 
     @Override
     public void handle(final RoutingContext aContext) {
+        final JsonObject status = new JsonObject().put(JsonKeys.STATUS, Constants.OK);
+
+        // Include the LibCal connection pool's statistics, if the pool lives in this JVM
+        UpstreamClient.lookup(myVertx).ifPresent(client -> status.put(JsonKeys.UPSTREAM, client.getStats()));
+        CircuitBreaker.lookup(myVertx).ifPresent(breaker -> status.put(JsonKeys.CIRCUIT, breaker.getStats()));
+
         aContext.response().setStatusCode(HTTP.OK).putHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON.toString())
-                .end(new JsonObject().put(JsonKeys.STATUS, Constants.OK).encodePrettily());
+                .end(status.encodePrettily());
     }
 
     /**
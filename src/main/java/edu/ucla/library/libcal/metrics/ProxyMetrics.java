@@ -0,0 +1,306 @@
+
+package edu.ucla.library.libcal.metrics;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+import java.util.stream.LongStream;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.core.instrument.binder.system.ProcessorMetrics;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * The application's metrics, kept in a Prometheus registry that's shared by everything in a Vert.x instance.
+ * <p>
+ * Request, token lookup, and LibCal call latencies are recorded as histograms. Requests and LibCal calls are labeled by
+ * the template of the route they matched in the route table, rather than by path, so that an ID in a path doesn't make
+ * a new time series; requests that match no route share the {@link #OTHER_ROUTE} label, since anyone can send a request
+ * for any path. Each time series' timer is built once and then looked up by its labels.
+ */
+public final class ProxyMetrics implements Shareable {
+
+    /**
+     * The access label of a request from an allowed network.
+     */
+    public static final String ALLOWED = "allowed";
+
+    /**
+     * The access label of a request to an endpoint that's open to everyone.
+     */
+    public static final String OPEN = "open";
+
+    /**
+     * The access label of a request that was turned away.
+     */
+    public static final String DENIED = "denied";
+
+    /**
+     * The source label of a token that was read from the token holder.
+     */
+    public static final String HOLDER = "holder";
+
+    /**
+     * The source label of a token that was fetched from the token service.
+     */
+    public static final String SERVICE = "service";
+
+    /**
+     * The trigger label of a token refresh that was started by its timer, or at startup.
+     */
+    public static final String SCHEDULED = "scheduled";
+
+    /**
+     * The trigger label of a token refresh that was started because LibCal rejected the token.
+     */
+    public static final String REJECTED = "rejected";
+
+    /**
+     * The route label of requests that don't match a route in the route table.
+     */
+    static final String OTHER_ROUTE = "other";
+
+    /**
+     * The name of the local shared data map that holds the metrics.
+     */
+    private static final String METRICS_MAP = ProxyMetrics.class.getName();
+
+    /**
+     * The key of the metrics in their local shared data map.
+     */
+    private static final String METRICS = "metrics";
+
+    /**
+     * The status label of a request that failed without a response.
+     */
+    private static final String ERROR = "error";
+
+    /**
+     * The name of the route label.
+     */
+    private static final String ROUTE = "route";
+
+    /**
+     * The name of the HTTP method label.
+     */
+    private static final String METHOD = "method";
+
+    /**
+     * The name of the status class label.
+     */
+    private static final String STATUS = "status";
+
+    /**
+     * The status labels, by status code class; a status code of zero is an error.
+     */
+    private static final String[] STATUS_CLASSES = { ERROR, "1xx", "2xx", "3xx", "4xx", "5xx" };
+
+    /**
+     * The histogram buckets for request and LibCal call latencies.
+     */
+    private static final Duration[] LATENCY_BUCKETS = getBuckets(5_000, 10_000, 25_000, 50_000, 100_000, 250_000,
+            500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000);
+
+    /**
+     * The histogram buckets for token lookup latencies, which are much shorter.
+     */
+    private static final Duration[] LOOKUP_BUCKETS = getBuckets(10, 100, 1_000, 10_000, 100_000);
+
+    /**
+     * The Prometheus registry.
+     */
+    private final PrometheusMeterRegistry myRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+
+    /**
+     * The request timers, by their labels.
+     */
+    private final Map<List<String>, Timer> myRequestTimers = new ConcurrentHashMap<>();
+
+    /**
+     * The token lookup timers, by their labels.
+     */
+    private final Map<List<String>, Timer> myLookupTimers = new ConcurrentHashMap<>();
+
+    /**
+     * The LibCal call timers, by their labels.
+     */
+    private final Map<List<String>, Timer> myUpstreamTimers = new ConcurrentHashMap<>();
+
+    /**
+     * The token refresh timers, by their labels.
+     */
+    private final Map<List<String>, Timer> myRefreshTimers = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new set of metrics. Use {@link #get(Vertx)} to get the one shared in a Vert.x instance.
+     */
+    ProxyMetrics() {
+        new JvmMemoryMetrics().bindTo(myRegistry);
+        new JvmThreadMetrics().bindTo(myRegistry);
+        new ProcessorMetrics().bindTo(myRegistry);
+    }
+
+    /**
+     * Gets the metrics that are shared by everything in a Vert.x instance.
+     *
+     * @param aVertx A Vert.x instance
+     * @return The shared metrics
+     */
+    public static ProxyMetrics get(final Vertx aVertx) {
+        final LocalMap<String, ProxyMetrics> map = aVertx.sharedData().getLocalMap(METRICS_MAP);
+        return map.computeIfAbsent(METRICS, key -> new ProxyMetrics());
+    }
+
+    /**
+     * Gets the metrics registry, so other components can register their own meters.
+     *
+     * @return The metrics registry
+     */
+    public MeterRegistry getRegistry() {
+        return myRegistry;
+    }
+
+    /**
+     * Gets the metrics in the Prometheus text format.
+     *
+     * @return The current metrics
+     */
+    public String scrape() {
+        return myRegistry.scrape();
+    }
+
+    /**
+     * Records how long the proxy took to answer a request.
+     *
+     * @param aRouteTemplate The template of the route the request matched, or null if it didn't match one
+     * @param aMethod The request's HTTP method
+     * @param aStatusCode The response's status code, or zero if the response couldn't be completed
+     * @param aAccess Whether the request was {@link #ALLOWED}, {@link #OPEN}, or {@link #DENIED}
+     * @param aDuration How long the request took, in nanoseconds
+     */
+    public void recordRequest(final String aRouteTemplate, final String aMethod, final int aStatusCode,
+            final String aAccess, final long aDuration) {
+        getTimer(myRequestTimers, "libcal.proxy.requests", "Requests to the proxy", LATENCY_BUCKETS, ROUTE,
+                getRoute(aRouteTemplate), METHOD, aMethod, STATUS, getStatusClass(aStatusCode), "access", aAccess)
+                        .record(aDuration, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records how long it took to get the access token for a request.
+     *
+     * @param aSource Whether the token came from the {@link #HOLDER} or the {@link #SERVICE}
+     * @param aDuration How long the lookup took, in nanoseconds
+     */
+    public void recordTokenLookup(final String aSource, final long aDuration) {
+        getTimer(myLookupTimers, "libcal.proxy.token.lookup", "Access token lookups", LOOKUP_BUCKETS, "source", aSource)
+                .record(aDuration, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records how long a LibCal call takes, once it's done. A streamed response is done when its headers arrive.
+     *
+     * @param <T> The type of LibCal response
+     * @param aMethod The call's HTTP method
+     * @param aRouteTemplate The template of the route the call matched, or null if it didn't match one
+     * @param aResponse The call's pending response
+     * @param aStatusCode A function that gets a response's status code
+     * @return The pending response
+     */
+    public <T> Future<T> timeUpstream(final String aMethod, final String aRouteTemplate, final Future<T> aResponse,
+            final ToIntFunction<T> aStatusCode) {
+        final long start = System.nanoTime();
+
+        return aResponse.onComplete(result -> {
+            final int statusCode = result.succeeded() ? aStatusCode.applyAsInt(result.result()) : 0;
+
+            getTimer(myUpstreamTimers, "libcal.proxy.upstream", "Calls to LibCal", LATENCY_BUCKETS, ROUTE,
+                    getRoute(aRouteTemplate), METHOD, aMethod, STATUS, getStatusClass(statusCode))
+                            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        });
+    }
+
+    /**
+     * Records how long an access token refresh takes, and whether it succeeds, once it's done.
+     *
+     * @param <T> The type of the refresh's result
+     * @param aTrigger Whether the refresh was {@link #SCHEDULED} or the token was {@link #REJECTED}
+     * @param aRefresh The pending refresh
+     * @return The pending refresh
+     */
+    public <T> Future<T> timeTokenRefresh(final String aTrigger, final Future<T> aRefresh) {
+        final long start = System.nanoTime();
+
+        return aRefresh.onComplete(result -> {
+            getTimer(myRefreshTimers, "libcal.proxy.token.refresh", "Access token refreshes", LATENCY_BUCKETS,
+                    "trigger", aTrigger, "outcome", result.succeeded() ? "success" : "failure")
+                            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        });
+    }
+
+    /**
+     * Gets the timer of a time series, which is built and registered the first time its labels are seen.
+     *
+     * @param aTimers The meter's timers, by their labels
+     * @param aName The meter's name
+     * @param aDescription The meter's description
+     * @param aBuckets The meter's histogram buckets
+     * @param aTags The time series' label names and values, in pairs
+     * @return The time series' timer
+     */
+    private Timer getTimer(final Map<List<String>, Timer> aTimers, final String aName, final String aDescription,
+            final Duration[] aBuckets, final String... aTags) {
+        final List<String> labels = Arrays.asList(aTags);
+        final Timer timer = aTimers.get(labels);
+
+        if (timer != null) {
+            return timer;
+        }
+
+        return aTimers.computeIfAbsent(labels, key -> Timer.builder(aName).description(aDescription).tags(aTags)
+                .serviceLevelObjectives(aBuckets).register(myRegistry));
+    }
+
+    /**
+     * Gets the route label of a route template.
+     *
+     * @param aRouteTemplate A route template, or null if a request didn't match a route
+     * @return The route label
+     */
+    private static String getRoute(final String aRouteTemplate) {
+        return aRouteTemplate == null ? OTHER_ROUTE : aRouteTemplate;
+    }
+
+    /**
+     * Gets histogram buckets from their upper bounds.
+     *
+     * @param aBounds The buckets' upper bounds, in microseconds
+     * @return The histogram buckets
+     */
+    private static Duration[] getBuckets(final long... aBounds) {
+        return LongStream.of(aBounds).mapToObj(bound -> Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(bound)))
+                .toArray(Duration[]::new);
+    }
+
+    /**
+     * Gets the class of a status code, e.g. "2xx", without building a new string for each request.
+     *
+     * @param aStatusCode A status code, or zero if there isn't one
+     * @return The status code's class
+     */
+    private static String getStatusClass(final int aStatusCode) {
+        final int statusClass = aStatusCode / 100;
+        return statusClass > 0 && statusClass < STATUS_CLASSES.length ? STATUS_CLASSES[statusClass] : ERROR;
+    }
+}
@@ -0,0 +1,397 @@
+
+package edu.ucla.library.libcal.services;
+
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.JsonKeys;
+import edu.ucla.library.libcal.MessageCodes;
+import edu.ucla.library.libcal.metrics.ProxyMetrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * A circuit breaker on the calls to LibCal, shared by everything in a Vert.x instance.
+ * <p>
+ * While the circuit is closed, the outcomes of the most recent calls are kept; a call fails if it couldn't be made, if
+ * LibCal answered with a 5xx, or if it took longer than the slow call threshold. Once enough of the window's calls have
+ * failed, the circuit opens and calls are refused, so requests fail fast instead of tying up connections to a LibCal
+ * that can't answer them. After the open time, the circuit is half-open: a few probe calls are let through, and if they
+ * all succeed the circuit closes again, while a failed probe opens it for another open time.
+ */
+public final class CircuitBreaker implements Shareable {
+
+    /**
+     * The default percentage of calls in the window that must fail for the circuit to open.
+     */
+    public static final int DEFAULT_FAILURE_RATE = 50;
+
+    /**
+     * The default number of calls in the window.
+     */
+    public static final int DEFAULT_WINDOW = 20;
+
+    /**
+     * The default number of milliseconds after which a call counts as failed.
+     */
+    public static final long DEFAULT_SLOW_CALL = 10_000;
+
+    /**
+     * The default number of seconds the circuit stays open.
+     */
+    public static final long DEFAULT_OPEN_TIME = 30;
+
+    /**
+     * The default number of probe calls that must succeed for a half-open circuit to close.
+     */
+    public static final int DEFAULT_PROBES = 3;
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class, MessageCodes.BUNDLE);
+
+    /**
+     * The name of the local shared data map that holds the circuit breaker.
+     */
+    private static final String CIRCUIT_BREAKER_MAP = CircuitBreaker.class.getName();
+
+    /**
+     * The key of the circuit breaker in its local shared data map.
+     */
+    private static final String CIRCUIT_BREAKER = "circuitBreaker";
+
+    /**
+     * The percentage of calls in the window that must fail for the circuit to open, or zero if it never opens.
+     */
+    private final int myFailureRate;
+
+    /**
+     * The outcomes of the most recent calls, as a ring buffer in which true means the call failed.
+     */
+    private final boolean[] myWindow;
+
+    /**
+     * The number of nanoseconds after which a call counts as failed, or zero if slow calls don't count.
+     */
+    private final long mySlowCall;
+
+    /**
+     * The number of nanoseconds the circuit stays open.
+     */
+    private final long myOpenTime;
+
+    /**
+     * The number of probe calls that must succeed for a half-open circuit to close.
+     */
+    private final int myProbes;
+
+    /**
+     * The source of the current time, in nanoseconds.
+     */
+    private final LongSupplier myClock;
+
+    /**
+     * The circuit's state.
+     */
+    private State myState = State.CLOSED;
+
+    /**
+     * The number of calls recorded in the window, up to its length.
+     */
+    private int myCallCount;
+
+    /**
+     * The number of failed calls in the window.
+     */
+    private int myFailureCount;
+
+    /**
+     * The position in the window of the next call's outcome.
+     */
+    private int myNextIndex;
+
+    /**
+     * When the circuit last opened, in nanoseconds.
+     */
+    private long myOpenedAt;
+
+    /**
+     * The number of probe calls that have been let through since the circuit became half-open.
+     */
+    private int myProbesStarted;
+
+    /**
+     * The number of probe calls that have succeeded since the circuit became half-open.
+     */
+    private int myProbesSucceeded;
+
+    /**
+     * Creates a new circuit breaker.
+     *
+     * @param aFailureRate The percentage of calls in the window that must fail for the circuit to open, or zero if it
+     *        should never open
+     * @param aWindow The number of calls in the window
+     * @param aSlowCall The number of milliseconds after which a call counts as failed, or zero if slow calls don't
+     *        count
+     * @param aOpenTime The number of seconds the circuit stays open
+     * @param aProbes The number of probe calls that must succeed for a half-open circuit to close
+     */
+    public CircuitBreaker(final int aFailureRate, final int aWindow, final long aSlowCall, final long aOpenTime,
+            final int aProbes) {
+        this(aFailureRate, aWindow, aSlowCall, aOpenTime, aProbes, System::nanoTime);
+    }
+
+    /**
+     * Creates a new circuit breaker that gets the current time from the supplied clock.
+     *
+     * @param aFailureRate The percentage of calls in the window that must fail for the circuit to open, or zero if it
+     *        should never open
+     * @param aWindow The number of calls in the window
+     * @param aSlowCall The number of milliseconds after which a call counts as failed, or zero if slow calls don't
+     *        count
+     * @param aOpenTime The number of seconds the circuit stays open
+     * @param aProbes The number of probe calls that must succeed for a half-open circuit to close
+     * @param aClock A source of the current time, in nanoseconds
+     * @throws IllegalArgumentException If a setting is out of range
+     */
+    CircuitBreaker(final int aFailureRate, final int aWindow, final long aSlowCall, final long aOpenTime,
+            final int aProbes, final LongSupplier aClock) {
+        if (aFailureRate < 0 || aFailureRate > 100 || aWindow < 1 || aProbes < 1) {
+            throw new IllegalArgumentException(LOGGER.getMessage(MessageCodes.LCP_021));
+        }
+
+        if (aSlowCall < 0 || aOpenTime < 0) {
+            throw new IllegalArgumentException(LOGGER.getMessage(MessageCodes.LCP_021));
+        }
+
+        myFailureRate = aFailureRate;
+        myWindow = new boolean[aWindow];
+        mySlowCall = TimeUnit.MILLISECONDS.toNanos(aSlowCall);
+        myOpenTime = TimeUnit.SECONDS.toNanos(aOpenTime);
+        myProbes = aProbes;
+        myClock = aClock;
+    }
+
+    /**
+     * Gets the circuit breaker that's shared by everything in a Vert.x instance, creating it from the supplied
+     * configuration if it doesn't exist yet.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aConfig An application configuration
+     * @return The shared circuit breaker
+     * @throws IllegalArgumentException If the configuration has an out of range circuit breaker setting
+     */
+    public static CircuitBreaker get(final Vertx aVertx, final JsonObject aConfig) {
+        return getMap(aVertx).computeIfAbsent(CIRCUIT_BREAKER, key -> {
+            final CircuitBreaker breaker = fromConfig(aConfig);
+
+            Gauge.builder("libcal.proxy.circuit.state", breaker, circuit -> circuit.getState().ordinal())
+                    .description("LibCal circuit state: 0 closed, 1 open, 2 half-open")
+                    .register(ProxyMetrics.get(aVertx).getRegistry());
+
+            return breaker;
+        });
+    }
+
+    /**
+     * Looks up the circuit breaker that's shared by everything in a Vert.x instance.
+     *
+     * @param aVertx A Vert.x instance
+     * @return The shared circuit breaker, or an empty Optional if it hasn't been created
+     */
+    public static Optional<CircuitBreaker> lookup(final Vertx aVertx) {
+        return Optional.ofNullable(getMap(aVertx).get(CIRCUIT_BREAKER));
+    }
+
+    /**
+     * Creates a circuit breaker from the application's configuration.
+     *
+     * @param aConfig An application configuration
+     * @return A new circuit breaker
+     * @throws IllegalArgumentException If the configuration has an out of range circuit breaker setting
+     */
+    static CircuitBreaker fromConfig(final JsonObject aConfig) {
+        return new CircuitBreaker(aConfig.getInteger(Config.BREAKER_FAILURE_RATE, DEFAULT_FAILURE_RATE),
+                aConfig.getInteger(Config.BREAKER_WINDOW, DEFAULT_WINDOW),
+                aConfig.getLong(Config.BREAKER_SLOW_CALL, DEFAULT_SLOW_CALL),
+                aConfig.getLong(Config.BREAKER_OPEN_TIME, DEFAULT_OPEN_TIME),
+                aConfig.getInteger(Config.BREAKER_PROBES, DEFAULT_PROBES));
+    }
+
+    /**
+     * Asks to make a call to LibCal. A call that's allowed must be followed by {@link #record(boolean, long)} once it's
+     * done, or by {@link #release()} if it isn't made after all.
+     *
+     * @return True if the call may be made; else, false
+     */
+    public synchronized boolean tryAcquire() {
+        if (myState == State.OPEN) {
+            if (myClock.getAsLong() - myOpenedAt < myOpenTime) {
+                return false;
+            }
+
+            myState = State.HALF_OPEN;
+            myProbesStarted = 0;
+            myProbesSucceeded = 0;
+            LOGGER.info(MessageCodes.LCP_023, myProbes);
+        }
+
+        if (myState == State.HALF_OPEN) {
+            if (myProbesStarted >= myProbes) {
+                return false;
+            }
+
+            myProbesStarted++;
+        }
+
+        return true;
+    }
+
+    /**
+     * Gives back a call that was allowed but not made.
+     */
+    public synchronized void release() {
+        if (myState == State.HALF_OPEN && myProbesStarted > 0) {
+            myProbesStarted--;
+        }
+    }
+
+    /**
+     * Records the outcome of a call to LibCal.
+     *
+     * @param aSucceeded Whether LibCal answered the call with something other than a 5xx
+     * @param aDuration How long the call took, in nanoseconds
+     */
+    public synchronized void record(final boolean aSucceeded, final long aDuration) {
+        final boolean failed = !aSucceeded || mySlowCall > 0 && aDuration > mySlowCall;
+
+        if (myState == State.HALF_OPEN) {
+            if (failed) {
+                open();
+            } else if (++myProbesSucceeded >= myProbes) {
+                close();
+            }
+        } else if (myState == State.CLOSED && myFailureRate > 0) {
+            if (myCallCount == myWindow.length) {
+                if (myWindow[myNextIndex]) {
+                    myFailureCount--;
+                }
+            } else {
+                myCallCount++;
+            }
+
+            myWindow[myNextIndex] = failed;
+            myNextIndex = (myNextIndex + 1) % myWindow.length;
+
+            if (failed) {
+                myFailureCount++;
+
+                if (myCallCount == myWindow.length && myFailureCount * 100 >= myFailureRate * myCallCount) {
+                    open();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the circuit's state.
+     *
+     * @return The circuit's state
+     */
+    public synchronized State getState() {
+        return myState;
+    }
+
+    /**
+     * Gets the number of seconds until an open circuit lets a probe call through.
+     *
+     * @return The number of seconds until the circuit is half-open, or zero if it's not open
+     */
+    public synchronized long getRetryAfter() {
+        if (myState != State.OPEN) {
+            return 0;
+        }
+
+        return Math.max(1, TimeUnit.NANOSECONDS
+                .toSeconds(myOpenTime - (myClock.getAsLong() - myOpenedAt) + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    /**
+     * Gets the circuit's state and the failures in its window.
+     *
+     * @return The circuit breaker's statistics
+     */
+    public synchronized JsonObject getStats() {
+        return new JsonObject().put(JsonKeys.STATE, myState.toString()).put(JsonKeys.CALL_COUNT, myCallCount)
+                .put(JsonKeys.FAILURE_COUNT, myFailureCount);
+    }
+
+    /**
+     * Opens the circuit.
+     */
+    private void open() {
+        LOGGER.warn(MessageCodes.LCP_022, myFailureCount, myCallCount, TimeUnit.NANOSECONDS.toSeconds(myOpenTime));
+
+        myState = State.OPEN;
+        myOpenedAt = myClock.getAsLong();
+    }
+
+    /**
+     * Closes the circuit, with an empty window.
+     */
+    private void close() {
+        LOGGER.info(MessageCodes.LCP_024);
+
+        myState = State.CLOSED;
+        myCallCount = 0;
+        myFailureCount = 0;
+        myNextIndex = 0;
+    }
+
+    /**
+     * Gets the local map that holds the circuit breaker.
+     *
+     * @param aVertx A Vert.x instance
+     * @return The local map that holds the circuit breaker
+     */
+    private static LocalMap<String, CircuitBreaker> getMap(final Vertx aVertx) {
+        return aVertx.sharedData().getLocalMap(CIRCUIT_BREAKER_MAP);
+    }
+
+    /**
+     * The states of a circuit.
+     */
+    public enum State {
+
+        /**
+         * Calls are made, and their outcomes recorded.
+         */
+        CLOSED,
+
+        /**
+         * Calls are refused.
+         */
+        OPEN,
+
+        /**
+         * A few probe calls are made to find out whether LibCal has recovered.
+         */
+        HALF_OPEN;
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+}
@@ -0,0 +1,33 @@
+
+package edu.ucla.library.libcal.services;
+
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import edu.ucla.library.libcal.MessageCodes;
+
+/**
+ * A failure that's raised when a LibCal request is turned away because the circuit breaker is open. Like a shed
+ * request, it becomes a 503 that says when the request may be tried again.
+ */
+public class CircuitOpenException extends RequestShedException {
+
+    /**
+     * The <code>serialVersionUID</code> for CircuitOpenException.
+     */
+    private static final long serialVersionUID = 2093875160439372815L;
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitOpenException.class, MessageCodes.BUNDLE);
+
+    /**
+     * Creates a new exception for a request that's been turned away by an open circuit.
+     *
+     * @param aRetryAfter The number of seconds after which the request may be tried again
+     */
+    public CircuitOpenException(final long aRetryAfter) {
+        super(LOGGER.getMessage(MessageCodes.LCP_025, aRetryAfter), aRetryAfter);
+    }
+}
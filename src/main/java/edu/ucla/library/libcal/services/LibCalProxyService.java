@@ -1,11 +1,22 @@
 
 package edu.ucla.library.libcal.services;
 
+import info.freelibrary.util.LoggerFactory;
+
+import edu.ucla.library.libcal.HttpResponseMapper;
+import edu.ucla.library.libcal.MessageCodes;
+
+import io.vertx.codegen.annotations.GenIgnore;
 import io.vertx.codegen.annotations.ProxyGen;
 import io.vertx.codegen.annotations.VertxGen;
 import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientResponse;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.web.client.HttpResponse;
 import io.vertx.serviceproxy.ServiceProxyBuilder;
 
 /**
@@ -41,6 +52,18 @@ public interface LibCalProxyService {
         return new ServiceProxyBuilder(aVertx).setAddress(ADDRESS).build(LibCalProxyService.class);
     }
 
+    /**
+     * Gets the service instance registered in this JVM (see {@link LocalServices}), so calls skip the event bus, or
+     * creates an instance of the service proxy if the service lives elsewhere.
+     *
+     * @param aVertx A Vert.x instance
+     * @return A local service instance or a service proxy instance
+     */
+    @GenIgnore
+    static LibCalProxyService createLocalOrProxy(final Vertx aVertx) {
+        return LocalServices.lookup(aVertx, ADDRESS, LibCalProxyService.class).orElseGet(() -> createProxy(aVertx));
+    }
+
     /**
      * Retrieves the output of a LibCal API call.
      *
@@ -53,4 +76,76 @@ public interface LibCalProxyService {
     @SuppressWarnings("PMD.UseObjectForClearerAPI") // PMD wants varargs, but the below is clearer
     Future<JsonObject> getLibCalOutput(String anOAuthToken, String aQuery, String aMethod, String aBody);
 
+    /**
+     * Retrieves the response of a LibCal API call as an {@link HttpResponse}.
+     * <p>
+     * Service implementations in the same JVM hand the upstream response over as is; the default implementation, used
+     * by event bus proxies, decodes the JSON representation returned by
+     * {@link #getLibCalOutput(String, String, String, String)}.
+     *
+     * @param anOAuthToken An OAuth bearer token
+     * @param aQuery The query string passes to the LibCal API
+     * @param aMethod The HTTP method used to contact LibCal
+     * @param aBody The (possibly null) request payload from the client
+     * @return A Future that resolves to the HTTP response from LibCal
+     */
+    @GenIgnore
+    @SuppressWarnings("PMD.UseObjectForClearerAPI")
+    default Future<HttpResponse<Buffer>> getLibCalResponse(final String anOAuthToken, final String aQuery,
+            final String aMethod, final Buffer aBody) {
+        return getLibCalOutput(anOAuthToken, aQuery, aMethod, aBody != null ? aBody.toString() : null)
+                .map(new HttpResponseMapper()::decodeAsBuffer);
+    }
+
+    /**
+     * Retrieves the response of a LibCal API call as an {@link HttpResponse}, streaming the request body to LibCal
+     * instead of sending it from memory.
+     * <p>
+     * Request bodies can only be streamed when the service lives in the same JVM as the caller, so the default
+     * implementation (used by event bus proxies) fails.
+     *
+     * @param anOAuthToken An OAuth bearer token
+     * @param aQuery The query string passes to the LibCal API
+     * @param aMethod The HTTP method used to contact LibCal
+     * @param aHeaders The (possibly null) request headers to pass on to LibCal, e.g. the body's content type
+     * @param aBody The (possibly null) paused request payload stream from the client
+     * @return A Future that resolves to the HTTP response from LibCal
+     */
+    @GenIgnore
+    @SuppressWarnings("PMD.UseObjectForClearerAPI")
+    default Future<HttpResponse<Buffer>> getLibCalResponse(final String anOAuthToken, final String aQuery,
+            final String aMethod, final MultiMap aHeaders, final ReadStream<Buffer> aBody) {
+        return Future.failedFuture(new UnsupportedOperationException(getStreamingErrorMessage()));
+    }
+
+    /**
+     * Opens a LibCal API call whose response body can be streamed to a client.
+     * <p>
+     * The returned response is paused, so no body data is lost before the caller pipes it somewhere; its status and
+     * headers are available as soon as LibCal sends them. Streaming is only possible when the service lives in the same
+     * JVM as the caller, so the default implementation (used by event bus proxies) fails.
+     *
+     * @param anOAuthToken An OAuth bearer token
+     * @param aQuery The query string passes to the LibCal API
+     * @param aMethod The HTTP method used to contact LibCal
+     * @param aHeaders The (possibly null) request headers to pass on to LibCal, e.g. the body's content type
+     * @param aBody The (possibly null) paused request payload stream from the client
+     * @return A Future that resolves to the paused HTTP response from LibCal
+     */
+    @GenIgnore
+    @SuppressWarnings("PMD.UseObjectForClearerAPI")
+    default Future<HttpClientResponse> openLibCalStream(final String anOAuthToken, final String aQuery,
+            final String aMethod, final MultiMap aHeaders, final ReadStream<Buffer> aBody) {
+        return Future.failedFuture(new UnsupportedOperationException(getStreamingErrorMessage()));
+    }
+
+    /**
+     * Gets the message used when a streaming method is called on a service that isn't in this JVM.
+     *
+     * @return The error message
+     */
+    @GenIgnore
+    static String getStreamingErrorMessage() {
+        return LoggerFactory.getLogger(LibCalProxyService.class, MessageCodes.BUNDLE).getMessage(MessageCodes.LCP_012);
+    }
 }
@@ -1,34 +1,99 @@
 
 package edu.ucla.library.libcal.services;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
 import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.HttpResponseImpl;
 import edu.ucla.library.libcal.HttpResponseMapper;
+import edu.ucla.library.libcal.MessageCodes;
+import edu.ucla.library.libcal.access.RouteTable;
+import edu.ucla.library.libcal.metrics.ProxyMetrics;
 
 import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.RequestOptions;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.web.client.HttpRequest;
-import io.vertx.ext.web.client.WebClient;
-import io.vertx.ext.web.codec.BodyCodec;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.web.client.HttpResponse;
 
 /**
  * The implementation of LibCalProxyService.
+ * <p>
+ * Every call to LibCal is held to its route class's timeouts, and GET calls without a body may be hedged. A call's
+ * requests that are still pending once it's settled, by an answer or a timeout, are cut off.
  */
 @SuppressWarnings("PMD.UseObjectForClearerAPI")
 public class LibCalProxyServiceImpl implements LibCalProxyService {
 
     /**
-     * HTTP client for retrieving LibCal output.
+     * The name of the "Authorization" header, which carries the bearer token.
+     */
+    private static final String AUTHORIZATION = HttpHeaders.AUTHORIZATION.toString();
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(LibCalProxyServiceImpl.class, MessageCodes.BUNDLE);
+
+    /**
+     * The Vert.x instance whose timers enforce the total timeouts.
+     */
+    private final Vertx myVertx;
+
+    /**
+     * HTTP client for retrieving LibCal output. Its connection pool is shared with the token service; see
+     * {@link UpstreamClient}.
      */
-    private final WebClient myWebClient;
+    private final HttpClient myHttpClient;
 
     /**
      * The LibCal base URL.
      */
     private final String myLibCalBaseURL;
 
+    /**
+     * The current access token, whose "Authorization" header value is computed once rather than per request.
+     */
+    private final TokenHolder myTokenHolder;
+
+    /**
+     * The application's metrics, which time the calls to LibCal.
+     */
+    private final ProxyMetrics myMetrics;
+
+    /**
+     * The timeouts of calls to LibCal, by route class.
+     */
+    private final UpstreamTimeouts myTimeouts;
+
+    /**
+     * The hedger of slow GET calls, or null if hedging is turned off.
+     */
+    private final RequestHedger myHedger;
+
+    /**
+     * The route table, whose templates label the LibCal call metrics.
+     */
+    private final RouteTable myRoutes;
+
     /**
      * The HTTP response serializer.
      */
@@ -40,10 +105,19 @@ public class LibCalProxyServiceImpl implements LibCalProxyService {
      * @param aVertx A Vert.x instance
      * @param aConfig A configuration
      * @throws NullPointerException if either aVertx or aConfig is null.
+     * @throws IllegalArgumentException If the configuration contains invalid route class timeouts
      */
     LibCalProxyServiceImpl(final Vertx aVertx, final JsonObject aConfig) {
+        final UpstreamClient upstreamClient = UpstreamClient.get(aVertx, aConfig);
+
+        myVertx = aVertx;
+        myTimeouts = UpstreamTimeouts.fromConfig(aConfig);
+        myHedger = RequestHedger.fromConfig(aVertx, aConfig);
+        myRoutes = RouteTable.fromConfig(aConfig);
         myLibCalBaseURL = aConfig.getString(Config.LIBCAL_BASE_URL);
-        myWebClient = WebClient.create(aVertx);
+        myTokenHolder = TokenHolder.get(aVertx);
+        myMetrics = ProxyMetrics.get(aVertx);
+        myHttpClient = upstreamClient.getHttpClient();
     }
 
     @Override
@@ -53,12 +127,234 @@ public class LibCalProxyServiceImpl implements LibCalProxyService {
          * LibCal API returns JSON in variable formats (sometimes objects, sometimes arrays), so safer to handle API
          * output as string to avoid parsing errors
          */
-        final HttpRequest<String> request =
-                myWebClient.requestAbs(HttpMethod.valueOf(aMethod), myLibCalBaseURL.concat(aQuery))
-                        .bearerTokenAuthentication(anOAuthToken).as(BodyCodec.string()).ssl(true);
+        return getLibCalResponse(anOAuthToken, aQuery, aMethod, aBody == null ? null : Buffer.buffer(aBody))
+                .map(response -> myMapper.encode(new HttpResponseImpl<>(response.version(), response.statusCode(),
+                        response.statusMessage(), response.headers(), response.trailers(), response.cookies(),
+                        response.body() == null ? null : response.body().toString(), response.followedRedirects())));
+    }
+
+    @Override
+    public Future<HttpResponse<Buffer>> getLibCalResponse(final String anOAuthToken, final String aQuery,
+            final String aMethod, final Buffer aBody) {
+        // Local callers get the upstream response itself, with its body left as raw bytes
+        return call(anOAuthToken, aQuery, aMethod, null, aBody == null, request -> {
+            request.setFollowRedirects(true);
+            return (aBody == null ? request.send() : request.send(aBody)).compose(LibCalProxyServiceImpl::read);
+        }, HttpResponse::statusCode);
+    }
+
+    @Override
+    public Future<HttpResponse<Buffer>> getLibCalResponse(final String anOAuthToken, final String aQuery,
+            final String aMethod, final MultiMap aHeaders, final ReadStream<Buffer> aBody) {
+        return call(anOAuthToken, aQuery, aMethod, aHeaders, aBody == null, request -> {
+            return send(request.setFollowRedirects(true), aBody).compose(LibCalProxyServiceImpl::read);
+        }, HttpResponse::statusCode);
+    }
+
+    @Override
+    public Future<HttpClientResponse> openLibCalStream(final String anOAuthToken, final String aQuery,
+            final String aMethod, final MultiMap aHeaders, final ReadStream<Buffer> aBody) {
+        // The call is done once LibCal's response starts; cutting off its body is left to the caller
+        return call(anOAuthToken, aQuery, aMethod, aHeaders, false, request -> send(request, aBody),
+                HttpClientResponse::statusCode).map(HttpClientResponse::pause);
+    }
+
+    /**
+     * Makes a call to LibCal, within its route class's timeouts. A GET without a body is hedged, if hedging is turned
+     * on. Once the call is settled, whether it was answered or timed out, any of its requests that are still pending
+     * (e.g., the slower of a hedged pair, or one whose response is trickling in) are cut off, so their connections go
+     * back to the pool instead of being held until LibCal is done.
+     *
+     * @param <T> The type of LibCal response
+     * @param anOAuthToken An access token
+     * @param aQuery The call's path and (optional) query string
+     * @param aMethod The call's HTTP method
+     * @param aHeaders The (possibly null) headers to send to LibCal
+     * @param aHedgeable Whether the call can be hedged, because it's sent without a body
+     * @param aExchange A function that sends a request and gets LibCal's response to it; it may be called twice when
+     *        the call is hedged
+     * @param aStatusCode A function that gets a response's status code
+     * @return A Future that resolves to LibCal's response
+     */
+    private <T> Future<T> call(final String anOAuthToken, final String aQuery, final String aMethod,
+            final MultiMap aHeaders, final boolean aHedgeable, final Function<HttpClientRequest, Future<T>> aExchange,
+            final ToIntFunction<T> aStatusCode) {
+        final String path = getPath(aQuery);
+        final String route = myRoutes.getPolicy(aMethod, path).getTemplate();
+        final long idleTimeout = myTimeouts.getIdleTimeout(path);
+        final PendingRequests pending = new PendingRequests();
+        final RequestOptions options = new RequestOptions().setMethod(HttpMethod.valueOf(aMethod))
+                .setAbsoluteURI(myLibCalBaseURL.concat(aQuery));
+        final Supplier<Future<T>> attempt = () -> myMetrics.timeUpstream(aMethod, route,
+                myHttpClient.request(options).compose(request -> pending.add(request, aExchange)), aStatusCode);
+
+        if (aHeaders != null) {
+            aHeaders.forEach(options::addHeader);
+        }
+
+        if (idleTimeout > 0) {
+            options.setTimeout(idleTimeout);
+        }
+
+        options.putHeader(AUTHORIZATION, myTokenHolder.getAuthorizationHeader(anOAuthToken));
+
+        if (myHedger != null && aHedgeable && HttpMethod.GET.name().equals(aMethod)) {
+            return limit(myHedger.execute(attempt), myTimeouts.getTotalTimeout(path))
+                    .onComplete(result -> pending.cancel(result.cause()));
+        }
+
+        return limit(attempt.get(), myTimeouts.getTotalTimeout(path))
+                .onComplete(result -> pending.cancel(result.cause()));
+    }
+
+    /**
+     * Fails a pending call to LibCal if it isn't done within a total timeout.
+     *
+     * @param <T> The type of LibCal response
+     * @param aResponse The call's pending response
+     * @param aTimeout The number of milliseconds the call may take, or zero if there's no limit
+     * @return The pending response, which fails with a {@link TimeoutException} if the call takes too long
+     */
+    private <T> Future<T> limit(final Future<T> aResponse, final long aTimeout) {
+        final Promise<T> promise;
+        final long timerId;
+
+        if (aTimeout <= 0 || aResponse.isComplete()) {
+            return aResponse;
+        }
+
+        promise = Promise.promise();
+        timerId = myVertx.setTimer(aTimeout, id -> {
+            promise.tryFail(new TimeoutException(LOGGER.getMessage(MessageCodes.LCP_028, aTimeout)));
+        });
+
+        aResponse.onComplete(result -> {
+            myVertx.cancelTimer(timerId);
+
+            if (result.succeeded()) {
+                promise.tryComplete(result.result());
+            } else {
+                promise.tryFail(result.cause());
+            }
+        });
+
+        return promise.future();
+    }
+
+    /**
+     * Sends a request to LibCal, with a body that's streamed to it as it's read, if there is one.
+     *
+     * @param aRequest A request to LibCal
+     * @param aBody A (possibly null) request body
+     * @return A Future that resolves to LibCal's response, once its head has arrived
+     */
+    private static Future<HttpClientResponse> send(final HttpClientRequest aRequest, final ReadStream<Buffer> aBody) {
+        if (aBody == null) {
+            return aRequest.send();
+        }
+
+        if (!aRequest.headers().contains(HttpHeaders.CONTENT_LENGTH)) {
+            aRequest.setChunked(true);
+        }
+
+        // Don't let a failed (e.g., oversized) client body look like a complete one to LibCal
+        aBody.pipe().endOnFailure(false).to(aRequest).onFailure(failure -> aRequest.reset(0, failure));
+
+        return aRequest.response();
+    }
+
+    /**
+     * Reads the whole body of a LibCal response.
+     *
+     * @param aResponse A response from LibCal
+     * @return A Future that resolves to the response, with its body
+     */
+    private static Future<HttpResponse<Buffer>> read(final HttpClientResponse aResponse) {
+        return aResponse.body()
+                .map(body -> new HttpResponseImpl<>(aResponse.version(), aResponse.statusCode(),
+                        aResponse.statusMessage(), aResponse.headers(), aResponse.trailers(), aResponse.cookies(), body,
+                        List.of()));
+    }
 
-        return aBody != null ? request.sendBuffer(Buffer.buffer(aBody)).map(myMapper::encode)
-                : request.send().map(myMapper::encode);
+    /**
+     * Gets the path of a LibCal query.
+     *
+     * @param aQuery A path and (optional) query string
+     * @return The path
+     */
+    private static String getPath(final String aQuery) {
+        final int queryIndex = aQuery.indexOf('?');
+        return queryIndex < 0 ? aQuery : aQuery.substring(0, queryIndex);
     }
 
+    /**
+     * The requests of one call to LibCal that haven't been answered yet. There may be more than one if the call is
+     * hedged.
+     */
+    private static final class PendingRequests {
+
+        /**
+         * The requests that haven't been answered yet.
+         */
+        private final Set<HttpClientRequest> myRequests = new HashSet<>();
+
+        /**
+         * Whether the call has been settled, after which no request of it should be left pending.
+         */
+        private boolean isSettled;
+
+        /**
+         * Tracks a request until its exchange with LibCal is done. A request of a call that's already settled (e.g., a
+         * hedge that was started just as the call timed out) is cut off at once.
+         *
+         * @param <T> The type of LibCal response
+         * @param aRequest A request to LibCal
+         * @param aExchange A function that sends the request and gets LibCal's response to it
+         * @return A Future that resolves to LibCal's response
+         */
+        private <T> Future<T> add(final HttpClientRequest aRequest,
+                final Function<HttpClientRequest, Future<T>> aExchange) {
+            final boolean settled;
+
+            synchronized (this) {
+                settled = isSettled;
+
+                if (!settled) {
+                    myRequests.add(aRequest);
+                }
+            }
+
+            if (settled) {
+                aRequest.reset();
+            }
+
+            return aExchange.apply(aRequest).onComplete(result -> remove(aRequest));
+        }
+
+        /**
+         * Stops tracking a request whose exchange with LibCal is done.
+         *
+         * @param aRequest A request to LibCal
+         */
+        private synchronized void remove(final HttpClientRequest aRequest) {
+            myRequests.remove(aRequest);
+        }
+
+        /**
+         * Settles the call, cutting off the requests of it that are still pending.
+         *
+         * @param aCause The (possibly null) reason the call failed
+         */
+        private void cancel(final Throwable aCause) {
+            final List<HttpClientRequest> requests;
+
+            synchronized (this) {
+                isSettled = true;
+                requests = List.copyOf(myRequests);
+                myRequests.clear();
+            }
+
+            requests.forEach(request -> request.reset(0, aCause));
+        }
+    }
 }
@@ -0,0 +1,92 @@
+
+package edu.ucla.library.libcal.services;
+
+import java.util.Optional;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * A registry of the service implementations that live in this JVM, so that local callers can use them directly instead
+ * of going through the event bus (and its JSON serialization).
+ */
+public final class LocalServices {
+
+    /**
+     * The name of the local shared data map that holds the services.
+     */
+    private static final String LOCAL_SERVICES_MAP = LocalServices.class.getName();
+
+    /**
+     * Constant classes should have private constructors.
+     */
+    private LocalServices() {
+        // This is intentionally left empty
+    }
+
+    /**
+     * Registers a service implementation for local lookups.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aAddress The event bus address the service is registered on
+     * @param aService The service implementation
+     */
+    public static void register(final Vertx aVertx, final String aAddress, final Object aService) {
+        getMap(aVertx).put(aAddress, new Holder(aService));
+    }
+
+    /**
+     * Removes a service implementation from the local lookups.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aAddress The event bus address the service is registered on
+     */
+    public static void unregister(final Vertx aVertx, final String aAddress) {
+        getMap(aVertx).remove(aAddress);
+    }
+
+    /**
+     * Looks up a service implementation that was registered in this JVM.
+     *
+     * @param <T> The type of service
+     * @param aVertx A Vert.x instance
+     * @param aAddress The event bus address the service is registered on
+     * @param aType The class of the service
+     * @return The service implementation, or an empty Optional if the service isn't available locally
+     */
+    public static <T> Optional<T> lookup(final Vertx aVertx, final String aAddress, final Class<T> aType) {
+        return Optional.ofNullable(getMap(aVertx).get(aAddress)).map(holder -> holder.myService)
+                .filter(aType::isInstance).map(aType::cast);
+    }
+
+    /**
+     * Gets the local map that holds the services.
+     *
+     * @param aVertx A Vert.x instance
+     * @return The local map that holds the services
+     */
+    private static LocalMap<String, Holder> getMap(final Vertx aVertx) {
+        return aVertx.sharedData().getLocalMap(LOCAL_SERVICES_MAP);
+    }
+
+    /**
+     * A wrapper that lets a service implementation be stored in local shared data without being copied.
+     */
+    private static final class Holder implements Shareable {
+
+        /**
+         * The service implementation.
+         */
+        private final Object myService;
+
+        /**
+         * Creates a new holder.
+         *
+         * @param aService The service implementation
+         */
+        Holder(final Object aService) {
+            myService = aService;
+        }
+    }
+}
@@ -53,6 +53,16 @@ public interface OAuthTokenService {
      */
     Future<String> getBearerToken();
 
+    /**
+     * Gets a new bearer token because LibCal rejected the one it was sent. However many callers report the same
+     * rejected token, LibCal is only asked to re-authenticate once; if the token has already been replaced, the current
+     * one is returned right away.
+     *
+     * @param aRejectedToken The bearer token that LibCal rejected
+     * @return A Future that resolves to the value of the new bearer token
+     */
+    Future<String> refreshBearerToken(String aRejectedToken);
+
     /**
      * Closes the underlying resources used by this service.
      *
@@ -1,14 +1,15 @@
 
 package edu.ucla.library.libcal.services;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
-import java.util.Queue;
 
 import edu.ucla.library.libcal.Config;
-import edu.ucla.library.libcal.Constants;
 import edu.ucla.library.libcal.JsonKeys;
 import edu.ucla.library.libcal.MessageCodes;
+import edu.ucla.library.libcal.cache.RequestCoalescer;
+import edu.ucla.library.libcal.metrics.ProxyMetrics;
 
 import info.freelibrary.util.HTTP;
 import info.freelibrary.util.Logger;
@@ -37,18 +38,43 @@ public class OAuthTokenServiceImpl implements OAuthTokenService {
      */
     private static final String CLIENT_ID = "client_id";
 
+    /**
+     * The name of the default token pool strategy.
+     */
+    private static final String ROUND_ROBIN = "round-robin";
+
     /**
      * The Vert.x instance.
      */
     private final Vertx myVertx;
 
+    /**
+     * The holder that shares the current access token with the rest of the application.
+     */
+    private final TokenHolder myTokenHolder;
+
+    /**
+     * The application's metrics, which time the token refreshes.
+     */
+    private final ProxyMetrics myMetrics;
+
+    /**
+     * The re-authentications that are in flight, by the rejected token that triggered them.
+     */
+    private final RequestCoalescer<String, String> myRefreshes = new RequestCoalescer<>();
+
     /**
      * The client credentials.
      */
-    private final Queue<JsonObject> myClientCredentials = new LinkedList<>();
+    private final List<JsonObject> myClientCredentials = new ArrayList<>();
 
     /**
-     * An HTTP client for calling the access token service.
+     * Whether every client holds its own live token, rather than the clients taking turns at holding one.
+     */
+    private final boolean isPooled;
+
+    /**
+     * An HTTP client for calling the access token service; it shares its connection pool with the LibCal API calls.
      */
     private final WebClient myWebClient;
 
@@ -73,9 +99,9 @@ public class OAuthTokenServiceImpl implements OAuthTokenService {
     private final int myAuthExpiresInPadding;
 
     /**
-     * The ID of the periodic timer for checking if the OAuth token needs refreshing.
+     * The IDs of the timers for refreshing each token slot's OAuth token, by slot.
      */
-    private long myTimerId;
+    private final long[] myTimerIds;
 
     /**
      * Creates an instance of the service. Use {@link OAuthTokenService#create(Vertx, JsonObject)} to invoke.
@@ -89,63 +115,101 @@ public class OAuthTokenServiceImpl implements OAuthTokenService {
      */
     public OAuthTokenServiceImpl(final Vertx aVertx, final JsonObject aConfig,
             final Promise<OAuthTokenService> aPromise) {
-        final JsonObject clientCredentials1 =
-                createCredentials(Integer.parseInt(aConfig.getString(Config.OAUTH_CLIENT1_ID)),
-                        aConfig.getString(Config.OAUTH_CLIENT1_SECRET));
-        final JsonObject clientCredentials2 =
-                createCredentials(Integer.parseInt(aConfig.getString(Config.OAUTH_CLIENT2_ID)),
-                        aConfig.getString(Config.OAUTH_CLIENT2_SECRET));
+        final List<Future<Void>> authentications = new ArrayList<>();
+
+        // Clients are numbered from one, and as many as are configured are used
+        for (int index = 1; aConfig.getValue(Config.getClientIdKey(index)) != null; index++) {
+            myClientCredentials.add(createCredentials(Integer.parseInt(aConfig.getString(Config.getClientIdKey(index))),
+                    aConfig.getString(Config.getClientSecretKey(index))));
+        }
 
+        isPooled = aConfig.getBoolean(Config.TOKEN_POOL, false);
+        myTimerIds = new long[isPooled ? myClientCredentials.size() : 1];
         myAccessTokenService = UriTemplate.of(aConfig.getString(Config.OAUTH_TOKEN_URL));
         myVertx = aVertx;
-        myWebClient = WebClient.create(aVertx);
-        myClientCredentials.add(clientCredentials1);
-        myClientCredentials.add(clientCredentials2);
+        myTokenHolder = TokenHolder.get(aVertx);
+        myMetrics = ProxyMetrics.get(aVertx);
+        myWebClient = UpstreamClient.get(aVertx, aConfig).getWebClient();
         myAuthRetryCount = Optional.ofNullable(aConfig.getInteger(Config.LIBCAL_AUTH_RETRY_COUNT, null));
         myAuthRetryDelay = aConfig.getInteger(Config.LIBCAL_AUTH_RETRY_DELAY, 10);
         myAuthExpiresInPadding = aConfig.getInteger(Config.LIBCAL_AUTH_EXPIRES_IN_PADDING, 300);
 
-        authenticateWithRetry().compose(this::postAuthenticate).onSuccess(unused -> aPromise.complete(this))
-                .onFailure(aPromise::fail);
+        myTokenHolder.configure(myTimerIds.length,
+                TokenHolder.Strategy.fromName(aConfig.getString(Config.TOKEN_POOL_STRATEGY, ROUND_ROBIN)),
+                aConfig.getLong(Config.TOKEN_POOL_COOLDOWN, TokenHolder.DEFAULT_COOLDOWN));
+
+        for (int slot = 0; slot < myTimerIds.length; slot++) {
+            final int tokenSlot = slot;
+
+            authentications.add(authenticateWithRetry(tokenSlot).compose(token -> postAuthenticate(tokenSlot, token))
+                    .onFailure(details -> LOGGER.error(MessageCodes.LCP_005, details.getMessage())));
+        }
+
+        // The service is ready as soon as one client has a token; the others join the pool when they authenticate
+        Future.any(authentications).onSuccess(unused -> aPromise.complete(this)).onFailure(aPromise::fail);
     }
 
     @Override
     public Future<String> getBearerToken() {
-        return myVertx.sharedData().getLocalAsyncMap(Constants.ACCESS_TOKEN_MAP).compose(asyncMap -> {
-            return asyncMap.get(Constants.ACCESS_TOKEN).map(token -> (String) token);
+        return Future.succeededFuture(myTokenHolder.getToken());
+    }
+
+    @Override
+    public Future<String> refreshBearerToken(final String aRejectedToken) {
+        final int slot = myTokenHolder.indexOf(aRejectedToken);
+        final String token = myTokenHolder.getToken();
+
+        // The rejected token has already been replaced
+        if (slot < 0 && token != null) {
+            return Future.succeededFuture(token);
+        }
+
+        return myRefreshes.execute(String.valueOf(aRejectedToken), () -> {
+            final int tokenSlot = Math.max(0, slot);
+
+            LOGGER.warn(MessageCodes.LCP_016);
+
+            // Try once; if that fails, the refresh timer is still set to try again
+            return myMetrics.timeTokenRefresh(ProxyMetrics.REJECTED, authenticate(tokenSlot, Optional.of(0)))
+                    .compose(user -> postAuthenticate(tokenSlot, user)).map(unused -> myTokenHolder.getToken(tokenSlot))
+                    .onFailure(details -> LOGGER.error(MessageCodes.LCP_005, details.getMessage()));
         });
     }
 
     @Override
     public Future<Void> close() {
-        myVertx.cancelTimer(myTimerId);
+        for (final long timerId : myTimerIds) {
+            myVertx.cancelTimer(timerId);
+        }
 
         return Future.succeededFuture();
     }
 
     /**
-     * Make the access token accessible to the rest of the application via {@link OAuthTokenService#getAccessToken}.
+     * Make the access token accessible to the rest of the application, via {@link OAuthTokenService#getBearerToken} and
+     * the {@link TokenHolder}.
      *
+     * @param aSlot The token slot the token fills
      * @param aToken An OAuth token
-     * @return A Future that resolves once the new value has been put into the map
+     * @return A Future that resolves once the new value has been shared
      */
-    private Future<Void> shareAccessToken(final User aToken) {
-        return myVertx.sharedData().getLocalAsyncMap(Constants.ACCESS_TOKEN_MAP).compose(asyncMap -> {
-            return asyncMap.put(Constants.ACCESS_TOKEN, aToken.principal().getString(JsonKeys.ACCESS_TOKEN));
-        });
+    private Future<Void> shareAccessToken(final int aSlot, final User aToken) {
+        myTokenHolder.set(aSlot, aToken.principal().getString(JsonKeys.ACCESS_TOKEN));
+        return Future.succeededFuture();
     }
 
     /**
      * Refresh the OAuth token before it has a chance to expire.
      *
+     * @param aSlot The token slot the token fills
      * @param aToken The OAuth token
      * @return The ID of a Vert.x timer
      */
-    private long keepTokenFresh(final User aToken) {
+    private long keepTokenFresh(final int aSlot, final User aToken) {
         final int delay = aToken.principal().getInteger(JsonKeys.EXPIRES_IN) - myAuthExpiresInPadding;
 
         return myVertx.setTimer(delay * 1000, timerID -> {
-            authenticateWithRetry().compose(this::postAuthenticate)
+            authenticateWithRetry(aSlot).compose(token -> postAuthenticate(aSlot, token))
                     .onFailure(details -> LOGGER.error(MessageCodes.LCP_005, details.getMessage()));
         });
     }
@@ -153,32 +217,46 @@ public class OAuthTokenServiceImpl implements OAuthTokenService {
     /**
      * Attempts authentication with a set number of retries.
      *
+     * @param aSlot The token slot to authenticate for
+     * @return A Future that succeeds with the new OAuth token if authentication is successful, or fails otherwise
+     */
+    private Future<User> authenticateWithRetry(final int aSlot) {
+        return myMetrics.timeTokenRefresh(ProxyMetrics.SCHEDULED, authenticate(aSlot, myAuthRetryCount));
+    }
+
+    /**
+     * Attempts authentication with the supplied number of retries.
+     *
+     * @param aSlot The token slot to authenticate for
+     * @param aRetryCount The optional number of times to retry (retries forever if empty)
      * @return A Future that succeeds with the new OAuth token if authentication is successful, or fails otherwise
      */
-    private Future<User> authenticateWithRetry() {
+    private Future<User> authenticate(final int aSlot, final Optional<Integer> aRetryCount) {
         final Promise<User> authentication = Promise.promise();
 
-        authenticateWithRetryHelper(myAuthRetryCount, authentication);
+        authenticateWithRetryHelper(aSlot, aRetryCount, authentication);
 
         return authentication.future();
     }
 
     /**
-     * Performs the recursion for {@link #authenticateWithRetry()}.
+     * Performs the recursion for {@link #authenticateWithRetry(int)}.
      *
+     * @param aSlot The token slot to authenticate for
      * @param aRetryCount The optional number of times to retry (retries forever if empty)
      * @param aPromise A Promise that completes with the new OAuth token if authentication is successful, or fails
      *        otherwise
      */
-    private void authenticateWithRetryHelper(final Optional<Integer> aRetryCount, final Promise<User> aPromise) {
-        myWebClient.postAbs(myAccessTokenService).sendJsonObject(myClientCredentials.peek()).onSuccess(response -> {
+    private void authenticateWithRetryHelper(final int aSlot, final Optional<Integer> aRetryCount,
+            final Promise<User> aPromise) {
+        myWebClient.postAbs(myAccessTokenService).sendJsonObject(getCredentials(aSlot)).onSuccess(response -> {
             if (response.statusCode() == HTTP.OK) {
                 aPromise.complete(User.create(response.bodyAsJsonObject()));
             } else {
                 if (aRetryCount.isEmpty() || aRetryCount.get() > 0) {
                     // Wait a bit before retrying again
                     myVertx.setTimer(myAuthRetryDelay * 1000, timerID -> {
-                        authenticateWithRetryHelper(aRetryCount.map(count -> count - 1), aPromise);
+                        authenticateWithRetryHelper(aSlot, aRetryCount.map(count -> count - 1), aPromise);
                     });
 
                     LOGGER.warn(MessageCodes.LCP_004, response.bodyAsString(), myAuthRetryDelay);
@@ -192,19 +270,35 @@ public class OAuthTokenServiceImpl implements OAuthTokenService {
     /**
      * Updates application state to reflect the newly-acquired OAuth token.
      *
+     * @param aSlot The token slot the token fills
      * @param aToken The OAuth token
      * @return A Future that succeeds once the application state has been updated, or fails if there was a problem
      */
-    private Future<Void> postAuthenticate(final User aToken) {
-        myTimerId = keepTokenFresh(aToken);
+    private Future<Void> postAuthenticate(final int aSlot, final User aToken) {
+        // A refresh that was triggered by a rejected token replaces the one that was scheduled
+        myVertx.cancelTimer(myTimerIds[aSlot]);
+        myTimerIds[aSlot] = keepTokenFresh(aSlot, aToken);
 
-        LOGGER.debug(MessageCodes.LCP_002, myClientCredentials.peek().getString(CLIENT_ID),
+        LOGGER.debug(MessageCodes.LCP_002, getCredentials(aSlot).getString(CLIENT_ID),
                 aToken.principal().encodePrettily());
 
-        // Send the just-used client credentials to the back of the queue
-        myClientCredentials.add(myClientCredentials.remove());
+        if (!isPooled) {
+            // Send the just-used client credentials to the back of the queue
+            myClientCredentials.add(myClientCredentials.remove(0));
+        }
 
-        return shareAccessToken(aToken);
+        return shareAccessToken(aSlot, aToken);
+    }
+
+    /**
+     * Gets the credentials of the client that authenticates for a token slot. In a pool, each slot has its own client;
+     * otherwise, the single slot is filled by each client in turn.
+     *
+     * @param aSlot A token slot
+     * @return The client's credentials
+     */
+    private JsonObject getCredentials(final int aSlot) {
+        return myClientCredentials.get(isPooled ? aSlot : 0);
     }
 
     /**
@@ -0,0 +1,570 @@
+
+package edu.ucla.library.libcal.services;
+
+import static info.freelibrary.util.Constants.COMMA;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import info.freelibrary.util.HTTP;
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.ContentEncoding;
+import edu.ucla.library.libcal.HttpResponseImpl;
+import edu.ucla.library.libcal.MessageCodes;
+import edu.ucla.library.libcal.metrics.ProxyMetrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.web.client.HttpResponse;
+
+/**
+ * Batches concurrent single-ID GETs of the same LibCal endpoint, shared by everything in a Vert.x instance.
+ * <p>
+ * LibCal's multi-ID endpoints, like <code>/api/1.1/events/{id}</code>, take a comma-separated list of IDs. GETs of one
+ * ID that arrive within a short window of each other, with the same query string, are sent to LibCal as one call for
+ * all their IDs, and the JSON array in its response is split back into one response per ID, matched on each element's
+ * ID field. A response that can't be split, or that's missing an ID, is made up for by calling LibCal for each ID that
+ * didn't get a response of its own.
+ */
+public final class RequestBatcher implements Shareable {
+
+    /**
+     * The default number of milliseconds that a batch waits for more IDs; zero turns batching off.
+     */
+    public static final long DEFAULT_WINDOW = 0;
+
+    /**
+     * The default most IDs in one batch.
+     */
+    public static final int DEFAULT_MAX_IDS = 20;
+
+    /**
+     * The endpoints that are batched when none are configured, with the field that holds their elements' IDs.
+     */
+    public static final String DEFAULT_ENDPOINTS = "/api/1.1/events=id";
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestBatcher.class, MessageCodes.BUNDLE);
+
+    /**
+     * The name of the local shared data map that holds the request batcher.
+     */
+    private static final String REQUEST_BATCHER_MAP = RequestBatcher.class.getName();
+
+    /**
+     * The key of the request batcher in its local shared data map.
+     */
+    private static final String REQUEST_BATCHER = "requestBatcher";
+
+    /**
+     * The separator between an endpoint and its ID field in the endpoint configuration.
+     */
+    private static final char EQUALS = '=';
+
+    /**
+     * The separator between a path and its query string.
+     */
+    private static final char QUESTION_MARK = '?';
+
+    /**
+     * The separator between path segments.
+     */
+    private static final char SLASH = '/';
+
+    /**
+     * The LibCal response headers that describe the batched body, and so don't belong on a split-off response.
+     */
+    private static final List<CharSequence> BODY_HEADERS =
+            List.of(HttpHeaders.CONTENT_ENCODING, HttpHeaders.CONTENT_LENGTH, HttpHeaders.ETAG);
+
+    /**
+     * The Vert.x instance whose timers close the batches.
+     */
+    private final Vertx myVertx;
+
+    /**
+     * The number of milliseconds that a batch waits for more IDs.
+     */
+    private final long myWindow;
+
+    /**
+     * The most IDs in one batch.
+     */
+    private final int myMaxIds;
+
+    /**
+     * The batched endpoints' paths, without the ID, mapped to the field that holds their elements' IDs.
+     */
+    private final Map<String, String> myEndpoints;
+
+    /**
+     * The open batches, by endpoint and query string.
+     */
+    private final Map<String, Batch> myBatches = new HashMap<>();
+
+    /**
+     * The number of GETs that were sent to LibCal as part of a batch.
+     */
+    private final LongAdder myBatchedCount = new LongAdder();
+
+    /**
+     * Creates a new request batcher.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aWindow The number of milliseconds that a batch waits for more IDs; zero turns batching off
+     * @param aMaxIds The most IDs in one batch
+     * @param aEndpoints A comma-separated list of <code>/path/prefix=idField</code> endpoints, whose paths are followed
+     *        by an ID
+     * @throws IllegalArgumentException If an endpoint is invalid
+     */
+    public RequestBatcher(final Vertx aVertx, final long aWindow, final int aMaxIds, final String aEndpoints) {
+        myVertx = aVertx;
+        myWindow = Math.max(0, aWindow);
+        myMaxIds = Math.max(1, aMaxIds);
+        myEndpoints = parseEndpoints(aEndpoints);
+
+        FunctionCounter.builder("libcal.proxy.upstream.batched", myBatchedCount, LongAdder::sum)
+                .description("GETs sent to LibCal as part of a batch").register(ProxyMetrics.get(aVertx).getRegistry());
+    }
+
+    /**
+     * Gets the request batcher that's shared by everything in a Vert.x instance, creating it from the supplied
+     * configuration if it doesn't exist yet.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aConfig An application configuration
+     * @return The shared request batcher
+     * @throws IllegalArgumentException If the configuration contains an invalid batch endpoint
+     */
+    public static RequestBatcher get(final Vertx aVertx, final JsonObject aConfig) {
+        return getMap(aVertx).computeIfAbsent(REQUEST_BATCHER, key -> fromConfig(aVertx, aConfig));
+    }
+
+    /**
+     * Creates a request batcher from the application's configuration.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aConfig An application configuration
+     * @return A new request batcher
+     * @throws IllegalArgumentException If the configuration contains an invalid batch endpoint
+     */
+    static RequestBatcher fromConfig(final Vertx aVertx, final JsonObject aConfig) {
+        return new RequestBatcher(aVertx, aConfig.getLong(Config.BATCH_WINDOW, DEFAULT_WINDOW),
+                aConfig.getInteger(Config.BATCH_MAX_IDS, DEFAULT_MAX_IDS),
+                aConfig.getString(Config.BATCH_ENDPOINTS, DEFAULT_ENDPOINTS));
+    }
+
+    /**
+     * Checks whether requests are batched.
+     *
+     * @return True if requests are batched; else, false
+     */
+    public boolean isEnabled() {
+        return myWindow > 0 && !myEndpoints.isEmpty();
+    }
+
+    /**
+     * Gets the number of GETs that were sent to LibCal as part of a batch.
+     *
+     * @return The number of batched GETs
+     */
+    public long getBatchedCount() {
+        return myBatchedCount.sum();
+    }
+
+    /**
+     * Makes a buffered GET of LibCal, batching it with other GETs of the same endpoint if it's for a single ID. A GET
+     * that can't be batched is passed straight to the fetcher.
+     *
+     * @param aQuery A <code>/path?query</code> string
+     * @param aFetcher A function that GETs a <code>/path?query</code> from LibCal
+     * @return A Future that resolves to LibCal's response to the GET
+     */
+    public Future<HttpResponse<Buffer>> execute(final String aQuery,
+            final Function<String, Future<HttpResponse<Buffer>>> aFetcher) {
+        final int index = aQuery.indexOf(QUESTION_MARK);
+        final String path = index < 0 ? aQuery : aQuery.substring(0, index);
+        final int slash = path.lastIndexOf(SLASH);
+        final String idField = isEnabled() && slash > 0 ? myEndpoints.get(path.substring(0, slash)) : null;
+        final String id;
+        final Promise<HttpResponse<Buffer>> promise;
+        Batch fullBatch = null;
+
+        if (idField == null || !isId(path, slash + 1)) {
+            return aFetcher.apply(aQuery);
+        }
+
+        id = path.substring(slash + 1);
+
+        synchronized (myBatches) {
+            final String batchKey =
+                    index < 0 ? path.substring(0, slash) : path.substring(0, slash) + aQuery.substring(index);
+            Batch batch = myBatches.get(batchKey);
+
+            if (batch == null) {
+                final Batch newBatch = new Batch(path.substring(0, slash),
+                        index < 0 ? null : aQuery.substring(index + 1), idField, aFetcher);
+
+                newBatch.myTimerId = myVertx.setTimer(myWindow, timerId -> close(batchKey, newBatch));
+                myBatches.put(batchKey, newBatch);
+                batch = newBatch;
+            }
+
+            promise = batch.myPromises.computeIfAbsent(id, key -> Promise.promise());
+
+            if (batch.myPromises.size() >= myMaxIds) {
+                myBatches.remove(batchKey);
+                myVertx.cancelTimer(batch.myTimerId);
+                fullBatch = batch;
+            }
+        }
+
+        if (fullBatch != null) {
+            send(fullBatch);
+        }
+
+        return onCurrentContext(promise.future());
+    }
+
+    /**
+     * Closes a batch whose window has passed, if it hasn't already been closed for being full, and sends it.
+     *
+     * @param aKey The batch's key
+     * @param aBatch The batch
+     */
+    private void close(final String aKey, final Batch aBatch) {
+        final boolean isOpen;
+
+        synchronized (myBatches) {
+            isOpen = myBatches.remove(aKey, aBatch);
+        }
+
+        if (isOpen) {
+            send(aBatch);
+        }
+    }
+
+    /**
+     * Sends a batch to LibCal and splits LibCal's response between its IDs. A batch of one ID is sent as a plain GET.
+     *
+     * @param aBatch A closed batch
+     */
+    private void send(final Batch aBatch) {
+        final List<String> ids = new ArrayList<>(aBatch.myPromises.keySet());
+
+        if (ids.size() == 1) {
+            aBatch.myFetcher.apply(aBatch.getQuery(ids.get(0))).onComplete(aBatch.myPromises.get(ids.get(0)));
+            return;
+        }
+
+        LOGGER.debug(MessageCodes.LCP_035, ids.size(), aBatch.myPath);
+        myBatchedCount.add(ids.size());
+
+        aBatch.myFetcher.apply(aBatch.getQuery(String.join(COMMA, ids))).onComplete(result -> {
+            if (result.failed()) {
+                aBatch.myPromises.values().forEach(promise -> promise.fail(result.cause()));
+            } else if (result.result().statusCode() >= HTTP.INTERNAL_SERVER_ERROR) {
+                // LibCal is failing, so calling it once for each ID would only add to its load
+                aBatch.myPromises.values().forEach(promise -> promise.complete(result.result()));
+            } else {
+                split(aBatch, result.result());
+            }
+        });
+    }
+
+    /**
+     * Splits LibCal's response to a batch into a response for each ID. The IDs that don't get a response of their own
+     * are sent to LibCal one at a time.
+     *
+     * @param aBatch A batch that's been sent
+     * @param aResponse LibCal's response to the batch
+     */
+    private void split(final Batch aBatch, final HttpResponse<Buffer> aResponse) {
+        final Map<String, Buffer> bodies = aResponse.statusCode() == HTTP.OK ? getBodies(aBatch, aResponse) : Map.of();
+
+        if (bodies.size() < aBatch.myPromises.size()) {
+            LOGGER.debug(MessageCodes.LCP_036, aResponse.statusCode(), aBatch.myPath);
+        }
+
+        aBatch.myPromises.forEach((id, promise) -> {
+            final Buffer body = bodies.get(id);
+
+            if (body != null) {
+                final MultiMap headers = MultiMap.caseInsensitiveMultiMap().addAll(aResponse.headers());
+
+                BODY_HEADERS.forEach(headers::remove);
+                promise.complete(new HttpResponseImpl<>(aResponse.version(), aResponse.statusCode(),
+                        aResponse.statusMessage(), headers, aResponse.trailers(), aResponse.cookies(), body,
+                        aResponse.followedRedirects()));
+            } else {
+                aBatch.myFetcher.apply(aBatch.getQuery(id)).onComplete(promise);
+            }
+        });
+    }
+
+    /**
+     * Gets the body of each ID's response from LibCal's response to a batch. The batched body is either a JSON array or
+     * an object with one array field, and each ID's body has the same shape with only that ID's elements.
+     *
+     * @param aBatch A batch that's been sent
+     * @param aResponse LibCal's 200 response to the batch
+     * @return The body of each ID's response, by ID; any ID whose elements couldn't be found is left out
+     */
+    private static Map<String, Buffer> getBodies(final Batch aBatch, final HttpResponse<Buffer> aResponse) {
+        final String coding = ContentEncoding.getCoding(aResponse.headers());
+        final Map<String, JsonArray> elements = new HashMap<>();
+        final Map<String, Buffer> bodies = new HashMap<>();
+        final JsonObject wrapper;
+        final String arrayField;
+        final JsonArray array;
+        final Object json;
+
+        if (aResponse.body() == null) {
+            return Map.of();
+        }
+
+        try {
+            json = Json
+                    .decodeValue(coding == null ? aResponse.body() : ContentEncoding.decode(aResponse.body(), coding));
+        } catch (final IOException | DecodeException details) {
+            return Map.of();
+        }
+
+        if (json instanceof JsonArray) {
+            wrapper = null;
+            arrayField = null;
+            array = (JsonArray) json;
+        } else if (json instanceof JsonObject) {
+            wrapper = (JsonObject) json;
+            arrayField = getArrayField(wrapper);
+
+            if (arrayField == null) {
+                return Map.of();
+            }
+
+            array = wrapper.getJsonArray(arrayField);
+        } else {
+            return Map.of();
+        }
+
+        for (final Object element : array) {
+            if (element instanceof JsonObject && ((JsonObject) element).getValue(aBatch.myIdField) != null) {
+                elements.computeIfAbsent(String.valueOf(((JsonObject) element).getValue(aBatch.myIdField)),
+                        id -> new JsonArray()).add(element);
+            }
+        }
+
+        for (final String id : aBatch.myPromises.keySet()) {
+            final JsonArray idElements = elements.get(id);
+
+            if (idElements != null) {
+                bodies.put(id, wrapper == null ? idElements.toBuffer()
+                        : wrapper.copy().put(arrayField, idElements).toBuffer());
+            }
+        }
+
+        return bodies;
+    }
+
+    /**
+     * Gets the name of a JSON object's only array field.
+     *
+     * @param aObject A JSON object
+     * @return The name of the object's only array field, or null if it doesn't have exactly one
+     */
+    private static String getArrayField(final JsonObject aObject) {
+        String arrayField = null;
+
+        for (final Map.Entry<String, Object> entry : aObject) {
+            if (entry.getValue() instanceof JsonArray) {
+                if (arrayField != null) {
+                    return null;
+                }
+
+                arrayField = entry.getKey();
+            }
+        }
+
+        return arrayField;
+    }
+
+    /**
+     * Checks whether the last segment of a path is a single ID: a non-empty run of digits.
+     *
+     * @param aPath A request path
+     * @param aStart The index of the path's last segment
+     * @return True if the last segment is a single ID; else, false
+     */
+    private static boolean isId(final String aPath, final int aStart) {
+        if (aStart >= aPath.length()) {
+            return false;
+        }
+
+        for (int index = aStart; index < aPath.length(); index++) {
+            if (aPath.charAt(index) < '0' || aPath.charAt(index) > '9') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses the batched endpoints.
+     *
+     * @param aEndpoints A (possibly null) comma-separated list of <code>/path/prefix=idField</code> endpoints
+     * @return The endpoints' paths mapped to their ID fields
+     * @throws IllegalArgumentException If an endpoint is invalid
+     */
+    private static Map<String, String> parseEndpoints(final String aEndpoints) {
+        final Map<String, String> endpoints = new HashMap<>();
+
+        if (aEndpoints != null) {
+            for (final String endpoint : aEndpoints.split(COMMA)) {
+                final String trimmed = endpoint.trim();
+                final int index = trimmed.indexOf(EQUALS);
+                final String path;
+                final String idField;
+
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+
+                path = index < 0 ? trimmed : trimmed.substring(0, index).trim();
+                idField = index < 0 ? "" : trimmed.substring(index + 1).trim();
+
+                if (path.length() < 2 || path.charAt(0) != SLASH || path.charAt(path.length() - 1) == SLASH ||
+                        idField.isEmpty()) {
+                    throw new IllegalArgumentException(LOGGER.getMessage(MessageCodes.LCP_037, trimmed));
+                }
+
+                endpoints.put(path, idField);
+            }
+        }
+
+        return endpoints;
+    }
+
+    /**
+     * Wraps a shared Future so that its result is delivered on the caller's context.
+     *
+     * @param aFuture A Future that may be completed on another context
+     * @return A Future that's completed on the caller's context
+     */
+    private static Future<HttpResponse<Buffer>> onCurrentContext(final Future<HttpResponse<Buffer>> aFuture) {
+        final Context context = Vertx.currentContext();
+        final Promise<HttpResponse<Buffer>> promise;
+
+        if (context == null) {
+            return aFuture;
+        }
+
+        promise = Promise.promise();
+        aFuture.onComplete(result -> {
+            if (Vertx.currentContext() == context) {
+                promise.handle(result);
+            } else {
+                context.runOnContext(unused -> promise.handle(result));
+            }
+        });
+
+        return promise.future();
+    }
+
+    /**
+     * Gets the local shared data map that holds the request batcher.
+     *
+     * @param aVertx A Vert.x instance
+     * @return The local shared data map
+     */
+    private static LocalMap<String, RequestBatcher> getMap(final Vertx aVertx) {
+        return aVertx.sharedData().getLocalMap(REQUEST_BATCHER_MAP);
+    }
+
+    /**
+     * The GETs of one endpoint, with one query string, that are sent to LibCal together.
+     */
+    private static final class Batch {
+
+        /**
+         * The endpoint's path, without the ID.
+         */
+        private final String myPath;
+
+        /**
+         * The GETs' query string, or null if they don't have one.
+         */
+        private final String myQueryString;
+
+        /**
+         * The field that holds the IDs of the elements of the endpoint's responses.
+         */
+        private final String myIdField;
+
+        /**
+         * The function that GETs a <code>/path?query</code> from LibCal.
+         */
+        private final Function<String, Future<HttpResponse<Buffer>>> myFetcher;
+
+        /**
+         * The promises of responses to the batched GETs, by ID, in the order they were batched.
+         */
+        private final Map<String, Promise<HttpResponse<Buffer>>> myPromises = new LinkedHashMap<>();
+
+        /**
+         * The ID of the timer that closes the batch.
+         */
+        private long myTimerId;
+
+        /**
+         * Creates a batch.
+         *
+         * @param aPath The endpoint's path, without the ID
+         * @param aQueryString The GETs' query string, or null if they don't have one
+         * @param aIdField The field that holds the IDs of the elements of the endpoint's responses
+         * @param aFetcher A function that GETs a <code>/path?query</code> from LibCal
+         */
+        private Batch(final String aPath, final String aQueryString, final String aIdField,
+                final Function<String, Future<HttpResponse<Buffer>>> aFetcher) {
+            myPath = aPath;
+            myQueryString = aQueryString;
+            myIdField = aIdField;
+            myFetcher = aFetcher;
+        }
+
+        /**
+         * Gets the <code>/path?query</code> of a GET of the endpoint.
+         *
+         * @param aIds A comma-separated list of IDs
+         * @return The GET's <code>/path?query</code>
+         */
+        private String getQuery(final String aIds) {
+            final String path = myPath + SLASH + aIds;
+
+            return myQueryString == null ? path : path + QUESTION_MARK + myQueryString;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+
+package edu.ucla.library.libcal.services;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.metrics.ProxyMetrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Hedges idempotent calls to LibCal: when a call hasn't been answered by the time most calls have (the 95th percentile
+ * of recent latencies), a second, identical call is sent, and whichever is answered first is used.
+ * <p>
+ * Hedges are held to a budget, a percentage of the calls made, so that a slow LibCal doesn't get twice the load. A
+ * hedge uses the same access token as the call it hedges and isn't counted against its client's rate limit; the budget
+ * keeps it to a small share of the calls.
+ */
+public final class RequestHedger {
+
+    /**
+     * The default percentage of calls that may be hedged.
+     */
+    public static final int DEFAULT_BUDGET = 5;
+
+    /**
+     * The default minimum number of milliseconds to wait before hedging a call.
+     */
+    public static final long DEFAULT_MIN_DELAY = 50;
+
+    /**
+     * The number of recent latencies that the hedging delay is taken from.
+     */
+    static final int SAMPLE_SIZE = 200;
+
+    /**
+     * The number of latencies that must be recorded before any call is hedged.
+     */
+    static final int MIN_SAMPLES = 20;
+
+    /**
+     * The percentile of recent latencies after which a call is hedged.
+     */
+    private static final int PERCENTILE = 95;
+
+    /**
+     * The most hedges that the budget can save up for a burst of slow calls.
+     */
+    private static final double MAX_CREDIT = 10;
+
+    /**
+     * The Vert.x instance whose timers start the hedges.
+     */
+    private final Vertx myVertx;
+
+    /**
+     * The share of calls that may be hedged.
+     */
+    private final double myBudget;
+
+    /**
+     * The minimum number of milliseconds to wait before hedging a call.
+     */
+    private final long myMinDelay;
+
+    /**
+     * The recent latencies, in nanoseconds, as a ring buffer.
+     */
+    private final long[] mySamples = new long[SAMPLE_SIZE];
+
+    /**
+     * The number of hedges sent.
+     */
+    private final LongAdder myHedgeCount = new LongAdder();
+
+    /**
+     * The number of latencies recorded, up to the number of samples kept.
+     */
+    private int mySampleCount;
+
+    /**
+     * The position of the next latency in the ring buffer.
+     */
+    private int myNextSample;
+
+    /**
+     * The number of milliseconds to wait before hedging a call, or zero if calls aren't being hedged yet.
+     */
+    private long myDelay;
+
+    /**
+     * The hedges that the budget allows, which grow with each call.
+     */
+    private double myCredit;
+
+    /**
+     * Creates a new request hedger.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aBudget The percentage of calls that may be hedged
+     * @param aMinDelay The minimum number of milliseconds to wait before hedging a call
+     */
+    public RequestHedger(final Vertx aVertx, final int aBudget, final long aMinDelay) {
+        myVertx = aVertx;
+        myBudget = Math.max(0, aBudget) / 100d;
+        myMinDelay = Math.max(1, aMinDelay);
+
+        FunctionCounter.builder("libcal.proxy.upstream.hedges", myHedgeCount, LongAdder::sum)
+                .description("Hedged calls to LibCal").register(ProxyMetrics.get(aVertx).getRegistry());
+    }
+
+    /**
+     * Creates a request hedger from the application's configuration, if hedging is turned on.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aConfig An application configuration
+     * @return A request hedger, or null if hedging is turned off
+     */
+    public static RequestHedger fromConfig(final Vertx aVertx, final JsonObject aConfig) {
+        if (!aConfig.getBoolean(Config.HEDGE_REQUESTS, false)) {
+            return null;
+        }
+
+        return new RequestHedger(aVertx, aConfig.getInteger(Config.HEDGE_BUDGET, DEFAULT_BUDGET),
+                aConfig.getLong(Config.HEDGE_MIN_DELAY, DEFAULT_MIN_DELAY));
+    }
+
+    /**
+     * Makes an idempotent call, hedging it if it's slow and the budget allows. A call must be made in a Vert.x context,
+     * so that its hedge is started on the same event loop. The attempt that loses is left running; the caller, which
+     * holds its request, cuts it off once the returned Future is done.
+     *
+     * @param <T> The type of LibCal response
+     * @param aCall A function that makes the call; it may be called twice
+     * @return A Future that resolves to the first response, or fails if every call that was made failed
+     */
+    public <T> Future<T> execute(final Supplier<Future<T>> aCall) {
+        final Promise<T> promise = Promise.promise();
+        final AtomicInteger pending = new AtomicInteger(1);
+        final long delay = getDelay();
+
+        attempt(aCall, promise, pending);
+
+        if (delay > 0 && !promise.future().isComplete()) {
+            final long timerId = myVertx.setTimer(delay, id -> {
+                if (!promise.future().isComplete() && tryHedge()) {
+                    pending.incrementAndGet();
+                    myHedgeCount.increment();
+                    attempt(aCall, promise, pending);
+                }
+            });
+
+            promise.future().onComplete(result -> myVertx.cancelTimer(timerId));
+        }
+
+        return promise.future();
+    }
+
+    /**
+     * Gets the number of hedges sent.
+     *
+     * @return The number of hedges sent
+     */
+    public long getHedgeCount() {
+        return myHedgeCount.sum();
+    }
+
+    /**
+     * Records the latency of a successful call.
+     *
+     * @param aLatency How long the call took, in nanoseconds
+     */
+    synchronized void record(final long aLatency) {
+        mySamples[myNextSample] = aLatency;
+        myNextSample = (myNextSample + 1) % SAMPLE_SIZE;
+
+        if (mySampleCount < SAMPLE_SIZE) {
+            mySampleCount++;
+        }
+
+        // Sorting the samples for every call would cost more than it's worth, so the delay is updated periodically
+        if (mySampleCount >= MIN_SAMPLES && myNextSample % MIN_SAMPLES == 0) {
+            final long[] samples = Arrays.copyOf(mySamples, mySampleCount);
+
+            Arrays.sort(samples);
+            myDelay = Math.max(myMinDelay, TimeUnit.NANOSECONDS
+                    .toMillis(samples[Math.min(mySampleCount - 1, mySampleCount * PERCENTILE / 100)]));
+        }
+    }
+
+    /**
+     * Gets how long to wait before hedging a call, and earns the budget's share of a hedge.
+     *
+     * @return The number of milliseconds to wait before hedging the call, or zero if it won't be hedged
+     */
+    synchronized long getDelay() {
+        myCredit = Math.min(MAX_CREDIT, myCredit + myBudget);
+        return myDelay;
+    }
+
+    /**
+     * Spends one hedge from the budget, if it has one.
+     *
+     * @return True if a hedge may be sent; else, false
+     */
+    private synchronized boolean tryHedge() {
+        if (myCredit < 1) {
+            return false;
+        }
+
+        myCredit--;
+        return true;
+    }
+
+    /**
+     * Makes one of a hedged call's attempts.
+     *
+     * @param <T> The type of LibCal response
+     * @param aCall A function that makes the call
+     * @param aPromise The promise of the first response
+     * @param aPending The number of attempts that haven't failed
+     */
+    private <T> void attempt(final Supplier<Future<T>> aCall, final Promise<T> aPromise, final AtomicInteger aPending) {
+        final long start = System.nanoTime();
+
+        aCall.get().onComplete(result -> {
+            if (result.succeeded()) {
+                record(System.nanoTime() - start);
+                aPromise.tryComplete(result.result());
+            } else if (aPending.decrementAndGet() == 0) {
+                aPromise.tryFail(result.cause());
+            }
+        });
+    }
+}
@@ -0,0 +1,367 @@
+
+package edu.ucla.library.libcal.services;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import info.freelibrary.util.HTTP;
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.MessageCodes;
+
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Paces the requests that are sent to LibCal so that each LibCal client stays within its rate limit.
+ * <p>
+ * Every client has a token bucket that refills at the configured rate, up to the configured burst. A request that finds
+ * its client's bucket empty waits its turn, as long as the wait is short and not too many requests are already waiting;
+ * otherwise it's shed right away with a {@link RequestShedException}, so the caller can answer with a 503 rather than
+ * queue indefinitely. LibCal's own rate-limit headers pause a client's bucket too: a <code>Retry-After</code>, or a
+ * <code>RateLimit-Remaining</code> of zero with a <code>RateLimit-Reset</code>, holds back the client's requests until
+ * LibCal will take them again, even when no local rate is configured.
+ */
+public final class RequestScheduler {
+
+    /**
+     * The default number of requests that may wait for each client.
+     */
+    public static final int DEFAULT_MAX_QUEUE = 100;
+
+    /**
+     * The default maximum number of milliseconds a request waits for its client.
+     */
+    public static final long DEFAULT_MAX_WAIT = 2000;
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestScheduler.class, MessageCodes.BUNDLE);
+
+    /**
+     * The prefixes of the rate-limit response headers, standard and legacy.
+     */
+    private static final String[] RATE_LIMIT_PREFIXES = { "RateLimit-", "X-RateLimit-" };
+
+    /**
+     * The suffix of the header with the number of requests left in the current window.
+     */
+    private static final String REMAINING = "Remaining";
+
+    /**
+     * The suffix of the header with when the current window ends.
+     */
+    private static final String RESET = "Reset";
+
+    /**
+     * A reset value larger than this is a Unix timestamp rather than a number of seconds.
+     */
+    private static final long EPOCH_THRESHOLD = TimeUnit.DAYS.toSeconds(365);
+
+    /**
+     * How long a client holds back after a 429 that doesn't say how long to wait, in nanoseconds.
+     */
+    private static final long DEFAULT_PAUSE = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The token buckets, by client slot.
+     */
+    private final Map<Integer, Bucket> myBuckets = new ConcurrentHashMap<>();
+
+    /**
+     * The Vert.x instance whose timers release waiting requests.
+     */
+    private final Vertx myVertx;
+
+    /**
+     * The holder that knows which client slot an access token belongs to.
+     */
+    private final TokenHolder myTokenHolder;
+
+    /**
+     * The number of nanoseconds between requests for a client, or zero if there's no local rate limit.
+     */
+    private final long myInterval;
+
+    /**
+     * The number of nanoseconds a request may arrive ahead of its client's rate, which lets a burst through at once.
+     */
+    private final long myBurstTolerance;
+
+    /**
+     * The maximum number of requests that may wait for each client.
+     */
+    private final int myMaxQueue;
+
+    /**
+     * The maximum number of nanoseconds a request waits for its client.
+     */
+    private final long myMaxWait;
+
+    /**
+     * The source of the current time, in nanoseconds.
+     */
+    private final LongSupplier myClock;
+
+    /**
+     * Creates a new request scheduler.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aRate The number of requests per second each client may send, or zero for no local limit
+     * @param aBurst The number of requests a client may send at once
+     * @param aMaxQueue The maximum number of requests that may wait for each client
+     * @param aMaxWait The maximum number of milliseconds a request waits for its client
+     */
+    public RequestScheduler(final Vertx aVertx, final double aRate, final int aBurst, final int aMaxQueue,
+            final long aMaxWait) {
+        this(aVertx, aRate, aBurst, aMaxQueue, aMaxWait, System::nanoTime);
+    }
+
+    /**
+     * Creates a new request scheduler that gets the current time from the supplied clock.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aRate The number of requests per second each client may send, or zero for no local limit
+     * @param aBurst The number of requests a client may send at once
+     * @param aMaxQueue The maximum number of requests that may wait for each client
+     * @param aMaxWait The maximum number of milliseconds a request waits for its client
+     * @param aClock A source of the current time, in nanoseconds
+     * @throws IllegalArgumentException If a setting is negative
+     */
+    RequestScheduler(final Vertx aVertx, final double aRate, final int aBurst, final int aMaxQueue, final long aMaxWait,
+            final LongSupplier aClock) {
+        if (aRate < 0 || aBurst < 0 || aMaxQueue < 0 || aMaxWait < 0) {
+            throw new IllegalArgumentException(LOGGER.getMessage(MessageCodes.LCP_017));
+        }
+
+        myVertx = aVertx;
+        myTokenHolder = TokenHolder.get(aVertx);
+        myInterval = aRate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / aRate) : 0;
+        myBurstTolerance = myInterval * Math.max(0, aBurst - 1);
+        myMaxQueue = aMaxQueue;
+        myMaxWait = TimeUnit.MILLISECONDS.toNanos(aMaxWait);
+        myClock = aClock;
+    }
+
+    /**
+     * Creates a request scheduler from the application's configuration. A client's burst defaults to one second's worth
+     * of requests.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aConfig An application configuration
+     * @return A new request scheduler
+     * @throws IllegalArgumentException If the configuration has a negative rate-limit setting
+     */
+    public static RequestScheduler fromConfig(final Vertx aVertx, final JsonObject aConfig) {
+        final double rate = aConfig.getDouble(Config.RATE_LIMIT, 0d);
+        final int burst = aConfig.getInteger(Config.RATE_LIMIT_BURST, (int) Math.max(1, Math.ceil(rate)));
+
+        return new RequestScheduler(aVertx, rate, burst, aConfig.getInteger(Config.RATE_LIMIT_QUEUE, DEFAULT_MAX_QUEUE),
+                aConfig.getLong(Config.RATE_LIMIT_MAX_WAIT, DEFAULT_MAX_WAIT));
+    }
+
+    /**
+     * Waits for the turn of a request that's to be sent with an access token.
+     *
+     * @param aToken The access token the request will be sent with
+     * @return A Future that succeeds when the request may be sent, or fails with a {@link RequestShedException} if it
+     *         won't get a turn soon enough
+     */
+    public Future<Void> schedule(final String aToken) {
+        final Bucket bucket = getBucket(aToken);
+        final long delay;
+
+        try {
+            delay = bucket.reserve(myClock.getAsLong());
+        } catch (final RequestShedException details) {
+            return Future.failedFuture(details);
+        }
+
+        if (delay <= 0) {
+            return Future.succeededFuture();
+        }
+
+        final Promise<Void> promise = Promise.promise();
+
+        myVertx.setTimer(Math.max(1, TimeUnit.NANOSECONDS.toMillis(delay)), timerId -> {
+            bucket.release();
+            promise.complete();
+        });
+
+        return promise.future();
+    }
+
+    /**
+     * Learns from LibCal's response to a request whether its client needs to hold back.
+     *
+     * @param aToken The access token the request was sent with
+     * @param aStatusCode LibCal's response status code
+     * @param aHeaders LibCal's response headers
+     */
+    public void update(final String aToken, final int aStatusCode, final MultiMap aHeaders) {
+        final long pause = getPause(aStatusCode, aHeaders);
+
+        if (pause > 0) {
+            LOGGER.debug(MessageCodes.LCP_018, TimeUnit.NANOSECONDS.toMillis(pause));
+            getBucket(aToken).pause(myClock.getAsLong() + pause);
+        }
+    }
+
+    /**
+     * Gets the number of requests that are waiting for the client with an access token.
+     *
+     * @param aToken An access token
+     * @return The number of waiting requests
+     */
+    public int getQueueSize(final String aToken) {
+        return getBucket(aToken).myQueueSize;
+    }
+
+    /**
+     * Gets the bucket of the client with an access token.
+     *
+     * @param aToken An access token
+     * @return The client's bucket
+     */
+    private Bucket getBucket(final String aToken) {
+        return myBuckets.computeIfAbsent(Math.max(0, myTokenHolder.indexOf(aToken)), slot -> new Bucket());
+    }
+
+    /**
+     * Gets how long LibCal has asked a client to hold back, from its response's <code>Retry-After</code> header or, if
+     * the client has used up its current rate-limit window, from the header that says when the window resets.
+     *
+     * @param aStatusCode LibCal's response status code
+     * @param aHeaders LibCal's response headers
+     * @return The number of nanoseconds to hold back (a second, for a 429 that doesn't say), or zero if LibCal hasn't
+     *         asked for a pause
+     */
+    static long getPause(final int aStatusCode, final MultiMap aHeaders) {
+        final String retryAfter = aHeaders.get(HttpHeaders.RETRY_AFTER);
+
+        if (retryAfter != null && (aStatusCode == HTTP.TOO_MANY_REQUESTS || aStatusCode == HTTP.SERVICE_UNAVAILABLE)) {
+            return parseRetryAfter(retryAfter);
+        }
+
+        for (final String prefix : RATE_LIMIT_PREFIXES) {
+            final String remaining = aHeaders.get(prefix + REMAINING);
+            final String reset = aHeaders.get(prefix + RESET);
+
+            if (remaining != null && reset != null && "0".equals(remaining.trim())) {
+                return parseReset(reset);
+            }
+        }
+
+        return aStatusCode == HTTP.TOO_MANY_REQUESTS ? DEFAULT_PAUSE : 0;
+    }
+
+    /**
+     * Parses a <code>Retry-After</code> header value, which is either a number of seconds or an HTTP date.
+     *
+     * @param aRetryAfter A <code>Retry-After</code> header value
+     * @return The number of nanoseconds to wait, or zero if the value isn't valid
+     */
+    private static long parseRetryAfter(final String aRetryAfter) {
+        try {
+            return TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(aRetryAfter.trim())));
+        } catch (final NumberFormatException details) {
+            try {
+                final Instant date =
+                        ZonedDateTime.parse(aRetryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return TimeUnit.MILLISECONDS.toNanos(Math.max(0, date.toEpochMilli() - System.currentTimeMillis()));
+            } catch (final DateTimeParseException moreDetails) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Parses a rate-limit reset header value, which is either a number of seconds or a Unix timestamp.
+     *
+     * @param aReset A rate-limit reset header value
+     * @return The number of nanoseconds until the reset, or zero if the value isn't valid
+     */
+    private static long parseReset(final String aReset) {
+        try {
+            final long reset = Long.parseLong(aReset.trim());
+            final long seconds = reset > EPOCH_THRESHOLD
+                    ? reset - TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) : reset;
+
+            return TimeUnit.SECONDS.toNanos(Math.max(0, seconds));
+        } catch (final NumberFormatException details) {
+            return 0;
+        }
+    }
+
+    /**
+     * A client's token bucket, kept as the time at which its next request is due: each request pushes that time back by
+     * one interval, and a request may be sent once it's no more than the burst tolerance away.
+     */
+    private final class Bucket {
+
+        /**
+         * When the client's next request is due, in clock nanoseconds.
+         */
+        private long myNextDue = myClock.getAsLong();
+
+        /**
+         * The number of requests that are waiting for their turn.
+         */
+        private volatile int myQueueSize;
+
+        /**
+         * Reserves a turn for a request.
+         *
+         * @param aNow The current time, in clock nanoseconds
+         * @return The number of nanoseconds the request has to wait for its turn; zero or less if it may go now
+         * @throws RequestShedException If the request would have to wait too long, or too many are already waiting
+         */
+        synchronized long reserve(final long aNow) {
+            final long due = Math.max(myNextDue, aNow);
+            final long delay = due - myBurstTolerance - aNow;
+
+            if (delay > 0) {
+                if (delay > myMaxWait || myQueueSize >= myMaxQueue) {
+                    final long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(delay + 999_999_999L));
+
+                    LOGGER.debug(MessageCodes.LCP_019, myQueueSize, retryAfter);
+                    throw new RequestShedException(retryAfter);
+                }
+
+                myQueueSize += 1;
+            }
+
+            myNextDue = due + myInterval;
+            return delay;
+        }
+
+        /**
+         * Records that a waiting request has had its turn.
+         */
+        synchronized void release() {
+            myQueueSize -= 1;
+        }
+
+        /**
+         * Holds back the client's requests until a time.
+         *
+         * @param aUntil When the client may send requests again, in clock nanoseconds
+         */
+        synchronized void pause(final long aUntil) {
+            myNextDue = Math.max(myNextDue, aUntil + myBurstTolerance);
+        }
+    }
+}
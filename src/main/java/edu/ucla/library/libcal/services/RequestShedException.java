@@ -0,0 +1,58 @@
+
+package edu.ucla.library.libcal.services;
+
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import edu.ucla.library.libcal.MessageCodes;
+
+/**
+ * A failure that's raised when a LibCal request is turned away because its client is at its rate limit and can't take
+ * it soon enough. It carries the number of seconds after which the request may be tried again, for the proxy's 503.
+ */
+public class RequestShedException extends RuntimeException {
+
+    /**
+     * The <code>serialVersionUID</code> for RequestShedException.
+     */
+    private static final long serialVersionUID = -4817220538573611482L;
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestShedException.class, MessageCodes.BUNDLE);
+
+    /**
+     * The number of seconds after which the request may be tried again.
+     */
+    private final long myRetryAfter;
+
+    /**
+     * Creates a new exception for a request that's been shed.
+     *
+     * @param aRetryAfter The number of seconds after which the request may be tried again
+     */
+    public RequestShedException(final long aRetryAfter) {
+        this(LOGGER.getMessage(MessageCodes.LCP_020, aRetryAfter), aRetryAfter);
+    }
+
+    /**
+     * Creates a new exception for a request that's been turned away for another reason.
+     *
+     * @param aMessage The reason the request was turned away
+     * @param aRetryAfter The number of seconds after which the request may be tried again
+     */
+    protected RequestShedException(final String aMessage, final long aRetryAfter) {
+        super(aMessage);
+        myRetryAfter = aRetryAfter;
+    }
+
+    /**
+     * Gets the number of seconds after which the request may be tried again.
+     *
+     * @return The number of seconds to wait before trying again
+     */
+    public long getRetryAfter() {
+        return myRetryAfter;
+    }
+}
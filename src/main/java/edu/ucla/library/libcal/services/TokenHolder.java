@@ -0,0 +1,356 @@
+
+package edu.ucla.library.libcal.services;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import info.freelibrary.util.HTTP;
+
+import edu.ucla.library.libcal.Constants;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+/**
+ * Holds the current LibCal access tokens for every verticle in this JVM. The token service writes a new token into it
+ * whenever it authenticates, and readers get a token (or its ready-made "Authorization" header value) with volatile
+ * reads, instead of asking the token service over the event bus.
+ * <p>
+ * The holder has one slot per LibCal client that has a live token. With more than one slot, {@link #getToken()} spreads
+ * requests across the clients, either in turn or by picking the one with the fewest requests in flight, and skips a
+ * client for a while after LibCal rejects or rate-limits it.
+ */
+public final class TokenHolder implements Shareable {
+
+    /**
+     * The default number of seconds a client is passed over after LibCal rejects or rate-limits it.
+     */
+    public static final long DEFAULT_COOLDOWN = 30;
+
+    /**
+     * The prefix of a bearer token "Authorization" header value.
+     */
+    private static final String BEARER = "Bearer ";
+
+    /**
+     * The current tokens, by client slot; a slot is null until its client has authenticated.
+     */
+    private volatile AtomicReferenceArray<Token> myTokens = new AtomicReferenceArray<>(1);
+
+    /**
+     * How the next token is chosen when there's more than one.
+     */
+    private volatile Strategy myStrategy = Strategy.ROUND_ROBIN;
+
+    /**
+     * How long a client is passed over after LibCal rejects or rate-limits it, in nanoseconds.
+     */
+    private volatile long myCooldown = TimeUnit.SECONDS.toNanos(DEFAULT_COOLDOWN);
+
+    /**
+     * A counter for choosing tokens in turn.
+     */
+    private final AtomicInteger myNextSlot = new AtomicInteger();
+
+    /**
+     * Creates a new, empty token holder. Use {@link #get(Vertx)} to get the one shared in a Vert.x instance.
+     */
+    TokenHolder() {
+        // This is intentionally left empty
+    }
+
+    /**
+     * Gets the token holder that's shared by everything in a Vert.x instance.
+     *
+     * @param aVertx A Vert.x instance
+     * @return The shared token holder
+     */
+    public static TokenHolder get(final Vertx aVertx) {
+        final LocalMap<String, TokenHolder> map = aVertx.sharedData().getLocalMap(Constants.ACCESS_TOKEN_MAP);
+        final TokenHolder holder = new TokenHolder();
+        final TokenHolder existingHolder = map.putIfAbsent(Constants.ACCESS_TOKEN, holder);
+
+        return existingHolder != null ? existingHolder : holder;
+    }
+
+    /**
+     * Sets up the holder's slots, dropping any tokens it has.
+     *
+     * @param aSlotCount The number of LibCal clients that will have live tokens
+     * @param aStrategy How the next token is chosen when there's more than one
+     * @param aCooldown The number of seconds a client is passed over after LibCal rejects or rate-limits it
+     */
+    public void configure(final int aSlotCount, final Strategy aStrategy, final long aCooldown) {
+        myStrategy = aStrategy;
+        myCooldown = TimeUnit.SECONDS.toNanos(aCooldown);
+        myTokens = new AtomicReferenceArray<>(Math.max(1, aSlotCount));
+    }
+
+    /**
+     * Sets the access token in the first slot.
+     *
+     * @param aToken An access token
+     */
+    public void set(final String aToken) {
+        set(0, aToken);
+    }
+
+    /**
+     * Sets the access token in a slot.
+     *
+     * @param aSlot A client slot
+     * @param aToken An access token
+     */
+    public void set(final int aSlot, final String aToken) {
+        myTokens.set(aSlot, new Token(aToken));
+    }
+
+    /**
+     * Gets the number of client slots.
+     *
+     * @return The number of client slots
+     */
+    public int size() {
+        return myTokens.length();
+    }
+
+    /**
+     * Chooses the access token to use for the next request. Healthy clients are preferred, but a client that's cooling
+     * down is still used if there's no other.
+     *
+     * @return An access token, or null if no client has one yet
+     */
+    public String getToken() {
+        final AtomicReferenceArray<Token> tokens = myTokens;
+        final int slotCount = tokens.length();
+        final long now = System.nanoTime();
+        Token fallback = null;
+        Token choice = null;
+
+        if (slotCount == 1) {
+            final Token token = tokens.get(0);
+            return token != null ? token.myValue : null;
+        }
+
+        final int start =
+                myStrategy == Strategy.ROUND_ROBIN ? Math.floorMod(myNextSlot.getAndIncrement(), slotCount) : 0;
+
+        for (int index = 0; index < slotCount; index++) {
+            final Token token = tokens.get((start + index) % slotCount);
+
+            if (token == null) {
+                continue;
+            }
+
+            if (!token.isHealthy(now)) {
+                fallback = fallback == null ? token : fallback;
+            } else if (myStrategy == Strategy.ROUND_ROBIN) {
+                choice = token;
+                break;
+            } else if (choice == null || token.myInFlight.get() < choice.myInFlight.get()) {
+                choice = token;
+            }
+        }
+
+        if (choice == null) {
+            choice = fallback;
+        }
+
+        return choice != null ? choice.myValue : null;
+    }
+
+    /**
+     * Gets the access token in a slot.
+     *
+     * @param aSlot A client slot
+     * @return The slot's access token, or null if its client hasn't authenticated yet
+     */
+    public String getToken(final int aSlot) {
+        final Token token = myTokens.get(aSlot);
+        return token != null ? token.myValue : null;
+    }
+
+    /**
+     * Finds the slot that holds an access token.
+     *
+     * @param aToken An access token
+     * @return The token's slot, or -1 if it's not a current token
+     */
+    public int indexOf(final String aToken) {
+        final AtomicReferenceArray<Token> tokens = myTokens;
+
+        for (int index = 0; index < tokens.length(); index++) {
+            final Token token = tokens.get(index);
+
+            if (token != null && token.myValue.equals(aToken)) {
+                return index;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Gets the "Authorization" header value for an access token. A current token's header value is computed once, when
+     * the token is set, so it's only built here for a token that's been replaced since it was read.
+     *
+     * @param aToken An access token
+     * @return The "Authorization" header value that sends the token
+     */
+    public String getAuthorizationHeader(final String aToken) {
+        final Token token = find(aToken);
+        return token != null ? token.myAuthorizationHeader : BEARER.concat(aToken);
+    }
+
+    /**
+     * Records that a LibCal request has been sent with an access token.
+     *
+     * @param aToken The access token the request was sent with
+     */
+    public void startRequest(final String aToken) {
+        final Token token = find(aToken);
+
+        if (token != null) {
+            token.myInFlight.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records that LibCal has answered a request, tracking the health of the client whose token it was sent with.
+     *
+     * @param aToken The access token the request was sent with
+     * @param aStatusCode LibCal's response status code, or zero if the request failed without a response
+     */
+    public void endRequest(final String aToken, final int aStatusCode) {
+        final Token token = find(aToken);
+
+        if (token != null) {
+            token.myInFlight.decrementAndGet();
+
+            if (aStatusCode == HTTP.UNAUTHORIZED || aStatusCode == HTTP.TOO_MANY_REQUESTS) {
+                token.myUnhealthyUntil = System.nanoTime() + myCooldown;
+            } else if (aStatusCode != 0) {
+                token.myUnhealthyUntil = 0;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of requests in flight with an access token.
+     *
+     * @param aToken An access token
+     * @return The number of requests in flight, or zero if the token isn't a current one
+     */
+    public int getInFlightCount(final String aToken) {
+        final Token token = find(aToken);
+        return token != null ? token.myInFlight.get() : 0;
+    }
+
+    /**
+     * Checks whether the client with an access token is healthy.
+     *
+     * @param aToken An access token
+     * @return True if the token is current and its client isn't cooling down; else, false
+     */
+    public boolean isHealthy(final String aToken) {
+        final Token token = find(aToken);
+        return token != null && token.isHealthy(System.nanoTime());
+    }
+
+    /**
+     * Finds the current token with a value.
+     *
+     * @param aToken An access token
+     * @return The current token, or null if the value isn't a current token
+     */
+    private Token find(final String aToken) {
+        final AtomicReferenceArray<Token> tokens = myTokens;
+
+        for (int index = 0; index < tokens.length(); index++) {
+            final Token token = tokens.get(index);
+
+            if (token != null && token.myValue.equals(aToken)) {
+                return token;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * How the next token is chosen when there's more than one.
+     */
+    public enum Strategy {
+
+        /**
+         * Use the clients in turn.
+         */
+        ROUND_ROBIN,
+
+        /**
+         * Use the client with the fewest requests in flight.
+         */
+        LEAST_LOADED;
+
+        /**
+         * Gets a strategy from its configured name, e.g. "round-robin" or "least-loaded".
+         *
+         * @param aName A strategy name
+         * @return The named strategy
+         * @throws IllegalArgumentException If there isn't a strategy with the name
+         */
+        public static Strategy fromName(final String aName) {
+            return valueOf(aName.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * An access token, its "Authorization" header value, and the health of its client.
+     */
+    private static final class Token {
+
+        /**
+         * The access token.
+         */
+        private final String myValue;
+
+        /**
+         * The "Authorization" header value that sends the access token.
+         */
+        private final String myAuthorizationHeader;
+
+        /**
+         * The number of requests in flight with the token.
+         */
+        private final AtomicInteger myInFlight = new AtomicInteger();
+
+        /**
+         * When the token's client stops cooling down, in {@link System#nanoTime()} nanoseconds; zero if it's healthy.
+         */
+        private volatile long myUnhealthyUntil;
+
+        /**
+         * Creates a new token.
+         *
+         * @param aValue An access token
+         */
+        Token(final String aValue) {
+            myValue = aValue;
+            myAuthorizationHeader = BEARER.concat(aValue);
+        }
+
+        /**
+         * Checks whether the token's client is healthy.
+         *
+         * @param aNow The current {@link System#nanoTime()}
+         * @return True if the client isn't cooling down; else, false
+         */
+        boolean isHealthy(final long aNow) {
+            final long unhealthyUntil = myUnhealthyUntil;
+            return unhealthyUntil == 0 || aNow - unhealthyUntil >= 0;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+
+package edu.ucla.library.libcal.services;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.JsonKeys;
+import edu.ucla.library.libcal.metrics.ProxyMetrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.web.client.WebClient;
+
+/**
+ * The one HTTP client that every service in this JVM uses to call LibCal, so that they all draw on one connection pool
+ * that's tuned from the application's configuration.
+ * <p>
+ * Whether a request uses TLS follows from the scheme of its URL. With HTTP/2 turned on, the client offers it through
+ * ALPN and multiplexes requests over its connections instead of queuing them for a free HTTP/1.1 connection.
+ */
+public final class UpstreamClient implements Shareable {
+
+    /**
+     * The default maximum number of HTTP/1.1 connections to LibCal.
+     */
+    public static final int DEFAULT_MAX_POOL_SIZE = 32;
+
+    /**
+     * The default maximum number of requests that may wait for a connection to LibCal.
+     */
+    public static final int DEFAULT_MAX_WAIT_QUEUE_SIZE = 256;
+
+    /**
+     * The default number of seconds an unused connection is kept alive for reuse.
+     */
+    public static final int DEFAULT_KEEP_ALIVE_TIMEOUT = 60;
+
+    /**
+     * The default number of milliseconds a connection to LibCal may take to open.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5_000;
+
+    /**
+     * The name of the local shared data map that holds the client.
+     */
+    private static final String UPSTREAM_CLIENT_MAP = UpstreamClient.class.getName();
+
+    /**
+     * The key of the client in its local shared data map.
+     */
+    private static final String UPSTREAM_CLIENT = "upstreamClient";
+
+    /**
+     * The name of the client's connection pool.
+     */
+    private static final String POOL_NAME = "libcal";
+
+    /**
+     * The options the client was created with.
+     */
+    private final HttpClientOptions myOptions;
+
+    /**
+     * The HTTP client, for streamed requests.
+     */
+    private final HttpClient myHttpClient;
+
+    /**
+     * A web client backed by {@link #myHttpClient}, for buffered requests.
+     */
+    private final WebClient myWebClient;
+
+    /**
+     * The number of connections to LibCal that are open.
+     */
+    private final AtomicInteger myOpenConnections = new AtomicInteger();
+
+    /**
+     * The number of connections to LibCal that have been opened.
+     */
+    private final LongAdder myConnectionCount = new LongAdder();
+
+    /**
+     * Creates a new upstream client.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aOptions The client's options
+     */
+    private UpstreamClient(final Vertx aVertx, final HttpClientOptions aOptions) {
+        myOptions = aOptions;
+        myHttpClient = aVertx.createHttpClient(aOptions).connectionHandler(connection -> {
+            myConnectionCount.increment();
+            myOpenConnections.incrementAndGet();
+            connection.closeHandler(closed -> myOpenConnections.decrementAndGet());
+        });
+        myWebClient = WebClient.wrap(myHttpClient);
+
+        Gauge.builder("libcal.proxy.upstream.connections", myOpenConnections, AtomicInteger::get)
+                .description("Open connections to LibCal").register(ProxyMetrics.get(aVertx).getRegistry());
+    }
+
+    /**
+     * Gets the upstream client that's shared by everything in a Vert.x instance, creating it from the supplied
+     * configuration if it doesn't exist yet.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aConfig An application configuration
+     * @return The shared upstream client
+     */
+    public static UpstreamClient get(final Vertx aVertx, final JsonObject aConfig) {
+        return getMap(aVertx).computeIfAbsent(UPSTREAM_CLIENT, key -> new UpstreamClient(aVertx, getOptions(aConfig)));
+    }
+
+    /**
+     * Looks up the upstream client that's shared by everything in a Vert.x instance.
+     *
+     * @param aVertx A Vert.x instance
+     * @return The shared upstream client, or an empty Optional if it hasn't been created
+     */
+    public static Optional<UpstreamClient> lookup(final Vertx aVertx) {
+        return Optional.ofNullable(getMap(aVertx).get(UPSTREAM_CLIENT));
+    }
+
+    /**
+     * Gets the HTTP client options from the application's configuration.
+     *
+     * @param aConfig An application configuration
+     * @return The HTTP client options
+     */
+    static HttpClientOptions getOptions(final JsonObject aConfig) {
+        final int keepAliveTimeout = aConfig.getInteger(Config.HTTP_KEEP_ALIVE_TIMEOUT, DEFAULT_KEEP_ALIVE_TIMEOUT);
+        final HttpClientOptions options = new HttpClientOptions().setName(POOL_NAME).setKeepAlive(true)
+                .setMaxPoolSize(aConfig.getInteger(Config.HTTP_MAX_POOL_SIZE, DEFAULT_MAX_POOL_SIZE))
+                .setMaxWaitQueueSize(aConfig.getInteger(Config.HTTP_MAX_WAIT_QUEUE_SIZE, DEFAULT_MAX_WAIT_QUEUE_SIZE))
+                .setKeepAliveTimeout(keepAliveTimeout).setHttp2KeepAliveTimeout(keepAliveTimeout)
+                .setIdleTimeout(aConfig.getInteger(Config.HTTP_IDLE_TIMEOUT, 0))
+                .setConnectTimeout(aConfig.getInteger(Config.HTTP_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT))
+                .setPipelining(aConfig.getBoolean(Config.HTTP_PIPELINING, false));
+
+        if (aConfig.getBoolean(Config.HTTP2, false)) {
+            options.setProtocolVersion(HttpVersion.HTTP_2).setUseAlpn(true);
+        }
+
+        return options;
+    }
+
+    /**
+     * Gets the HTTP client, for calls to LibCal.
+     *
+     * @return The HTTP client
+     */
+    public HttpClient getHttpClient() {
+        return myHttpClient;
+    }
+
+    /**
+     * Gets the web client, for token requests. It shares the HTTP client's connection pool.
+     *
+     * @return The web client
+     */
+    public WebClient getWebClient() {
+        return myWebClient;
+    }
+
+    /**
+     * Gets the number of connections to LibCal that are open.
+     *
+     * @return The number of open connections
+     */
+    public int getOpenConnections() {
+        return myOpenConnections.get();
+    }
+
+    /**
+     * Gets the number of connections to LibCal that have been opened, a steady climb in which means connections aren't
+     * being reused.
+     *
+     * @return The number of connections that have been opened
+     */
+    public long getConnectionCount() {
+        return myConnectionCount.sum();
+    }
+
+    /**
+     * Gets the client's connection pool statistics.
+     *
+     * @return The pool's settings and its connection counts
+     */
+    public JsonObject getStats() {
+        return new JsonObject().put(JsonKeys.PROTOCOL, myOptions.getProtocolVersion().alpnName())
+                .put(JsonKeys.MAX_POOL_SIZE,
+                        myOptions.getProtocolVersion() == HttpVersion.HTTP_2 ? myOptions.getHttp2MaxPoolSize()
+                                : myOptions.getMaxPoolSize())
+                .put(JsonKeys.MAX_WAIT_QUEUE_SIZE, myOptions.getMaxWaitQueueSize())
+                .put(JsonKeys.OPEN_CONNECTIONS, getOpenConnections())
+                .put(JsonKeys.CONNECTION_COUNT, getConnectionCount());
+    }
+
+    /**
+     * Gets the local map that holds the client.
+     *
+     * @param aVertx A Vert.x instance
+     * @return The local map that holds the client
+     */
+    private static LocalMap<String, UpstreamClient> getMap(final Vertx aVertx) {
+        return aVertx.sharedData().getLocalMap(UPSTREAM_CLIENT_MAP);
+    }
+}
@@ -0,0 +1,205 @@
+
+package edu.ucla.library.libcal.services;
+
+import static info.freelibrary.util.Constants.COMMA;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import info.freelibrary.util.Logger;
+import info.freelibrary.util.LoggerFactory;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.MessageCodes;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * The timeouts of calls to LibCal, by route class. A route class is a path prefix with its own idle and total timeouts;
+ * a call whose path doesn't start with any configured prefix gets the default timeouts.
+ * <p>
+ * The idle timeout limits how long LibCal may go without sending anything, and the total timeout limits how long a call
+ * may take from start to finish (for a streamed response, until its headers arrive). A timeout of zero means there's no
+ * limit. How long a connection may take to open is set once for the whole connection pool; see {@link UpstreamClient}.
+ */
+public final class UpstreamTimeouts {
+
+    /**
+     * The default number of milliseconds LibCal may go without sending anything.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 15_000;
+
+    /**
+     * The default number of milliseconds a call to LibCal may take.
+     */
+    public static final long DEFAULT_TOTAL_TIMEOUT = 30_000;
+
+    /**
+     * The logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(UpstreamTimeouts.class, MessageCodes.BUNDLE);
+
+    /**
+     * The separator between a route class's path prefix and its timeouts.
+     */
+    private static final char EQUALS = '=';
+
+    /**
+     * The separator between a route class's idle and total timeouts.
+     */
+    private static final char COLON = ':';
+
+    /**
+     * The timeouts of a call that doesn't belong to a configured route class.
+     */
+    private final Timeouts myDefaultTimeouts;
+
+    /**
+     * The path prefixes that have their own timeouts, longest prefix first.
+     */
+    private final List<Map.Entry<String, Timeouts>> myRouteTimeouts;
+
+    /**
+     * Creates a new set of timeouts.
+     *
+     * @param aIdleTimeout The default number of milliseconds LibCal may go without sending anything
+     * @param aTotalTimeout The default number of milliseconds a call to LibCal may take
+     * @param aRouteTimeouts A (possibly null) comma-separated list of <code>/path/prefix=idle:total</code> route class
+     *        timeouts
+     * @throws IllegalArgumentException If a route class's timeouts are invalid
+     */
+    public UpstreamTimeouts(final long aIdleTimeout, final long aTotalTimeout, final String aRouteTimeouts) {
+        myDefaultTimeouts = new Timeouts(aIdleTimeout, aTotalTimeout);
+        myRouteTimeouts = parseRouteTimeouts(aRouteTimeouts);
+    }
+
+    /**
+     * Creates a set of timeouts from the application's configuration.
+     *
+     * @param aConfig An application configuration
+     * @return The timeouts of calls to LibCal
+     * @throws IllegalArgumentException If the configuration contains invalid route class timeouts
+     */
+    public static UpstreamTimeouts fromConfig(final JsonObject aConfig) {
+        return new UpstreamTimeouts(aConfig.getLong(Config.REQUEST_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT),
+                aConfig.getLong(Config.REQUEST_TIMEOUT, DEFAULT_TOTAL_TIMEOUT),
+                aConfig.getString(Config.ROUTE_TIMEOUTS));
+    }
+
+    /**
+     * Gets how long LibCal may go without sending anything in answer to a call.
+     *
+     * @param aPath The path of a call to LibCal
+     * @return The number of milliseconds LibCal may be idle, or zero if there's no limit
+     */
+    public long getIdleTimeout(final String aPath) {
+        return getTimeouts(aPath).myIdleTimeout;
+    }
+
+    /**
+     * Gets how long a call to LibCal may take.
+     *
+     * @param aPath The path of a call to LibCal
+     * @return The number of milliseconds the call may take, or zero if there's no limit
+     */
+    public long getTotalTimeout(final String aPath) {
+        return getTimeouts(aPath).myTotalTimeout;
+    }
+
+    /**
+     * Gets the timeouts of the route class that a path belongs to.
+     *
+     * @param aPath The path of a call to LibCal
+     * @return The path's timeouts
+     */
+    private Timeouts getTimeouts(final String aPath) {
+        for (final Map.Entry<String, Timeouts> route : myRouteTimeouts) {
+            if (aPath.startsWith(route.getKey())) {
+                return route.getValue();
+            }
+        }
+
+        return myDefaultTimeouts;
+    }
+
+    /**
+     * Parses a list of route class timeouts.
+     *
+     * @param aRouteTimeouts A (possibly null) comma-separated list of <code>/path/prefix=idle:total</code> route class
+     *        timeouts
+     * @return The route class timeouts, longest path prefix first
+     * @throws IllegalArgumentException If a route class's timeouts are invalid
+     */
+    private static List<Map.Entry<String, Timeouts>> parseRouteTimeouts(final String aRouteTimeouts) {
+        final List<Map.Entry<String, Timeouts>> routeTimeouts = new ArrayList<>();
+
+        if (aRouteTimeouts != null) {
+            for (final String routeTimeout : aRouteTimeouts.split(COMMA)) {
+                final String trimmed = routeTimeout.trim();
+                final int index = trimmed.lastIndexOf(EQUALS);
+
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+
+                try {
+                    final String[] timeouts;
+
+                    if (index < 1) {
+                        throw new NumberFormatException(trimmed);
+                    }
+
+                    timeouts = trimmed.substring(index + 1).split(String.valueOf(COLON));
+
+                    if (timeouts.length != 2) {
+                        throw new NumberFormatException(trimmed);
+                    }
+
+                    routeTimeouts.add(Map.entry(trimmed.substring(0, index).trim(),
+                            new Timeouts(Long.parseLong(timeouts[0].trim()), Long.parseLong(timeouts[1].trim()))));
+                } catch (final NumberFormatException details) {
+                    throw new IllegalArgumentException(LOGGER.getMessage(MessageCodes.LCP_027, trimmed), details);
+                }
+            }
+        }
+
+        routeTimeouts.sort(
+                Comparator.comparingInt((Map.Entry<String, Timeouts> entry) -> entry.getKey().length()).reversed());
+
+        return routeTimeouts;
+    }
+
+    /**
+     * The idle and total timeouts of a route class.
+     */
+    private static final class Timeouts {
+
+        /**
+         * The number of milliseconds LibCal may go without sending anything.
+         */
+        private final long myIdleTimeout;
+
+        /**
+         * The number of milliseconds a call may take.
+         */
+        private final long myTotalTimeout;
+
+        /**
+         * Creates a route class's timeouts.
+         *
+         * @param aIdleTimeout The number of milliseconds LibCal may go without sending anything
+         * @param aTotalTimeout The number of milliseconds a call may take
+         * @throws NumberFormatException If a timeout is negative
+         */
+        private Timeouts(final long aIdleTimeout, final long aTotalTimeout) {
+            if (aIdleTimeout < 0 || aTotalTimeout < 0) {
+                throw new NumberFormatException();
+            }
+
+            myIdleTimeout = aIdleTimeout;
+            myTotalTimeout = aTotalTimeout;
+        }
+    }
+}
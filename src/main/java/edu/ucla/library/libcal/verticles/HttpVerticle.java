@@ -0,0 +1,186 @@
+
+package edu.ucla.library.libcal.verticles;
+
+import static info.freelibrary.util.Constants.INADDR_ANY;
+
+import java.io.File;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.Op;
+import edu.ucla.library.libcal.access.IpAllowlist;
+import edu.ucla.library.libcal.cache.ResponseCache;
+import edu.ucla.library.libcal.handlers.BatchHandler;
+import edu.ucla.library.libcal.handlers.CompressionThresholdHandler;
+import edu.ucla.library.libcal.handlers.MetricsHandler;
+import edu.ucla.library.libcal.handlers.ProxyHandler;
+import edu.ucla.library.libcal.handlers.ReadinessHandler;
+import edu.ucla.library.libcal.handlers.StatusHandler;
+import edu.ucla.library.libcal.services.RequestScheduler;
+
+import io.netty.handler.codec.compression.Brotli;
+import io.netty.handler.codec.compression.StandardCompressionOptions;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Promise;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.AllowForwardHeaders;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.handler.BodyHandler;
+import io.vertx.ext.web.openapi.RouterBuilder;
+
+/**
+ * A verticle that serves the application's HTTP API. Several instances can be deployed, each on its own event loop;
+ * they all listen on the same port, and Vert.x spreads incoming connections across them. The instances share the
+ * allowlist, response cache, and request scheduler they're created with, and the services that the main verticle
+ * registers once.
+ */
+public class HttpVerticle extends AbstractVerticle {
+
+    /**
+     * An OpenAPI definition that the verticle uses to route requests.
+     */
+    private static final String API_SPEC = "src/main/resources/libcal-proxy.yaml";
+
+    /**
+     * The size of the compression window, as a power of two.
+     */
+    private static final int WINDOW_BITS = 15;
+
+    /**
+     * The amount of memory the compressor may use, from one to nine.
+     */
+    private static final int MEMORY_LEVEL = 8;
+
+    /**
+     * The networks that are allowed to call the proxy.
+     */
+    private final IpAllowlist myAllowlist;
+
+    /**
+     * The cache of LibCal responses to GET requests.
+     */
+    private final ResponseCache myResponseCache;
+
+    /**
+     * The scheduler that keeps each LibCal client within its rate limit.
+     */
+    private final RequestScheduler myRequestScheduler;
+
+    /**
+     * The verticle's HTTP server.
+     */
+    private HttpServer myServer;
+
+    /**
+     * Creates a new HTTP verticle.
+     *
+     * @param aAllowlist The networks that are allowed to call the proxy
+     * @param aResponseCache The cache of LibCal responses to GET requests
+     * @param aRequestScheduler The scheduler that keeps each LibCal client within its rate limit
+     */
+    public HttpVerticle(final IpAllowlist aAllowlist, final ResponseCache aResponseCache,
+            final RequestScheduler aRequestScheduler) {
+        super();
+
+        myAllowlist = aAllowlist;
+        myResponseCache = aResponseCache;
+        myRequestScheduler = aRequestScheduler;
+    }
+
+    @Override
+    public void start(final Promise<Void> aPromise) {
+        final JsonObject config = config();
+        final String host = config.getString(Config.HTTP_HOST, INADDR_ANY);
+        final int port = config.getInteger(Config.HTTP_PORT, 8888);
+
+        RouterBuilder.create(vertx, getRouterSpec()).compose(routeBuilder -> {
+            final HttpServerOptions serverOptions = getServerOptions(config).setPort(port).setHost(host);
+            final ProxyHandler proxyHandler =
+                    new ProxyHandler(getVertx(), config, myAllowlist, myResponseCache, myRequestScheduler);
+            final BodyHandler batchBodyHandler = BodyHandler.create(false)
+                    .setBodyLimit(config.getLong(Config.MAX_BODY_SIZE, ProxyHandler.DEFAULT_MAX_BODY_SIZE));
+            final Router router;
+
+            // Associate handlers with operation IDs from the application's OpenAPI specification
+            routeBuilder.operation(Op.GET_STATUS).handler(new StatusHandler(getVertx()));
+            routeBuilder.operation(Op.GET_METRICS).handler(new MetricsHandler(getVertx()));
+            routeBuilder.operation(Op.GET_READINESS).handler(new ReadinessHandler(getVertx()));
+            routeBuilder.operation(Op.POST_BATCH).handler(new BatchHandler(getVertx(), config, proxyHandler));
+
+            if (serverOptions.isCompressionSupported()) {
+                routeBuilder.rootHandler(new CompressionThresholdHandler(config
+                        .getLong(Config.HTTP_COMPRESSION_MIN_SIZE, CompressionThresholdHandler.DEFAULT_MIN_SIZE)));
+            }
+
+            // Replaces the router builder's default body handler; the proxy handler streams request bodies itself, so
+            // only the batch operation's body is read here
+            routeBuilder.rootHandler(context -> {
+                if (HttpMethod.POST.equals(context.request().method()) &&
+                        BatchHandler.PATH.equals(context.request().path())) {
+                    batchBodyHandler.handle(context);
+                } else {
+                    context.request().pause();
+                    context.next();
+                }
+            });
+
+            // Empty-path router to handle the variable-format calls to ProxyHandler
+            router = routeBuilder.createRouter();
+            router.allowForward(AllowForwardHeaders.X_FORWARD);
+            router.route().handler(proxyHandler);
+
+            myServer = getVertx().createHttpServer(serverOptions).requestHandler(router);
+
+            return myServer.listen();
+        }).onSuccess(server -> aPromise.complete()).onFailure(aPromise::fail);
+    }
+
+    @Override
+    public void stop(final Promise<Void> aPromise) {
+        if (myServer != null) {
+            myServer.close().onComplete(aPromise);
+        } else {
+            aPromise.complete();
+        }
+    }
+
+    /**
+     * Gets the HTTP server options from the application's configuration. With compression turned on, responses are
+     * compressed with gzip or deflate, or with Brotli if it's on the classpath, whichever the client prefers.
+     *
+     * @param aConfig An application configuration
+     * @return The HTTP server options
+     */
+    static HttpServerOptions getServerOptions(final JsonObject aConfig) {
+        final HttpServerOptions options = new HttpServerOptions();
+
+        if (aConfig.getBoolean(Config.HTTP_COMPRESSION, true)) {
+            final int level =
+                    aConfig.getInteger(Config.HTTP_COMPRESSION_LEVEL, HttpServerOptions.DEFAULT_COMPRESSION_LEVEL);
+
+            options.setCompressionSupported(true).setCompressionLevel(level);
+
+            // Brotli needs the optional brotli4j library, so it's only offered when that's been added
+            if (Brotli.isAvailable()) {
+                options.addCompressor(StandardCompressionOptions.brotli())
+                        .addCompressor(StandardCompressionOptions.gzip(level, WINDOW_BITS, MEMORY_LEVEL))
+                        .addCompressor(StandardCompressionOptions.deflate(level, WINDOW_BITS, MEMORY_LEVEL));
+            }
+        }
+
+        return options;
+    }
+
+    /**
+     * Gets the OpenAPI specification used to configure the application's router. If the file doesn't exist on the file
+     * system, we assume we're running from a Jar and that it can be found in the classpath.
+     *
+     * @return The OpenAPI router specification
+     */
+    private String getRouterSpec() {
+        final File specFile = new File(API_SPEC);
+        return specFile.exists() ? API_SPEC : specFile.getName();
+    }
+}
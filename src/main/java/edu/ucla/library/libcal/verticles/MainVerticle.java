@@ -1,37 +1,33 @@
 
 package edu.ucla.library.libcal.verticles;
 
-import static info.freelibrary.util.Constants.INADDR_ANY;
-
-import java.io.File;
-
 import info.freelibrary.util.Logger;
 import info.freelibrary.util.LoggerFactory;
 
 import edu.ucla.library.libcal.Config;
 import edu.ucla.library.libcal.MessageCodes;
-import edu.ucla.library.libcal.Op;
+import edu.ucla.library.libcal.access.IpAllowlist;
+import edu.ucla.library.libcal.cache.CacheWarmer;
+import edu.ucla.library.libcal.cache.ResponseCache;
 import edu.ucla.library.libcal.handlers.ProxyHandler;
-import edu.ucla.library.libcal.handlers.StatusHandler;
+import edu.ucla.library.libcal.metrics.ProxyMetrics;
 import edu.ucla.library.libcal.services.LibCalProxyService;
+import edu.ucla.library.libcal.services.LocalServices;
 import edu.ucla.library.libcal.services.OAuthTokenService;
+import edu.ucla.library.libcal.services.RequestScheduler;
 
 import io.vertx.config.ConfigRetriever;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.eventbus.MessageConsumer;
-import io.vertx.core.http.HttpServer;
-import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.web.AllowForwardHeaders;
-import io.vertx.ext.web.Router;
-import io.vertx.ext.web.handler.BodyHandler;
-import io.vertx.ext.web.openapi.RouterBuilder;
 import io.vertx.serviceproxy.ServiceBinder;
 
 /**
- * Main verticle that starts the application.
+ * Main verticle that starts the application. It registers the LibCal services once, and then deploys the HTTP verticles
+ * that serve the API, sharing the allowlist, response cache, and request scheduler between them.
  */
 public class MainVerticle extends AbstractVerticle {
 
@@ -40,11 +36,6 @@ public class MainVerticle extends AbstractVerticle {
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(MainVerticle.class, MessageCodes.BUNDLE);
 
-    /**
-     * An OpenAPI definition that the main verticle users to route requests.
-     */
-    private static final String API_SPEC = "src/main/resources/libcal-proxy.yaml";
-
     /**
      * The OAuth token service proxy.
      */
@@ -56,15 +47,40 @@ public class MainVerticle extends AbstractVerticle {
     private MessageConsumer<?> myLibCalProxyService;
 
     /**
-     * The main verticle's HTTP server.
+     * The networks that are allowed to call the proxy; rebuilt when the configuration changes.
+     */
+    private IpAllowlist myAllowlist;
+
+    /**
+     * The cache of LibCal responses to GET requests.
+     */
+    private ResponseCache myResponseCache;
+
+    /**
+     * The scheduler that keeps each LibCal client within its rate limit.
      */
-    private HttpServer myServer;
+    private RequestScheduler myRequestScheduler;
 
     @Override
     public void start(final Promise<Void> aPromise) {
         final ConfigRetriever configRetriever = ConfigRetriever.create(vertx);
 
         configRetriever.setConfigurationProcessor(Config::removeEmptyString).getConfig().compose(config -> {
+            myAllowlist = IpAllowlist.fromConfig(config);
+            myResponseCache = ResponseCache.fromConfig(config);
+            myResponseCache.bindTo(ProxyMetrics.get(vertx).getRegistry());
+            myRequestScheduler = RequestScheduler.fromConfig(vertx, config);
+
+            // Swap in a new allowlist when the allowed IPs change, without rebuilding it per request
+            configRetriever.listen(change -> {
+                final String allowedIPs = change.getNewConfiguration().getString(Config.ALLOWED_IPS);
+
+                if (allowedIPs != null &&
+                        !allowedIPs.equals(change.getPreviousConfiguration().getString(Config.ALLOWED_IPS))) {
+                    myAllowlist.update(allowedIPs);
+                }
+            });
+
             return OAuthTokenService.create(vertx, config).compose(service -> {
                 myOAuthTokenService = new ServiceBinder(vertx).setAddress(OAuthTokenService.ADDRESS)
                         .register(OAuthTokenService.class, service);
@@ -72,60 +88,55 @@ public class MainVerticle extends AbstractVerticle {
                 return LibCalProxyService.create(vertx, config).compose(proxy -> {
                     myLibCalProxyService = new ServiceBinder(vertx).setAddress(LibCalProxyService.ADDRESS)
                             .register(LibCalProxyService.class, proxy);
-                    return configureServer(config);
+                    // Let handlers in this JVM call the service directly, without event bus serialization
+                    LocalServices.register(vertx, LibCalProxyService.ADDRESS, proxy);
+                    return deployHttpVerticles(config).onSuccess(instances -> {
+                        LOGGER.info(MessageCodes.LCP_001, config.getInteger(Config.HTTP_PORT, 8888), instances);
+                        warmCache(config);
+                    });
                 });
             });
-        }).onSuccess(server -> {
-            LOGGER.info(MessageCodes.LCP_001, server.actualPort());
-            aPromise.complete();
-        }).onFailure(aPromise::fail);
+        }).onSuccess(instances -> aPromise.complete()).onFailure(aPromise::fail);
     }
 
     @Override
     public void stop(final Promise<Void> aPromise) {
-        myServer.close().compose(unused -> myOAuthTokenService.unregister())
-                .compose(alsoUnused -> myLibCalProxyService.unregister()).onSuccess(aPromise::complete)
-                .onFailure(aPromise::fail);
+        // The HTTP verticles were deployed by this one, so Vert.x undeploys them along with it
+        LocalServices.unregister(vertx, LibCalProxyService.ADDRESS);
+        myOAuthTokenService.unregister().compose(unused -> myLibCalProxyService.unregister())
+                .onSuccess(aPromise::complete).onFailure(aPromise::fail);
     }
 
     /**
-     * Configure the application server.
+     * Starts warming the response cache, if there are warm-up queries or the most requested queries are to be kept
+     * fresh. The server is already listening, but it doesn't report itself ready until the warm-up is done.
      *
      * @param aConfig A JSON configuration
-     * @return A Future that resolves to the configured and listening server
      */
-    private Future<HttpServer> configureServer(final JsonObject aConfig) {
-        final String host = aConfig.getString(Config.HTTP_HOST, INADDR_ANY);
-        final int port = aConfig.getInteger(Config.HTTP_PORT, 8888);
-
-        return RouterBuilder.create(vertx, getRouterSpec()).compose(routeBuilder -> {
-            final HttpServerOptions serverOptions = new HttpServerOptions().setPort(port).setHost(host);
-            final Router router;
-            final BodyHandler postBodyHandler = BodyHandler.create();
+    private void warmCache(final JsonObject aConfig) {
+        final CacheWarmer warmer = CacheWarmer.get(vertx, aConfig);
 
-            // Associate handlers with operation IDs from the application's OpenAPI specification
-            routeBuilder.operation(Op.GET_STATUS).handler(new StatusHandler(getVertx()));
+        if (warmer.isEnabled()) {
+            // The warm-up queries go through a handler of their own, so they're made just like client requests
+            final ProxyHandler prefetcher =
+                    new ProxyHandler(vertx, aConfig, myAllowlist, myResponseCache, myRequestScheduler);
 
-            // Empty-path router to handle the variable-format calls to ProxyHandler
-            router = routeBuilder.createRouter();
-            router.allowForward(AllowForwardHeaders.X_FORWARD);
-            // Add body handler so we can retrieve incoming body from Apps client request
-            router.route().handler(postBodyHandler).handler(new ProxyHandler(getVertx(), aConfig));
-
-            myServer = getVertx().createHttpServer(serverOptions).requestHandler(router);
-
-            return myServer.listen();
-        });
+            warmer.start(vertx, myResponseCache, prefetcher::prefetch);
+        }
     }
 
     /**
-     * Gets the OpenAPI specification used to configure the application's router. If the file doesn't exist on the file
-     * system, we assume we're running from a Jar and that it can be found in the classpath.
+     * Deploys the HTTP verticles, which serve the application's API on as many event loops as there are instances.
      *
-     * @return The OpenAPI router specification
+     * @param aConfig A JSON configuration
+     * @return A Future that resolves to the number of HTTP verticle instances
      */
-    private String getRouterSpec() {
-        final File specFile = new File(API_SPEC);
-        return specFile.exists() ? API_SPEC : specFile.getName();
+    private Future<Integer> deployHttpVerticles(final JsonObject aConfig) {
+        final int instances =
+                Math.max(1, aConfig.getInteger(Config.HTTP_INSTANCES, Runtime.getRuntime().availableProcessors()));
+        final DeploymentOptions options = new DeploymentOptions().setConfig(aConfig).setInstances(instances);
+
+        return vertx.deployVerticle(() -> new HttpVerticle(myAllowlist, myResponseCache, myRequestScheduler), options)
+                .map(deploymentId -> instances);
     }
 }
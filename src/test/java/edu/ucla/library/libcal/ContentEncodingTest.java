@@ -0,0 +1,89 @@
+
+package edu.ucla.library.libcal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+
+/**
+ * Tests {@link ContentEncoding}.
+ */
+public class ContentEncodingTest {
+
+    /**
+     * A response body.
+     */
+    private static final String BODY = "[{\"id\":\"5481\",\"title\":\"Study Session\"}]";
+
+    /**
+     * Tests that the content codings listed in an Accept-Encoding header are accepted.
+     */
+    @Test
+    public void testAccepts() {
+        assertTrue(ContentEncoding.accepts("gzip, deflate, br", ContentEncoding.GZIP));
+        assertTrue(ContentEncoding.accepts("br;q=1.0, GZIP;q=0.5", ContentEncoding.GZIP));
+        assertFalse(ContentEncoding.accepts("br", ContentEncoding.GZIP));
+        assertFalse(ContentEncoding.accepts(null, ContentEncoding.GZIP));
+    }
+
+    /**
+     * Tests that a quality of zero rules out a content coding, even one the wildcard would accept.
+     */
+    @Test
+    public void testZeroQuality() {
+        assertFalse(ContentEncoding.accepts("gzip;q=0", ContentEncoding.GZIP));
+        assertFalse(ContentEncoding.accepts("*, gzip;q=0.0", ContentEncoding.GZIP));
+        assertTrue(ContentEncoding.accepts("*", ContentEncoding.DEFLATE));
+        assertFalse(ContentEncoding.accepts("*;q=0", ContentEncoding.DEFLATE));
+    }
+
+    /**
+     * Tests that the identity content coding isn't treated as an encoding.
+     */
+    @Test
+    public void testGetCoding() {
+        final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+
+        assertNull(ContentEncoding.getCoding(headers));
+        assertNull(ContentEncoding.getCoding(headers.set(HttpHeaders.CONTENT_ENCODING, HttpHeaders.IDENTITY)));
+        assertEquals(ContentEncoding.GZIP,
+                ContentEncoding.getCoding(headers.set(HttpHeaders.CONTENT_ENCODING, "GZip")));
+    }
+
+    /**
+     * Tests that a gzipped body is decoded.
+     *
+     * @throws IOException If the body can't be encoded or decoded
+     */
+    @Test
+    public void testDecode() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (GZIPOutputStream encoder = new GZIPOutputStream(bytes)) {
+            encoder.write(BODY.getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals(BODY, ContentEncoding.decode(Buffer.buffer(bytes.toByteArray()), ContentEncoding.GZIP).toString());
+    }
+
+    /**
+     * Tests that a body that isn't really gzipped can't be decoded.
+     */
+    @Test
+    public void testDecodeInvalid() {
+        assertThrows(IOException.class, () -> ContentEncoding.decode(Buffer.buffer(BODY), ContentEncoding.GZIP));
+    }
+}
@@ -3,13 +3,18 @@ package edu.ucla.library.libcal;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.util.List;
+
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestInstance.Lifecycle;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import io.vertx.core.MultiMap;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpVersion;
 import io.vertx.ext.web.client.HttpResponse;
 import io.vertx.ext.web.client.WebClient;
 import io.vertx.ext.web.codec.BodyCodec;
@@ -67,4 +72,22 @@ public class HttpResponseMapperTest {
             }).completeNow();
         }).onFailure(aContext::failNow);
     }
+
+    /**
+     * Tests that a response decoded with a buffer body matches the response that was encoded.
+     */
+    @Test
+    public void testDecodeAsBufferReversesEncode() {
+        final MultiMap headers = MultiMap.caseInsensitiveMultiMap().add("Content-Type", "application/json")
+                .add("Cache-Control", "max-age=60");
+        final HttpResponse<String> response = new HttpResponseImpl<>(HttpVersion.HTTP_1_1, 200, "OK", headers,
+                MultiMap.caseInsensitiveMultiMap(), List.of(), "[{\"id\":\"5481\"}]", List.of());
+        final HttpResponse<Buffer> decodedEncodedResponse = myMapper.decodeAsBuffer(myMapper.encode(response));
+
+        assertEquals(response.statusCode(), decodedEncodedResponse.statusCode());
+        assertEquals(response.statusMessage(), decodedEncodedResponse.statusMessage());
+        assertEquals(response.headers().toString(), decodedEncodedResponse.headers().toString());
+        assertEquals(Buffer.buffer(response.body()), decodedEncodedResponse.body());
+        assertEquals("5481", decodedEncodedResponse.bodyAsJsonArray().getJsonObject(0).getString("id"));
+    }
 }
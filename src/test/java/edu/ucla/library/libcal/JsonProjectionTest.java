@@ -0,0 +1,126 @@
+
+package edu.ucla.library.libcal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Tests {@link JsonProjection}.
+ */
+public class JsonProjectionTest {
+
+    /**
+     * An event search response, with fields that clients don't always need.
+     */
+    private static final String SEARCH_RESPONSE = "{\"events\":[{\"id\":1,\"title\":\"Study Session\"," +
+            "\"description\":\"<p>A long description</p>\",\"location\":{\"id\":7,\"name\":\"Powell\"}," +
+            "\"tags\":[\"a\",\"b\"]},{\"id\":2,\"title\":\"Workshop\",\"description\":null," +
+            "\"location\":{\"id\":8,\"name\":\"YRL\"}}],\"total\":2}";
+
+    /**
+     * The field of the event search response that holds its events.
+     */
+    private static final String EVENTS = "events";
+
+    /**
+     * Tests that an event search response is projected onto the chosen fields of its events.
+     *
+     * @throws IOException If the response can't be projected
+     */
+    @Test
+    public void testProjection() throws IOException {
+        final JsonObject projected =
+                project("events.id,events.title,events.location.name", SEARCH_RESPONSE).toJsonObject();
+        final JsonObject expected = new JsonObject().put(EVENTS, new JsonArray()
+                .add(new JsonObject("{\"id\":1,\"title\":\"Study Session\",\"location\":{\"name\":\"Powell\"}}"))
+                .add(new JsonObject("{\"id\":2,\"title\":\"Workshop\",\"location\":{\"name\":\"YRL\"}}")));
+
+        assertEquals(expected, projected);
+    }
+
+    /**
+     * Tests that a chosen field is kept whole, even if its subfields are chosen too.
+     *
+     * @throws IOException If the response can't be projected
+     */
+    @Test
+    public void testWholeField() throws IOException {
+        final JsonObject projected =
+                project("total, events.location.id, events.location", SEARCH_RESPONSE).toJsonObject();
+        final JsonArray events = projected.getJsonArray(EVENTS);
+
+        assertEquals(2, projected.getInteger("total"));
+        assertEquals(new JsonObject("{\"location\":{\"id\":7,\"name\":\"Powell\"}}"), events.getJsonObject(0));
+        assertEquals(new JsonObject("{\"location\":{\"id\":8,\"name\":\"YRL\"}}"), events.getJsonObject(1));
+    }
+
+    /**
+     * Tests that the elements of a top-level array are projected, and that unchosen fields are left out.
+     *
+     * @throws IOException If the response can't be projected
+     */
+    @Test
+    public void testArray() throws IOException {
+        final Buffer projected = project("id,missing", "[{\"id\":\"5481\",\"title\":\"Study Session\"},{},3]");
+
+        assertEquals(new JsonArray("[{\"id\":\"5481\"},{},3]"), projected.toJsonArray());
+        assertFalse(projected.toString().contains("title"));
+    }
+
+    /**
+     * Tests that invalid field lists are rejected.
+     *
+     * @param aFields A field list
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "", " ", "events.", ".id", "id,,title", "events..id" })
+    public void testInvalidFields(final String aFields) {
+        assertThrows(IllegalArgumentException.class, () -> JsonProjection.parse(aFields));
+    }
+
+    /**
+     * Tests that a body that isn't valid JSON can't be projected.
+     *
+     * @param aBody A response body
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "{\"events\":[{\"id\":1}", "<html></html>", "{\"id\":}" })
+    public void testInvalidJson(final String aBody) {
+        assertThrows(IOException.class, () -> project("id", aBody));
+    }
+
+    /**
+     * Tests that JSON media types are recognized.
+     */
+    @Test
+    public void testIsJson() {
+        assertTrue(JsonProjection.isJson("application/json; charset=utf-8"));
+        assertTrue(JsonProjection.isJson("application/ld+JSON"));
+        assertFalse(JsonProjection.isJson("text/html"));
+        assertFalse(JsonProjection.isJson(null));
+    }
+
+    /**
+     * Projects a JSON body onto a list of fields.
+     *
+     * @param aFields A field list
+     * @param aJson A JSON body
+     * @return The projected body
+     * @throws IOException If the body can't be projected
+     */
+    private static Buffer project(final String aFields, final String aJson) throws IOException {
+        return JsonProjection.parse(aFields).apply(Buffer.buffer(aJson));
+    }
+}
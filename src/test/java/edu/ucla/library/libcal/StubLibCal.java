@@ -0,0 +1,484 @@
+
+package edu.ucla.library.libcal;
+
+import static edu.ucla.library.libcal.MediaType.APPLICATION_JSON;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import info.freelibrary.util.HTTP;
+
+import edu.ucla.library.libcal.services.LibCalProxyService;
+import edu.ucla.library.libcal.services.LocalServices;
+import edu.ucla.library.libcal.services.OAuthTokenService;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.serviceproxy.ServiceBinder;
+
+/**
+ * A stand-in for LibCal in tests and the load test: its token endpoint hands out numbered access tokens, and its API
+ * answers with a handler the test supplies. By default, the API answers an unrevoked token with a small JSON body, or a
+ * LibCal-like payload of a set size, and any other token with a 401. It can also be set to answer after a latency, and
+ * to fail a share of calls with a 500 or turn them away with a 429.
+ */
+public final class StubLibCal {
+
+    /**
+     * The host the stub listens on.
+     */
+    public static final String HOST = "127.0.0.1";
+
+    /**
+     * The path of the stub's token endpoint.
+     */
+    public static final String TOKEN_PATH = "/1.1/oauth/token";
+
+    /**
+     * The prefix of the access tokens that the stub hands out, which are numbered from one.
+     */
+    public static final String TOKEN_PREFIX = "token-";
+
+    /**
+     * The prefix of an Authorization header's bearer token.
+     */
+    private static final String BEARER = "Bearer ";
+
+    /**
+     * The number of seconds that a call that's turned away with a 429 is told to wait.
+     */
+    private static final long RETRY_AFTER = 1;
+
+    /**
+     * The description property of the payload's event, which is padded to make the payload the set size.
+     */
+    private static final String DESCRIPTION = "description";
+
+    /**
+     * The Vert.x instance that sets the stub's timers.
+     */
+    private final Vertx myVertx;
+
+    /**
+     * The number of access tokens that have been asked for.
+     */
+    private final AtomicInteger myTokenCount = new AtomicInteger();
+
+    /**
+     * The access tokens that the API rejects.
+     */
+    private final Set<String> myRevokedTokens = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The access tokens that the API has been called with, by request path.
+     */
+    private final Map<String, List<String>> myCalls = new ConcurrentHashMap<>();
+
+    /**
+     * The number of API calls that have been made.
+     */
+    private final LongAdder myCallCount = new LongAdder();
+
+    /**
+     * The stub's HTTP server, or the first of them if there's more than one.
+     */
+    private HttpServer myServer;
+
+    /**
+     * The handler of API requests.
+     */
+    private volatile Handler<HttpServerRequest> myApiHandler = this::answer;
+
+    /**
+     * The number of milliseconds the token endpoint takes to answer.
+     */
+    private volatile long myTokenDelay;
+
+    /**
+     * The number of seconds until the access tokens expire.
+     */
+    private volatile int myExpiresIn = 3600;
+
+    /**
+     * Whether the access tokens of API calls are recorded, by path.
+     */
+    private volatile boolean isRecordingCalls = true;
+
+    /**
+     * The (possibly null) payload that the API answers with by default, in place of a small JSON body.
+     */
+    private volatile Buffer myPayload;
+
+    /**
+     * The number of milliseconds the API takes to answer by default.
+     */
+    private volatile long myLatency;
+
+    /**
+     * The random extra number of milliseconds, up to which a default API answer may be delayed.
+     */
+    private volatile long myJitter;
+
+    /**
+     * The share of API calls that fail with a 500 by default, from 0 to 1.
+     */
+    private volatile double myErrorRate;
+
+    /**
+     * The share of API calls that are turned away with a 429 by default, from 0 to 1.
+     */
+    private volatile double myThrottleRate;
+
+    /**
+     * Creates a stub that isn't listening yet.
+     *
+     * @param aVertx A Vert.x instance
+     */
+    private StubLibCal(final Vertx aVertx) {
+        myVertx = aVertx;
+    }
+
+    /**
+     * Starts a stub LibCal on a free port.
+     *
+     * @param aVertx A Vert.x instance
+     * @return A Future that resolves to the stub once it's listening
+     */
+    public static Future<StubLibCal> start(final Vertx aVertx) {
+        return start(aVertx, 0, 1);
+    }
+
+    /**
+     * Starts a stub LibCal with a number of HTTP servers that share a port, so that its calls are spread across event
+     * loops.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aPort The port to listen on, or zero for a free port if there's one server
+     * @param aServerCount The number of HTTP servers
+     * @return A Future that resolves to the stub once it's listening
+     */
+    public static Future<StubLibCal> start(final Vertx aVertx, final int aPort, final int aServerCount) {
+        final StubLibCal stub = new StubLibCal(aVertx);
+        @SuppressWarnings("rawtypes")
+        final List<Future> servers = new ArrayList<>();
+
+        for (int count = 0; count < aServerCount; count++) {
+            servers.add(aVertx.createHttpServer().requestHandler(stub::handle).listen(aPort, HOST));
+        }
+
+        return CompositeFuture.all(servers).map(all -> {
+            stub.myServer = all.resultAt(0);
+            return stub;
+        });
+    }
+
+    /**
+     * Gets an application configuration that authenticates with, and sends its API calls to, the stub.
+     *
+     * @return An application configuration
+     */
+    public JsonObject getConfig() {
+        final String baseURL = "http://" + HOST + ":" + myServer.actualPort();
+
+        return new JsonObject().put(Config.LIBCAL_BASE_URL, baseURL).put(Config.OAUTH_TOKEN_URL, baseURL + TOKEN_PATH)
+                .put(Config.getClientIdKey(1), "1").put(Config.getClientSecretKey(1), "secret");
+    }
+
+    /**
+     * Creates the token service and the LibCal service, and registers them the way the main verticle does, so that
+     * handlers can be tested against the stub.
+     *
+     * @param aConfig An application configuration from {@link #getConfig()}
+     * @return A Future that succeeds once the services are registered
+     */
+    public Future<Void> registerServices(final JsonObject aConfig) {
+        return OAuthTokenService.create(myVertx, aConfig).compose(tokenService -> {
+            new ServiceBinder(myVertx).setAddress(OAuthTokenService.ADDRESS).register(OAuthTokenService.class,
+                    tokenService);
+            return LibCalProxyService.create(myVertx, aConfig);
+        }).map(proxyService -> {
+            LocalServices.register(myVertx, LibCalProxyService.ADDRESS, proxyService);
+            return null;
+        });
+    }
+
+    /**
+     * Gets the number of access tokens that have been asked for.
+     *
+     * @return The number of token requests
+     */
+    public int getTokenCount() {
+        return myTokenCount.get();
+    }
+
+    /**
+     * Gets the access token that was handed out last.
+     *
+     * @return The newest access token
+     */
+    public String getToken() {
+        return TOKEN_PREFIX + myTokenCount.get();
+    }
+
+    /**
+     * Gets the number of API calls that have been made.
+     *
+     * @return The number of API calls
+     */
+    public long getCallCount() {
+        return myCallCount.sum();
+    }
+
+    /**
+     * Gets the access tokens that the API has been called with for a path, in the order the calls arrived. They aren't
+     * recorded when the stub is set not to record them.
+     *
+     * @param aPath A request path
+     * @return The calls' access tokens
+     */
+    public List<String> getCallTokens(final String aPath) {
+        return List.copyOf(myCalls.getOrDefault(aPath, List.of()));
+    }
+
+    /**
+     * Makes the API reject an access token, as LibCal does when it revokes one before it expires.
+     *
+     * @param aToken An access token
+     */
+    public void revoke(final String aToken) {
+        myRevokedTokens.add(aToken);
+    }
+
+    /**
+     * Checks whether an API request has an access token that the stub handed out and hasn't revoked.
+     *
+     * @param aRequest An API request
+     * @return True if the request is authorized; else, false
+     */
+    public boolean isAuthorized(final HttpServerRequest aRequest) {
+        final String authorization = aRequest.getHeader(HttpHeaders.AUTHORIZATION);
+
+        if (authorization == null || !authorization.startsWith(BEARER + TOKEN_PREFIX)) {
+            return false;
+        }
+
+        return !myRevokedTokens.contains(authorization.substring(BEARER.length()));
+    }
+
+    /**
+     * Gets the access token of an API request.
+     *
+     * @param aRequest An API request
+     * @return The request's access token, or null if it doesn't have one
+     */
+    public static String getRequestToken(final HttpServerRequest aRequest) {
+        final String authorization = aRequest.getHeader(HttpHeaders.AUTHORIZATION);
+        return authorization != null && authorization.startsWith(BEARER) ? authorization.substring(BEARER.length())
+                : null;
+    }
+
+    /**
+     * Sets the handler of API requests.
+     *
+     * @param aHandler A handler of API requests
+     * @return The stub
+     */
+    public StubLibCal setApiHandler(final Handler<HttpServerRequest> aHandler) {
+        myApiHandler = aHandler;
+        return this;
+    }
+
+    /**
+     * Sets the number of milliseconds the token endpoint takes to answer.
+     *
+     * @param aDelay A delay in milliseconds
+     * @return The stub
+     */
+    public StubLibCal setTokenDelay(final long aDelay) {
+        myTokenDelay = aDelay;
+        return this;
+    }
+
+    /**
+     * Sets the number of seconds until the access tokens that are handed out from now on expire.
+     *
+     * @param aExpiresIn A number of seconds
+     * @return The stub
+     */
+    public StubLibCal setExpiresIn(final int aExpiresIn) {
+        myExpiresIn = aExpiresIn;
+        return this;
+    }
+
+    /**
+     * Sets whether the access tokens of API calls are recorded. A stub that takes many calls, as in the load test,
+     * shouldn't record them.
+     *
+     * @param aRecordingCalls Whether the calls' access tokens are recorded
+     * @return The stub
+     */
+    public StubLibCal setRecordingCalls(final boolean aRecordingCalls) {
+        isRecordingCalls = aRecordingCalls;
+        return this;
+    }
+
+    /**
+     * Sets the size of the LibCal-like JSON payload that the API answers with by default.
+     *
+     * @param aSize The payload's size, in bytes, or zero for the small default body
+     * @return The stub
+     */
+    public StubLibCal setPayloadSize(final int aSize) {
+        myPayload = aSize > 0 ? getPayload(aSize) : null;
+        return this;
+    }
+
+    /**
+     * Sets how long the API takes to answer by default.
+     *
+     * @param aLatency A number of milliseconds
+     * @param aJitter A random extra number of milliseconds, up to which an answer may be delayed
+     * @return The stub
+     */
+    public StubLibCal setLatency(final long aLatency, final long aJitter) {
+        myLatency = aLatency;
+        myJitter = aJitter;
+        return this;
+    }
+
+    /**
+     * Sets the share of API calls that fail with a 500 by default.
+     *
+     * @param aErrorRate A share of calls, from 0 to 1
+     * @return The stub
+     */
+    public StubLibCal setErrorRate(final double aErrorRate) {
+        myErrorRate = aErrorRate;
+        return this;
+    }
+
+    /**
+     * Sets the share of API calls that are turned away with a 429 by default.
+     *
+     * @param aThrottleRate A share of calls, from 0 to 1
+     * @return The stub
+     */
+    public StubLibCal setThrottleRate(final double aThrottleRate) {
+        myThrottleRate = aThrottleRate;
+        return this;
+    }
+
+    /**
+     * Handles a request to the stub.
+     *
+     * @param aRequest A request
+     */
+    private void handle(final HttpServerRequest aRequest) {
+        if (TOKEN_PATH.equals(aRequest.path())) {
+            final JsonObject token =
+                    new JsonObject().put(JsonKeys.ACCESS_TOKEN, TOKEN_PREFIX + myTokenCount.incrementAndGet())
+                            .put(JsonKeys.EXPIRES_IN, myExpiresIn);
+
+            if (myTokenDelay > 0) {
+                myVertx.setTimer(myTokenDelay, timerId -> sendJson(aRequest, HTTP.OK, token));
+            } else {
+                sendJson(aRequest, HTTP.OK, token);
+            }
+        } else {
+            myCallCount.increment();
+
+            if (isRecordingCalls) {
+                myCalls.computeIfAbsent(aRequest.path(), path -> new CopyOnWriteArrayList<>())
+                        .add(String.valueOf(getRequestToken(aRequest)));
+            }
+
+            myApiHandler.handle(aRequest);
+        }
+    }
+
+    /**
+     * Answers an API request the way the stub does by default, after its latency.
+     *
+     * @param aRequest An API request
+     */
+    private void answer(final HttpServerRequest aRequest) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        if (random.nextDouble() < myThrottleRate) {
+            aRequest.response().setStatusCode(HTTP.TOO_MANY_REQUESTS)
+                    .putHeader(HttpHeaders.RETRY_AFTER, Long.toString(RETRY_AFTER)).end();
+        } else {
+            final long delay = myLatency + (myJitter > 0 ? random.nextLong(myJitter + 1) : 0);
+            final boolean failed = random.nextDouble() < myErrorRate;
+
+            aRequest.body().onSuccess(body -> {
+                if (delay > 0) {
+                    myVertx.setTimer(delay, timerId -> respond(aRequest, failed));
+                } else {
+                    respond(aRequest, failed);
+                }
+            });
+        }
+    }
+
+    /**
+     * Answers an API request with the payload, or with a small JSON body if there's no payload, if it's authorized.
+     *
+     * @param aRequest An API request
+     * @param aFailed Whether the request fails with a 500 instead
+     */
+    private void respond(final HttpServerRequest aRequest, final boolean aFailed) {
+        final Buffer payload = myPayload;
+
+        if (aFailed) {
+            aRequest.response().setStatusCode(HTTP.INTERNAL_SERVER_ERROR).end();
+        } else if (!isAuthorized(aRequest)) {
+            sendJson(aRequest, HTTP.UNAUTHORIZED, new JsonObject());
+        } else if (payload != null) {
+            aRequest.response().putHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON.toString()).end(payload);
+        } else {
+            sendJson(aRequest, HTTP.OK, new JsonObject().put("path", aRequest.path()));
+        }
+    }
+
+    /**
+     * Answers a request with a JSON body.
+     *
+     * @param aRequest A request
+     * @param aStatusCode The response's status code
+     * @param aBody The response's body
+     */
+    private static void sendJson(final HttpServerRequest aRequest, final int aStatusCode, final JsonObject aBody) {
+        aRequest.response().setStatusCode(aStatusCode).putHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON.toString())
+                .end(aBody.encode());
+    }
+
+    /**
+     * Gets a LibCal-like JSON payload of about the supplied size.
+     *
+     * @param aSize The payload's size, in bytes
+     * @return The payload
+     */
+    private static Buffer getPayload(final int aSize) {
+        final JsonObject event = new JsonObject().put("id", "5481").put("title", "Load Test Event")
+                .put("start", "2024-02-12T10:00:00-08:00").put(DESCRIPTION, "");
+        final int padding = Math.max(0, aSize - new JsonArray().add(event).encode().length());
+
+        return new JsonArray().add(event.put(DESCRIPTION, "x".repeat(padding))).toBuffer();
+    }
+}
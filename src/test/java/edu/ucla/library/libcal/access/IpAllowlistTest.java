@@ -0,0 +1,109 @@
+
+package edu.ucla.library.libcal.access;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Tests {@link IpAllowlist}.
+ */
+public class IpAllowlistTest {
+
+    /**
+     * A list of campus-like networks to test against.
+     */
+    private static final String NETWORKS = "127.0.0.0/16, 10.10.0.0/24,10.10.1.0/24,192.168.5.5,2001:db8::/32";
+
+    /**
+     * An address on the allowed networks.
+     */
+    private static final String LOCAL_IP = "127.0.0.1";
+
+    /**
+     * An address outside the allowed networks.
+     */
+    private static final String PUBLIC_IP = "8.8.8.8";
+
+    /**
+     * Tests that addresses on the allowed networks are allowed.
+     *
+     * @param aAddress An IP address
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "127.0.0.1", "127.0.255.255", "10.10.0.7", "10.10.1.255", "192.168.5.5", "2001:db8::1",
+        "2001:0db8:ffff:ffff:ffff:ffff:ffff:ffff", "::ffff:127.0.3.4", "2001:db8::1%eth0" })
+    public void testAllowed(final String aAddress) {
+        assertTrue(new IpAllowlist(NETWORKS).contains(aAddress));
+    }
+
+    /**
+     * Tests that addresses outside the allowed networks, or that aren't addresses at all, are denied.
+     *
+     * @param aAddress An IP address
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "127.1.0.1", "10.10.2.1", "192.168.5.6", "0.0.0.0", "255.255.255.255", "2001:db9::1",
+        "::1", "::ffff:10.10.2.1", "not-an-ip", "1.2.3", "1.2.3.256", "1..2.3", "1:2", ":1", "1:::2", "" })
+    public void testDenied(final String aAddress) {
+        assertFalse(new IpAllowlist(NETWORKS).contains(aAddress));
+    }
+
+    /**
+     * Tests that a catch-all network allows every IPv4 address.
+     */
+    @Test
+    public void testAllNetworks() {
+        final IpAllowlist allowlist = new IpAllowlist("0.0.0.0/0");
+
+        assertTrue(allowlist.contains("0.0.0.0"));
+        assertTrue(allowlist.contains("255.255.255.255"));
+        assertTrue(allowlist.contains("128.97.0.1"));
+    }
+
+    /**
+     * Tests that the allow and deny hits are counted.
+     */
+    @Test
+    public void testCounts() {
+        final IpAllowlist allowlist = new IpAllowlist(NETWORKS);
+
+        allowlist.isAllowed(LOCAL_IP);
+        allowlist.isAllowed("127.0.0.2");
+        allowlist.isAllowed(PUBLIC_IP);
+
+        assertEquals(2, allowlist.getAllowedCount());
+        assertEquals(1, allowlist.getDeniedCount());
+    }
+
+    /**
+     * Tests that an update swaps in the new networks, and that a bad update keeps the old ones.
+     */
+    @Test
+    public void testUpdate() {
+        final IpAllowlist allowlist = new IpAllowlist(NETWORKS);
+
+        assertTrue(allowlist.update("8.8.8.0/24"));
+        assertTrue(allowlist.contains(PUBLIC_IP));
+        assertFalse(allowlist.contains(LOCAL_IP));
+
+        assertFalse(allowlist.update("8.8.8.0/33"));
+        assertTrue(allowlist.contains(PUBLIC_IP));
+    }
+
+    /**
+     * Tests that invalid CIDR blocks are rejected.
+     *
+     * @param aCidr A CIDR block
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "127.0.0.0/", "127.0.0.0/-1", "127.0.0.0/33", "2001:db8::/129", "localhost/32" })
+    public void testInvalidCidr(final String aCidr) {
+        assertThrows(IllegalArgumentException.class, () -> new IpAllowlist(aCidr));
+    }
+}
@@ -0,0 +1,122 @@
+
+package edu.ucla.library.libcal.access;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.ucla.library.libcal.Config;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Tests {@link RouteTable}.
+ */
+public class RouteTableTest {
+
+    /**
+     * The GET method.
+     */
+    private static final String GET = "GET";
+
+    /**
+     * The POST method.
+     */
+    private static final String POST = "POST";
+
+    /**
+     * An event registration path.
+     */
+    private static final String REGISTRATION = "/api/1.1/events/5481/register";
+
+    /**
+     * An event page path.
+     */
+    private static final String EVENT_PAGE = "/event/5481";
+
+    /**
+     * An event form path.
+     */
+    private static final String EVENT_FORM = "/api/1.1/events/form/8123";
+
+    /**
+     * An event's API path.
+     */
+    private static final String EVENT = "/api/1.1/events/5481";
+
+    /**
+     * Tests that the default table opens the event endpoints, and only those.
+     */
+    @Test
+    public void testDefaultRoutes() {
+        final RouteTable routes = RouteTable.fromConfig(new JsonObject());
+
+        assertTrue(routes.getPolicy(POST, REGISTRATION).isPublic());
+        assertTrue(routes.getPolicy(GET, EVENT_FORM).isPublic());
+        assertTrue(routes.getPolicy(GET, EVENT_PAGE).isPublic());
+        assertFalse(routes.getPolicy(POST, EVENT_FORM).isPublic());
+        assertFalse(routes.getPolicy(GET, REGISTRATION).isPublic());
+    }
+
+    /**
+     * Tests that paths that only resemble an open endpoint get the default policy.
+     *
+     * @param aPath A request path
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "/event/5481/", "/event/", "/event/5481,5482", "/event/5481/extra", "/event", "event/5481",
+        "", "/api/1.1/hours/2572" })
+    public void testUnmatchedPaths(final String aPath) {
+        assertSame(RoutePolicy.DEFAULT, RouteTable.fromConfig(new JsonObject()).getPolicy(GET, aPath));
+    }
+
+    /**
+     * Tests that configured routes replace the defaults, that their flags are applied, and that a literal segment is
+     * preferred to a parameter but gives way to one when it leads nowhere.
+     */
+    @Test
+    public void testConfiguredRoutes() {
+        final RouteTable routes = RouteTable.fromConfig(new JsonObject().put(Config.ROUTE_POLICIES,
+                "get /api/1.1/events/{id}=public, GET /api/1.1/events/form/{id}=no-cache, " +
+                        "GET /api/1.1/events/{id}/rsvp=public:no-cache"));
+
+        assertTrue(routes.getPolicy(GET, "/api/1.1/events/form").isPublic());
+        assertFalse(routes.getPolicy(GET, EVENT_FORM).isPublic());
+        assertFalse(routes.getPolicy(GET, EVENT_FORM).isCacheable());
+        assertTrue(routes.getPolicy(GET, EVENT).isCacheable());
+        assertFalse(routes.getPolicy(GET, "/api/1.1/events/form/rsvp").isPublic());
+        assertTrue(routes.getPolicy(GET, "/api/1.1/events/5481/rsvp").isPublic());
+        assertFalse(routes.getPolicy(GET, EVENT_PAGE).isPublic());
+    }
+
+    /**
+     * Tests that a matched route's policy has the route's path template, and an unmatched request's policy doesn't.
+     */
+    @Test
+    public void testTemplates() {
+        final RouteTable routes = RouteTable.fromConfig(new JsonObject().put(Config.ROUTE_POLICIES,
+                "GET /api/1.1/events/{id}, GET /api/1.1/events/form/{id}=public"));
+
+        assertEquals("/api/1.1/events/{id}", routes.getPolicy(GET, EVENT).getTemplate());
+        assertEquals("/api/1.1/events/form/{id}", routes.getPolicy(GET, EVENT_FORM).getTemplate());
+        assertNull(routes.getPolicy(GET, "/api/1.1/hours/2572").getTemplate());
+    }
+
+    /**
+     * Tests that invalid routes are rejected.
+     *
+     * @param aRoute An invalid route
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "/event/{id}=public", "GET event/{id}", "GET /event//{id}", "GET /event/{id}=open" })
+    public void testInvalidRoutes(final String aRoute) {
+        assertThrows(IllegalArgumentException.class, () -> new RouteTable(aRoute));
+    }
+}
@@ -0,0 +1,168 @@
+
+package edu.ucla.library.libcal.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import info.freelibrary.util.HTTP;
+
+import edu.ucla.library.libcal.HttpResponseImpl;
+
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Tests {@link CacheWarmer}.
+ */
+public class CacheWarmerTest {
+
+    /**
+     * A warm-up query.
+     */
+    private static final String HOURS = "/api/1.1/hours/2572";
+
+    /**
+     * A warm-up query with a query string.
+     */
+    private static final String EVENTS = "/api/1.1/events?cal_id=1&limit=5";
+
+    /**
+     * A query that's requested often.
+     */
+    private static final String SPACES = "/api/1.1/space/locations";
+
+    /**
+     * The GET method.
+     */
+    private static final String GET = "GET";
+
+    /**
+     * The Vert.x instance whose timers run the warm-up.
+     */
+    private Vertx myVertx;
+
+    /**
+     * Sets up the Vert.x instance.
+     */
+    @BeforeEach
+    public void setUp() {
+        myVertx = Vertx.vertx();
+    }
+
+    /**
+     * Closes the Vert.x instance.
+     */
+    @AfterEach
+    public void tearDown() {
+        myVertx.close();
+    }
+
+    /**
+     * Tests that the warm-up queries are fetched into the cache before the warmer reports ready.
+     *
+     * @throws Exception If the warm-up doesn't finish
+     */
+    @Test
+    public void testWarmUp() throws Exception {
+        final ResponseCache cache = ResponseCache.fromConfig(new JsonObject());
+        final CacheWarmer warmer = new CacheWarmer(HOURS + "\n  " + EVENTS, 0, 10, 30);
+
+        assertFalse(warmer.isReady());
+        await(warmer.start(myVertx, cache, query -> Future.succeededFuture(cache.put(getKey(query), query, ok()))));
+
+        assertTrue(warmer.isReady());
+        assertTrue(cache.get(ResponseCache.getKey(GET, HOURS, null)).isPresent());
+        assertTrue(cache.get(ResponseCache.getKey(GET, "/api/1.1/events", "limit=5&cal_id=1")).isPresent());
+    }
+
+    /**
+     * Tests that the warmer reports ready once the deadline passes, even if the warm-up hasn't finished.
+     *
+     * @throws Exception If the warmer doesn't report ready
+     */
+    @Test
+    public void testDeadline() throws Exception {
+        final ResponseCache cache = ResponseCache.fromConfig(new JsonObject());
+        final CacheWarmer warmer = new CacheWarmer(HOURS, 0, 10, 0);
+
+        await(warmer.start(myVertx, cache, query -> Promise.<Boolean>promise().future()));
+        assertTrue(warmer.isReady());
+    }
+
+    /**
+     * Tests that a warmer without warm-up queries is ready at once.
+     */
+    @Test
+    public void testNoWarmUpQueries() {
+        final CacheWarmer warmer = new CacheWarmer(" ", 0, 10, 30);
+
+        assertFalse(warmer.isEnabled());
+        assertTrue(warmer.isReady());
+    }
+
+    /**
+     * Tests that the most requested queries are learned, and that old traffic fades.
+     */
+    @Test
+    public void testTopQueries() {
+        final CacheWarmer warmer = new CacheWarmer(HOURS, 1, 10, 30);
+
+        for (int index = 0; index < 4; index++) {
+            warmer.record(SPACES);
+        }
+
+        warmer.record(EVENTS);
+        warmer.record(EVENTS);
+
+        // Each check halves the counts, so the hot query fades once its requests stop
+        assertEquals(List.of(HOURS, SPACES), warmer.getWarmQueries());
+        assertEquals(List.of(HOURS, SPACES), warmer.getWarmQueries());
+        assertEquals(List.of(HOURS), warmer.getWarmQueries());
+    }
+
+    /**
+     * Gets the cache key of a GET query.
+     *
+     * @param aQuery A <code>/path?query</code> string
+     * @return The query's cache key
+     */
+    private static String getKey(final String aQuery) {
+        final int index = aQuery.indexOf('?');
+
+        return index < 0 ? ResponseCache.getKey(GET, aQuery, null)
+                : ResponseCache.getKey(GET, aQuery.substring(0, index), aQuery.substring(index + 1));
+    }
+
+    /**
+     * Gets a cacheable LibCal response.
+     *
+     * @return The response
+     */
+    private static HttpResponseImpl<Buffer> ok() {
+        return new HttpResponseImpl<>(HttpVersion.HTTP_1_1, HTTP.OK, null, MultiMap.caseInsensitiveMultiMap(),
+                MultiMap.caseInsensitiveMultiMap(), List.of(), Buffer.buffer("[]"), List.of());
+    }
+
+    /**
+     * Waits for a Future to complete.
+     *
+     * @param aFuture A Future
+     * @throws Exception If the Future fails or doesn't complete in time
+     */
+    private static void await(final Future<Void> aFuture) throws Exception {
+        aFuture.toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+}
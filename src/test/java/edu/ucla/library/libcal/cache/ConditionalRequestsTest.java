@@ -0,0 +1,83 @@
+
+package edu.ucla.library.libcal.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Tests {@link ConditionalRequests}.
+ */
+public class ConditionalRequestsTest {
+
+    /**
+     * A response body.
+     */
+    private static final String BODY = "[{\"id\":\"5481\"}]";
+
+    /**
+     * An entity tag.
+     */
+    private static final String ETAG = "\"abc\"";
+
+    /**
+     * An entity tag that doesn't match the current one.
+     */
+    private static final String OTHER_ETAG = "\"other\"";
+
+    /**
+     * A Last-Modified date.
+     */
+    private static final String LAST_MODIFIED = "Wed, 21 Oct 2026 07:28:00 GMT";
+
+    /**
+     * Tests that a body's entity tag is strong and changes with the body.
+     */
+    @Test
+    public void testGetETag() {
+        final String etag = ConditionalRequests.getETag(Buffer.buffer(BODY));
+
+        assertTrue(etag.matches("\"[0-9a-f]+-[0-9a-f]+\""));
+        assertEquals(etag, ConditionalRequests.getETag(Buffer.buffer(BODY)));
+        assertNotEquals(etag, ConditionalRequests.getETag(Buffer.buffer(BODY + BODY)));
+    }
+
+    /**
+     * Tests that a decoded body's entity tag differs from its encoded original's but is still quoted.
+     */
+    @Test
+    public void testGetDecodedETag() {
+        assertEquals("\"abc-identity\"", ConditionalRequests.getDecodedETag(ETAG));
+        assertEquals("W/\"abc-identity\"", ConditionalRequests.getDecodedETag("W/" + ETAG));
+    }
+
+    /**
+     * Tests that If-None-Match is compared weakly against the current entity tag.
+     */
+    @Test
+    public void testIfNoneMatch() {
+        final String etag = ConditionalRequests.getETag(Buffer.buffer(BODY));
+
+        assertTrue(ConditionalRequests.isNotModified(etag, null, etag, null));
+        assertTrue(ConditionalRequests.isNotModified(OTHER_ETAG + ", W/" + etag, null, etag, null));
+        assertTrue(ConditionalRequests.isNotModified("*", null, etag, null));
+        assertFalse(ConditionalRequests.isNotModified(OTHER_ETAG, null, etag, null));
+    }
+
+    /**
+     * Tests that If-Modified-Since is compared against Last-Modified, but only without If-None-Match.
+     */
+    @Test
+    public void testIfModifiedSince() {
+        assertTrue(ConditionalRequests.isNotModified(null, LAST_MODIFIED, null, LAST_MODIFIED));
+        assertFalse(ConditionalRequests.isNotModified(null, "Tue, 20 Oct 2026 07:28:00 GMT", null, LAST_MODIFIED));
+        assertFalse(ConditionalRequests.isNotModified(OTHER_ETAG, LAST_MODIFIED, ETAG, LAST_MODIFIED));
+        assertFalse(ConditionalRequests.isNotModified(null, "yesterday", null, LAST_MODIFIED));
+        assertFalse(ConditionalRequests.isNotModified(null, LAST_MODIFIED, null, null));
+    }
+}
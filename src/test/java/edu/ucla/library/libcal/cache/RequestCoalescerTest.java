@@ -0,0 +1,99 @@
+
+package edu.ucla.library.libcal.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+
+/**
+ * Tests {@link RequestCoalescer}.
+ */
+public class RequestCoalescerTest {
+
+    /**
+     * A request key.
+     */
+    private static final String KEY = "GET /api/1.1/events";
+
+    /**
+     * A request result.
+     */
+    private static final String RESULT = "result";
+
+    /**
+     * Tests that identical requests made while one is in flight share its result.
+     */
+    @Test
+    public void testIdenticalRequestsAreCollapsed() {
+        final RequestCoalescer<String, String> coalescer = new RequestCoalescer<>();
+        final AtomicInteger requestCount = new AtomicInteger();
+        final Promise<String> upstream = Promise.promise();
+        final Future<String> first = coalescer.execute(KEY, () -> {
+            requestCount.incrementAndGet();
+            return upstream.future();
+        });
+        final Future<String> second = coalescer.execute(KEY, () -> {
+            requestCount.incrementAndGet();
+            return Future.succeededFuture();
+        });
+
+        assertEquals(1, coalescer.getInFlightCount());
+        upstream.complete(RESULT);
+
+        assertEquals(RESULT, first.result());
+        assertEquals(RESULT, second.result());
+        assertEquals(1, requestCount.get());
+        assertEquals(1, coalescer.getCollapsedCount());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    /**
+     * Tests that a request made after an identical one has finished isn't collapsed into it.
+     */
+    @Test
+    public void testFinishedRequestsAreNotShared() {
+        final RequestCoalescer<String, String> coalescer = new RequestCoalescer<>();
+        final String laterResult = "later";
+
+        coalescer.execute(KEY, () -> Future.succeededFuture(RESULT));
+
+        assertEquals(laterResult, coalescer.execute(KEY, () -> Future.succeededFuture(laterResult)).result());
+        assertEquals(0, coalescer.getCollapsedCount());
+    }
+
+    /**
+     * Tests that a failure is shared by all the collapsed requests, and that it's forgotten afterwards.
+     */
+    @Test
+    public void testFailuresAreShared() {
+        final RequestCoalescer<String, String> coalescer = new RequestCoalescer<>();
+        final Promise<String> upstream = Promise.promise();
+        final Future<String> first = coalescer.execute(KEY, upstream::future);
+        final Future<String> second = coalescer.execute(KEY, upstream::future);
+
+        upstream.fail(new IllegalStateException());
+
+        assertTrue(first.failed());
+        assertTrue(second.failed());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    /**
+     * Tests that a request that can't be started doesn't stay in flight.
+     */
+    @Test
+    public void testRequestThatThrows() {
+        final RequestCoalescer<String, String> coalescer = new RequestCoalescer<>();
+
+        assertTrue(coalescer.execute(KEY, () -> {
+            throw new IllegalStateException();
+        }).failed());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+}
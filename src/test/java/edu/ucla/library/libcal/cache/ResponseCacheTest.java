@@ -0,0 +1,337 @@
+
+package edu.ucla.library.libcal.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.HttpResponseImpl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpResponse;
+
+/**
+ * Tests {@link ResponseCache}.
+ */
+public class ResponseCacheTest {
+
+    /**
+     * A cacheable endpoint.
+     */
+    private static final String HOURS = "/api/1.1/hours/2572";
+
+    /**
+     * A cacheable endpoint with a different TTL.
+     */
+    private static final String EVENTS = "/api/1.1/events";
+
+    /**
+     * The endpoint TTLs to test with.
+     */
+    private static final String ENDPOINT_TTLS = "/api/1.1/hours=300, /api/1.1=30, /api/1.1/events/form=0";
+
+    /**
+     * The GET method.
+     */
+    private static final String GET = "GET";
+
+    /**
+     * A response body.
+     */
+    private static final String BODY = "[{\"id\":\"5481\"}]";
+
+    /**
+     * The current time of the test ticker.
+     */
+    private final AtomicLong myTime = new AtomicLong();
+
+    /**
+     * Tests that query parameters are sorted into the cache key.
+     */
+    @Test
+    public void testKeyIsNormalized() {
+        assertEquals(ResponseCache.getKey(GET, EVENTS, "cal_id=1&days=7"),
+                ResponseCache.getKey(GET, EVENTS, "days=7&&cal_id=1"));
+        assertEquals("GET /api/1.1/events", ResponseCache.getKey(GET, EVENTS, ""));
+        assertFalse(ResponseCache.getKey(GET, EVENTS, "days=7").equals(ResponseCache.getKey(GET, EVENTS, "days=8")));
+    }
+
+    /**
+     * Tests that the longest matching endpoint prefix picks a response's TTL.
+     */
+    @Test
+    public void testEndpointTtls() {
+        final ResponseCache cache = newCache();
+
+        assertEquals(300, cache.getEndpointTtl(HOURS));
+        assertEquals(30, cache.getEndpointTtl(EVENTS));
+        assertEquals(0, cache.getEndpointTtl("/api/1.1/events/form/123"));
+        assertEquals(ResponseCache.DEFAULT_TTL, cache.getEndpointTtl("/event/123"));
+    }
+
+    /**
+     * Tests that LibCal's freshness information limits a response's TTL.
+     */
+    @Test
+    public void testUpstreamFreshness() {
+        final ResponseCache cache = newCache();
+
+        assertEquals(300, cache.getTtl(HOURS, MultiMap.caseInsensitiveMultiMap()));
+        assertEquals(10, cache.getTtl(HOURS, headers(HttpHeaders.CACHE_CONTROL.toString(), "public, max-age=10")));
+        assertEquals(5, cache.getTtl(HOURS, headers(HttpHeaders.CACHE_CONTROL.toString(), "max-age=10, s-maxage=5")));
+        assertEquals(300, cache.getTtl(HOURS, headers(HttpHeaders.CACHE_CONTROL.toString(), "max-age=3600")));
+        assertEquals(120, cache.getTtl(HOURS, headers(HttpHeaders.DATE.toString(), "Tue, 15 Oct 2024 08:00:00 GMT",
+                HttpHeaders.EXPIRES.toString(), "Tue, 15 Oct 2024 08:02:00 GMT")));
+        assertEquals(0, cache.getTtl(HOURS, headers(HttpHeaders.EXPIRES.toString(), "never")));
+    }
+
+    /**
+     * Tests that responses LibCal says can't be shared aren't cached.
+     *
+     * @param aCacheControl A Cache-Control header value
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "no-store", "No-Cache", "private, max-age=60", "max-age=0" })
+    public void testUncacheable(final String aCacheControl) {
+        final ResponseCache cache = newCache();
+
+        assertFalse(
+                cache.put(HOURS, HOURS, response(200, headers(HttpHeaders.CACHE_CONTROL.toString(), aCacheControl))));
+        assertTrue(cache.get(HOURS).isEmpty());
+    }
+
+    /**
+     * Tests that only successful responses are cached.
+     */
+    @Test
+    public void testErrorsAreNotCached() {
+        final ResponseCache cache = newCache();
+
+        assertFalse(cache.put(HOURS, HOURS, response(500, MultiMap.caseInsensitiveMultiMap())));
+        assertTrue(cache.get(HOURS).isEmpty());
+    }
+
+    /**
+     * Tests that a cached response is served until its TTL passes.
+     */
+    @Test
+    public void testExpiration() {
+        final ResponseCache cache = newCache();
+        final String key = ResponseCache.getKey(GET, EVENTS, null);
+
+        assertTrue(cache.put(key, EVENTS, response(200, MultiMap.caseInsensitiveMultiMap())));
+        myTime.addAndGet(TimeUnit.SECONDS.toNanos(29));
+
+        final CachedResponse cached = cache.get(key).orElseThrow();
+
+        assertEquals(BODY, cached.getBody().toString());
+        assertEquals(29, cache.getAge(cached));
+
+        myTime.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertTrue(cache.get(key).isEmpty());
+    }
+
+    /**
+     * Tests that an expired response is kept, to stand in for a LibCal failure, for its stale-if-error time, and that a
+     * failed fetch doesn't replace it.
+     */
+    @Test
+    public void testStaleIfError() {
+        final ResponseCache cache = new ResponseCache(ResponseCache.DEFAULT_MAX_SIZE, ResponseCache.DEFAULT_TTL,
+                ENDPOINT_TTLS, 60, 0, myTime::get);
+        final String key = ResponseCache.getKey(GET, EVENTS, null);
+
+        assertTrue(cache.put(key, EVENTS, response(200, MultiMap.caseInsensitiveMultiMap())));
+        myTime.addAndGet(TimeUnit.SECONDS.toNanos(31));
+
+        assertTrue(cache.get(key).isEmpty());
+        assertEquals(500, cache
+                .fetch(key, EVENTS, () -> Future.succeededFuture(response(500, MultiMap.caseInsensitiveMultiMap())))
+                .result().getStatusCode());
+        assertEquals(BODY, cache.getStale(key).orElseThrow().getBody().toString());
+
+        myTime.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        assertTrue(cache.getStale(key).isEmpty());
+    }
+
+    /**
+     * Tests that a response past its TTL is returned at once while one background fetch refreshes it, and that callers
+     * only wait on LibCal once the stale-while-revalidate window has passed too.
+     */
+    @Test
+    public void testStaleWhileRevalidate() {
+        final ResponseCache cache = new ResponseCache(ResponseCache.DEFAULT_MAX_SIZE, ResponseCache.DEFAULT_TTL,
+                ENDPOINT_TTLS, 0, 30, myTime::get);
+        final String key = ResponseCache.getKey(GET, EVENTS, null);
+        final String etag = "\"refreshed\"";
+        final AtomicInteger fetchCount = new AtomicInteger();
+        final Promise<HttpResponse<Buffer>> refresh = Promise.promise();
+        final Supplier<Future<HttpResponse<Buffer>>> fetcher = () -> {
+            fetchCount.incrementAndGet();
+            return refresh.future();
+        };
+        final Future<CachedResponse> wait;
+
+        assertTrue(cache.put(key, EVENTS, response(200, MultiMap.caseInsensitiveMultiMap())));
+        myTime.addAndGet(TimeUnit.SECONDS.toNanos(31));
+
+        assertEquals(BODY, cache.fetch(key, EVENTS, fetcher).result().getBody().toString());
+        assertEquals(BODY, cache.fetch(key, EVENTS, fetcher).result().getBody().toString());
+        assertEquals(1, fetchCount.get());
+
+        refresh.complete(response(200, headers(HttpHeaders.ETAG.toString(), etag)));
+        assertEquals(etag, cache.get(key).orElseThrow().getETag());
+
+        myTime.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        wait = cache.fetch(key, EVENTS, Promise.<HttpResponse<Buffer>>promise()::future);
+        assertFalse(wait.isComplete());
+    }
+
+    /**
+     * Tests that the cache's size is bounded.
+     */
+    @Test
+    public void testSizeIsBounded() {
+        final ResponseCache cache = new ResponseCache(1024, ResponseCache.DEFAULT_TTL, null,
+                ResponseCache.DEFAULT_STALE_IF_ERROR, 0, myTime::get);
+
+        for (int index = 0; index < 1000; index++) {
+            cache.put(Integer.toString(index), EVENTS, response(200, MultiMap.caseInsensitiveMultiMap()));
+        }
+
+        assertTrue(cache.get("0").isEmpty() || cache.get("999").isEmpty());
+    }
+
+    /**
+     * Tests that a fetch is answered from the cache once the response has been cached.
+     */
+    @Test
+    public void testFetch() {
+        final ResponseCache cache = newCache();
+        final AtomicInteger fetchCount = new AtomicInteger();
+        final Supplier<Future<HttpResponse<Buffer>>> fetcher = () -> {
+            fetchCount.incrementAndGet();
+            return Future.succeededFuture(response(200, MultiMap.caseInsensitiveMultiMap()));
+        };
+
+        assertEquals(BODY, cache.fetch(HOURS, HOURS, fetcher).result().getBody().toString());
+        assertEquals(BODY, cache.fetch(HOURS, HOURS, fetcher).result().getBody().toString());
+        assertEquals(1, fetchCount.get());
+    }
+
+    /**
+     * Tests that concurrent fetches share one response, even when it can't be cached.
+     */
+    @Test
+    public void testConcurrentFetchesAreCollapsed() {
+        final ResponseCache cache = ResponseCache.fromConfig(new JsonObject().put(Config.CACHE_MAX_SIZE, 0));
+        final Promise<HttpResponse<Buffer>> upstream = Promise.promise();
+        final Future<CachedResponse> first = cache.fetch(HOURS, HOURS, upstream::future);
+        final Future<CachedResponse> second = cache.fetch(HOURS, HOURS, upstream::future);
+
+        upstream.complete(response(500, MultiMap.caseInsensitiveMultiMap()));
+
+        assertEquals(500, first.result().getStatusCode());
+        assertEquals(500, second.result().getStatusCode());
+        assertEquals(1, cache.getCollapsedCount());
+    }
+
+    /**
+     * Tests that the number of collapsed requests is published as a metric.
+     */
+    @Test
+    public void testCollapsedCountMetric() {
+        final ResponseCache cache = ResponseCache.fromConfig(new JsonObject().put(Config.CACHE_MAX_SIZE, 0));
+        final MeterRegistry registry = new SimpleMeterRegistry();
+        final Promise<HttpResponse<Buffer>> upstream = Promise.promise();
+
+        cache.bindTo(registry);
+        cache.fetch(HOURS, HOURS, upstream::future);
+        cache.fetch(HOURS, HOURS, upstream::future);
+        cache.fetch(HOURS, HOURS, upstream::future);
+        upstream.complete(response(200, MultiMap.caseInsensitiveMultiMap()));
+
+        assertEquals(2, registry.get("libcal.proxy.requests.collapsed").functionCounter().count());
+    }
+
+    /**
+     * Tests that a cache with no room doesn't cache anything.
+     */
+    @Test
+    public void testDisabled() {
+        final ResponseCache cache = ResponseCache.fromConfig(new JsonObject().put(Config.CACHE_MAX_SIZE, 0));
+
+        assertFalse(cache.isEnabled());
+        assertFalse(cache.put(HOURS, HOURS, response(200, MultiMap.caseInsensitiveMultiMap())));
+    }
+
+    /**
+     * Tests that invalid endpoint TTLs are rejected.
+     *
+     * @param aEndpointTtls An endpoint TTL configuration
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "/api/1.1/hours", "/api/1.1/hours=", "=60", "/api/1.1/hours=soon" })
+    public void testInvalidEndpointTtls(final String aEndpointTtls) {
+        assertThrows(IllegalArgumentException.class,
+                () -> ResponseCache.fromConfig(new JsonObject().put(Config.CACHE_ENDPOINT_TTLS, aEndpointTtls)));
+    }
+
+    /**
+     * Creates a cache that uses the test ticker.
+     *
+     * @return A new response cache
+     */
+    private ResponseCache newCache() {
+        return new ResponseCache(ResponseCache.DEFAULT_MAX_SIZE, ResponseCache.DEFAULT_TTL, ENDPOINT_TTLS,
+                ResponseCache.DEFAULT_STALE_IF_ERROR, 0, myTime::get);
+    }
+
+    /**
+     * Creates a set of headers.
+     *
+     * @param aNamesAndValues Alternating header names and values
+     * @return The headers
+     */
+    private static MultiMap headers(final String... aNamesAndValues) {
+        final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+
+        for (int index = 0; index < aNamesAndValues.length; index += 2) {
+            headers.add(aNamesAndValues[index], aNamesAndValues[index + 1]);
+        }
+
+        return headers;
+    }
+
+    /**
+     * Creates a LibCal response.
+     *
+     * @param aStatusCode The response's status code
+     * @param aHeaders The response's headers
+     * @return The response
+     */
+    private static HttpResponse<Buffer> response(final int aStatusCode, final MultiMap aHeaders) {
+        return new HttpResponseImpl<>(HttpVersion.HTTP_1_1, aStatusCode, null, aHeaders,
+                MultiMap.caseInsensitiveMultiMap(), List.of(), Buffer.buffer(BODY), List.of());
+    }
+}
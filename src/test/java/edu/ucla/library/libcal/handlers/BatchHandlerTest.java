@@ -0,0 +1,269 @@
+
+package edu.ucla.library.libcal.handlers;
+
+import static edu.ucla.library.libcal.MediaType.APPLICATION_JSON;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import info.freelibrary.util.HTTP;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.JsonKeys;
+import edu.ucla.library.libcal.StubLibCal;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.handler.BodyHandler;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+/**
+ * Tests {@link BatchHandler} against a stub LibCal.
+ */
+@ExtendWith(VertxExtension.class)
+public class BatchHandlerTest {
+
+    /**
+     * A path that the stub LibCal answers slowly.
+     */
+    private static final String SLOW_PATH = "/api/1.1/hours/1";
+
+    /**
+     * A path that the stub LibCal answers at once.
+     */
+    private static final String FAST_PATH = "/api/1.1/hours/2";
+
+    /**
+     * A path whose calls the stub LibCal cuts off.
+     */
+    private static final String FAILING_PATH = "/api/1.1/hours/3";
+
+    /**
+     * A path of a route that's open to every client.
+     */
+    private static final String PUBLIC_PATH = "/api/1.1/events/form/1";
+
+    /**
+     * A query that, if it were put in the request line as it is, would end it and smuggle in a call to a private path.
+     */
+    private static final String SMUGGLING_QUERY = "a=1 HTTP/1.1\r\nHost: x\r\n\r\nGET " + FAST_PATH + "?b=2";
+
+    /**
+     * The most requests in one batch.
+     */
+    private static final int MAX_REQUESTS = 8;
+
+    /**
+     * The stub LibCal.
+     */
+    private StubLibCal myLibCal;
+
+    /**
+     * A client of the batch operation.
+     */
+    private WebClient myClient;
+
+    /**
+     * The port the batch operation listens on.
+     */
+    private int myPort;
+
+    /**
+     * Starts the stub LibCal, which answers some paths slowly and cuts off the calls to another.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @BeforeEach
+    public void setUp(final Vertx aVertx, final VertxTestContext aContext) {
+        myClient = WebClient.create(aVertx);
+
+        StubLibCal.start(aVertx).onSuccess(stub -> {
+            myLibCal = stub.setApiHandler(request -> answer(aVertx, request));
+            aContext.completeNow();
+        }).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that a batch with more than the most requests is turned away without any of them being made.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testTooManyRequests(final Vertx aVertx, final VertxTestContext aContext) {
+        final JsonArray batch = new JsonArray();
+
+        for (int count = 0; count <= MAX_REQUESTS; count++) {
+            batch.add(getRequest(FAST_PATH));
+        }
+
+        startBatch(aVertx, myLibCal.getConfig()).compose(unused -> send(batch))
+                .onSuccess(response -> aContext.verify(() -> {
+                    assertEquals(HTTP.PAYLOAD_TOO_LARGE, response.statusCode());
+                    assertEquals(List.of(), myLibCal.getCallTokens(FAST_PATH));
+                }).completeNow()).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that requests whose paths aren't absolute LibCal paths, or whose queries could end the request line, are
+     * rejected one by one, without being sent to LibCal, while the valid requests of the batch are made.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testInvalidPaths(final Vertx aVertx, final VertxTestContext aContext) {
+        final JsonArray batch = new JsonArray().add(getRequest("https://example.com/api/1.1/hours/2"))
+                .add(getRequest("api/1.1/hours/2")).add(getRequest("/api/1.1/hours/2?id=1"))
+                .add(getRequest("/api/1.1/hours/2 HTTP/1.1")).add(new JsonObject())
+                .add(getRequest(PUBLIC_PATH).put(JsonKeys.QUERY, SMUGGLING_QUERY))
+                .add(getRequest(PUBLIC_PATH).put(JsonKeys.QUERY, "a=1#b"));
+
+        startBatch(aVertx, myLibCal.getConfig()).compose(unused -> send(batch.copy().add(getRequest(FAST_PATH))))
+                .onSuccess(response -> aContext.verify(() -> {
+                    final JsonArray results = response.bodyAsJsonArray();
+
+                    for (int index = 0; index < batch.size(); index++) {
+                        assertEquals(HTTP.BAD_REQUEST, results.getJsonObject(index).getInteger(JsonKeys.STATUS));
+                    }
+
+                    assertEquals(HTTP.OK, results.getJsonObject(batch.size()).getInteger(JsonKeys.STATUS));
+                    assertEquals(1, myLibCal.getCallTokens(FAST_PATH).size());
+                    assertEquals(List.of(), myLibCal.getCallTokens(PUBLIC_PATH));
+                }).completeNow()).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that a client that isn't on the allowlist is turned away from each request of a private route, but can
+     * still make the requests of a public one.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testForbidden(final Vertx aVertx, final VertxTestContext aContext) {
+        final JsonObject config = myLibCal.getConfig().put(Config.ALLOWED_IPS, "10.0.0.0/8");
+
+        startBatch(aVertx, config).compose(unused -> {
+            return send(new JsonArray().add(getRequest(FAST_PATH)).add(getRequest(PUBLIC_PATH)));
+        }).onSuccess(response -> aContext.verify(() -> {
+            final JsonArray results = response.bodyAsJsonArray();
+
+            assertEquals(HTTP.FORBIDDEN, results.getJsonObject(0).getInteger(JsonKeys.STATUS));
+            assertEquals(HTTP.OK, results.getJsonObject(1).getInteger(JsonKeys.STATUS));
+            assertEquals(List.of(), myLibCal.getCallTokens(FAST_PATH));
+        }).completeNow()).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that the results are in the order of the requests, not the order LibCal answers them in, and that a request
+     * that fails doesn't keep the others from succeeding.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testResults(final Vertx aVertx, final VertxTestContext aContext) {
+        startBatch(aVertx, myLibCal.getConfig()).compose(unused -> {
+            return send(new JsonArray().add(getRequest(SLOW_PATH)).add(getRequest(FAILING_PATH))
+                    .add(getRequest(FAST_PATH)));
+        }).onSuccess(response -> aContext.verify(() -> {
+            final JsonArray results = response.bodyAsJsonArray();
+
+            assertEquals(HTTP.OK, response.statusCode());
+            assertEquals(3, results.size());
+            assertEquals(getResult(SLOW_PATH), results.getJsonObject(0));
+            assertTrue(results.getJsonObject(1).getInteger(JsonKeys.STATUS) >= HTTP.INTERNAL_SERVER_ERROR);
+            assertTrue(results.getJsonObject(1).containsKey(JsonKeys.ERROR));
+            assertEquals(getResult(FAST_PATH), results.getJsonObject(2));
+        }).completeNow()).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Starts the batch operation, with its body read up front the way the HTTP verticle reads it.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aConfig An application configuration
+     * @return A Future that succeeds once the batch operation is listening
+     */
+    private Future<Void> startBatch(final Vertx aVertx, final JsonObject aConfig) {
+        final JsonObject config = aConfig.put(Config.BATCH_MAX_REQUESTS, MAX_REQUESTS);
+
+        return myLibCal.registerServices(config).compose(unused -> {
+            final Router router = Router.router(aVertx);
+
+            router.post(BatchHandler.PATH).handler(BodyHandler.create(false))
+                    .handler(new BatchHandler(aVertx, config, ProxyHandler.fromConfig(aVertx, config)));
+            return aVertx.createHttpServer().requestHandler(router).listen(0);
+        }).map(server -> {
+            myPort = server.actualPort();
+            return null;
+        });
+    }
+
+    /**
+     * Sends a batch to the batch operation.
+     *
+     * @param aBatch A batch of requests
+     * @return A Future that resolves to the batch operation's response
+     */
+    private Future<HttpResponse<Buffer>> send(final JsonArray aBatch) {
+        return myClient.post(myPort, StubLibCal.HOST, BatchHandler.PATH).sendJson(aBatch);
+    }
+
+    /**
+     * Answers a LibCal call with its path, after a while if it's a call to the slow path, or cuts it off if it's a call
+     * to the failing path.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aRequest A call to the stub LibCal
+     */
+    private static void answer(final Vertx aVertx, final HttpServerRequest aRequest) {
+        final String path = aRequest.path();
+
+        if (FAILING_PATH.equals(path)) {
+            aRequest.connection().close();
+        } else {
+            aVertx.setTimer(SLOW_PATH.equals(path) ? 300 : 1, timerId -> {
+                aRequest.response().putHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON.toString())
+                        .end(new JsonObject().put(JsonKeys.PATH, path).encode());
+            });
+        }
+    }
+
+    /**
+     * Gets a batch's GET request.
+     *
+     * @param aPath A request path
+     * @return The batch request
+     */
+    private static JsonObject getRequest(final String aPath) {
+        return new JsonObject().put(JsonKeys.PATH, aPath);
+    }
+
+    /**
+     * Gets the result of a batch's request that the stub LibCal answered with its path.
+     *
+     * @param aPath A request path
+     * @return The request's result
+     */
+    private static JsonObject getResult(final String aPath) {
+        return new JsonObject().put(JsonKeys.STATUS, HTTP.OK).put(JsonKeys.BODY,
+                new JsonObject().put(JsonKeys.PATH, aPath));
+    }
+}
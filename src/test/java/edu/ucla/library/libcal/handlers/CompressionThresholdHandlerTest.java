@@ -0,0 +1,126 @@
+
+package edu.ucla.library.libcal.handlers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import edu.ucla.library.libcal.ContentEncoding;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.ext.web.Router;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+/**
+ * Tests {@link CompressionThresholdHandler} on a server that compresses its responses.
+ */
+@ExtendWith(VertxExtension.class)
+public class CompressionThresholdHandlerTest {
+
+    /**
+     * The number of bytes a response body must have to be compressed.
+     */
+    private static final int MIN_SIZE = 1024;
+
+    /**
+     * The path of a response whose body is below the threshold.
+     */
+    private static final String SMALL_PATH = "/small";
+
+    /**
+     * The path of a response whose body is above the threshold.
+     */
+    private static final String LARGE_PATH = "/large";
+
+    /**
+     * A body below the threshold.
+     */
+    private static final String SMALL_BODY = "{\"id\":1}";
+
+    /**
+     * A body above the threshold.
+     */
+    private static final String LARGE_BODY = "[" + "{\"id\":1},".repeat(MIN_SIZE / 8) + "{\"id\":1}]";
+
+    /**
+     * The port the test server listens on.
+     */
+    private int myPort;
+
+    /**
+     * Starts a server that compresses its responses, with the threshold handler in front of its routes.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @BeforeEach
+    public void setUp(final Vertx aVertx, final VertxTestContext aContext) {
+        final Router router = Router.router(aVertx);
+
+        router.route().handler(new CompressionThresholdHandler(MIN_SIZE));
+        router.get(SMALL_PATH).handler(context -> context.response().end(SMALL_BODY));
+        router.get(LARGE_PATH).handler(context -> context.response().end(LARGE_BODY));
+
+        aVertx.createHttpServer(new HttpServerOptions().setCompressionSupported(true)).requestHandler(router).listen(0)
+                .onSuccess(server -> {
+                    myPort = server.actualPort();
+                    aContext.completeNow();
+                }).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that a body below the threshold is sent as it is, even to a client that accepts gzip.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testSmallBodyNotCompressed(final Vertx aVertx, final VertxTestContext aContext) {
+        get(aVertx, SMALL_PATH).onSuccess(response -> aContext.verify(() -> {
+            assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+            assertEquals(SMALL_BODY, response.body().result().toString());
+        }).completeNow()).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that a body above the threshold is gzipped for a client that accepts gzip.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testLargeBodyCompressed(final Vertx aVertx, final VertxTestContext aContext) {
+        get(aVertx, LARGE_PATH).onSuccess(response -> aContext.verify(() -> {
+            final Buffer body = response.body().result();
+
+            assertEquals(ContentEncoding.GZIP, response.getHeader(HttpHeaders.CONTENT_ENCODING));
+            assertEquals(LARGE_BODY, ContentEncoding.decode(body, ContentEncoding.GZIP).toString());
+        }).completeNow()).onFailure(aContext::failNow);
+    }
+
+    /**
+     * GETs a path from the test server as a client that accepts gzip but doesn't decode it itself.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aPath A request path
+     * @return A Future that resolves to the response, once its body has been read
+     */
+    private Future<HttpClientResponse> get(final Vertx aVertx, final String aPath) {
+        final RequestOptions options = new RequestOptions().setMethod(HttpMethod.GET).setPort(myPort)
+                .setHost("localhost").setURI(aPath).putHeader(HttpHeaders.ACCEPT_ENCODING, ContentEncoding.GZIP);
+
+        return aVertx.createHttpClient().request(options).compose(request -> request.send())
+                .compose(response -> response.body().map(response));
+    }
+}
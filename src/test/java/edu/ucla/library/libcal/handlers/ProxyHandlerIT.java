@@ -19,6 +19,7 @@ import info.freelibrary.util.HTTP;
 
 import edu.ucla.library.libcal.Config;
 import edu.ucla.library.libcal.Constants;
+import edu.ucla.library.libcal.JsonKeys;
 import edu.ucla.library.libcal.MediaType;
 
 import io.vertx.config.ConfigRetriever;
@@ -27,6 +28,7 @@ import io.vertx.core.MultiMap;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.client.HttpRequest;
 import io.vertx.ext.web.client.WebClient;
@@ -55,6 +57,11 @@ public class ProxyHandlerIT {
      */
     private static String POST_PATH = "/api/1.1/events/9353038/register";
 
+    /**
+     * A LibCal API call on an open endpoint.
+     */
+    private static String OPEN_PATH = "/api/1.1/events/form/5481";
+
     /**
      * A WebClient for calling the HTTP API.
      */
@@ -244,7 +251,7 @@ public class ProxyHandlerIT {
      */
     @Test
     public void testGettingEventsWithClientIP(final Vertx aVertx, final VertxTestContext aContext) {
-        final HttpRequest<Buffer> request = myWebClient.get(myPort, INADDR_ANY, "/api/1.1/events/form/5481");
+        final HttpRequest<Buffer> request = myWebClient.get(myPort, INADDR_ANY, OPEN_PATH);
 
         // Send with out of range IP in X_FORWARDED_FOR but it should still work
         request.putHeader(Constants.X_FORWARDED_FOR, "192.168.5.6").send().onSuccess(response -> {
@@ -254,4 +261,28 @@ public class ProxyHandlerIT {
             }).completeNow();
         }).onFailure(aContext::failNow);
     }
+
+    /**
+     * Tests that each request of a batch gets the access it would get on its own.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testBatchWithClientIP(final Vertx aVertx, final VertxTestContext aContext) {
+        final HttpRequest<Buffer> request = myWebClient.post(myPort, INADDR_ANY, "/batch");
+        final JsonArray batch = new JsonArray().add(new JsonObject().put(JsonKeys.PATH, REQUEST_PATH))
+                .add(new JsonObject().put(JsonKeys.PATH, OPEN_PATH));
+
+        // Send with out of range IP in X_FORWARDED_FOR, so only the open endpoint should work
+        request.putHeader(Constants.X_FORWARDED_FOR, "192.168.5.7").sendJson(batch).onSuccess(response -> {
+            aContext.verify(() -> {
+                final JsonArray results = response.bodyAsJsonArray();
+
+                assertEquals(HTTP.OK, response.statusCode(), response.statusMessage());
+                assertEquals(HTTP.FORBIDDEN, results.getJsonObject(0).getInteger(JsonKeys.STATUS));
+                assertEquals(HTTP.OK, results.getJsonObject(1).getInteger(JsonKeys.STATUS));
+            }).completeNow();
+        }).onFailure(aContext::failNow);
+    }
 }
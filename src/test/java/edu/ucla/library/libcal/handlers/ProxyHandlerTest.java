@@ -0,0 +1,487 @@
+
+package edu.ucla.library.libcal.handlers;
+
+import static edu.ucla.library.libcal.MediaType.APPLICATION_JSON;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import info.freelibrary.util.HTTP;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.ContentEncoding;
+import edu.ucla.library.libcal.JsonKeys;
+import edu.ucla.library.libcal.StubLibCal;
+import edu.ucla.library.libcal.services.CircuitBreaker;
+import edu.ucla.library.libcal.services.CircuitBreaker.State;
+import edu.ucla.library.libcal.services.TokenHolder;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+/**
+ * Tests {@link ProxyHandler} against a stub LibCal.
+ */
+@ExtendWith(VertxExtension.class)
+public class ProxyHandlerTest {
+
+    /**
+     * The first access token the stub hands out.
+     */
+    private static final String FIRST_TOKEN = StubLibCal.TOKEN_PREFIX + 1;
+
+    /**
+     * The second access token the stub hands out.
+     */
+    private static final String SECOND_TOKEN = StubLibCal.TOKEN_PREFIX + 2;
+
+    /**
+     * The paths of some LibCal GETs.
+     */
+    private static final List<String> GET_PATHS = List.of("/1.1/hours/1", "/1.1/hours/2", "/1.1/hours/3");
+
+    /**
+     * The path of a LibCal POST.
+     */
+    private static final String POST_PATH = "/1.1/events/1/register";
+
+    /**
+     * The path of a LibCal GET whose response is streamed.
+     */
+    private static final String STREAM_PATH = "/1.1/events";
+
+    /**
+     * The key of the stub's default API responses' path.
+     */
+    private static final String PATH = "path";
+
+    /**
+     * A LibCal response header that's forwarded to the client.
+     */
+    private static final String END_TO_END_HEADER = "X-Backend-Server";
+
+    /**
+     * A LibCal response header that only applies to the connection to LibCal.
+     */
+    private static final String PROXY_AUTHENTICATE = "Proxy-Authenticate";
+
+    /**
+     * A part of a streamed response body.
+     */
+    private static final String CHUNK = "[{\"id\":1},";
+
+    /**
+     * The stub LibCal.
+     */
+    private StubLibCal myLibCal;
+
+    /**
+     * A client of the proxy.
+     */
+    private WebClient myClient;
+
+    /**
+     * The port the proxy listens on.
+     */
+    private int myPort;
+
+    /**
+     * Starts the stub LibCal.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @BeforeEach
+    public void setUp(final Vertx aVertx, final VertxTestContext aContext) {
+        myClient = WebClient.create(aVertx);
+
+        StubLibCal.start(aVertx).onSuccess(stub -> {
+            myLibCal = stub;
+            aContext.completeNow();
+        }).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that GETs whose access token LibCal rejects are replayed once with the new token, and that the GETs that
+     * saw the same token rejected share one re-authentication.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testReplayRejected(final Vertx aVertx, final VertxTestContext aContext) {
+        startProxy(aVertx, myLibCal.getConfig()).compose(unused -> {
+            myLibCal.revoke(FIRST_TOKEN);
+            myLibCal.setTokenDelay(200);
+
+            return CompositeFuture.all(get(GET_PATHS.get(0)), get(GET_PATHS.get(1)), get(GET_PATHS.get(2)));
+        }).onSuccess(responses -> aContext.verify(() -> {
+            for (int index = 0; index < GET_PATHS.size(); index++) {
+                final HttpResponse<Buffer> response = responses.resultAt(index);
+
+                assertEquals(HTTP.OK, response.statusCode());
+                assertEquals(GET_PATHS.get(index), response.bodyAsJsonObject().getString(PATH));
+                assertEquals(List.of(FIRST_TOKEN, SECOND_TOKEN), myLibCal.getCallTokens(GET_PATHS.get(index)));
+            }
+
+            assertEquals(2, myLibCal.getTokenCount());
+        }).completeNow()).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that a request whose body was streamed to LibCal gets LibCal's 401 instead of being replayed, but still
+     * triggers the re-authentication, so that the requests after it succeed.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testStreamedBodyRejected(final Vertx aVertx, final VertxTestContext aContext) {
+        startProxy(aVertx, myLibCal.getConfig()).compose(unused -> {
+            myLibCal.revoke(FIRST_TOKEN);
+            return myClient.post(myPort, StubLibCal.HOST, POST_PATH).sendJsonObject(new JsonObject());
+        }).compose(response -> {
+            aContext.verify(() -> {
+                assertEquals(HTTP.UNAUTHORIZED, response.statusCode());
+                assertEquals(List.of(FIRST_TOKEN), myLibCal.getCallTokens(POST_PATH));
+            });
+
+            // The refresh isn't waited for, so wait for the new token to be handed to the proxy
+            return when(aVertx, () -> SECOND_TOKEN.equals(TokenHolder.get(aVertx).getToken()));
+        }).compose(unused -> get(GET_PATHS.get(0))).onSuccess(response -> aContext.verify(() -> {
+            assertEquals(HTTP.OK, response.statusCode());
+            assertEquals(List.of(SECOND_TOKEN), myLibCal.getCallTokens(GET_PATHS.get(0)));
+            assertEquals(2, myLibCal.getTokenCount());
+        }).completeNow()).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that requests that fail because the client's body is too large aren't held against LibCal, so they can't
+     * open the circuit for everyone else.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testOversizedBodies(final Vertx aVertx, final VertxTestContext aContext) {
+        final JsonObject config = getBreakerConfig().put(Config.MAX_BODY_SIZE, CHUNK.length());
+
+        startProxy(aVertx, config).compose(unused -> postChunked(aVertx, 3, 0)).compose(response -> {
+            aContext.verify(() -> assertEquals(HTTP.PAYLOAD_TOO_LARGE, response.statusCode()));
+            return postChunked(aVertx, 3, 0);
+        }).onSuccess(response -> aContext.verify(() -> {
+            final JsonObject stats = CircuitBreaker.lookup(aVertx).orElseThrow().getStats();
+
+            assertEquals(HTTP.PAYLOAD_TOO_LARGE, response.statusCode());
+            assertEquals(State.CLOSED.toString(), stats.getString(JsonKeys.STATE));
+            assertEquals(0, stats.getInteger(JsonKeys.FAILURE_COUNT));
+        }).completeNow()).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that requests whose bodies the client streams slowly aren't counted as slow calls, since the time they take
+     * is the client's, not LibCal's.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testSlowUploads(final Vertx aVertx, final VertxTestContext aContext) {
+        final JsonObject config = getBreakerConfig().put(Config.BREAKER_SLOW_CALL, 100);
+
+        startProxy(aVertx, config).compose(unused -> postChunked(aVertx, 2, 200)).compose(response -> {
+            aContext.verify(() -> assertEquals(HTTP.OK, response.statusCode()));
+            return postChunked(aVertx, 2, 200);
+        }).onSuccess(response -> aContext.verify(() -> {
+            final JsonObject stats = CircuitBreaker.lookup(aVertx).orElseThrow().getStats();
+
+            assertEquals(HTTP.OK, response.statusCode());
+            assertEquals(State.CLOSED.toString(), stats.getString(JsonKeys.STATE));
+            assertEquals(2, stats.getInteger(JsonKeys.CALL_COUNT));
+            assertEquals(0, stats.getInteger(JsonKeys.FAILURE_COUNT));
+        }).completeNow()).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that a gzipped LibCal response is cached as it is, passed through to a client that accepts gzip, and
+     * decoded for a client that doesn't, with both told that the response varies by Accept-Encoding.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testCompressionPassthrough(final Vertx aVertx, final VertxTestContext aContext) {
+        final String path = GET_PATHS.get(0);
+        final String body = new JsonObject().put(PATH, path).encode();
+
+        myLibCal.setApiHandler(request -> {
+            final String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+
+            aContext.verify(() -> assertEquals(ContentEncoding.GZIP, acceptEncoding));
+            request.response().putHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON.toString())
+                    .putHeader(HttpHeaders.CONTENT_ENCODING, ContentEncoding.GZIP).end(gzip(body));
+        });
+
+        startProxy(aVertx, myLibCal.getConfig()).compose(unused -> {
+            return myClient.get(myPort, StubLibCal.HOST, path)
+                    .putHeader(HttpHeaders.ACCEPT_ENCODING.toString(), ContentEncoding.GZIP).send();
+        }).compose(response -> {
+            aContext.verify(() -> {
+                assertEquals(HTTP.OK, response.statusCode());
+                assertEquals(ContentEncoding.GZIP, response.getHeader(HttpHeaders.CONTENT_ENCODING.toString()));
+                assertEquals(HttpHeaders.ACCEPT_ENCODING.toString(), response.getHeader(HttpHeaders.VARY.toString()));
+                assertEquals(body, ContentEncoding.decode(response.body(), ContentEncoding.GZIP).toString());
+            });
+
+            return get(path);
+        }).onSuccess(response -> aContext.verify(() -> {
+            assertEquals(HTTP.OK, response.statusCode());
+            assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING.toString()));
+            assertEquals(HttpHeaders.ACCEPT_ENCODING.toString(), response.getHeader(HttpHeaders.VARY.toString()));
+            assertEquals(body, response.bodyAsString());
+            assertEquals(List.of(FIRST_TOKEN), myLibCal.getCallTokens(path));
+        }).completeNow()).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that a streamed response is sent with LibCal's end-to-end headers, but not with the hop-by-hop ones that
+     * only applied to the connection to LibCal.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testStreamedHeaders(final Vertx aVertx, final VertxTestContext aContext) {
+        myLibCal.setApiHandler(request -> {
+            request.response().putHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON.toString())
+                    .putHeader(HttpHeaders.CONNECTION, HttpHeaders.KEEP_ALIVE)
+                    .putHeader(HttpHeaders.KEEP_ALIVE, "timeout=5").putHeader(PROXY_AUTHENTICATE, "Basic")
+                    .putHeader(END_TO_END_HEADER, PATH).end(CHUNK);
+        });
+
+        startProxy(aVertx, getStreamingConfig()).compose(unused -> get(STREAM_PATH))
+                .onSuccess(response -> aContext.verify(() -> {
+                    assertEquals(HTTP.OK, response.statusCode());
+                    assertEquals(CHUNK, response.bodyAsString());
+                    assertEquals(APPLICATION_JSON.toString(), response.getHeader(HttpHeaders.CONTENT_TYPE.toString()));
+                    assertEquals(PATH, response.getHeader(END_TO_END_HEADER));
+                    assertNull(response.getHeader(HttpHeaders.CONNECTION.toString()));
+                    assertNull(response.getHeader(HttpHeaders.KEEP_ALIVE.toString()));
+                    assertNull(response.getHeader(PROXY_AUTHENTICATE));
+                }).completeNow()).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that a streamed response's body is passed on as it arrives: LibCal doesn't finish its response until the
+     * client has the first part of it.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testStreamedBody(final Vertx aVertx, final VertxTestContext aContext) {
+        final Promise<Void> firstChunk = Promise.promise();
+        final Buffer body = Buffer.buffer();
+
+        myLibCal.setApiHandler(request -> {
+            final HttpServerResponse response = request.response().setChunked(true);
+
+            response.write(CHUNK);
+            firstChunk.future().onSuccess(unused -> response.end(CHUNK));
+        });
+
+        startProxy(aVertx, getStreamingConfig()).compose(unused -> {
+            return aVertx.createHttpClient().request(HttpMethod.GET, myPort, StubLibCal.HOST, STREAM_PATH);
+        }).compose(HttpClientRequest::send).compose(response -> {
+            response.handler(chunk -> {
+                body.appendBuffer(chunk);
+                firstChunk.tryComplete();
+            });
+            return response.end();
+        }).onSuccess(unused -> aContext.verify(() -> assertEquals(CHUNK + CHUNK, body.toString())).completeNow())
+                .onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that a client that goes away in the middle of a streamed response gets LibCal's response cut off too,
+     * rather than left to be read to the end, without anything failing unhandled along the way.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testStreamedClientGone(final Vertx aVertx, final VertxTestContext aContext) {
+        // Cutting off the pipe mustn't leave a write to the closed client response to fail on its own
+        aVertx.exceptionHandler(aContext::failNow);
+
+        myLibCal.setApiHandler(request -> {
+            final HttpServerResponse response = request.response().setChunked(true);
+            final long timerId = aVertx.setPeriodic(50, id -> response.write(CHUNK));
+
+            response.closeHandler(unused -> {
+                aVertx.cancelTimer(timerId);
+                aContext.completeNow();
+            });
+            response.write(CHUNK);
+        });
+
+        startProxy(aVertx, getStreamingConfig()).compose(unused -> {
+            return aVertx.createHttpClient().request(HttpMethod.GET, myPort, StubLibCal.HOST, STREAM_PATH);
+        }).compose(HttpClientRequest::send).onSuccess(response -> {
+            response.handler(chunk -> response.request().connection().close());
+        }).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Gets an application configuration that streams LibCal's responses to GETs, which it only does when they aren't
+     * cached.
+     *
+     * @return An application configuration
+     */
+    private JsonObject getStreamingConfig() {
+        return myLibCal.getConfig().put(Config.STREAM_RESPONSES, true).put(Config.CACHE_MAX_SIZE, 0);
+    }
+
+    /**
+     * Gets an application configuration whose circuit breaker opens as soon as one of two calls fails.
+     *
+     * @return An application configuration
+     */
+    private JsonObject getBreakerConfig() {
+        return myLibCal.getConfig().put(Config.BREAKER_WINDOW, 2).put(Config.BREAKER_FAILURE_RATE, 50);
+    }
+
+    /**
+     * Starts the proxy, with its token service and LibCal service registered the way the main verticle registers them.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aConfig An application configuration
+     * @return A Future that succeeds once the proxy is listening
+     */
+    private Future<Void> startProxy(final Vertx aVertx, final JsonObject aConfig) {
+        return myLibCal.registerServices(aConfig).compose(unused -> {
+            final Router router = Router.router(aVertx);
+
+            router.route().handler(ProxyHandler.fromConfig(aVertx, aConfig));
+            return aVertx.createHttpServer().requestHandler(router).listen(0);
+        }).map(server -> {
+            myPort = server.actualPort();
+            return null;
+        });
+    }
+
+    /**
+     * Sends a GET to the proxy.
+     *
+     * @param aPath A request path
+     * @return A Future that resolves to the proxy's response
+     */
+    private Future<HttpResponse<Buffer>> get(final String aPath) {
+        return myClient.get(myPort, StubLibCal.HOST, aPath).send();
+    }
+
+    /**
+     * POSTs a chunked body to the proxy, a chunk at a time.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aChunkCount The number of chunks in the body
+     * @param aDelay The number of milliseconds between chunks
+     * @return A Future that resolves to the proxy's response, whose body has been read
+     */
+    private Future<HttpClientResponse> postChunked(final Vertx aVertx, final int aChunkCount, final long aDelay) {
+        return aVertx.createHttpClient().request(HttpMethod.POST, myPort, StubLibCal.HOST, POST_PATH)
+                .compose(request -> {
+                    request.setChunked(true).putHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON.toString());
+                    writeChunks(aVertx, request, aChunkCount, aDelay);
+                    return request.response();
+                }).compose(response -> response.body().map(response));
+    }
+
+    /**
+     * Writes a number of chunks to a request, one after another, and then ends it. A request that fails (e.g., because
+     * the proxy turned it away) stops being written.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aRequest A request
+     * @param aChunkCount The number of chunks left to write
+     * @param aDelay The number of milliseconds between chunks
+     */
+    private static void writeChunks(final Vertx aVertx, final HttpClientRequest aRequest, final int aChunkCount,
+            final long aDelay) {
+        if (aChunkCount == 1) {
+            aRequest.end(CHUNK);
+        } else {
+            aRequest.write(CHUNK).onSuccess(unused -> {
+                if (aDelay > 0) {
+                    aVertx.setTimer(aDelay, timerId -> writeChunks(aVertx, aRequest, aChunkCount - 1, aDelay));
+                } else {
+                    writeChunks(aVertx, aRequest, aChunkCount - 1, aDelay);
+                }
+            });
+        }
+    }
+
+    /**
+     * Gzips a response body.
+     *
+     * @param aBody A response body
+     * @return The gzipped body
+     * @throws UncheckedIOException If the body can't be gzipped
+     */
+    private static Buffer gzip(final String aBody) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(aBody.getBytes(StandardCharsets.UTF_8));
+        } catch (final IOException details) {
+            throw new UncheckedIOException(details);
+        }
+
+        return Buffer.buffer(bytes.toByteArray());
+    }
+
+    /**
+     * Waits for a condition to become true, checking it periodically.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aCondition A condition
+     * @return A Future that succeeds once the condition is true
+     */
+    private static Future<Void> when(final Vertx aVertx, final BooleanSupplier aCondition) {
+        final Promise<Void> promise = Promise.promise();
+
+        aVertx.setPeriodic(50, timerId -> {
+            if (aCondition.getAsBoolean()) {
+                aVertx.cancelTimer(timerId);
+                promise.tryComplete();
+            }
+        });
+
+        return promise.future();
+    }
+}
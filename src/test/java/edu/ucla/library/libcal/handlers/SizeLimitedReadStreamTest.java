@@ -0,0 +1,160 @@
+
+package edu.ucla.library.libcal.handlers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import info.freelibrary.util.HTTP;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.handler.HttpException;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+/**
+ * Tests {@link SizeLimitedReadStream} with the bodies of real requests.
+ */
+@ExtendWith(VertxExtension.class)
+public class SizeLimitedReadStreamTest {
+
+    /**
+     * The maximum number of bytes the test server reads from a request body.
+     */
+    private static final long MAX_SIZE = 16;
+
+    /**
+     * A part of a request body.
+     */
+    private static final String CHUNK = "0123456789";
+
+    /**
+     * The path the test requests are sent to.
+     */
+    private static final String PATH = "/";
+
+    /**
+     * A server that answers with the request body it read, or with the status code of the failure that stopped it.
+     */
+    private HttpServer myServer;
+
+    /**
+     * A client of the test server.
+     */
+    private HttpClient myClient;
+
+    /**
+     * Starts the test server.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @BeforeEach
+    public void setUp(final Vertx aVertx, final VertxTestContext aContext) {
+        myClient = aVertx.createHttpClient();
+
+        aVertx.createHttpServer().requestHandler(SizeLimitedReadStreamTest::echo).listen(0).onSuccess(server -> {
+            myServer = server;
+            aContext.completeNow();
+        }).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that a body under the limit is passed on whole.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public void testUnderLimit(final VertxTestContext aContext) {
+        getBody(open().compose(request -> request.send(CHUNK)), HTTP.OK)
+                .onSuccess(body -> aContext.verify(() -> assertEquals(CHUNK, body)).completeNow())
+                .onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that a chunked body, which has no Content-Length, fails once it has gone over the limit, and that only the
+     * bytes under the limit were passed on.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public void testOverLimitChunked(final VertxTestContext aContext) {
+        final Future<HttpClientResponse> response = open().compose(request -> {
+            request.setChunked(true).write(CHUNK);
+            request.write(CHUNK);
+            request.end(CHUNK);
+            return request.response();
+        });
+
+        getBody(response, HTTP.PAYLOAD_TOO_LARGE)
+                .onSuccess(body -> aContext.verify(() -> assertTrue(Long.parseLong(body) <= MAX_SIZE)).completeNow())
+                .onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that a body that's over the limit by its Content-Length fails too, when its length isn't checked first.
+     *
+     * @param aContext A test context
+     */
+    @Test
+    public void testOverLimitContentLength(final VertxTestContext aContext) {
+        getBody(open().compose(request -> request.send(CHUNK + CHUNK)), HTTP.PAYLOAD_TOO_LARGE)
+                .onSuccess(body -> aContext.verify(() -> assertTrue(Long.parseLong(body) <= MAX_SIZE)).completeNow())
+                .onFailure(aContext::failNow);
+    }
+
+    /**
+     * Opens a request to the test server.
+     *
+     * @return A Future that resolves to the request
+     */
+    private Future<HttpClientRequest> open() {
+        return myClient.request(HttpMethod.POST, myServer.actualPort(), "localhost", PATH);
+    }
+
+    /**
+     * Gets the body of a response from the test server, once its status code has been checked. The body is read as soon
+     * as the response arrives, since the server may close the connection right after sending it.
+     *
+     * @param aResponse A pending response
+     * @param aStatusCode The expected status code
+     * @return A Future that resolves to the response body
+     */
+    private static Future<String> getBody(final Future<HttpClientResponse> aResponse, final int aStatusCode) {
+        return aResponse.compose(response -> {
+            assertEquals(aStatusCode, response.statusCode());
+            return response.body();
+        }).map(Buffer::toString);
+    }
+
+    /**
+     * Reads a request body through a size-limited stream and answers with it, or, if the stream fails, with the
+     * failure's status code and the number of bytes that were passed on before it did.
+     *
+     * @param aRequest A request to the test server
+     */
+    private static void echo(final HttpServerRequest aRequest) {
+        final SizeLimitedReadStream body = new SizeLimitedReadStream(aRequest, MAX_SIZE);
+        final Buffer received = Buffer.buffer();
+
+        body.exceptionHandler(failure -> {
+            aRequest.response().setStatusCode(((HttpException) failure).getStatusCode())
+                    .end(String.valueOf(received.length()))
+                    // The rest of the body won't be read, so it can't be left on the connection
+                    .onComplete(end -> aRequest.connection().close());
+        });
+        body.endHandler(end -> aRequest.response().end(received));
+        body.handler(received::appendBuffer);
+    }
+}
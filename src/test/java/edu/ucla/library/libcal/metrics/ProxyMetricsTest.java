@@ -0,0 +1,85 @@
+
+package edu.ucla.library.libcal.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Future;
+
+/**
+ * Tests {@link ProxyMetrics}.
+ */
+public class ProxyMetricsTest {
+
+    /**
+     * An HTTP GET method.
+     */
+    private static final String GET = "GET";
+
+    /**
+     * A route template.
+     */
+    private static final String HOURS_ROUTE = "/api/1.1/hours/{id}";
+
+    /**
+     * The name of the request latency meter.
+     */
+    private static final String REQUESTS = "libcal.proxy.requests";
+
+    /**
+     * The name of the status class label.
+     */
+    private static final String STATUS = "status";
+
+    /**
+     * Tests that requests that didn't match a route share the other route label.
+     */
+    @Test
+    public void testOtherRoute() {
+        final ProxyMetrics metrics = new ProxyMetrics();
+
+        metrics.recordRequest(null, GET, 404, ProxyMetrics.ALLOWED, 1);
+        metrics.recordRequest(null, GET, 404, ProxyMetrics.ALLOWED, 1);
+
+        assertEquals(2, metrics.getRegistry().get(REQUESTS).tag("route", ProxyMetrics.OTHER_ROUTE).timer().count());
+    }
+
+    /**
+     * Tests that requests with the same labels are recorded in the same time series, and ones with different labels
+     * aren't.
+     */
+    @Test
+    public void testTimerReuse() {
+        final ProxyMetrics metrics = new ProxyMetrics();
+
+        metrics.recordRequest(HOURS_ROUTE, GET, 200, ProxyMetrics.ALLOWED, 1);
+        metrics.recordRequest(HOURS_ROUTE, GET, 204, ProxyMetrics.ALLOWED, 1);
+        metrics.recordRequest(HOURS_ROUTE, GET, 500, ProxyMetrics.ALLOWED, 1);
+        metrics.recordRequest(HOURS_ROUTE, GET, 0, ProxyMetrics.ALLOWED, 1);
+
+        assertEquals(3, metrics.getRegistry().get(REQUESTS).timers().size());
+        assertEquals(2, metrics.getRegistry().get(REQUESTS).tag(STATUS, "2xx").timer().count());
+        assertEquals(1, metrics.getRegistry().get(REQUESTS).tag(STATUS, "error").timer().count());
+    }
+
+    /**
+     * Tests that recorded latencies are scraped as histograms.
+     */
+    @Test
+    public void testScrape() {
+        final ProxyMetrics metrics = new ProxyMetrics();
+        final String scrape;
+
+        metrics.recordRequest(HOURS_ROUTE, GET, 200, ProxyMetrics.ALLOWED, TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.timeUpstream(GET, HOURS_ROUTE, Future.succeededFuture(200), status -> status);
+        scrape = metrics.scrape();
+
+        assertTrue(scrape.contains("libcal_proxy_requests_seconds_bucket{access=\"allowed\""), scrape);
+        assertTrue(scrape.contains("libcal_proxy_upstream_seconds_count{method=\"GET\",route=\"/api/1.1/hours/{id}\""),
+                scrape);
+    }
+}
@@ -0,0 +1,209 @@
+
+package edu.ucla.library.libcal.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ucla.library.libcal.services.CircuitBreaker.State;
+
+/**
+ * Tests {@link CircuitBreaker}.
+ */
+public class CircuitBreakerTest {
+
+    /**
+     * The number of calls in the test circuit breaker's window.
+     */
+    private static final int WINDOW = 4;
+
+    /**
+     * The number of seconds the test circuit breaker stays open.
+     */
+    private static final long OPEN_TIME = 10;
+
+    /**
+     * The number of probe calls the test circuit breaker lets through.
+     */
+    private static final int PROBES = 2;
+
+    /**
+     * The number of milliseconds after which a call to the test circuit breaker counts as failed.
+     */
+    private static final long SLOW_CALL = 1_000;
+
+    /**
+     * The duration of a fast call, in nanoseconds.
+     */
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * The current time of the test clock.
+     */
+    private final AtomicLong myTime = new AtomicLong();
+
+    /**
+     * Tests that the circuit only opens once the window is full and half of it has failed.
+     */
+    @Test
+    public void testOpensAtFailureRate() {
+        final CircuitBreaker breaker = getBreaker();
+
+        record(breaker, false);
+        assertEquals(State.CLOSED, breaker.getState());
+
+        record(breaker, true);
+        record(breaker, true);
+        record(breaker, true);
+        assertEquals(State.CLOSED, breaker.getState());
+
+        // The new failure pushes the old one out of the window, so only one of the four calls has failed
+        record(breaker, false);
+        assertEquals(State.CLOSED, breaker.getState());
+
+        record(breaker, false);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    /**
+     * Tests that an open circuit refuses calls until its open time has passed, and says how long that will be.
+     */
+    @Test
+    public void testFailsFastWhileOpen() {
+        final CircuitBreaker breaker = getOpenBreaker();
+
+        assertFalse(breaker.tryAcquire());
+        assertEquals(OPEN_TIME, breaker.getRetryAfter());
+
+        myTime.addAndGet(TimeUnit.SECONDS.toNanos(OPEN_TIME) - TimeUnit.MILLISECONDS.toNanos(1_500));
+        assertFalse(breaker.tryAcquire());
+        assertEquals(2, breaker.getRetryAfter());
+    }
+
+    /**
+     * Tests that a half-open circuit lets only its probes through, and closes once they all succeed.
+     */
+    @Test
+    public void testClosesAfterProbesSucceed() {
+        final CircuitBreaker breaker = getOpenBreaker();
+
+        myTime.addAndGet(TimeUnit.SECONDS.toNanos(OPEN_TIME));
+
+        assertTrue(breaker.tryAcquire());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.record(true, FAST);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.record(true, FAST);
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getStats().getInteger("failureCount"));
+        assertTrue(breaker.tryAcquire());
+    }
+
+    /**
+     * Tests that a failed probe opens the circuit again, and that a released probe can be taken by another call.
+     */
+    @Test
+    public void testReopensWhenProbeFails() {
+        final CircuitBreaker breaker = getOpenBreaker();
+
+        myTime.addAndGet(TimeUnit.SECONDS.toNanos(OPEN_TIME));
+
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        breaker.release();
+        assertTrue(breaker.tryAcquire());
+
+        breaker.record(false, FAST);
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(OPEN_TIME, breaker.getRetryAfter());
+    }
+
+    /**
+     * Tests that a call that takes longer than the slow call threshold counts as failed.
+     */
+    @Test
+    public void testSlowCallsFail() {
+        final CircuitBreaker breaker = getBreaker();
+        final long slow = TimeUnit.MILLISECONDS.toNanos(SLOW_CALL + 1);
+
+        for (int index = 0; index < WINDOW; index++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.record(true, slow);
+        }
+
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    /**
+     * Tests that a zero failure rate turns the circuit breaker off.
+     */
+    @Test
+    public void testDisabled() {
+        final CircuitBreaker breaker = new CircuitBreaker(0, WINDOW, SLOW_CALL, OPEN_TIME, PROBES, myTime::get);
+
+        for (int index = 0; index < WINDOW * 2; index++) {
+            record(breaker, false);
+        }
+
+        assertEquals(State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    /**
+     * Tests that out of range settings are rejected.
+     */
+    @Test
+    public void testInvalidSettings() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new CircuitBreaker(101, WINDOW, SLOW_CALL, OPEN_TIME, PROBES, myTime::get));
+        assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker(CircuitBreaker.DEFAULT_FAILURE_RATE, 0,
+                SLOW_CALL, OPEN_TIME, PROBES, myTime::get));
+    }
+
+    /**
+     * Gets a closed circuit breaker that uses the test clock.
+     *
+     * @return A circuit breaker
+     */
+    private CircuitBreaker getBreaker() {
+        return new CircuitBreaker(CircuitBreaker.DEFAULT_FAILURE_RATE, WINDOW, SLOW_CALL, OPEN_TIME, PROBES,
+                myTime::get);
+    }
+
+    /**
+     * Gets a circuit breaker that uses the test clock and has just opened.
+     *
+     * @return An open circuit breaker
+     */
+    private CircuitBreaker getOpenBreaker() {
+        final CircuitBreaker breaker = getBreaker();
+
+        for (int index = 0; index < WINDOW; index++) {
+            record(breaker, false);
+        }
+
+        assertEquals(State.OPEN, breaker.getState());
+        return breaker;
+    }
+
+    /**
+     * Makes a fast call through a circuit breaker.
+     *
+     * @param aBreaker A circuit breaker
+     * @param aSucceeded Whether the call succeeds
+     */
+    private static void record(final CircuitBreaker aBreaker, final boolean aSucceeded) {
+        assertTrue(aBreaker.tryAcquire());
+        aBreaker.record(aSucceeded, FAST);
+    }
+}
@@ -0,0 +1,152 @@
+
+package edu.ucla.library.libcal.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import info.freelibrary.util.HTTP;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.StubLibCal;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.junit5.Checkpoint;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+/**
+ * Tests that {@link LibCalProxyServiceImpl} cuts off the calls to a stub LibCal that it no longer needs.
+ */
+@ExtendWith(VertxExtension.class)
+public class LibCalProxyServiceImplTest {
+
+    /**
+     * The path of a LibCal GET.
+     */
+    private static final String PATH = "/1.1/hours/1";
+
+    /**
+     * The access token the calls are made with.
+     */
+    private static final String TOKEN = StubLibCal.TOKEN_PREFIX + 1;
+
+    /**
+     * The number of milliseconds a call may take in all.
+     */
+    private static final long TOTAL_TIMEOUT = 300;
+
+    /**
+     * The stub LibCal.
+     */
+    private StubLibCal myLibCal;
+
+    /**
+     * Starts the stub LibCal.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @BeforeEach
+    public void setUp(final Vertx aVertx, final VertxTestContext aContext) {
+        StubLibCal.start(aVertx).onSuccess(stub -> {
+            myLibCal = stub;
+            aContext.completeNow();
+        }).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that a call whose response trickles in for longer than the total timeout is cut off when it times out,
+     * instead of holding its connection until LibCal is done.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testTimeoutCutsOffCall(final Vertx aVertx, final VertxTestContext aContext) {
+        final JsonObject config = myLibCal.getConfig().put(Config.REQUEST_TIMEOUT, TOTAL_TIMEOUT);
+        final LibCalProxyServiceImpl service = new LibCalProxyServiceImpl(aVertx, config);
+        final Checkpoint timedOut = aContext.checkpoint();
+        final Checkpoint closed = aContext.checkpoint();
+
+        myLibCal.setApiHandler(request -> {
+            final HttpServerResponse response = request.response().setChunked(true);
+            final long timerId = aVertx.setPeriodic(50, id -> response.write(" "));
+
+            response.closeHandler(unused -> {
+                aVertx.cancelTimer(timerId);
+                closed.flag();
+            });
+            response.write("[");
+        });
+
+        service.getLibCalResponse(TOKEN, PATH, HttpMethod.GET.name(), null).onSuccess(response -> {
+            aContext.failNow(response.bodyAsString());
+        }).onFailure(failure -> aContext.verify(() -> {
+            assertTrue(failure instanceof TimeoutException, failure.toString());
+            timedOut.flag();
+        }));
+    }
+
+    /**
+     * Tests that the slower call of a hedged pair is cut off once the faster one has answered, instead of holding its
+     * connection until LibCal is done.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testHedgeLoserCutOff(final Vertx aVertx, final VertxTestContext aContext) {
+        // Without an idle timeout, only the hedger's caller can cut off a call that LibCal never answers
+        final JsonObject config = myLibCal.getConfig().put(Config.HEDGE_REQUESTS, true).put(Config.HEDGE_BUDGET, 100)
+                .put(Config.REQUEST_IDLE_TIMEOUT, 0);
+        final LibCalProxyServiceImpl service = new LibCalProxyServiceImpl(aVertx, config);
+        final AtomicInteger hedgedCalls = new AtomicInteger();
+        final Checkpoint answered = aContext.checkpoint();
+        final Checkpoint closed = aContext.checkpoint();
+
+        warmUp(service, RequestHedger.MIN_SAMPLES).compose(unused -> {
+            myLibCal.setApiHandler(request -> {
+                if (hedgedCalls.incrementAndGet() == 1) {
+                    // The first call is never answered, so it's hedged
+                    request.response().closeHandler(closing -> closed.flag());
+                } else {
+                    request.response().end(PATH);
+                }
+            });
+
+            return service.getLibCalResponse(TOKEN, PATH, HttpMethod.GET.name(), null);
+        }).onSuccess(response -> aContext.verify(() -> {
+            assertEquals(HTTP.OK, response.statusCode());
+            assertEquals(2, hedgedCalls.get());
+            answered.flag();
+        })).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Makes calls that the stub LibCal answers at once, one after another, so that the hedger has the latencies it
+     * needs before it hedges a call.
+     *
+     * @param aService A LibCal proxy service
+     * @param aCount The number of calls left to make
+     * @return A Future that succeeds once every call has been answered
+     */
+    private static Future<HttpResponse<Buffer>> warmUp(final LibCalProxyServiceImpl aService, final int aCount) {
+        final Future<HttpResponse<Buffer>> response =
+                aService.getLibCalResponse(TOKEN, PATH, HttpMethod.GET.name(), null);
+
+        return aCount <= 1 ? response : response.compose(unused -> warmUp(aService, aCount - 1));
+    }
+}
@@ -0,0 +1,115 @@
+
+package edu.ucla.library.libcal.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.StubLibCal;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+
+/**
+ * Tests {@link OAuthTokenServiceImpl} against a stub token endpoint.
+ */
+@ExtendWith(VertxExtension.class)
+public class OAuthTokenServiceImplTest {
+
+    /**
+     * The first access token the stub hands out.
+     */
+    private static final String FIRST_TOKEN = StubLibCal.TOKEN_PREFIX + 1;
+
+    /**
+     * The second access token the stub hands out.
+     */
+    private static final String SECOND_TOKEN = StubLibCal.TOKEN_PREFIX + 2;
+
+    /**
+     * The stub LibCal, whose token endpoint the service authenticates with.
+     */
+    private StubLibCal myLibCal;
+
+    /**
+     * Starts the stub LibCal.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @BeforeEach
+    public void setUp(final Vertx aVertx, final VertxTestContext aContext) {
+        StubLibCal.start(aVertx).onSuccess(stub -> {
+            myLibCal = stub;
+            aContext.completeNow();
+        }).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that callers that report the same rejected token while it's being replaced share one re-authentication.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testConcurrentRefreshes(final Vertx aVertx, final VertxTestContext aContext) {
+        OAuthTokenService.create(aVertx, myLibCal.getConfig()).compose(service -> {
+            myLibCal.setTokenDelay(200);
+            return CompositeFuture.all(service.refreshBearerToken(FIRST_TOKEN), service.refreshBearerToken(FIRST_TOKEN),
+                    service.refreshBearerToken(FIRST_TOKEN));
+        }).onSuccess(refreshes -> aContext.verify(() -> {
+            assertEquals(List.of(SECOND_TOKEN, SECOND_TOKEN, SECOND_TOKEN), refreshes.list());
+            assertEquals(2, myLibCal.getTokenCount());
+        }).completeNow()).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that a rejected token that has already been replaced gets the current token, without re-authenticating.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testReplacedToken(final Vertx aVertx, final VertxTestContext aContext) {
+        OAuthTokenService.create(aVertx, myLibCal.getConfig()).compose(service -> {
+            return service.refreshBearerToken(FIRST_TOKEN).compose(token -> service.refreshBearerToken(FIRST_TOKEN));
+        }).onSuccess(token -> aContext.verify(() -> {
+            assertEquals(SECOND_TOKEN, token);
+            assertEquals(2, myLibCal.getTokenCount());
+        }).completeNow()).onFailure(aContext::failNow);
+    }
+
+    /**
+     * Tests that a refresh triggered by a rejected token replaces the scheduled refresh, rather than adding to it or
+     * cancelling the one it schedules itself.
+     *
+     * @param aVertx A Vert.x instance
+     * @param aContext A test context
+     */
+    @Test
+    public void testRefreshReschedules(final Vertx aVertx, final VertxTestContext aContext) {
+        // Tokens are refreshed three seconds after they're handed out
+        final JsonObject config = myLibCal.setExpiresIn(4).getConfig().put(Config.LIBCAL_AUTH_EXPIRES_IN_PADDING, 1);
+
+        OAuthTokenService.create(aVertx, config).onSuccess(service -> aVertx.setTimer(1000, delay -> {
+            service.refreshBearerToken(FIRST_TOKEN).onSuccess(token -> {
+                // The first token's refresh, which should be gone, was due two seconds from now; the second's is due
+                // in three, and the third's in six
+                aVertx.setTimer(3500, firstCheck -> {
+                    aContext.verify(() -> assertEquals(3, myLibCal.getTokenCount()));
+                    aVertx.setTimer(1500, secondCheck -> {
+                        aContext.verify(() -> assertEquals(3, myLibCal.getTokenCount())).completeNow();
+                    });
+                });
+            }).onFailure(aContext::failNow);
+        })).onFailure(aContext::failNow);
+    }
+}
@@ -0,0 +1,223 @@
+
+package edu.ucla.library.libcal.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import info.freelibrary.util.HTTP;
+
+import edu.ucla.library.libcal.HttpResponseImpl;
+
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpResponse;
+
+/**
+ * Tests {@link RequestBatcher}.
+ */
+public class RequestBatcherTest {
+
+    /**
+     * The batched endpoint.
+     */
+    private static final String EVENTS = "/api/1.1/events/";
+
+    /**
+     * The field that holds the events' IDs.
+     */
+    private static final String ID = "id";
+
+    /**
+     * The field that holds the events' titles.
+     */
+    private static final String TITLE = "title";
+
+    /**
+     * The array field of the events endpoint's responses.
+     */
+    private static final String EVENTS_FIELD = "events";
+
+    /**
+     * An event ID.
+     */
+    private static final String FIRST_ID = "1";
+
+    /**
+     * Another event ID.
+     */
+    private static final String SECOND_ID = "2";
+
+    /**
+     * A query string.
+     */
+    private static final String LIMIT = "?limit=5";
+
+    /**
+     * The Vert.x instance whose timers close the batches.
+     */
+    private Vertx myVertx;
+
+    /**
+     * The queries that were sent to the test LibCal.
+     */
+    private final List<String> myQueries = new CopyOnWriteArrayList<>();
+
+    /**
+     * Sets up the Vert.x instance.
+     */
+    @BeforeEach
+    public void setUp() {
+        myVertx = Vertx.vertx();
+    }
+
+    /**
+     * Closes the Vert.x instance.
+     */
+    @AfterEach
+    public void tearDown() {
+        myVertx.close();
+    }
+
+    /**
+     * Tests that concurrent single-ID GETs are sent as one call, and that each gets only its own event.
+     *
+     * @throws Exception If a GET doesn't complete
+     */
+    @Test
+    public void testBatch() throws Exception {
+        final RequestBatcher batcher = new RequestBatcher(myVertx, 20, 10, RequestBatcher.DEFAULT_ENDPOINTS);
+        final Future<HttpResponse<Buffer>> first = batcher.execute(EVENTS + FIRST_ID + LIMIT, this::getEvents);
+        final Future<HttpResponse<Buffer>> second = batcher.execute(EVENTS + SECOND_ID + LIMIT, this::getEvents);
+        final Future<HttpResponse<Buffer>> again = batcher.execute(EVENTS + FIRST_ID + LIMIT, this::getEvents);
+
+        assertEquals(FIRST_ID, getTitle(await(first)));
+        assertEquals(SECOND_ID, getTitle(await(second)));
+        assertEquals(FIRST_ID, getTitle(await(again)));
+        assertEquals(List.of(EVENTS + "1,2" + LIMIT), myQueries);
+        assertEquals(2, batcher.getBatchedCount());
+    }
+
+    /**
+     * Tests that a batch is sent as soon as it's full, without waiting for its window to pass.
+     *
+     * @throws Exception If a GET doesn't complete
+     */
+    @Test
+    public void testFullBatch() throws Exception {
+        final RequestBatcher batcher = new RequestBatcher(myVertx, 60_000, 2, RequestBatcher.DEFAULT_ENDPOINTS);
+        final Future<HttpResponse<Buffer>> first = batcher.execute(EVENTS + FIRST_ID, this::getEvents);
+        final Future<HttpResponse<Buffer>> second = batcher.execute(EVENTS + SECOND_ID, this::getEvents);
+
+        assertEquals(FIRST_ID, getTitle(await(first)));
+        assertEquals(SECOND_ID, getTitle(await(second)));
+        assertEquals(List.of(EVENTS + FIRST_ID + ',' + SECOND_ID), myQueries);
+    }
+
+    /**
+     * Tests that an ID that's missing from the batched response is fetched on its own.
+     *
+     * @throws Exception If a GET doesn't complete
+     */
+    @Test
+    public void testMissingId() throws Exception {
+        final RequestBatcher batcher = new RequestBatcher(myVertx, 20, 10, RequestBatcher.DEFAULT_ENDPOINTS);
+        final Function<String, Future<HttpResponse<Buffer>>> fetcher = query -> {
+            // The batched call loses the second event
+            return getEvents(query.replace(',' + SECOND_ID, ""));
+        };
+        final Future<HttpResponse<Buffer>> first = batcher.execute(EVENTS + FIRST_ID, fetcher);
+        final Future<HttpResponse<Buffer>> second = batcher.execute(EVENTS + SECOND_ID, fetcher);
+
+        assertEquals(FIRST_ID, getTitle(await(first)));
+        assertEquals(SECOND_ID, getTitle(await(second)));
+        assertEquals(List.of(EVENTS + FIRST_ID, EVENTS + SECOND_ID), myQueries);
+    }
+
+    /**
+     * Tests that GETs that aren't for a single ID of a batched endpoint are passed straight through.
+     *
+     * @param aQuery A GET query
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "/api/1.1/events/form/8123", "/api/1.1/events/1,2", "/api/1.1/events/",
+        "/api/1.1/hours/2572", "/api/1.1/events" })
+    public void testUnbatched(final String aQuery) {
+        new RequestBatcher(myVertx, 20, 10, RequestBatcher.DEFAULT_ENDPOINTS).execute(aQuery, this::getEvents);
+        assertEquals(List.of(aQuery), myQueries);
+    }
+
+    /**
+     * Tests that invalid batch endpoints are rejected.
+     *
+     * @param aEndpoints A batch endpoint configuration
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "/api/1.1/events", "/api/1.1/events=", "api/1.1/events=id", "/api/1.1/events/=id" })
+    public void testInvalidEndpoints(final String aEndpoints) {
+        assertThrows(IllegalArgumentException.class, () -> new RequestBatcher(myVertx, 20, 10, aEndpoints));
+    }
+
+    /**
+     * Answers a GET of the events endpoint like LibCal does, with an event whose title is its ID for each ID.
+     *
+     * @param aQuery A <code>/path?query</code> string
+     * @return A Future that resolves to the response
+     */
+    private Future<HttpResponse<Buffer>> getEvents(final String aQuery) {
+        final int index = aQuery.indexOf('?');
+        final String path = index < 0 ? aQuery : aQuery.substring(0, index);
+        final JsonArray events = new JsonArray();
+
+        myQueries.add(aQuery);
+
+        for (final String id : path.substring(path.lastIndexOf('/') + 1).split(",")) {
+            if (!id.isEmpty() && Character.isDigit(id.charAt(0))) {
+                events.add(new JsonObject().put(ID, Integer.parseInt(id)).put(TITLE, id));
+            }
+        }
+
+        return Future.succeededFuture(new HttpResponseImpl<>(HttpVersion.HTTP_1_1, HTTP.OK, null,
+                MultiMap.caseInsensitiveMultiMap(), MultiMap.caseInsensitiveMultiMap(), List.of(),
+                new JsonObject().put(EVENTS_FIELD, events).toBuffer(), List.of()));
+    }
+
+    /**
+     * Gets the title of the only event in a response.
+     *
+     * @param aResponse A response to a single-ID GET
+     * @return The event's title
+     */
+    private static String getTitle(final HttpResponse<Buffer> aResponse) {
+        final JsonArray events = aResponse.bodyAsJsonObject().getJsonArray(EVENTS_FIELD);
+
+        assertEquals(1, events.size());
+        return events.getJsonObject(0).getString(TITLE);
+    }
+
+    /**
+     * Waits for a Future to complete.
+     *
+     * @param aFuture A Future
+     * @return The Future's result
+     * @throws Exception If the Future fails or doesn't complete in time
+     */
+    private static HttpResponse<Buffer> await(final Future<HttpResponse<Buffer>> aFuture) throws Exception {
+        return aFuture.toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,169 @@
+
+package edu.ucla.library.libcal.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+
+/**
+ * Tests {@link RequestHedger}.
+ */
+public class RequestHedgerTest {
+
+    /**
+     * The response of the first call.
+     */
+    private static final String FIRST = "first";
+
+    /**
+     * The response of the hedge.
+     */
+    private static final String HEDGE = "hedge";
+
+    /**
+     * The number of milliseconds the calls used to prime the hedger took.
+     */
+    private static final long LATENCY = 20;
+
+    /**
+     * The Vert.x instance whose timers start the hedges.
+     */
+    private Vertx myVertx;
+
+    /**
+     * Sets up the Vert.x instance.
+     */
+    @BeforeEach
+    public void setUp() {
+        myVertx = Vertx.vertx();
+    }
+
+    /**
+     * Closes the Vert.x instance.
+     */
+    @AfterEach
+    public void tearDown() {
+        myVertx.close();
+    }
+
+    /**
+     * Tests that a call that's slower than recent calls is hedged, and that the hedge's answer is used.
+     *
+     * @throws Exception If the hedged call doesn't complete
+     */
+    @Test
+    public void testSlowCallIsHedged() throws Exception {
+        final RequestHedger hedger = getPrimedHedger(100);
+        final AtomicInteger callCount = new AtomicInteger();
+        final Promise<String> first = Promise.promise();
+
+        assertEquals(HEDGE, await(hedger.execute(() -> {
+            return callCount.incrementAndGet() == 1 ? first.future() : Future.succeededFuture(HEDGE);
+        })));
+        assertEquals(2, callCount.get());
+        assertEquals(1, hedger.getHedgeCount());
+    }
+
+    /**
+     * Tests that a call isn't hedged when the budget has been spent.
+     *
+     * @throws Exception If the call doesn't complete
+     */
+    @Test
+    public void testBudget() throws Exception {
+        final RequestHedger hedger = getPrimedHedger(0);
+        final AtomicInteger callCount = new AtomicInteger();
+
+        assertEquals(FIRST, await(hedger.execute(() -> {
+            callCount.incrementAndGet();
+            return getLateResponse(FIRST);
+        })));
+        assertEquals(1, callCount.get());
+        assertEquals(0, hedger.getHedgeCount());
+    }
+
+    /**
+     * Tests that no call is hedged until enough latencies have been recorded to know which calls are slow.
+     *
+     * @throws Exception If the call doesn't complete
+     */
+    @Test
+    public void testNotHedgedWithoutSamples() throws Exception {
+        final RequestHedger hedger = new RequestHedger(myVertx, 100, 1);
+
+        assertEquals(FIRST, await(hedger.execute(() -> getLateResponse(FIRST))));
+        assertEquals(0, hedger.getHedgeCount());
+    }
+
+    /**
+     * Tests that a hedged call fails only once both of its attempts have failed.
+     */
+    @Test
+    public void testBothAttemptsFail() {
+        final RequestHedger hedger = getPrimedHedger(100);
+        final AtomicInteger callCount = new AtomicInteger();
+        final Promise<String> first = Promise.promise();
+        final Future<String> response = hedger.execute(() -> {
+            if (callCount.incrementAndGet() == 1) {
+                return first.future();
+            }
+
+            first.fail(FIRST);
+            return Future.failedFuture(HEDGE);
+        });
+
+        assertEquals(HEDGE, assertThrows(ExecutionException.class, () -> await(response)).getCause().getMessage());
+        assertEquals(2, callCount.get());
+    }
+
+    /**
+     * Gets a hedger that's recorded enough latencies to start hedging.
+     *
+     * @param aBudget The percentage of calls that may be hedged
+     * @return A request hedger
+     */
+    private RequestHedger getPrimedHedger(final int aBudget) {
+        final RequestHedger hedger = new RequestHedger(myVertx, aBudget, 1);
+
+        for (int index = 0; index < RequestHedger.MIN_SAMPLES; index++) {
+            hedger.record(TimeUnit.MILLISECONDS.toNanos(LATENCY));
+        }
+
+        return hedger;
+    }
+
+    /**
+     * Gets a response that arrives well after the hedging delay.
+     *
+     * @param aResponse A response
+     * @return A Future that resolves to the response
+     */
+    private Future<String> getLateResponse(final String aResponse) {
+        final Promise<String> promise = Promise.promise();
+
+        myVertx.setTimer(LATENCY * 5, id -> promise.complete(aResponse));
+        return promise.future();
+    }
+
+    /**
+     * Waits for a Future to complete.
+     *
+     * @param aFuture A Future
+     * @return The Future's result
+     * @throws Exception If the Future fails or doesn't complete in time
+     */
+    private static String await(final Future<String> aFuture) throws Exception {
+        return aFuture.toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+}
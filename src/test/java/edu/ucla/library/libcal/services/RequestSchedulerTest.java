@@ -0,0 +1,156 @@
+
+package edu.ucla.library.libcal.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import info.freelibrary.util.HTTP;
+
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpHeaders;
+
+/**
+ * Tests {@link RequestScheduler}.
+ */
+public class RequestSchedulerTest {
+
+    /**
+     * An access token.
+     */
+    private static final String TOKEN = "abc123";
+
+    /**
+     * The name of the legacy header with the number of requests left in the current window.
+     */
+    private static final String REMAINING = "X-RateLimit-Remaining";
+
+    /**
+     * The name of the legacy header with when the current window ends.
+     */
+    private static final String RESET = "X-RateLimit-Reset";
+
+    /**
+     * A number of seconds to wait.
+     */
+    private static final String SECONDS = "3";
+
+    /**
+     * The current time of the test clock.
+     */
+    private final AtomicLong myTime = new AtomicLong();
+
+    /**
+     * The Vert.x instance whose timers release waiting requests.
+     */
+    private Vertx myVertx;
+
+    /**
+     * Sets up the Vert.x instance and the token holder.
+     */
+    @BeforeEach
+    public void setUp() {
+        myVertx = Vertx.vertx();
+        TokenHolder.get(myVertx).set(TOKEN);
+    }
+
+    /**
+     * Closes the Vert.x instance.
+     */
+    @AfterEach
+    public void tearDown() {
+        myVertx.close();
+    }
+
+    /**
+     * Tests that a burst goes through at once, that the next request waits its turn, and that one more than the queue
+     * can hold is shed.
+     */
+    @Test
+    public void testBurstQueueAndShed() {
+        final RequestScheduler scheduler = new RequestScheduler(myVertx, 10, 2, 1, 1000, myTime::get);
+        final Future<Void> shed;
+
+        assertTrue(scheduler.schedule(TOKEN).succeeded());
+        assertTrue(scheduler.schedule(TOKEN).succeeded());
+        assertFalse(scheduler.schedule(TOKEN).isComplete());
+        assertEquals(1, scheduler.getQueueSize(TOKEN));
+
+        shed = scheduler.schedule(TOKEN);
+
+        assertTrue(shed.failed());
+        assertEquals(1, ((RequestShedException) shed.cause()).getRetryAfter());
+
+        // After a second, the bucket has refilled
+        myTime.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(scheduler.schedule(TOKEN).succeeded());
+    }
+
+    /**
+     * Tests that a client is held back for as long as LibCal asks, even without a local rate limit.
+     */
+    @Test
+    public void testUpstreamPause() {
+        final RequestScheduler scheduler = new RequestScheduler(myVertx, 0, 1, 10, 2000, myTime::get);
+        final Future<Void> shed;
+
+        assertTrue(scheduler.schedule(TOKEN).succeeded());
+
+        scheduler.update(TOKEN, HTTP.TOO_MANY_REQUESTS, headers(HttpHeaders.RETRY_AFTER.toString(), SECONDS));
+        shed = scheduler.schedule(TOKEN);
+
+        assertTrue(shed.failed());
+        assertEquals(3, ((RequestShedException) shed.cause()).getRetryAfter());
+
+        myTime.addAndGet(TimeUnit.SECONDS.toNanos(3));
+        assertTrue(scheduler.schedule(TOKEN).succeeded());
+    }
+
+    /**
+     * Tests that the pause LibCal asks for is read from its response headers.
+     */
+    @Test
+    public void testGetPause() {
+        assertEquals(TimeUnit.SECONDS.toNanos(3),
+                RequestScheduler.getPause(HTTP.OK, headers(REMAINING, "0", RESET, SECONDS)));
+        assertEquals(0, RequestScheduler.getPause(HTTP.OK, headers(REMAINING, "5", RESET, SECONDS)));
+        assertEquals(0, RequestScheduler.getPause(HTTP.OK, headers(HttpHeaders.RETRY_AFTER.toString(), SECONDS)));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), RequestScheduler.getPause(HTTP.TOO_MANY_REQUESTS, headers()));
+        assertEquals(0, RequestScheduler.getPause(HTTP.TOO_MANY_REQUESTS,
+                headers(HttpHeaders.RETRY_AFTER.toString(), "Tue, 15 Oct 2024 08:00:00 GMT")));
+    }
+
+    /**
+     * Tests that negative settings are rejected.
+     */
+    @Test
+    public void testInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new RequestScheduler(myVertx, -1, 1, 1, 1));
+    }
+
+    /**
+     * Creates a set of headers.
+     *
+     * @param aNamesAndValues Alternating header names and values
+     * @return The headers
+     */
+    private static MultiMap headers(final String... aNamesAndValues) {
+        final MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+
+        for (int index = 0; index < aNamesAndValues.length; index += 2) {
+            headers.add(aNamesAndValues[index], aNamesAndValues[index + 1]);
+        }
+
+        return headers;
+    }
+}
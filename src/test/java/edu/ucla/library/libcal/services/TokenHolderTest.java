@@ -0,0 +1,171 @@
+
+package edu.ucla.library.libcal.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import info.freelibrary.util.HTTP;
+
+import io.vertx.core.Vertx;
+
+/**
+ * Tests {@link TokenHolder}.
+ */
+public class TokenHolderTest {
+
+    /**
+     * An access token.
+     */
+    private static final String TOKEN = "abc123";
+
+    /**
+     * A replacement access token.
+     */
+    private static final String NEW_TOKEN = "def456";
+
+    /**
+     * The number of clients in a test pool.
+     */
+    private static final int POOL_SIZE = 3;
+
+    /**
+     * Tests that the current token and its header value are read back.
+     */
+    @Test
+    public void testSet() {
+        final TokenHolder holder = new TokenHolder();
+
+        assertNull(holder.getToken());
+
+        holder.set(TOKEN);
+
+        assertEquals(TOKEN, holder.getToken());
+        assertEquals("Bearer abc123", holder.getAuthorizationHeader(TOKEN));
+        assertSame(holder.getAuthorizationHeader(TOKEN), holder.getAuthorizationHeader(TOKEN));
+    }
+
+    /**
+     * Tests that a token that's been replaced still gets a header value.
+     */
+    @Test
+    public void testReplacedToken() {
+        final TokenHolder holder = new TokenHolder();
+
+        holder.set(TOKEN);
+        holder.set(NEW_TOKEN);
+
+        assertEquals("Bearer " + TOKEN, holder.getAuthorizationHeader(TOKEN));
+    }
+
+    /**
+     * Tests that a pool's tokens are used in turn, skipping a client that's cooling down.
+     */
+    @Test
+    public void testRoundRobin() {
+        final TokenHolder holder = newPool(TokenHolder.Strategy.ROUND_ROBIN);
+        final Set<String> tokens = new HashSet<>();
+
+        for (int index = 0; index < POOL_SIZE; index++) {
+            tokens.add(holder.getToken());
+        }
+
+        assertEquals(POOL_SIZE, tokens.size());
+
+        holder.startRequest(TOKEN);
+        holder.endRequest(TOKEN, HTTP.TOO_MANY_REQUESTS);
+
+        assertFalse(holder.isHealthy(TOKEN));
+
+        for (int index = 0; index < POOL_SIZE * 2; index++) {
+            assertNotEquals(TOKEN, holder.getToken());
+        }
+    }
+
+    /**
+     * Tests that a pool's least loaded token is used.
+     */
+    @Test
+    public void testLeastLoaded() {
+        final TokenHolder holder = newPool(TokenHolder.Strategy.LEAST_LOADED);
+
+        holder.startRequest(holder.getToken(0));
+        holder.startRequest(holder.getToken(2));
+
+        assertEquals(holder.getToken(1), holder.getToken());
+
+        holder.startRequest(holder.getToken(1));
+        holder.startRequest(holder.getToken(1));
+        holder.endRequest(holder.getToken(2), HTTP.OK);
+
+        assertEquals(holder.getToken(2), holder.getToken());
+        assertEquals(2, holder.getInFlightCount(holder.getToken(1)));
+    }
+
+    /**
+     * Tests that a client that's cooling down is still used when it's the only one with a token.
+     */
+    @Test
+    public void testUnhealthyFallback() {
+        final TokenHolder holder = new TokenHolder();
+
+        holder.configure(2, TokenHolder.Strategy.ROUND_ROBIN, TokenHolder.DEFAULT_COOLDOWN);
+
+        assertNull(holder.getToken());
+
+        holder.set(1, TOKEN);
+        holder.endRequest(TOKEN, HTTP.UNAUTHORIZED);
+
+        assertEquals(TOKEN, holder.getToken());
+        assertEquals(1, holder.indexOf(TOKEN));
+        assertEquals(-1, holder.indexOf(NEW_TOKEN));
+    }
+
+    /**
+     * Tests that strategies are found by their configured names.
+     */
+    @Test
+    public void testStrategyNames() {
+        assertEquals(TokenHolder.Strategy.LEAST_LOADED, TokenHolder.Strategy.fromName("least-loaded"));
+        assertEquals(TokenHolder.Strategy.ROUND_ROBIN, TokenHolder.Strategy.fromName("round-robin"));
+    }
+
+    /**
+     * Tests that everything in a Vert.x instance shares one holder.
+     */
+    @Test
+    public void testShared() {
+        final Vertx vertx = Vertx.vertx();
+
+        try {
+            assertSame(TokenHolder.get(vertx), TokenHolder.get(vertx));
+        } finally {
+            vertx.close();
+        }
+    }
+
+    /**
+     * Creates a pool of tokens, the first of which is {@link #TOKEN}.
+     *
+     * @param aStrategy How the pool chooses tokens
+     * @return The token pool
+     */
+    private static TokenHolder newPool(final TokenHolder.Strategy aStrategy) {
+        final TokenHolder holder = new TokenHolder();
+
+        holder.configure(POOL_SIZE, aStrategy, TokenHolder.DEFAULT_COOLDOWN);
+
+        for (int index = 0; index < POOL_SIZE; index++) {
+            holder.set(index, index == 0 ? TOKEN : TOKEN + index);
+        }
+
+        return holder;
+    }
+}
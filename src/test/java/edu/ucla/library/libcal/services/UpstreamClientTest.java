@@ -0,0 +1,76 @@
+
+package edu.ucla.library.libcal.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ucla.library.libcal.Config;
+import edu.ucla.library.libcal.JsonKeys;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Tests {@link UpstreamClient}.
+ */
+public class UpstreamClientTest {
+
+    /**
+     * Tests that the connection pool is tuned from the configuration.
+     */
+    @Test
+    public void testOptions() {
+        final HttpClientOptions options = UpstreamClient.getOptions(new JsonObject().put(Config.HTTP_MAX_POOL_SIZE, 8)
+                .put(Config.HTTP_MAX_WAIT_QUEUE_SIZE, 16).put(Config.HTTP_KEEP_ALIVE_TIMEOUT, 30)
+                .put(Config.HTTP_IDLE_TIMEOUT, 120).put(Config.HTTP_PIPELINING, true).put(Config.HTTP2, true)
+                .put(Config.HTTP_CONNECT_TIMEOUT, 2_000));
+
+        assertEquals(8, options.getMaxPoolSize());
+        assertEquals(16, options.getMaxWaitQueueSize());
+        assertEquals(30, options.getKeepAliveTimeout());
+        assertEquals(120, options.getIdleTimeout());
+        assertEquals(2_000, options.getConnectTimeout());
+        assertTrue(options.isPipelining());
+        assertTrue(options.isUseAlpn());
+        assertEquals(HttpVersion.HTTP_2, options.getProtocolVersion());
+        assertFalse(options.isSsl());
+    }
+
+    /**
+     * Tests the connection pool's defaults.
+     */
+    @Test
+    public void testDefaultOptions() {
+        final HttpClientOptions options = UpstreamClient.getOptions(new JsonObject());
+
+        assertEquals(UpstreamClient.DEFAULT_MAX_POOL_SIZE, options.getMaxPoolSize());
+        assertEquals(UpstreamClient.DEFAULT_MAX_WAIT_QUEUE_SIZE, options.getMaxWaitQueueSize());
+        assertEquals(HttpVersion.HTTP_1_1, options.getProtocolVersion());
+        assertEquals(UpstreamClient.DEFAULT_CONNECT_TIMEOUT, options.getConnectTimeout());
+        assertFalse(options.isPipelining());
+    }
+
+    /**
+     * Tests that everything in a Vert.x instance shares one client.
+     */
+    @Test
+    public void testShared() {
+        final Vertx vertx = Vertx.vertx();
+
+        try {
+            final UpstreamClient client = UpstreamClient.get(vertx, new JsonObject());
+
+            assertSame(client, UpstreamClient.get(vertx, new JsonObject()));
+            assertSame(client, UpstreamClient.lookup(vertx).orElseThrow());
+            assertEquals(0, client.getStats().getInteger(JsonKeys.OPEN_CONNECTIONS));
+        } finally {
+            vertx.close();
+        }
+    }
+}
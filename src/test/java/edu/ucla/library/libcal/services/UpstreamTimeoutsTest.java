@@ -0,0 +1,74 @@
+
+package edu.ucla.library.libcal.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.ucla.library.libcal.Config;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Tests {@link UpstreamTimeouts}.
+ */
+public class UpstreamTimeoutsTest {
+
+    /**
+     * An event form path.
+     */
+    private static final String EVENT_FORM = "/api/1.1/events/form/8123";
+
+    /**
+     * An events path.
+     */
+    private static final String EVENTS = "/api/1.1/events";
+
+    /**
+     * An hours path.
+     */
+    private static final String HOURS = "/api/1.1/hours/2572";
+
+    /**
+     * Tests that the longest matching path prefix picks a call's timeouts.
+     */
+    @Test
+    public void testRouteTimeouts() {
+        final UpstreamTimeouts timeouts = UpstreamTimeouts
+                .fromConfig(new JsonObject().put(Config.REQUEST_IDLE_TIMEOUT, 1_000).put(Config.REQUEST_TIMEOUT, 2_000)
+                        .put(Config.ROUTE_TIMEOUTS, "/api/1.1/events=3000:6000, /api/1.1/events/form = 0:500"));
+
+        assertEquals(1_000, timeouts.getIdleTimeout(HOURS));
+        assertEquals(2_000, timeouts.getTotalTimeout(HOURS));
+        assertEquals(3_000, timeouts.getIdleTimeout(EVENTS));
+        assertEquals(6_000, timeouts.getTotalTimeout(EVENTS));
+        assertEquals(0, timeouts.getIdleTimeout(EVENT_FORM));
+        assertEquals(500, timeouts.getTotalTimeout(EVENT_FORM));
+    }
+
+    /**
+     * Tests the default timeouts.
+     */
+    @Test
+    public void testDefaults() {
+        final UpstreamTimeouts timeouts = UpstreamTimeouts.fromConfig(new JsonObject());
+
+        assertEquals(UpstreamTimeouts.DEFAULT_IDLE_TIMEOUT, timeouts.getIdleTimeout(EVENT_FORM));
+        assertEquals(UpstreamTimeouts.DEFAULT_TOTAL_TIMEOUT, timeouts.getTotalTimeout(EVENT_FORM));
+    }
+
+    /**
+     * Tests that invalid route class timeouts are rejected.
+     *
+     * @param aRouteTimeouts A route class timeouts configuration
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "/api/1.1/events", "/api/1.1/events=5000", "=1:2", "/api/1.1/events=1:soon",
+        "/api/1.1/events=-1:5000" })
+    public void testInvalidRouteTimeouts(final String aRouteTimeouts) {
+        assertThrows(IllegalArgumentException.class, () -> new UpstreamTimeouts(1, 1, aRouteTimeouts));
+    }
+}